@@ -19,6 +19,7 @@ package org.xipki.ca.api.publisher;
 
 import java.io.Closeable;
 import java.security.cert.X509CRL;
+import java.util.List;
 import java.util.Map;
 
 import org.xipki.ca.api.CertWithDbId;
@@ -116,6 +117,27 @@ public abstract class CertPublisher implements Closeable {
    */
   public abstract boolean certificateRemoved(X509Cert caCert, CertWithDbId cert);
 
+  /**
+   * Publishes the remove of several certificates. The default implementation calls
+   * {@link #certificateRemoved(X509Cert, CertWithDbId)} for each certificate, publishers
+   * which can remove certificates more efficiently in bulk should overwrite it.
+   *
+   * @param caCert
+   *          CA certificate. Must not be {@code null}.
+   * @param certs
+   *          Target certificates. Must not be {@code null}.
+   * @return whether the remove of all certificates is published.
+   */
+  public boolean certificatesRemoved(X509Cert caCert, List<CertWithDbId> certs) {
+    boolean successful = true;
+    for (CertWithDbId cert : certs) {
+      if (!certificateRemoved(caCert, cert)) {
+        successful = false;
+      }
+    }
+    return successful;
+  }
+
   /**
    * Publishes a CRL.
    *
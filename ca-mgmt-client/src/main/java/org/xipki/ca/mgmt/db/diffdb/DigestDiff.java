@@ -76,6 +76,8 @@ class DigestDiff {
 
   private final int numTargetThreads;
 
+  private boolean rangeMode;
+
   public DigestDiff(DataSourceWrapper refDatasource, DataSourceWrapper targetDatasource,
       String reportDirName, boolean revokedOnly, AtomicBoolean stopMe, int numPerSelect,
       int numThreads) throws IOException, DataAccessException {
@@ -121,6 +123,18 @@ class DigestDiff {
     this.includeCaCerts = includeCaCerts;
   }
 
+  public boolean isRangeMode() {
+    return rangeMode;
+  }
+
+  /**
+   * Sets whether the databases are compared via checksums over serial number ranges instead
+   * of certificate by certificate. See {@link RangeDigestDiff} for details.
+   */
+  public void setRangeMode(boolean rangeMode) {
+    this.rangeMode = rangeMode;
+  }
+
   public void diff() throws Exception {
     Map<Integer, byte[]> caIdCertMap = getCas(targetDatasource, targetDbControl);
 
@@ -154,6 +168,14 @@ class DigestDiff {
       refDatasource.releaseResources(refStmt, null);
     }
 
+    if (rangeMode) {
+      Map<Integer, byte[]> refCaIdCertMap = getCas(refDatasource, refDbControl);
+      for (Integer refCaId : refCaIds) {
+        diffSingleCaInRanges(refCaId, refCaIdCertMap.get(refCaId), caIdCertMap);
+      }
+      return;
+    }
+
     final int numBlocksToRead = numTargetThreads * 3 / 2;
     for (Integer refCaId : refCaIds) {
       RefDigestReader refReader = RefDigestReader.getInstance(refDatasource, refDbControl,
@@ -167,35 +189,12 @@ class DigestDiff {
     X509Certificate caCert = refReader.getCaCert();
     byte[] caCertBytes = caCert.getEncoded();
 
-    if (includeCaCerts != null && !includeCaCerts.isEmpty()) {
-      boolean include = false;
-      for (byte[] m : includeCaCerts) {
-        if (Arrays.equals(m, caCertBytes)) {
-          include = true;
-          break;
-        }
-      }
-      if (!include) {
-        System.out.println("skipped CA " + refReader.getCaSubjectName());
-      }
-    }
-
-    String commonName = X509Util.getCommonName(caCert.getSubjectX500Principal());
-    File caReportDir = new File(reportDirName, "ca-" + commonName);
-
-    int idx = 2;
-    while (caReportDir.exists()) {
-      caReportDir = new File(reportDirName, "ca-" + commonName + "-" + (idx++));
+    if (!isCaIncluded(caCertBytes)) {
+      System.out.println("skipped CA " + refReader.getCaSubjectName());
     }
 
-    DigestDiffReporter reporter = new DigestDiffReporter(caReportDir.getPath(), caCertBytes);
-
-    Integer caId = null;
-    for (Integer i : caIdCertBytesMap.keySet()) {
-      if (Arrays.equals(caCertBytes, caIdCertBytesMap.get(i))) {
-        caId = i;
-      }
-    }
+    DigestDiffReporter reporter = createReporter(caCert);
+    Integer caId = getCaId(caIdCertBytesMap, caCertBytes);
 
     if (caId == null) {
       reporter.addNoCaMatch();
@@ -233,6 +232,98 @@ class DigestDiff {
     }
   } // method diffSingleCa
 
+  private void diffSingleCaInRanges(int refCaId, byte[] caCertBytes,
+      Map<Integer, byte[]> caIdCertBytesMap) throws Exception {
+    X509Certificate caCert = X509Util.parseCert(caCertBytes);
+    String caSubjectName = X509Util.getRfc4519Name(caCert.getSubjectX500Principal());
+    if (!isCaIncluded(caCertBytes)) {
+      System.out.println("skipped CA " + caSubjectName);
+      return;
+    }
+
+    DigestDiffReporter reporter = createReporter(caCert);
+    Integer caId = getCaId(caIdCertBytesMap, caCertBytes);
+    if (caId == null) {
+      reporter.addNoCaMatch();
+      reporter.close();
+      return;
+    }
+
+    try {
+      reporter.start();
+      ProcessLog processLog = new ProcessLog(countRefCerts(refCaId));
+      System.out.println("Processing certificates of CA \n\t'" + caSubjectName + "'");
+      processLog.printHeader();
+
+      RangeDigestDiff rangeDiff = new RangeDigestDiff(refDatasource, refDbControl, refCaId,
+          targetDatasource, targetDbControl, caId, certhashAlgo, revokedOnly, numPerSelect,
+          numTargetThreads, stopMe);
+      long numQueries = rangeDiff.diff(reporter, processLog);
+      processLog.printTrailer();
+      System.out.println(" compared with " + numQueries + " checksum queries");
+    } catch (InterruptedException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      reporter.addError("Exception thrown: " + ex.getClass().getName() + ": " + ex.getMessage());
+      LOG.error("exception in diffSingleCaInRanges", ex);
+    } finally {
+      reporter.close();
+    }
+  } // method diffSingleCaInRanges
+
+  private long countRefCerts(int refCaId) throws DataAccessException {
+    String sql = "SELECT COUNT(*) FROM CERT WHERE "
+        + (refDbControl == DbControl.XIPKI_OCSP_v4 ? "IID=" : "CA_ID=") + refCaId
+        + (revokedOnly ? " AND REV=1" : "");
+    Statement stmt = refDatasource.createStatement();
+    ResultSet rs = null;
+    try {
+      rs = stmt.executeQuery(sql);
+      rs.next();
+      return rs.getLong(1);
+    } catch (SQLException ex) {
+      throw refDatasource.translate(sql, ex);
+    } finally {
+      refDatasource.releaseResources(stmt, rs);
+    }
+  }
+
+  private boolean isCaIncluded(byte[] caCertBytes) {
+    if (includeCaCerts == null || includeCaCerts.isEmpty()) {
+      return true;
+    }
+
+    for (byte[] m : includeCaCerts) {
+      if (Arrays.equals(m, caCertBytes)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private DigestDiffReporter createReporter(X509Certificate caCert)
+      throws IOException, CertificateException {
+    String commonName = X509Util.getCommonName(caCert.getSubjectX500Principal());
+    File caReportDir = new File(reportDirName, "ca-" + commonName);
+
+    int idx = 2;
+    while (caReportDir.exists()) {
+      caReportDir = new File(reportDirName, "ca-" + commonName + "-" + (idx++));
+    }
+
+    return new DigestDiffReporter(caReportDir.getPath(), caCert.getEncoded());
+  }
+
+  private static Integer getCaId(Map<Integer, byte[]> caIdCertBytesMap, byte[] caCertBytes) {
+    Integer caId = null;
+    for (Integer i : caIdCertBytesMap.keySet()) {
+      if (Arrays.equals(caCertBytes, caIdCertBytesMap.get(i))) {
+        caId = i;
+      }
+    }
+    return caId;
+  }
+
   private static Map<Integer, byte[]> getCas(DataSourceWrapper datasource, DbControl dbControl)
       throws DataAccessException {
     // get a list of available CAs in the target database
@@ -27,6 +27,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Date;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,7 +60,7 @@ class DigestDiffReporter implements Closeable {
 
   private Date startTime;
 
-  private AtomicInteger numGood = new AtomicInteger(0);
+  private AtomicLong numGood = new AtomicLong(0);
 
   private AtomicInteger numDiff = new AtomicInteger(0);
 
@@ -104,6 +105,13 @@ class DigestDiffReporter implements Closeable {
     writeSerialNumberLine(goodWriter, serialNumber);
   }
 
+  /**
+   * Counts the certificates with matching range checksums, which are not listed individually.
+   */
+  public void addGood(long num) {
+    numGood.addAndGet(num);
+  }
+
   public void addUnexpected(BigInteger serialNumber) throws IOException {
     numUnexpected.incrementAndGet();
     writeSerialNumberLine(unexpectedWriter, serialNumber);
@@ -113,7 +121,7 @@ class DigestDiffReporter implements Closeable {
     Args.notNull(refCert, "refCert");
     Args.notNull(targetCert, "targetCert");
 
-    if (refCert.getSerialNumber().equals(targetCert.getSerialNumber())) {
+    if (!refCert.getSerialNumber().equals(targetCert.getSerialNumber())) {
       throw new IllegalArgumentException("refCert and targetCert are not of the same serialNumber");
     }
 
@@ -149,7 +157,7 @@ class DigestDiffReporter implements Closeable {
     closeWriter(goodWriter);
     closeWriter(errorWriter);
 
-    int sum = numGood.get() + numDiff.get() + numMissing.get() + numUnexpected.get()
+    long sum = numGood.get() + numDiff.get() + numMissing.get() + numUnexpected.get()
               + numError.get();
     Date now = new Date();
     int durationSec = (int) ((now.getTime() - startTime.getTime()) / 1000);
@@ -58,11 +58,22 @@ public class DigestDiffWorker extends DbPortWorker {
 
   private final int numThreads;
 
+  private final boolean rangeMode;
+
   public DigestDiffWorker(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
       boolean revokedOnly, String refDbConfFile, String targetDbConfFile, String reportDirName,
       int numCertsPerSelect, int numThreads, Set<byte[]> includeCaCerts)
       throws PasswordResolverException, IOException {
+    this(datasourceFactory, passwordResolver, revokedOnly, refDbConfFile, targetDbConfFile,
+        reportDirName, numCertsPerSelect, numThreads, includeCaCerts, false);
+  }
+
+  public DigestDiffWorker(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
+      boolean revokedOnly, String refDbConfFile, String targetDbConfFile, String reportDirName,
+      int numCertsPerSelect, int numThreads, Set<byte[]> includeCaCerts, boolean rangeMode)
+      throws PasswordResolverException, IOException {
     super(datasourceFactory, passwordResolver, refDbConfFile);
+    this.rangeMode = rangeMode;
     this.reportDir = reportDirName;
     this.numThreads = Args.positive(numThreads, "numThreads");
     this.numCertsPerSelect = numCertsPerSelect;
@@ -101,6 +112,7 @@ public class DigestDiffWorker extends DbPortWorker {
       DigestDiff diff = new DigestDiff(datasource, targetDatasource, reportDir, revokedOnly,
           stopMe, numCertsPerSelect, numThreads);
       diff.setIncludeCaCerts(includeCaCerts);
+      diff.setRangeMode(rangeMode);
       diff.diff();
     } finally {
       try {
@@ -0,0 +1,453 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.mgmt.db.diffdb;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.datasource.DatabaseType;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.Args;
+import org.xipki.util.Base64;
+import org.xipki.util.ProcessLog;
+
+/**
+ * Compares the certificates of a CA via checksums over serial number ranges. Only the
+ * ranges whose checksums differ are subdivided, down to ranges small enough to be compared
+ * row by row.
+ *
+ * <p>A range is the set of serial numbers (hex encoded as in the column SN) with a given
+ * prefix p, which is selected via {@code SN>=p AND SN<p||'g'}. Its children are the serial
+ * number p itself and the 16 ranges with prefixes p0, ..., pf.
+ *
+ * <p>The checksum of a range consists of the number of certificates, the sums of the
+ * revocation and validity columns, and, if both databases contain comparable certificate
+ * hashes, the sums of the first characters of the hashes.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class RangeDigestDiff {
+
+  private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+  private static final String CHECKSUM_COLUMNS =
+      "COUNT(*),SUM(REV),SUM(RR),SUM(RT),SUM(RIT),SUM(NBEFORE),SUM(NAFTER)";
+
+  // number of characters of the hash included in the checksum
+  private static final int CHECKSUM_HASH_CHARS = 4;
+
+  /**
+   * Subdivides the ranges whose checksums differ, independent of how the checksums are
+   * computed and the certificates are compared.
+   */
+  abstract static class RangeBisection {
+
+    private final int leafSize;
+
+    private final AtomicBoolean stopMe;
+
+    RangeBisection(int leafSize, AtomicBoolean stopMe) {
+      this.leafSize = leafSize;
+      this.stopMe = stopMe;
+    }
+
+    void compare(String prefix) throws Exception {
+      if (stopMe.get()) {
+        throw new InterruptedException("interrupted by the user");
+      }
+
+      long[] counts = new long[2];
+      if (checksumEquals(prefix, counts)) {
+        return;
+      }
+
+      if (Math.max(counts[0], counts[1]) <= leafSize) {
+        compareCerts(prefix, prefix + "g");
+        return;
+      }
+
+      if (!prefix.isEmpty()) {
+        // the serial number equals the prefix
+        compareCerts(prefix, prefix + "0");
+      }
+
+      for (char c : HEX_CHARS) {
+        compare(prefix + c);
+      }
+    } // method compare
+
+    /**
+     * Compares the checksums of the range with given prefix.
+     *
+     * @param counts will be filled with the number of certificates in the reference and in
+     *        the target.
+     * @return whether the checksums are equal.
+     */
+    abstract boolean checksumEquals(String prefix, long[] counts) throws Exception;
+
+    /**
+     * Compares the certificates with serial number in [lower, upper) row by row.
+     */
+    abstract void compareCerts(String lower, String upper) throws Exception;
+
+  } // class RangeBisection
+
+  private class RangeComparator extends RangeBisection {
+
+    private final Connection refConn;
+
+    private final Connection targetConn;
+
+    private PreparedStatement refChecksumStmt;
+
+    private PreparedStatement targetChecksumStmt;
+
+    private PreparedStatement refCertsStmt;
+
+    private PreparedStatement targetCertsStmt;
+
+    RangeComparator() throws DataAccessException {
+      super(RangeDigestDiff.this.leafSize, RangeDigestDiff.this.stopMe);
+      refConn = refDatasource.getConnection();
+      try {
+        targetConn = targetDatasource.getConnection();
+      } catch (DataAccessException ex) {
+        refDatasource.returnConnection(refConn);
+        throw ex;
+      }
+    }
+
+    void close() {
+      refDatasource.releaseResources(refChecksumStmt, null);
+      refDatasource.releaseResources(refCertsStmt, null);
+      targetDatasource.releaseResources(targetChecksumStmt, null);
+      targetDatasource.releaseResources(targetCertsStmt, null);
+      refDatasource.returnConnection(refConn);
+      targetDatasource.returnConnection(targetConn);
+    }
+
+    /**
+     * {@inheritDoc} If they are equal, all certificates in this range are counted as good.
+     */
+    @Override
+    boolean checksumEquals(String prefix, long[] counts) throws DataAccessException {
+      if (refChecksumStmt == null) {
+        refChecksumStmt = refDatasource.prepareStatement(refConn, refChecksumSql);
+        targetChecksumStmt = targetDatasource.prepareStatement(targetConn, targetChecksumSql);
+      }
+
+      String upper = prefix + "g";
+      String[] refChecksum = checksum(refDatasource, refChecksumStmt, refChecksumSql,
+          prefix, upper);
+      String[] targetChecksum = checksum(targetDatasource, targetChecksumStmt, targetChecksumSql,
+          prefix, upper);
+      numChecksumQueries.addAndGet(2);
+
+      counts[0] = Long.parseLong(refChecksum[0]);
+      counts[1] = Long.parseLong(targetChecksum[0]);
+      if (!Arrays.equals(refChecksum, targetChecksum)) {
+        return false;
+      }
+
+      reporter.addGood(counts[0]);
+      processLog.addNumProcessed(counts[0]);
+      processLog.printStatus();
+      return true;
+    } // method checksumEquals
+
+    @Override
+    void compareCerts(String lower, String upper) throws Exception {
+      if (refCertsStmt == null) {
+        refCertsStmt = refDatasource.prepareStatement(refConn, refCertsSql);
+        targetCertsStmt = targetDatasource.prepareStatement(targetConn, targetCertsSql);
+      }
+
+      Map<BigInteger, DigestEntry> refCerts =
+          getCerts(refDatasource, refDbControl, refCertsStmt, refCertsSql, lower, upper);
+      Map<BigInteger, DigestEntry> targetCerts = getCerts(targetDatasource, targetDbControl,
+          targetCertsStmt, targetCertsSql, lower, upper);
+
+      int numProcessed = 0;
+      for (BigInteger serialNumber : refCerts.keySet()) {
+        DigestEntry refCert = refCerts.get(serialNumber);
+        DigestEntry targetCert = targetCerts.remove(serialNumber);
+
+        numProcessed++;
+        if (targetCert == null) {
+          reporter.addMissing(serialNumber);
+        } else if (refCert.contentEquals(targetCert)) {
+          reporter.addGood(serialNumber);
+        } else {
+          reporter.addDiff(refCert, targetCert);
+        }
+      }
+
+      // in the revokedOnly mode, the not revoked certificates are not expected in the target
+      for (BigInteger serialNumber : targetCerts.keySet()) {
+        reporter.addUnexpected(serialNumber);
+      }
+
+      processLog.addNumProcessed(numProcessed);
+      processLog.printStatus();
+    } // method compareCerts
+
+  } // class RangeComparator
+
+  private final DataSourceWrapper refDatasource;
+
+  private final DbControl refDbControl;
+
+  private final DataSourceWrapper targetDatasource;
+
+  private final DbControl targetDbControl;
+
+  private final HashAlgo certhashAlgo;
+
+  private final boolean revokedOnly;
+
+  private final int leafSize;
+
+  private final int numThreads;
+
+  private final AtomicBoolean stopMe;
+
+  private final AtomicLong numChecksumQueries = new AtomicLong(0);
+
+  private final String refChecksumSql;
+
+  private final String targetChecksumSql;
+
+  private final String refCertsSql;
+
+  private final String targetCertsSql;
+
+  private DigestDiffReporter reporter;
+
+  private ProcessLog processLog;
+
+  RangeDigestDiff(DataSourceWrapper refDatasource, DbControl refDbControl, int refCaId,
+      DataSourceWrapper targetDatasource, DbControl targetDbControl, int targetCaId,
+      HashAlgo certhashAlgo, boolean revokedOnly, int leafSize, int numThreads,
+      AtomicBoolean stopMe) {
+    this.refDatasource = Args.notNull(refDatasource, "refDatasource");
+    this.refDbControl = Args.notNull(refDbControl, "refDbControl");
+    this.targetDatasource = Args.notNull(targetDatasource, "targetDatasource");
+    this.targetDbControl = Args.notNull(targetDbControl, "targetDbControl");
+    this.certhashAlgo = Args.notNull(certhashAlgo, "certhashAlgo");
+    this.revokedOnly = revokedOnly;
+    this.leafSize = Args.positive(leafSize, "leafSize");
+    this.numThreads = Args.positive(numThreads, "numThreads");
+    this.stopMe = Args.notNull(stopMe, "stopMe");
+
+    String refHashColumn = hashColumn(refDbControl, certhashAlgo);
+    String targetHashColumn = hashColumn(targetDbControl, certhashAlgo);
+    String refChecksumColumns = CHECKSUM_COLUMNS;
+    String targetChecksumColumns = CHECKSUM_COLUMNS;
+    // the column CERT contains the certificate instead of its hash
+    if (!"CERT".equals(refHashColumn) && !"CERT".equals(targetHashColumn)) {
+      refChecksumColumns += hashChecksumColumns(refDatasource, refHashColumn);
+      targetChecksumColumns += hashChecksumColumns(targetDatasource, targetHashColumn);
+    }
+
+    // in the revokedOnly mode, the target contains only the revoked certificates
+    this.refChecksumSql = buildSql(refChecksumColumns, refDbControl, refCaId, revokedOnly);
+    this.targetChecksumSql = buildSql(targetChecksumColumns, targetDbControl, targetCaId,
+        false);
+    this.refCertsSql = buildSql("SN,REV,RR,RT,RIT," + refHashColumn, refDbControl, refCaId,
+        revokedOnly);
+    this.targetCertsSql = buildSql("SN,REV,RR,RT,RIT," + targetHashColumn, targetDbControl,
+        targetCaId, false);
+  }
+
+  /**
+   * Compares the certificates of the CA.
+   *
+   * @return number of the checksum queries.
+   */
+  long diff(DigestDiffReporter reporter, ProcessLog processLog) throws Exception {
+    this.reporter = Args.notNull(reporter, "reporter");
+    this.processLog = Args.notNull(processLog, "processLog");
+
+    RangeComparator root = new RangeComparator();
+    try {
+      if (root.checksumEquals("", new long[2])) {
+        return numChecksumQueries.get();
+      }
+    } finally {
+      root.close();
+    }
+
+    // the 16 top level ranges are compared in parallel
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads,
+        HEX_CHARS.length));
+    List<Future<Void>> futures = new ArrayList<>(HEX_CHARS.length);
+    for (char c : HEX_CHARS) {
+      final String prefix = Character.toString(c);
+      futures.add(executor.submit(() -> {
+        RangeComparator comparator = new RangeComparator();
+        try {
+          comparator.compare(prefix);
+        } finally {
+          comparator.close();
+        }
+        return null;
+      }));
+    }
+    executor.shutdown();
+
+    try {
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException ex) {
+      executor.shutdownNow();
+      Throwable cause = ex.getCause();
+      throw (cause instanceof Exception) ? (Exception) cause : ex;
+    }
+
+    return numChecksumQueries.get();
+  } // method diff
+
+  private static String buildSql(String columns, DbControl dbControl, int caId,
+      boolean revokedOnly) {
+    String caColumn;
+    if (dbControl == DbControl.XIPKI_OCSP_v4) {
+      caColumn = "IID";
+    } else if (dbControl == DbControl.XIPKI_CA_v4) {
+      caColumn = "CA_ID";
+    } else {
+      throw new IllegalArgumentException("unknown dbControl " + dbControl);
+    }
+
+    return "SELECT " + columns + " FROM CERT WHERE " + caColumn + "=" + caId
+        + " AND SN>=? AND SN<?" + (revokedOnly ? " AND REV=1" : "");
+  }
+
+  private static String hashColumn(DbControl dbControl, HashAlgo certhashAlgo) {
+    if (dbControl == DbControl.XIPKI_OCSP_v4) {
+      return "HASH";
+    } else {
+      return (certhashAlgo == HashAlgo.SHA1) ? "SHA1" : "CERT";
+    }
+  }
+
+  /**
+   * Returns the sums of the character codes of the first characters of the hash, each
+   * character in its own column, led by a comma.
+   */
+  private static String hashChecksumColumns(DataSourceWrapper datasource, String hashColumn) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 1; i <= CHECKSUM_HASH_CHARS; i++) {
+      String code = "ASCII(SUBSTR(" + hashColumn + "," + i + ",1))";
+      if (datasource.getDatabaseType() == DatabaseType.DB2) {
+        // SUM of INTEGER is INTEGER in DB2 and may overflow
+        code = "CAST(" + code + " AS BIGINT)";
+      }
+      sb.append(",SUM(").append(code).append(")");
+    }
+    return sb.toString();
+  }
+
+  private static String[] checksum(DataSourceWrapper datasource, PreparedStatement ps,
+      String sql, String lower, String upper) throws DataAccessException {
+    ResultSet rs = null;
+    try {
+      ps.setString(1, lower);
+      ps.setString(2, upper);
+      rs = ps.executeQuery();
+      rs.next();
+
+      // the type of SUM varies in the databases, hence normalize it to integer text
+      String[] checksum = new String[rs.getMetaData().getColumnCount()];
+      for (int i = 0; i < checksum.length; i++) {
+        BigDecimal value = rs.getBigDecimal(i + 1);
+        checksum[i] = (value == null) ? "0" : value.toBigInteger().toString();
+      }
+      return checksum;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(null, rs);
+    }
+  }
+
+  private Map<BigInteger, DigestEntry> getCerts(DataSourceWrapper datasource,
+      DbControl dbControl, PreparedStatement ps, String sql, String lower, String upper)
+      throws DataAccessException {
+    Map<BigInteger, DigestEntry> ret = new HashMap<>();
+    ResultSet rs = null;
+    try {
+      ps.setString(1, lower);
+      ps.setString(2, upper);
+      rs = ps.executeQuery();
+
+      while (rs.next()) {
+        BigInteger serialNumber = new BigInteger(rs.getString("SN"), 16);
+        boolean revoked = rs.getBoolean("REV");
+        Integer revReason = null;
+        Long revTime = null;
+        Long revInvTime = null;
+        if (revoked) {
+          revReason = rs.getInt("RR");
+          revTime = rs.getLong("RT");
+          revInvTime = rs.getLong("RIT");
+          if (revInvTime == 0) {
+            revInvTime = null;
+          }
+        }
+
+        String hash;
+        if (dbControl == DbControl.XIPKI_OCSP_v4) {
+          hash = rs.getString("HASH");
+        } else if (certhashAlgo == HashAlgo.SHA1) {
+          hash = rs.getString("SHA1");
+        } else {
+          hash = certhashAlgo.base64Hash(Base64.decodeFast(rs.getString("CERT")));
+        }
+
+        ret.put(serialNumber,
+            new DigestEntry(serialNumber, revoked, revReason, revTime, revInvTime, hash));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(null, rs);
+    }
+    return ret;
+  } // method getCerts
+
+}
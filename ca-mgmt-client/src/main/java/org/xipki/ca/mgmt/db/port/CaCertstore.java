@@ -776,6 +776,175 @@ public class CaCertstore extends ValidatableConf {
 
   }
 
+  /**
+   * IDs of all certificates in the ID range (fromId, toId] at the time of an incremental
+   * export. Certificates in this range which are not listed here have been deleted.
+   */
+  public static class CertIdBlock extends ValidatableConf {
+
+    private long fromId;
+
+    private long toId;
+
+    private List<Long> ids;
+
+    public long getFromId() {
+      return fromId;
+    }
+
+    public void setFromId(long fromId) {
+      this.fromId = fromId;
+    }
+
+    public long getToId() {
+      return toId;
+    }
+
+    public void setToId(long toId) {
+      this.toId = toId;
+    }
+
+    public List<Long> getIds() {
+      if (ids == null) {
+        ids = new LinkedList<>();
+      }
+      return ids;
+    }
+
+    public void setIds(List<Long> ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+    }
+
+  }
+
+  /**
+   * High-water mark of an export, used as starting point of the next incremental export.
+   */
+  public static class Checkpoint extends ValidatableConf {
+
+    /**
+     * Number of certificates with ID in the range (toId of the previous block, toId].
+     */
+    public static class IdBlock extends ValidatableConf {
+
+      private long toId;
+
+      private int count;
+
+      /**
+       * Sum of the IDs modulo 1000003.
+       */
+      private long checksum;
+
+      public long getToId() {
+        return toId;
+      }
+
+      public void setToId(long toId) {
+        this.toId = toId;
+      }
+
+      public int getCount() {
+        return count;
+      }
+
+      public void setCount(int count) {
+        this.count = count;
+      }
+
+      public long getChecksum() {
+        return checksum;
+      }
+
+      public void setChecksum(long checksum) {
+        this.checksum = checksum;
+      }
+
+      @Override
+      public void validate() throws InvalidConfException {
+      }
+
+    }
+
+    /**
+     * Time in seconds since 1970-01-01, the certificates with later LUPDATE are exported by the
+     * next incremental export. Derived from the LUPDATE in the database, not from the local
+     * clock.
+     */
+    private long time;
+
+    private long maxCertId;
+
+    private long maxCrlId;
+
+    private long maxRequestId;
+
+    private long maxReqCertId;
+
+    private List<IdBlock> certIdBlocks;
+
+    public long getTime() {
+      return time;
+    }
+
+    public void setTime(long time) {
+      this.time = time;
+    }
+
+    public long getMaxCertId() {
+      return maxCertId;
+    }
+
+    public void setMaxCertId(long maxCertId) {
+      this.maxCertId = maxCertId;
+    }
+
+    public long getMaxCrlId() {
+      return maxCrlId;
+    }
+
+    public void setMaxCrlId(long maxCrlId) {
+      this.maxCrlId = maxCrlId;
+    }
+
+    public long getMaxRequestId() {
+      return maxRequestId;
+    }
+
+    public void setMaxRequestId(long maxRequestId) {
+      this.maxRequestId = maxRequestId;
+    }
+
+    public long getMaxReqCertId() {
+      return maxReqCertId;
+    }
+
+    public void setMaxReqCertId(long maxReqCertId) {
+      this.maxReqCertId = maxReqCertId;
+    }
+
+    public List<IdBlock> getCertIdBlocks() {
+      if (certIdBlocks == null) {
+        certIdBlocks = new LinkedList<>();
+      }
+      return certIdBlocks;
+    }
+
+    public void setCertIdBlocks(List<IdBlock> certIdBlocks) {
+      this.certIdBlocks = certIdBlocks;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      validate(certIdBlocks);
+    }
+
+  }
+
   public static class Crl extends IdentifidDbObject {
 
     private Integer caId;
@@ -1342,6 +1511,10 @@ public class CaCertstore extends ValidatableConf {
 
   private List<DeltaCrlCacheEntry> deltaCrlCache;
 
+  private boolean incremental;
+
+  private List<CertIdBlock> certIdBlocks;
+
   public int getVersion() {
     return version;
   }
@@ -1404,10 +1577,30 @@ public class CaCertstore extends ValidatableConf {
     this.deltaCrlCache = deltaCrlCache;
   }
 
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  public List<CertIdBlock> getCertIdBlocks() {
+    if (certIdBlocks == null) {
+      certIdBlocks = new LinkedList<>();
+    }
+    return certIdBlocks;
+  }
+
+  public void setCertIdBlocks(List<CertIdBlock> certIdBlocks) {
+    this.certIdBlocks = certIdBlocks;
+  }
+
   @Override
   public void validate() throws InvalidConfException {
     validate(publishQueue);
     validate(deltaCrlCache);
+    validate(certIdBlocks);
   }
 
 }
@@ -31,8 +31,14 @@ import java.security.cert.X509CRL;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -66,20 +72,46 @@ class CaCertstoreDbExporter extends DbPorter {
 
   private static final Logger LOG = LoggerFactory.getLogger(CaCertstoreDbExporter.class);
 
+  private static final String SQL_CORE_CERT = "ID,SN,CA_ID,PID,RID,RTYPE,TID,UID,EE,LUPDATE,REV,"
+      + "RR,RT,RIT,FP_RS,REQ_SUBJECT,CERT FROM CERT";
+
+  private static final String SUFFIX_SHARDS = ".shards";
+
+  private static final String SQL_CHANGED_CERT = " AND (ID>? OR LUPDATE>=?)";
+
+  private static final int CERT_ID_BLOCK_SIZE = 10000;
+
+  // the changes committed shortly after the export start may have an earlier LUPDATE
+  private static final long CHECKPOINT_TIME_MARGIN = 300;
+
+  // modulus of the IDs summed in the checksum of an ID block, small enough to avoid overflows
+  private static final long ID_CHECKSUM_MODULUS = 1000003;
+
   private final int numCertsInBundle;
 
   private final int numCertsPerSelect;
 
   private final boolean resume;
 
+  private final int numThreads;
+
+  private final String checkpointFile;
+
+  /**
+   * Checkpoint of the previous export, {@code null} for the full export.
+   */
+  private CaCertstore.Checkpoint lastCheckpoint;
+
   CaCertstoreDbExporter(DataSourceWrapper datasource, String baseDir, int numCertsInBundle,
-      int numCertsPerSelect, boolean resume, AtomicBoolean stopMe)
-          throws DataAccessException {
+      int numCertsPerSelect, boolean resume, AtomicBoolean stopMe, int numThreads,
+      String checkpointFile) throws DataAccessException {
     super(datasource, baseDir, stopMe);
 
     this.numCertsInBundle = Args.positive(numCertsInBundle, "numCertsInBundle");
     this.numCertsPerSelect = Args.positive(numCertsPerSelect, "numCertsPerSelect");
     this.resume = resume;
+    this.numThreads = Args.positive(numThreads, "numThreads");
+    this.checkpointFile = checkpointFile;
   }
 
   public void export() throws Exception {
@@ -99,9 +131,20 @@ class CaCertstoreDbExporter extends DbPorter {
       certstore.setVersion(VERSION);
     }
 
+    if (checkpointFile != null) {
+      String cpFile = IoUtil.expandFilepath(checkpointFile);
+      try (InputStream is = Files.newInputStream(Paths.get(cpFile))) {
+        lastCheckpoint = JSON.parseObject(is, CaCertstore.Checkpoint.class);
+      }
+      lastCheckpoint.validate();
+      certstore.setIncremental(true);
+    }
+
     Exception exception = null;
-    System.out.println("exporting CA certstore from database");
+    System.out.println(lastCheckpoint == null ? "exporting CA certstore from database"
+        : "exporting changes of CA certstore since " + new Date(lastCheckpoint.getTime() * 1000));
     try {
+      CaCertstore.Checkpoint checkpoint = startCheckpoint();
       if (!resume) {
         exportPublishQueue(certstore);
         exportDeltaCrlCache(certstore);
@@ -124,7 +167,7 @@ class CaCertstoreDbExporter extends DbPorter {
 
       if (CaDbEntryType.CRL == typeProcessedInLastProcess || typeProcessedInLastProcess == null) {
         exception = exportEntries(CaDbEntryType.CRL, certstore, processLogFile,
-            idProcessedInLastProcess);
+            startId(CaDbEntryType.CRL, idProcessedInLastProcess));
         typeProcessedInLastProcess = null;
         idProcessedInLastProcess = null;
       }
@@ -134,12 +177,21 @@ class CaCertstoreDbExporter extends DbPorter {
       for (CaDbEntryType type : types) {
         if (exception == null
             && (type == typeProcessedInLastProcess || typeProcessedInLastProcess == null)) {
-          exception = exportEntries(type, certstore, processLogFile, idProcessedInLastProcess);
+          Long startId = startId(type, idProcessedInLastProcess);
+          if (type == CaDbEntryType.CERT && numThreads > 1) {
+            exception = exportCertsInParallel(certstore, processLogFile, startId);
+          } else {
+            exception = exportEntries(type, certstore, processLogFile, startId);
+          }
           typeProcessedInLastProcess = null;
           idProcessedInLastProcess = null;
         }
       }
 
+      if (exception == null) {
+        finishCheckpoint(certstore, checkpoint);
+      }
+
       certstore.validate();
       try (OutputStream os = Files.newOutputStream(Paths.get(baseDir, FILENAME_CA_CERTSTORE))) {
         JSON.writeJSONString(os, Charset.forName("UTF-8"), certstore);
@@ -156,6 +208,153 @@ class CaCertstoreDbExporter extends DbPorter {
     }
   } // method export
 
+  /**
+   * Returns the ID after which the entries will be exported, {@code null} to export from the
+   * smallest ID. In the incremental export, the changed certificates with lower ID are
+   * selected via the condition {@link #SQL_CHANGED_CERT}.
+   */
+  private Long startId(CaDbEntryType type, Long idProcessedInLastProcess) {
+    if (idProcessedInLastProcess != null || lastCheckpoint == null) {
+      return idProcessedInLastProcess;
+    }
+
+    switch (type) {
+      case CRL:
+        return lastCheckpoint.getMaxCrlId();
+      case REQUEST:
+        return lastCheckpoint.getMaxRequestId();
+      case REQCERT:
+        return lastCheckpoint.getMaxReqCertId();
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Records the high-water mark at the beginning of the export. An interrupted export
+   * continues with the same high-water mark.
+   */
+  private CaCertstore.Checkpoint startCheckpoint() throws Exception {
+    File pendingFile = new File(baseDir, FILENAME_CHECKPOINT + ".pending");
+    if (resume && pendingFile.exists()) {
+      try (InputStream is = Files.newInputStream(pendingFile.toPath())) {
+        return JSON.parseObject(is, CaCertstore.Checkpoint.class);
+      }
+    }
+
+    CaCertstore.Checkpoint checkpoint = new CaCertstore.Checkpoint();
+    // LUPDATE is set by the CA, use its time instead of the local one.
+    checkpoint.setTime(Math.max(0, max("CERT", "LUPDATE") - CHECKPOINT_TIME_MARGIN));
+    checkpoint.setMaxCertId(max("CERT", "ID"));
+    checkpoint.setMaxCrlId(max("CRL", "ID"));
+    checkpoint.setMaxRequestId(max("REQUEST", "ID"));
+    checkpoint.setMaxReqCertId(max("REQCERT", "ID"));
+    try (OutputStream os = Files.newOutputStream(pendingFile.toPath())) {
+      JSON.writeJSONString(os, Charset.forName("UTF-8"), checkpoint);
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Counts the certificates per ID block and computes the checksum of their IDs. In the
+   * incremental export, the IDs of the blocks whose count or checksum has changed are exported,
+   * so that the importer can delete the removed certificates, even if other certificates have
+   * been added to the same block.
+   */
+  private void finishCheckpoint(CaCertstore certstore, CaCertstore.Checkpoint checkpoint)
+      throws Exception {
+    List<CaCertstore.Checkpoint.IdBlock> blocks = new LinkedList<>();
+    long lastToId = 0;
+
+    if (lastCheckpoint != null) {
+      certstore.getCertIdBlocks().clear();
+      System.out.println("detecting removed certificates");
+      final String sql = "SELECT COUNT(*),SUM(MOD(ID," + ID_CHECKSUM_MODULUS
+          + ")) FROM CERT WHERE ID>? AND ID<=?";
+      PreparedStatement ps = prepareStatement(sql);
+      ResultSet rs = null;
+      try {
+        for (CaCertstore.Checkpoint.IdBlock block : lastCheckpoint.getCertIdBlocks()) {
+          ps.setLong(1, lastToId);
+          ps.setLong(2, block.getToId());
+          rs = ps.executeQuery();
+          rs.next();
+          int count = rs.getInt(1);
+          long checksum = rs.getLong(2);
+          rs.close();
+          rs = null;
+
+          if (count != block.getCount() || checksum != block.getChecksum()) {
+            CaCertstore.CertIdBlock idBlock = new CaCertstore.CertIdBlock();
+            idBlock.setFromId(lastToId);
+            idBlock.setToId(block.getToId());
+            idBlock.setIds(new ArrayList<>(getIdsInRange("CERT", lastToId + 1, block.getToId())));
+            certstore.getCertIdBlocks().add(idBlock);
+          }
+
+          if (count > 0) {
+            CaCertstore.Checkpoint.IdBlock newBlock = new CaCertstore.Checkpoint.IdBlock();
+            newBlock.setToId(block.getToId());
+            newBlock.setCount(count);
+            newBlock.setChecksum(checksum);
+            blocks.add(newBlock);
+          }
+          lastToId = block.getToId();
+        }
+      } catch (SQLException ex) {
+        throw translate(sql, ex);
+      } finally {
+        releaseResources(ps, rs);
+      }
+      System.out.println(" detected " + certstore.getCertIdBlocks().size()
+          + " blocks with removed certificates");
+    }
+
+    // new blocks up to the maximal ID at the beginning of the export
+    final String sql = datasource.buildSelectFirstSql(CERT_ID_BLOCK_SIZE, "ID ASC",
+        "ID FROM CERT WHERE ID>? AND ID<=?");
+    PreparedStatement ps = prepareStatement(sql);
+    ResultSet rs = null;
+    try {
+      while (lastToId < checkpoint.getMaxCertId()) {
+        ps.setLong(1, lastToId);
+        ps.setLong(2, checkpoint.getMaxCertId());
+        rs = ps.executeQuery();
+        int count = 0;
+        long checksum = 0;
+        long toId = lastToId;
+        while (rs.next()) {
+          toId = rs.getLong(1);
+          checksum += toId % ID_CHECKSUM_MODULUS;
+          count++;
+        }
+        rs.close();
+        rs = null;
+
+        if (count == 0) {
+          break;
+        }
+
+        CaCertstore.Checkpoint.IdBlock block = new CaCertstore.Checkpoint.IdBlock();
+        block.setToId(toId);
+        block.setCount(count);
+        block.setChecksum(checksum);
+        blocks.add(block);
+        lastToId = toId;
+      }
+    } catch (SQLException ex) {
+      throw translate(sql, ex);
+    } finally {
+      releaseResources(ps, rs);
+    }
+
+    checkpoint.setCertIdBlocks(blocks);
+    try (OutputStream os = Files.newOutputStream(Paths.get(baseDir, FILENAME_CHECKPOINT))) {
+      JSON.writeJSONString(os, Charset.forName("UTF-8"), checkpoint);
+    }
+    new File(baseDir, FILENAME_CHECKPOINT + ".pending").delete();
+  } // method finishCheckpoint
+
   private Exception exportEntries(CaDbEntryType type, CaCertstore certstore,
       File processLogFile, Long idProcessedInLastProcess) {
     String tablesText = "table " + type.getTableName();
@@ -196,8 +395,10 @@ class CaCertstoreDbExporter extends DbPorter {
     switch (type) {
       case CERT:
         numProcessedBefore = certstore.getCountCerts();
-        coreSql = "ID,SN,CA_ID,PID,RID,RTYPE,TID,UID,EE,LUPDATE,REV,RR,RT,RIT,FP_RS,"
-            + "REQ_SUBJECT,CERT FROM CERT WHERE ID>=?";
+        coreSql = SQL_CORE_CERT + " WHERE ID>=?";
+        if (lastCheckpoint != null) {
+          coreSql += SQL_CHANGED_CERT;
+        }
         break;
       case CRL:
         numProcessedBefore = certstore.getCountCrls();
@@ -257,6 +458,10 @@ class CaCertstoreDbExporter extends DbPorter {
         }
 
         ps.setLong(1, lastMaxId + 1);
+        if (CaDbEntryType.CERT == type && lastCheckpoint != null) {
+          ps.setLong(2, lastCheckpoint.getMaxCertId());
+          ps.setLong(3, lastCheckpoint.getTime());
+        }
 
         ResultSet rs = ps.executeQuery();
 
@@ -283,132 +488,8 @@ class CaCertstoreDbExporter extends DbPorter {
             maxIdOfCurrentFile = id;
           }
 
-          if (CaDbEntryType.CERT == type) {
-            byte[] certBytes = Base64.decodeFast(rs.getString("CERT"));
-
-            String sha1 = HashAlgo.SHA1.hexHash(certBytes);
-            String certFileName = sha1 + ".der";
-            ZipEntry certZipEntry = new ZipEntry(certFileName);
-            currentEntriesZip.putNextEntry(certZipEntry);
-            try {
-              currentEntriesZip.write(certBytes);
-            } finally {
-              currentEntriesZip.closeEntry();
-            }
-
-            CaCertstore.Cert cert = new CaCertstore.Cert();
-            cert.setId(id);
-            cert.setCaId(rs.getInt("CA_ID"));
-            cert.setEe(rs.getBoolean("EE"));
-            cert.setFile(certFileName);
-
-            long fpReqSubject = rs.getLong("FP_RS");
-            if (fpReqSubject != 0) {
-              cert.setFpRs(fpReqSubject);
-              cert.setRs(rs.getString("REQ_SUBJECT"));
-            }
-
-            cert.setPid(rs.getInt("PID"));
-            cert.setReqType(rs.getInt("RTYPE"));
-            cert.setRid(rs.getInt("RID"));
-            cert.setSn(rs.getString("SN"));
-
-            String str = rs.getString("TID");
-            if (StringUtil.isNotBlank(str)) {
-              cert.setTid(str);
-            }
-
-            int userId = rs.getInt("UID");
-            if (userId != 0) {
-              cert.setUid(userId);
-            }
-            cert.setUpdate(rs.getLong("LUPDATE"));
-
-            int revoked = rs.getInt("REV");
-            cert.setRev(revoked);
-
-            if (revoked == 1) {
-              cert.setRr(rs.getInt("RR"));
-              cert.setRt(rs.getLong("RT"));
-              long revInvTime = rs.getLong("RIT");
-              if (revInvTime != 0) {
-                cert.setRit(revInvTime);
-              }
-            }
-
-            cert.validate();
-            ((CaCertstore.Certs) entriesInCurrentFile).add(cert);
-          } else if (CaDbEntryType.CRL == type) {
-            byte[] crlBytes = Base64.decodeFast(rs.getString("CRL"));
-
-            X509CRL x509Crl = null;
-            try {
-              x509Crl = X509Util.parseCrl(crlBytes);
-            } catch (CRLException ex) {
-              LogUtil.error(LOG, ex, "could not parse CRL with id " + id);
-              throw ex;
-            } catch (Exception ex) {
-              LogUtil.error(LOG, ex, "could not parse CRL with id " + id);
-              throw new CRLException(ex.getMessage(), ex);
-            }
-
-            byte[] octetString = x509Crl.getExtensionValue(Extension.cRLNumber.getId());
-            if (octetString == null) {
-              LOG.warn("CRL without CRL number, ignore it");
-              continue;
-            }
-            String sha1 = HashAlgo.SHA1.hexHash(crlBytes);
-
-            final String crlFilename = sha1 + ".crl";
-            ZipEntry certZipEntry = new ZipEntry(crlFilename);
-            currentEntriesZip.putNextEntry(certZipEntry);
-            try {
-              currentEntriesZip.write(crlBytes);
-            } finally {
-              currentEntriesZip.closeEntry();
-            }
-
-            CaCertstore.Crl crl = new CaCertstore.Crl();
-            crl.setId(id);
-
-            crl.setCaId(rs.getInt("CA_ID"));
-
-            byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
-            BigInteger crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
-            crl.setCrlNo(crlNumber.toString());
-            crl.setFile(crlFilename);
-
-            crl.validate();
-            ((CaCertstore.Crls) entriesInCurrentFile).add(crl);
-          } else if (CaDbEntryType.REQUEST == type) {
-            byte[] dataBytes = Base64.decodeFast(rs.getString("DATA"));
-            String sha1 = HashAlgo.SHA1.hexHash(dataBytes);
-            final String dataFilename = sha1 + ".req";
-            ZipEntry certZipEntry = new ZipEntry(dataFilename);
-            currentEntriesZip.putNextEntry(certZipEntry);
-            try {
-              currentEntriesZip.write(dataBytes);
-            } finally {
-              currentEntriesZip.closeEntry();
-            }
-
-            CaCertstore.Request entry = new CaCertstore.Request();
-            entry.setId(id);
-            entry.setUpdate(rs.getLong("LUPDATE"));
-            entry.setFile(dataFilename);
-
-            entry.validate();
-            ((CaCertstore.Requests) entriesInCurrentFile).add(entry);
-          } else if (CaDbEntryType.REQCERT == type) {
-            CaCertstore.ReqCert entry = new CaCertstore.ReqCert();
-            entry.setId(id);
-            entry.setCid(rs.getLong("CID"));
-            entry.setRid(rs.getLong("RID"));
-
-            entry.validate();
-            ((CaCertstore.ReqCerts) entriesInCurrentFile).add(entry);
-          } else {
-            throw new IllegalStateException("unknown CaDbEntryType " + type);
+          if (!exportEntry(type, rs, id, currentEntriesZip, entriesInCurrentFile)) {
+            continue;
           }
 
           numEntriesInCurrentFile++;
@@ -477,6 +558,377 @@ class CaCertstoreDbExporter extends DbPorter {
     System.out.println(" exported " + sum + " entries from " + tablesText);
   } // method exportEntries
 
+  /**
+   * Exports the table CERT with {@link #numThreads} threads. The ID range is partitioned into
+   * shards, each is exported via its own connection to its own ZIP files, manifest and
+   * process log. After all shards are finished, the manifests are merged in the order of ID,
+   * so that the result has the same format as the single-threaded export.
+   */
+  private Exception exportCertsInParallel(CaCertstore certstore, File processLogFile,
+      Long idProcessedInLastProcess) {
+    final CaDbEntryType type = CaDbEntryType.CERT;
+    final String tableName = type.getTableName();
+    File shardsFile = new File(baseDir, type.getDirName() + SUFFIX_SHARDS);
+
+    try {
+      new File(baseDir, type.getDirName()).mkdirs();
+
+      final long maxId = max(tableName, "ID");
+      List<long[]> shards = new ArrayList<>(numThreads);
+      if (shardsFile.exists()) {
+        // resume with the same partition
+        for (String line : Files.readAllLines(shardsFile.toPath())) {
+          if (StringUtil.isNotBlank(line)) {
+            int idx = line.indexOf(':');
+            shards.add(new long[]{Long.parseLong(line.substring(0, idx).trim()),
+                Long.parseLong(line.substring(idx + 1).trim())});
+          }
+        }
+      } else {
+        long minId = (idProcessedInLastProcess != null) ? idProcessedInLastProcess + 1
+            : min(tableName, "ID");
+        long shardSize = Math.max(1, (maxId - minId + numThreads) / numThreads);
+        StringBuilder sb = new StringBuilder();
+        for (long from = minId; from <= maxId; from += shardSize) {
+          long to = Math.min(maxId, from + shardSize - 1);
+          shards.add(new long[]{from, to});
+          sb.append(from).append(':').append(to).append('\n');
+        }
+        echoToFile(sb.toString(), shardsFile);
+        echoToFile(tableName + ":" + (minId - 1), processLogFile);
+      }
+
+      long total = count(tableName) - certstore.getCountCerts();
+      System.out.println("exporting table " + tableName + " with " + shards.size() + " threads");
+      final ProcessLog processLog = new ProcessLog(Math.max(1, total));
+      processLog.printHeader();
+
+      int sum = 0;
+      Exception exception = null;
+      if (!shards.isEmpty()) {
+        ExecutorService executor = Executors.newFixedThreadPool(shards.size());
+        List<Future<Integer>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+          final int shardIndex = i;
+          final long[] range = shards.get(i);
+          futures.add(executor.submit(() -> {
+            CaCertstoreDbExporter shardExporter = new CaCertstoreDbExporter(datasource, baseDir,
+                numCertsInBundle, numCertsPerSelect, true, stopMe, 1, null);
+            shardExporter.lastCheckpoint = lastCheckpoint;
+            try {
+              return shardExporter.exportCertShard(shardIndex, range[0], range[1], maxId,
+                  processLog);
+            } finally {
+              shardExporter.close();
+            }
+          }));
+        }
+        executor.shutdown();
+
+        for (Future<Integer> future : futures) {
+          try {
+            sum += future.get();
+          } catch (ExecutionException ex) {
+            if (exception == null) {
+              Throwable cause = ex.getCause();
+              exception = (cause instanceof Exception) ? (Exception) cause : ex;
+            }
+          }
+        }
+      }
+
+      processLog.printTrailer();
+      if (exception != null) {
+        throw exception;
+      }
+
+      // merge the manifests of the shards in the order of ID
+      try (OutputStream os = Files.newOutputStream(Paths.get(baseDir, type.getDirName() + ".mf"),
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+        for (int i = 0; i < shards.size(); i++) {
+          File shardManifest = new File(baseDir, type.getDirName() + ".mf." + i);
+          if (shardManifest.exists()) {
+            os.write(IoUtil.read(shardManifest));
+          }
+        }
+      }
+
+      for (int i = 0; i < shards.size(); i++) {
+        new File(baseDir, type.getDirName() + ".mf." + i).delete();
+        new File(baseDir, EXPORT_PROCESS_LOG_FILENAME + "." + i).delete();
+      }
+      shardsFile.delete();
+      processLogFile.delete();
+
+      certstore.setCountCerts(certstore.getCountCerts() + sum);
+      System.out.println(" exported " + sum + " entries from table " + tableName);
+      return null;
+    } catch (Exception ex) {
+      // delete the temporary files
+      deleteTmpFiles(baseDir, "tmp-");
+
+      System.err.println("\nexporting table " + tableName + " has been cancelled due to error,\n"
+          + "please continue with the option '--resume'");
+      LOG.error("Exception", ex);
+      return ex;
+    }
+  } // method exportCertsInParallel
+
+  private int exportCertShard(int shard, long fromId, long toId, long maxId,
+      ProcessLog processLog) throws Exception {
+    final CaDbEntryType type = CaDbEntryType.CERT;
+    final int numEntriesPerSelect =
+        Math.max(1, Math.round(type.getSqlBatchFactor() * numCertsPerSelect));
+    final int numEntriesPerZip =
+        Math.max(1, Math.round(type.getSqlBatchFactor() * numCertsInBundle));
+    final File entriesDir = new File(baseDir, type.getDirName());
+
+    // content of the process log: <number of exported entries>:<last exported ID>
+    File shardLogFile = new File(baseDir, EXPORT_PROCESS_LOG_FILENAME + "." + shard);
+    int sum = 0;
+    long lastMaxId = fromId - 1;
+    if (shardLogFile.exists()) {
+      String str = new String(IoUtil.read(shardLogFile)).trim();
+      int idx = str.indexOf(':');
+      sum = Integer.parseInt(str.substring(0, idx));
+      lastMaxId = Long.parseLong(str.substring(idx + 1));
+    }
+
+    String sql = datasource.buildSelectFirstSql(numEntriesPerSelect, "ID ASC",
+        SQL_CORE_CERT + " WHERE ID>=? AND ID<=?"
+        + (lastCheckpoint == null ? "" : SQL_CHANGED_CERT));
+    PreparedStatement ps = prepareStatement(sql);
+
+    OutputStream filenameListOs = null;
+    Object container = createContainer(type);
+    int numEntriesInCurrentFile = 0;
+    long minIdOfCurrentFile = -1;
+    long maxIdOfCurrentFile = -1;
+    File zipFile = null;
+    ZipOutputStream zip = null;
+
+    try {
+      filenameListOs = Files.newOutputStream(
+          Paths.get(baseDir, type.getDirName() + ".mf." + shard),
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+      while (true) {
+        if (stopMe.get()) {
+          throw new InterruptedException("interrupted by the user");
+        }
+
+        ps.setLong(1, lastMaxId + 1);
+        ps.setLong(2, toId);
+        if (lastCheckpoint != null) {
+          ps.setLong(3, lastCheckpoint.getMaxCertId());
+          ps.setLong(4, lastCheckpoint.getTime());
+        }
+        ResultSet rs = ps.executeQuery();
+        try {
+          // no entries anymore
+          if (!rs.next()) {
+            break;
+          }
+
+          do {
+            long id = rs.getLong("ID");
+            lastMaxId = Math.max(lastMaxId, id);
+
+            if (zip == null) {
+              zipFile = new File(baseDir, "tmp-" + type.getDirName() + "-" + shard + "-"
+                  + System.currentTimeMillis() + ".zip");
+              zip = getZipOutputStream(zipFile);
+              minIdOfCurrentFile = id;
+            }
+            maxIdOfCurrentFile = id;
+
+            if (!exportEntry(type, rs, id, zip, container)) {
+              continue;
+            }
+
+            numEntriesInCurrentFile++;
+
+            if (numEntriesInCurrentFile == numEntriesPerZip) {
+              sum += numEntriesInCurrentFile;
+              String filename = buildFilename(type.getDirName() + "_", ".zip",
+                  minIdOfCurrentFile, maxIdOfCurrentFile, maxId);
+              finalizeZip(zip, "overview.json", container);
+              zipFile.renameTo(new File(entriesDir, filename));
+              writeLine(filenameListOs, filename);
+              echoToFile(sum + ":" + maxIdOfCurrentFile, shardLogFile);
+
+              processLog.addNumProcessed(numEntriesInCurrentFile);
+              processLog.printStatus();
+
+              // reset
+              container = createContainer(type);
+              numEntriesInCurrentFile = 0;
+              zip = null;
+            }
+          } while (rs.next());
+        } finally {
+          rs.close();
+        }
+      }
+
+      if (numEntriesInCurrentFile > 0) {
+        sum += numEntriesInCurrentFile;
+        String filename = buildFilename(type.getDirName() + "_", ".zip",
+            minIdOfCurrentFile, maxIdOfCurrentFile, maxId);
+        finalizeZip(zip, "overview.json", container);
+        zipFile.renameTo(new File(entriesDir, filename));
+        writeLine(filenameListOs, filename);
+        echoToFile(sum + ":" + maxIdOfCurrentFile, shardLogFile);
+        processLog.addNumProcessed(numEntriesInCurrentFile);
+        zip = null;
+      }
+
+      return sum;
+    } catch (SQLException ex) {
+      throw translate(sql, ex);
+    } finally {
+      releaseResources(ps, null);
+      IoUtil.closeQuietly(filenameListOs);
+      if (zip != null) {
+        IoUtil.closeQuietly(zip);
+        zipFile.delete();
+      }
+    }
+  } // method exportCertShard
+
+  private boolean exportEntry(CaDbEntryType type, ResultSet rs, long id, ZipOutputStream zip,
+      Object container) throws Exception {
+    if (CaDbEntryType.CERT == type) {
+      byte[] certBytes = Base64.decodeFast(rs.getString("CERT"));
+
+      String sha1 = HashAlgo.SHA1.hexHash(certBytes);
+      String certFileName = sha1 + ".der";
+      ZipEntry certZipEntry = new ZipEntry(certFileName);
+      zip.putNextEntry(certZipEntry);
+      try {
+        zip.write(certBytes);
+      } finally {
+        zip.closeEntry();
+      }
+
+      CaCertstore.Cert cert = new CaCertstore.Cert();
+      cert.setId(id);
+      cert.setCaId(rs.getInt("CA_ID"));
+      cert.setEe(rs.getBoolean("EE"));
+      cert.setFile(certFileName);
+
+      long fpReqSubject = rs.getLong("FP_RS");
+      if (fpReqSubject != 0) {
+        cert.setFpRs(fpReqSubject);
+        cert.setRs(rs.getString("REQ_SUBJECT"));
+      }
+
+      cert.setPid(rs.getInt("PID"));
+      cert.setReqType(rs.getInt("RTYPE"));
+      cert.setRid(rs.getInt("RID"));
+      cert.setSn(rs.getString("SN"));
+
+      String str = rs.getString("TID");
+      if (StringUtil.isNotBlank(str)) {
+        cert.setTid(str);
+      }
+
+      int userId = rs.getInt("UID");
+      if (userId != 0) {
+        cert.setUid(userId);
+      }
+      cert.setUpdate(rs.getLong("LUPDATE"));
+
+      int revoked = rs.getInt("REV");
+      cert.setRev(revoked);
+
+      if (revoked == 1) {
+        cert.setRr(rs.getInt("RR"));
+        cert.setRt(rs.getLong("RT"));
+        long revInvTime = rs.getLong("RIT");
+        if (revInvTime != 0) {
+          cert.setRit(revInvTime);
+        }
+      }
+
+      cert.validate();
+      ((CaCertstore.Certs) container).add(cert);
+    } else if (CaDbEntryType.CRL == type) {
+      byte[] crlBytes = Base64.decodeFast(rs.getString("CRL"));
+
+      X509CRL x509Crl = null;
+      try {
+        x509Crl = X509Util.parseCrl(crlBytes);
+      } catch (CRLException ex) {
+        LogUtil.error(LOG, ex, "could not parse CRL with id " + id);
+        throw ex;
+      } catch (Exception ex) {
+        LogUtil.error(LOG, ex, "could not parse CRL with id " + id);
+        throw new CRLException(ex.getMessage(), ex);
+      }
+
+      byte[] octetString = x509Crl.getExtensionValue(Extension.cRLNumber.getId());
+      if (octetString == null) {
+        LOG.warn("CRL without CRL number, ignore it");
+        return false;
+      }
+      String sha1 = HashAlgo.SHA1.hexHash(crlBytes);
+
+      final String crlFilename = sha1 + ".crl";
+      ZipEntry certZipEntry = new ZipEntry(crlFilename);
+      zip.putNextEntry(certZipEntry);
+      try {
+        zip.write(crlBytes);
+      } finally {
+        zip.closeEntry();
+      }
+
+      CaCertstore.Crl crl = new CaCertstore.Crl();
+      crl.setId(id);
+
+      crl.setCaId(rs.getInt("CA_ID"));
+
+      byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
+      BigInteger crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
+      crl.setCrlNo(crlNumber.toString());
+      crl.setFile(crlFilename);
+
+      crl.validate();
+      ((CaCertstore.Crls) container).add(crl);
+    } else if (CaDbEntryType.REQUEST == type) {
+      byte[] dataBytes = Base64.decodeFast(rs.getString("DATA"));
+      String sha1 = HashAlgo.SHA1.hexHash(dataBytes);
+      final String dataFilename = sha1 + ".req";
+      ZipEntry certZipEntry = new ZipEntry(dataFilename);
+      zip.putNextEntry(certZipEntry);
+      try {
+        zip.write(dataBytes);
+      } finally {
+        zip.closeEntry();
+      }
+
+      CaCertstore.Request entry = new CaCertstore.Request();
+      entry.setId(id);
+      entry.setUpdate(rs.getLong("LUPDATE"));
+      entry.setFile(dataFilename);
+
+      entry.validate();
+      ((CaCertstore.Requests) container).add(entry);
+    } else if (CaDbEntryType.REQCERT == type) {
+      CaCertstore.ReqCert entry = new CaCertstore.ReqCert();
+      entry.setId(id);
+      entry.setCid(rs.getLong("CID"));
+      entry.setRid(rs.getLong("RID"));
+
+      entry.validate();
+      ((CaCertstore.ReqCerts) container).add(entry);
+    } else {
+      throw new IllegalStateException("unknown CaDbEntryType " + type);
+    }
+
+    return true;
+  } // method exportEntry
+
   private void exportPublishQueue(CaCertstore certstore)
       throws DataAccessException, InvalidConfException {
     System.out.println("exporting table PUBLISHQUEUE");
@@ -28,8 +28,14 @@ import java.security.cert.X509CRL;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -84,12 +90,28 @@ class CaCertstoreDbImporter extends DbPorter {
 
   private final int numCertsPerCommit;
 
+  private final int numThreads;
+
+  /**
+   * Maximal ID of the shard processed by this importer, {@code null} if the whole table is
+   * processed.
+   */
+  private final Long maxIdOfShard;
+
+  /**
+   * Whether the source is an incremental export. The entries are then merged into the
+   * existing database.
+   */
+  private boolean incremental;
+
   CaCertstoreDbImporter(DataSourceWrapper datasource, String srcDir, int numCertsPerCommit,
-      boolean resume, AtomicBoolean stopMe) throws Exception {
+      boolean resume, AtomicBoolean stopMe, int numThreads) throws Exception {
     super(datasource, srcDir, stopMe);
 
     this.numCertsPerCommit = Args.positive(numCertsPerCommit, "numCertsPerCommit");
     this.resume = resume;
+    this.numThreads = Args.positive(numThreads, "numThreads");
+    this.maxIdOfShard = null;
 
     File processLogFile = new File(baseDir, DbPorter.IMPORT_PROCESS_LOG_FILENAME);
     if (resume) {
@@ -104,6 +126,16 @@ class CaCertstoreDbImporter extends DbPorter {
     }
   }
 
+  private CaCertstoreDbImporter(DataSourceWrapper datasource, String srcDir,
+      int numCertsPerCommit, AtomicBoolean stopMe, long maxIdOfShard) throws Exception {
+    super(datasource, srcDir, stopMe);
+
+    this.numCertsPerCommit = numCertsPerCommit;
+    this.resume = true;
+    this.numThreads = 1;
+    this.maxIdOfShard = maxIdOfShard;
+  }
+
   public void importToDb() throws Exception {
     CaCertstore certstore;
     try (InputStream is = Files.newInputStream(Paths.get(baseDir, FILENAME_CA_CERTSTORE))) {
@@ -116,10 +148,13 @@ class CaCertstoreDbImporter extends DbPorter {
           + certstore.getVersion());
     }
 
+    incremental = certstore.isIncremental();
+
     File processLogFile = new File(baseDir, DbPorter.IMPORT_PROCESS_LOG_FILENAME);
-    System.out.println("importing CA certstore to database");
+    System.out.println(incremental ? "importing incremental CA certstore to database"
+        : "importing CA certstore to database");
     try {
-      if (!resume) {
+      if (!resume && !incremental) {
         dropIndexes();
       }
 
@@ -180,8 +215,13 @@ class CaCertstoreDbImporter extends DbPorter {
         for (CaDbEntryType type : types) {
           if (exception == null
               && (type == typeProcessedInLastProcess || typeProcessedInLastProcess == null)) {
-            exception = importEntries(type, certstore, processLogFile,
-                numProcessedInLastProcess, idProcessedInLastProcess);
+            if (type == CaDbEntryType.CERT && numThreads > 1) {
+              exception = importCertsInParallel(certstore, processLogFile,
+                  numProcessedInLastProcess, idProcessedInLastProcess);
+            } else {
+              exception = importEntries(type, certstore, processLogFile,
+                  numProcessedInLastProcess, idProcessedInLastProcess);
+            }
           }
         }
 
@@ -190,10 +230,19 @@ class CaCertstoreDbImporter extends DbPorter {
         }
       }
 
+      if (incremental) {
+        deleteRemovedCerts(certstore.getCertIdBlocks());
+        // both tables are exported completely
+        deleteFromTableWithLargerId("PUBLISHQUEUE", "CID", 0, LOG);
+        deleteFromTableWithLargerId("DELTACRL_CACHE", "ID", 0, LOG);
+      }
+
       importPublishQueue(certstore.getPublishQueue());
       importDeltaCrlCache(certstore.getDeltaCrlCache());
 
-      recoverIndexes();
+      if (!incremental) {
+        recoverIndexes();
+      }
       processLogFile.delete();
     } catch (Exception ex) {
       System.err.println("could not import CA certstore to database");
@@ -202,6 +251,14 @@ class CaCertstoreDbImporter extends DbPorter {
     System.out.println(" imported CA certstore to database");
   } // method importToDb
 
+  static boolean isIncremental(String srcDir) throws Exception {
+    try (InputStream is = Files.newInputStream(
+        Paths.get(IoUtil.expandFilepath(srcDir), FILENAME_CA_CERTSTORE))) {
+      CaCertstore certstore = JSON.parseObject(is, CaCertstore.class);
+      return certstore.isIncremental();
+    }
+  }
+
   private void importPublishQueue(List<CaCertstore.ToPublish> publishQueue)
       throws DataAccessException {
     final String sql = "INSERT INTO PUBLISHQUEUE (CID,PID,CA_ID) VALUES (?,?,?)";
@@ -267,7 +324,7 @@ class CaCertstoreDbImporter extends DbPorter {
         numProcessedBefore = numProcessedInLastProcess;
       }
 
-      deleteFromTableWithLargerId(type.getTableName(), "ID", minId - 1, LOG);
+      deleteEntriesWithLargerId(type.getTableName(), minId - 1);
 
       final long total;
       String sql;
@@ -381,6 +438,208 @@ class CaCertstoreDbImporter extends DbPorter {
     }
   }
 
+  /**
+   * Imports the table CERT with {@link #numThreads} threads. The ZIP files listed in the
+   * manifest are partitioned into shards of consecutive ID ranges, each is imported via its
+   * own connection and has its own process log, so that an interrupted import can be resumed
+   * per shard.
+   */
+  private Exception importCertsInParallel(CaCertstore certstore, File processLogFile,
+      Integer numProcessedInLastProcess, Long idProcessedInLastProcess) {
+    final CaDbEntryType type = CaDbEntryType.CERT;
+    final String tablesText = "table " + type.getTableName();
+
+    try {
+      List<String> files = new ArrayList<>();
+      DbPortFileNameIterator iterator = new DbPortFileNameIterator(
+          baseDir + File.separator + type.getDirName() + ".mf");
+      try {
+        while (iterator.hasNext()) {
+          files.add(iterator.next());
+        }
+      } finally {
+        iterator.close();
+      }
+
+      final int numFiles = files.size();
+      long[][] ranges = new long[numFiles][];
+      for (int i = 0; i < numFiles; i++) {
+        ranges[i] = parseIdRange(files.get(i));
+        if (ranges[i] == null) {
+          LOG.warn("invalid file name '{}', import {} single-threaded", files.get(i), tablesText);
+          return importEntries(type, certstore, processLogFile, numProcessedInLastProcess,
+              idProcessedInLastProcess);
+        }
+      }
+
+      // keep the partition of an interrupted import
+      File shardsFile = new File(baseDir, IMPORT_PROCESS_LOG_FILENAME + ".shards");
+      final int numShards;
+      if (shardsFile.exists()) {
+        numShards = Integer.parseInt(new String(IoUtil.read(shardsFile)).trim());
+      } else {
+        numShards = Math.max(1, Math.min(numThreads, numFiles));
+        echoToFile(Integer.toString(numShards), shardsFile);
+        echoToFile(type + ":0:0", processLogFile);
+      }
+
+      System.out.println("importing entries to " + tablesText + " with " + numShards
+          + " threads");
+      final ProcessLog processLog = new ProcessLog(certstore.getCountCerts());
+      processLog.printHeader();
+
+      ExecutorService executor = Executors.newFixedThreadPool(numShards);
+      List<Future<Long>> futures = new ArrayList<>(numShards);
+      final int filesPerShard = (numFiles + numShards - 1) / Math.max(1, numShards);
+      for (int i = 0; i < numShards; i++) {
+        final int shard = i;
+        final int fromIndex = Math.min(numFiles, i * filesPerShard);
+        final int toIndex = Math.min(numFiles, fromIndex + filesPerShard);
+        if (fromIndex == toIndex) {
+          continue;
+        }
+
+        final long fromId = ranges[fromIndex][0];
+        final long toId = ranges[toIndex - 1][1];
+        final List<String> shardFiles = files.subList(fromIndex, toIndex);
+        final long[][] shardRanges = Arrays.copyOfRange(ranges, fromIndex, toIndex);
+
+        futures.add(executor.submit(() -> {
+          CaCertstoreDbImporter shardImporter = new CaCertstoreDbImporter(datasource, baseDir,
+              numCertsPerCommit, stopMe, toId);
+          shardImporter.incremental = incremental;
+          try {
+            return shardImporter.importCertShard(shard, shardFiles, shardRanges, fromId,
+                processLog);
+          } finally {
+            shardImporter.close();
+          }
+        }));
+      }
+      executor.shutdown();
+
+      long sum = 0;
+      Exception exception = null;
+      for (Future<Long> future : futures) {
+        try {
+          sum += future.get();
+        } catch (ExecutionException ex) {
+          if (exception == null) {
+            Throwable cause = ex.getCause();
+            exception = (cause instanceof Exception) ? (Exception) cause : ex;
+          }
+        }
+      }
+
+      if (exception != null) {
+        throw exception;
+      }
+
+      processLog.printTrailer();
+      echoToFile(type + ":" + sum + ":-1", processLogFile);
+      for (int i = 0; i < numShards; i++) {
+        new File(baseDir, IMPORT_PROCESS_LOG_FILENAME + "." + i).delete();
+      }
+      shardsFile.delete();
+
+      System.out.println(" imported " + sum + " entries");
+      return null;
+    } catch (Exception ex) {
+      System.err.println("\nimporting " + tablesText + " has been cancelled due to error,\n"
+          + "please continue with the option '--resume'");
+      LOG.error("Exception", ex);
+      return ex;
+    }
+  } // method importCertsInParallel
+
+  private long importCertShard(int shard, List<String> files, long[][] ranges, long fromId,
+      final ProcessLog processLog) throws Exception {
+    final CaDbEntryType type = CaDbEntryType.CERT;
+
+    // content of the process log: CERT:<number of imported entries>:<last imported ID>
+    File shardLogFile = new File(baseDir, IMPORT_PROCESS_LOG_FILENAME + "." + shard);
+    int numProcessedBefore = 0;
+    long minId = fromId;
+    if (shardLogFile.exists()) {
+      StringTokenizer st = new StringTokenizer(new String(IoUtil.read(shardLogFile)), ":");
+      st.nextToken();
+      numProcessedBefore = Integer.parseInt(st.nextToken().trim());
+      minId = Long.parseLong(st.nextToken().trim()) + 1;
+    }
+
+    // remove the entries of this shard imported after the last commit
+    deleteEntriesWithLargerId(type.getTableName(), minId - 1);
+
+    ProcessLog shardProcessLog = new ProcessLog(0) {
+
+      @Override
+      public long addNumProcessed(long numProcessed) {
+        processLog.addNumProcessed(numProcessed);
+        return super.addNumProcessed(numProcessed);
+      }
+
+      @Override
+      public void printStatus() {
+        processLog.printStatus();
+      }
+
+    };
+
+    PreparedStatement stmt = prepareStatement(SQL_ADD_CERT);
+    try {
+      for (int i = 0; i < files.size(); i++) {
+        if (ranges[i][1] < minId) {
+          continue;
+        }
+
+        String entriesFile = baseDir + File.separator + type.getDirName()
+            + File.separator + files.get(i);
+        try {
+          long lastId = importCerts(entriesFile, minId, shardLogFile, shardProcessLog,
+              numProcessedBefore, stmt, SQL_ADD_CERT);
+          minId = Math.max(minId, lastId + 1);
+        } catch (Exception ex) {
+          System.err.println("\ncould not import entries from file " + entriesFile);
+          throw ex;
+        }
+      }
+    } finally {
+      releaseResources(stmt, null);
+    }
+
+    return numProcessedBefore + shardProcessLog.numProcessed();
+  } // method importCertShard
+
+  private void deleteEntriesWithLargerId(String table, long id) {
+    if (incremental) {
+      // entries must not be removed, the already imported ones will be skipped
+      return;
+    } else if (maxIdOfShard == null) {
+      deleteFromTableWithLargerId(table, "ID", id, LOG);
+    } else {
+      deleteFromTableWithIdInRange(table, "ID", id, maxIdOfShard, LOG);
+    }
+  }
+
+  /**
+   * Extracts the ID range from the file name certs_&lt;min-id&gt;-&lt;max-id&gt;.zip.
+   */
+  private static long[] parseIdRange(String filename) {
+    int fromIdx = filename.indexOf('_');
+    int sepIdx = filename.indexOf('-', fromIdx + 1);
+    int toIdx = filename.indexOf(".zip");
+    if (fromIdx == -1 || sepIdx == -1 || toIdx == -1) {
+      return null;
+    }
+
+    try {
+      return new long[]{Long.parseLong(filename.substring(fromIdx + 1, sepIdx)),
+          Long.parseLong(filename.substring(sepIdx + 1, toIdx))};
+    } catch (NumberFormatException ex) {
+      return null;
+    }
+  }
+
   private long importCerts(String entriesZipFile, long minId,
       File processLogFile, ProcessLog processLog, int numProcessedInLastProcess,
       PreparedStatement stmt, String sql) throws Exception {
@@ -412,6 +671,12 @@ class CaCertstoreDbImporter extends DbPorter {
       long lastSuccessfulEntryId = 0;
 
       List<CaCertstore.Cert> list = certs.getCerts();
+      if (incremental) {
+        List<CaCertstore.Cert> existingCerts = removeExistingEntries("CERT", list);
+        if (!existingCerts.isEmpty()) {
+          updateCertStatus(existingCerts);
+        }
+      }
       final int n = list.size();
 
       for (int i = 0; i < n; i++) {
@@ -510,7 +775,7 @@ class CaCertstoreDbImporter extends DbPorter {
             commit("(commit import to CA)");
           } catch (Throwable th) {
             rollback();
-            deleteFromTableWithLargerId(type.getTableName(), "ID", id, LOG);
+            deleteEntriesWithLargerId(type.getTableName(), id);
             if (th instanceof SQLException) {
               throw translate(sql, (SQLException) th);
             } else if (th instanceof Exception) {
@@ -568,6 +833,9 @@ class CaCertstoreDbImporter extends DbPorter {
       long lastSuccessfulEntryId = 0;
 
       List<CaCertstore.Crl> list = crls.getCrls();
+      if (incremental) {
+        removeExistingEntries("CRL", list);
+      }
       final int n = list.size();
 
       for (int i = 0; i < n; i++) {
@@ -655,7 +923,7 @@ class CaCertstoreDbImporter extends DbPorter {
             commit("(commit import to CA)");
           } catch (Throwable th) {
             rollback();
-            deleteFromTableWithLargerId(type.getTableName(), "ID", id, LOG);
+            deleteEntriesWithLargerId(type.getTableName(), id);
             if (th instanceof SQLException) {
               throw translate(sql, (SQLException) th);
             } else if (th instanceof Exception) {
@@ -713,6 +981,9 @@ class CaCertstoreDbImporter extends DbPorter {
       long lastSuccessfulEntryId = 0;
 
       List<CaCertstore.Request> list = requests.getRequests();
+      if (incremental) {
+        removeExistingEntries("REQUEST", list);
+      }
       final int n = list.size();
 
       for (int i = 0; i < n; i++) {
@@ -754,7 +1025,7 @@ class CaCertstoreDbImporter extends DbPorter {
             commit("(commit import to CA)");
           } catch (Throwable th) {
             rollback();
-            deleteFromTableWithLargerId(type.getTableName(), "ID", id, LOG);
+            deleteEntriesWithLargerId(type.getTableName(), id);
             if (th instanceof SQLException) {
               throw translate(sql, (SQLException) th);
             } else if (th instanceof Exception) {
@@ -812,6 +1083,9 @@ class CaCertstoreDbImporter extends DbPorter {
       long lastSuccessfulEntryId = 0;
 
       List<CaCertstore.ReqCert> list = reqCerts.getReqCerts();
+      if (incremental) {
+        removeExistingEntries("REQCERT", list);
+      }
       final int n = list.size();
 
       for (int i = 0; i < n; i++) {
@@ -847,7 +1121,7 @@ class CaCertstoreDbImporter extends DbPorter {
             commit("(commit import to CA)");
           } catch (Throwable th) {
             rollback();
-            deleteFromTableWithLargerId(type.getTableName(), "ID", id, LOG);
+            deleteEntriesWithLargerId(type.getTableName(), id);
             if (th instanceof SQLException) {
               throw translate(sql, (SQLException) th);
             } else if (th instanceof Exception) {
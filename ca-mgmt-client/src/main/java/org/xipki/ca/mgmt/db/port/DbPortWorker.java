@@ -86,13 +86,23 @@ public abstract class DbPortWorker implements Runnable {
 
     private final int batchEntriesPerCommit;
 
+    private final int numThreads;
+
     public ImportCaDb(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
         String dbConfFile, boolean resume, String srcFolder, int batchEntriesPerCommit)
         throws PasswordResolverException, IOException {
+      this(datasourceFactory, passwordResolver, dbConfFile, resume, srcFolder,
+          batchEntriesPerCommit, 1);
+    }
+
+    public ImportCaDb(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
+        String dbConfFile, boolean resume, String srcFolder, int batchEntriesPerCommit,
+        int numThreads) throws PasswordResolverException, IOException {
       super(datasourceFactory, passwordResolver, dbConfFile);
       this.resume = resume;
       this.srcFolder = IoUtil.expandFilepath(srcFolder);
       this.batchEntriesPerCommit = batchEntriesPerCommit;
+      this.numThreads = numThreads;
     }
 
     @Override
@@ -111,7 +121,8 @@ public abstract class DbPortWorker implements Runnable {
 
       long start = System.currentTimeMillis();
       try {
-        if (!resume) {
+        // the incremental export contains only the changes of the certstore
+        if (!resume && !CaCertstoreDbImporter.isIncremental(srcFolder)) {
           // CAConfiguration
           CaconfDbImporter caConfImporter = new CaconfDbImporter(datasource, srcFolder, stopMe);
           caConfImporter.importToDb();
@@ -120,7 +131,7 @@ public abstract class DbPortWorker implements Runnable {
 
         // CertStore
         CaCertstoreDbImporter certStoreImporter = new CaCertstoreDbImporter(datasource,
-            srcFolder, batchEntriesPerCommit, resume, stopMe);
+            srcFolder, batchEntriesPerCommit, resume, stopMe, numThreads);
         certStoreImporter.importToDb();
         certStoreImporter.close();
       } finally {
@@ -146,14 +157,35 @@ public abstract class DbPortWorker implements Runnable {
 
     private final int numCertsPerSelect;
 
+    private final int numThreads;
+
+    private final String checkpointFile;
+
     public ExportCaDb(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
         String dbConfFile, String destFolder, boolean resume, int numCertsInBundle,
         int numCertsPerSelect) throws PasswordResolverException, IOException {
+      this(datasourceFactory, passwordResolver, dbConfFile, destFolder, resume, numCertsInBundle,
+          numCertsPerSelect, 1);
+    }
+
+    public ExportCaDb(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
+        String dbConfFile, String destFolder, boolean resume, int numCertsInBundle,
+        int numCertsPerSelect, int numThreads) throws PasswordResolverException, IOException {
+      this(datasourceFactory, passwordResolver, dbConfFile, destFolder, resume, numCertsInBundle,
+          numCertsPerSelect, numThreads, null);
+    }
+
+    public ExportCaDb(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
+        String dbConfFile, String destFolder, boolean resume, int numCertsInBundle,
+        int numCertsPerSelect, int numThreads, String checkpointFile)
+            throws PasswordResolverException, IOException {
       super(datasourceFactory, passwordResolver, dbConfFile);
       this.destFolder = IoUtil.expandFilepath(destFolder);
       this.resume = resume;
       this.numCertsInBundle = numCertsInBundle;
       this.numCertsPerSelect = numCertsPerSelect;
+      this.numThreads = numThreads;
+      this.checkpointFile = checkpointFile;
       checkDestFolder();
     }
 
@@ -197,7 +229,7 @@ public abstract class DbPortWorker implements Runnable {
 
         // CertStore
         CaCertstoreDbExporter certStoreExporter = new CaCertstoreDbExporter(datasource, destFolder,
-            numCertsInBundle, numCertsPerSelect, resume, stopMe);
+            numCertsInBundle, numCertsPerSelect, resume, stopMe, numThreads, checkpointFile);
         certStoreExporter.export();
         certStoreExporter.close();
       } finally {
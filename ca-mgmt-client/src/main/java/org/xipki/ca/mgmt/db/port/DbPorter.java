@@ -23,7 +23,15 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -182,6 +190,8 @@ public class DbPorter extends DbToolBase {
 
   public static final String PREFIX_FILENAME_CERTS = "certs-";
 
+  public static final String FILENAME_CHECKPOINT = "checkpoint.json";
+
   public static final String EXPORT_PROCESS_LOG_FILENAME = "export.process";
 
   public static final String IMPORT_PROCESS_LOG_FILENAME = "import.process";
@@ -281,6 +291,128 @@ public class DbPorter extends DbToolBase {
     return new String(IoUtil.read(file), "UTF-8");
   }
 
+  /**
+   * Returns the IDs in the given range of the table.
+   */
+  protected Set<Long> getIdsInRange(String table, long fromIdInclusive, long toIdInclusive)
+      throws DataAccessException {
+    final String sql = StringUtil.concat("SELECT ID FROM ", table, " WHERE ID>=? AND ID<=?");
+    Set<Long> ids = new HashSet<>();
+    PreparedStatement ps = prepareStatement(sql);
+    ResultSet rs = null;
+    try {
+      ps.setLong(1, fromIdInclusive);
+      ps.setLong(2, toIdInclusive);
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        ids.add(rs.getLong(1));
+      }
+    } catch (SQLException ex) {
+      throw translate(sql, ex);
+    } finally {
+      releaseResources(ps, rs);
+    }
+    return ids;
+  } // method getIdsInRange
+
+  /**
+   * Removes the entries already contained in the given table from the list. Used by the
+   * import of an incremental export, whose files may overlap with the imported entries.
+   *
+   * @return the removed entries.
+   */
+  protected <T extends IdentifidDbObject> List<T> removeExistingEntries(String table,
+      List<T> entries) throws DataAccessException {
+    List<T> existingEntries = new ArrayList<>();
+    if (entries.isEmpty()) {
+      return existingEntries;
+    }
+
+    Set<Long> ids = getIdsInRange(table, entries.get(0).getId(),
+        entries.get(entries.size() - 1).getId());
+    if (ids.isEmpty()) {
+      return existingEntries;
+    }
+
+    Iterator<T> it = entries.iterator();
+    while (it.hasNext()) {
+      T entry = it.next();
+      if (ids.contains(entry.getId())) {
+        existingEntries.add(entry);
+        it.remove();
+      }
+    }
+    return existingEntries;
+  } // method removeExistingEntries
+
+  /**
+   * Updates the last update time and the revocation information of the given certificates
+   * in the table CERT.
+   */
+  protected void updateCertStatus(List<CaCertstore.Cert> certs) throws DataAccessException {
+    final String sql = "UPDATE CERT SET LUPDATE=?,REV=?,RR=?,RT=?,RIT=? WHERE ID=?";
+    PreparedStatement ps = prepareStatement(sql);
+    try {
+      for (CaCertstore.Cert cert : certs) {
+        int idx = 1;
+        ps.setLong(idx++, cert.getUpdate());
+        setInt(ps, idx++, cert.getRev());
+        setInt(ps, idx++, cert.getRr());
+        setLong(ps, idx++, cert.getRt());
+        setLong(ps, idx++, cert.getRit());
+        ps.setLong(idx++, cert.getId());
+        ps.addBatch();
+      }
+      ps.executeBatch();
+      commit("(commit update of certificates)");
+    } catch (SQLException ex) {
+      rollback();
+      throw translate(sql, ex);
+    } finally {
+      releaseResources(ps, null);
+    }
+  } // method updateCertStatus
+
+  /**
+   * Deletes the certificates which are not contained in the blocks of an incremental export.
+   */
+  protected void deleteRemovedCerts(List<CaCertstore.CertIdBlock> blocks)
+      throws DataAccessException {
+    if (blocks.isEmpty()) {
+      return;
+    }
+
+    System.out.println("deleting removed certificates");
+    int sum = 0;
+    for (CaCertstore.CertIdBlock block : blocks) {
+      Set<Long> ids = getIdsInRange("CERT", block.getFromId() + 1, block.getToId());
+      ids.removeAll(block.getIds());
+      deleteCerts(ids);
+      sum += ids.size();
+    }
+    System.out.println(" deleted " + sum + " removed certificates");
+  } // method deleteRemovedCerts
+
+  protected void deleteCerts(Collection<Long> ids) throws DataAccessException {
+    if (ids.isEmpty()) {
+      return;
+    }
+
+    final String sql = "DELETE FROM CERT WHERE ID=?";
+    PreparedStatement ps = prepareStatement(sql);
+    try {
+      for (Long id : ids) {
+        ps.setLong(1, id);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    } catch (SQLException ex) {
+      throw translate(sql, ex);
+    } finally {
+      releaseResources(ps, null);
+    }
+  } // method deleteCerts
+
   public static void echoToFile(String content, File file) throws IOException {
     Files.write(Args.notNull(file, "file").toPath(),
         Args.notNull(content, "content").getBytes());
@@ -69,6 +69,8 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
 
   private final int numCertsPerCommit;
 
+  private boolean incremental;
+
   OcspCertStoreFromCaDbImporter(DataSourceWrapper datasource,  String srcDir, String publisherName,
       int numCertsPerCommit, boolean resume, AtomicBoolean stopMe) throws Exception {
     super(datasource, srcDir, stopMe);
@@ -113,9 +115,12 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
           + VERSION + ": " + certstore.getVersion());
     }
 
-    System.out.println("importing CA certstore to OCSP database");
+    incremental = certstore.isIncremental();
+
+    System.out.println(incremental ? "importing incremental CA certstore to OCSP database"
+        : "importing CA certstore to OCSP database");
     try {
-      if (!resume) {
+      if (!resume && !incremental) {
         dropIndexes();
       }
 
@@ -162,12 +167,22 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
         return;
       }
 
-      List<Integer> relatedCertStoreCaIds = resume
-          ? getIssuerIds(relatedCas) : importIssuer(relatedCas);
+      List<Integer> relatedCertStoreCaIds;
+      if (resume) {
+        relatedCertStoreCaIds = getIssuerIds(relatedCas);
+      } else if (incremental) {
+        relatedCertStoreCaIds = importNewIssuers(relatedCas);
+      } else {
+        relatedCertStoreCaIds = importIssuer(relatedCas);
+      }
 
       File processLogFile = new File(baseDir, DbPorter.IMPORT_TO_OCSP_PROCESS_LOG_FILENAME);
       importCert(certstore, revokedOnly, relatedCertStoreCaIds, processLogFile);
-      recoverIndexes();
+      if (incremental) {
+        deleteRemovedCerts(certstore.getCertIdBlocks());
+      } else {
+        recoverIndexes();
+      }
       processLogFile.delete();
     } catch (Exception ex) {
       System.err.println("could not import OCSP certstore to database");
@@ -199,6 +214,21 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
     return relatedCaIds;
   }
 
+  private List<Integer> importNewIssuers(List<CaCertstore.Ca> cas) throws Exception {
+    Set<Long> existingIds = getIdsInRange("ISSUER", 0, Integer.MAX_VALUE);
+    List<CaCertstore.Ca> newCas = new LinkedList<>();
+    for (CaCertstore.Ca ca : cas) {
+      if (!existingIds.contains((long) ca.getId())) {
+        newCas.add(ca);
+      }
+    }
+
+    if (!newCas.isEmpty()) {
+      importIssuer(newCas);
+    }
+    return getIssuerIds(cas);
+  }
+
   private List<Integer> importIssuer(List<CaCertstore.Ca> cas)
       throws DataAccessException, CertificateException, IOException {
     System.out.println("importing table ISSUER");
@@ -274,7 +304,9 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
       }
     }
 
-    deleteCertGreatherThan(minId - 1, LOG);
+    if (!incremental) {
+      deleteCertGreatherThan(minId - 1, LOG);
+    }
 
     final long total = certstore.getCountCerts() - numProcessedBefore;
     final ProcessLog processLog = new ProcessLog(total);
@@ -361,6 +393,9 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
       long lastSuccessfulCertId = 0;
 
       List<CaCertstore.Cert> list = certs.getCerts();
+      if (incremental) {
+        mergeExistingCerts(removeExistingEntries("CERT", list), revokedOnly);
+      }
       final int n = list.size();
 
       for (int i = 0; i < n; i++) {
@@ -436,7 +471,9 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
             commit("(commit import cert to OCSP)");
           } catch (Throwable th) {
             rollback();
-            deleteCertGreatherThan(lastSuccessfulCertId, LOG);
+            if (!incremental) {
+              deleteCertGreatherThan(lastSuccessfulCertId, LOG);
+            }
             if (th instanceof SQLException) {
               throw translate(SQL_ADD_CERT, (SQLException) th);
             } else if (th instanceof Exception) {
@@ -476,6 +513,37 @@ class OcspCertStoreFromCaDbImporter extends AbstractOcspCertstoreDbImporter {
     }
   } // method importCert0
 
+  /**
+   * Updates the status of the certificates already contained in the OCSP database. If only
+   * revoked certificates are published, the certificates which are no more revoked (e.g.
+   * released from hold) are removed.
+   */
+  private void mergeExistingCerts(List<CaCertstore.Cert> existingCerts, boolean revokedOnly)
+      throws DataAccessException {
+    if (existingCerts.isEmpty()) {
+      return;
+    }
+
+    List<CaCertstore.Cert> toUpdate = new LinkedList<>();
+    List<Long> toDelete = new LinkedList<>();
+    for (CaCertstore.Cert cert : existingCerts) {
+      if (revokedOnly && (cert.getRev() == null || cert.getRev().intValue() != 1)) {
+        toDelete.add(cert.getId());
+      } else {
+        toUpdate.add(cert);
+      }
+    }
+
+    if (!toDelete.isEmpty()) {
+      deleteCerts(toDelete);
+      commit("(commit delete cert from OCSP)");
+    }
+
+    if (!toUpdate.isEmpty()) {
+      updateCertStatus(toUpdate);
+    }
+  } // method mergeExistingCerts
+
   private HashAlgo getCertHashAlgo(DataSourceWrapper datasource)
       throws DataAccessException {
     String certHashAlgoStr = dbSchemaInfo.getVariableValue("CERTHASH_ALGO");
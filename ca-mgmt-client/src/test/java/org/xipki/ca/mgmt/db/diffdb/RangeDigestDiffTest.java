@@ -0,0 +1,202 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.mgmt.db.diffdb;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class RangeDigestDiffTest {
+
+  private static final int LEAF_SIZE = 10;
+
+  /**
+   * Compares two in-memory tables, the key is the hex encoded serial number as in the column
+   * SN, and the value stands for the content of the other columns.
+   */
+  private static class MemoryBisection extends RangeDigestDiff.RangeBisection {
+
+    private final SortedMap<String, Long> ref;
+
+    private final SortedMap<String, Long> target;
+
+    private int numChecksumQueries;
+
+    private long numGood;
+
+    private long numComparedRows;
+
+    private final Set<String> missing = new HashSet<>();
+
+    private final Set<String> diff = new HashSet<>();
+
+    private final Set<String> unexpected = new HashSet<>();
+
+    MemoryBisection(SortedMap<String, Long> ref, SortedMap<String, Long> target,
+        AtomicBoolean stopMe) {
+      super(LEAF_SIZE, stopMe);
+      this.ref = ref;
+      this.target = target;
+    }
+
+    @Override
+    boolean checksumEquals(String prefix, long[] counts) {
+      numChecksumQueries++;
+      long[] refChecksum = checksum(ref.subMap(prefix, prefix + "g"));
+      long[] targetChecksum = checksum(target.subMap(prefix, prefix + "g"));
+      counts[0] = refChecksum[0];
+      counts[1] = targetChecksum[0];
+      if (refChecksum[0] == targetChecksum[0] && refChecksum[1] == targetChecksum[1]) {
+        numGood += counts[0];
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    void compareCerts(String lower, String upper) {
+      Map<String, Long> refCerts = ref.subMap(lower, upper);
+      Map<String, Long> targetCerts = new TreeMap<>(target.subMap(lower, upper));
+      numComparedRows += refCerts.size() + targetCerts.size();
+
+      for (Map.Entry<String, Long> entry : refCerts.entrySet()) {
+        Long targetValue = targetCerts.remove(entry.getKey());
+        if (targetValue == null) {
+          missing.add(entry.getKey());
+        } else if (targetValue.equals(entry.getValue())) {
+          numGood++;
+        } else {
+          diff.add(entry.getKey());
+        }
+      }
+      unexpected.addAll(targetCerts.keySet());
+    }
+
+    private static long[] checksum(Map<String, Long> rows) {
+      long sum = 0;
+      for (Map.Entry<String, Long> row : rows.entrySet()) {
+        sum += row.getKey().hashCode() + row.getValue();
+      }
+      return new long[]{rows.size(), sum};
+    }
+
+  } // class MemoryBisection
+
+  @Test
+  public void testEqual() throws Exception {
+    SortedMap<String, Long> ref = newTable(10000, new Random(1));
+    MemoryBisection bisection = new MemoryBisection(ref, new TreeMap<>(ref),
+        new AtomicBoolean(false));
+    bisection.compare("");
+
+    Assert.assertEquals("checksum queries", 1, bisection.numChecksumQueries);
+    Assert.assertEquals("compared rows", 0, bisection.numComparedRows);
+    Assert.assertEquals("good", 10000, bisection.numGood);
+  }
+
+  @Test
+  public void testDifferences() throws Exception {
+    Random random = new Random(2);
+    SortedMap<String, Long> ref = newTable(10000, random);
+    SortedMap<String, Long> target = new TreeMap<>(ref);
+
+    String[] serials = ref.keySet().toArray(new String[0]);
+    Set<String> expectedMissing = new HashSet<>();
+    Set<String> expectedDiff = new HashSet<>();
+    for (int i = 0; i < 3; i++) {
+      String serial = serials[random.nextInt(serials.length)];
+      if (!expectedDiff.contains(serial) && expectedMissing.add(serial)) {
+        target.remove(serial);
+      }
+      serial = serials[random.nextInt(serials.length)];
+      if (!expectedMissing.contains(serial) && expectedDiff.add(serial)) {
+        target.put(serial, target.get(serial) + 1);
+      }
+    }
+
+    // serial numbers equal to the prefixes of other serial numbers
+    String shortSerial = serials[0].substring(0, 2);
+    target.put(shortSerial, 1L);
+    String longSerial = serials[1] + "0";
+    target.put(longSerial, 1L);
+    Set<String> expectedUnexpected = new HashSet<>();
+    expectedUnexpected.add(shortSerial);
+    expectedUnexpected.add(longSerial);
+
+    MemoryBisection bisection = new MemoryBisection(ref, target, new AtomicBoolean(false));
+    bisection.compare("");
+
+    Assert.assertEquals("missing", expectedMissing, bisection.missing);
+    Assert.assertEquals("diff", expectedDiff, bisection.diff);
+    Assert.assertEquals("unexpected", expectedUnexpected, bisection.unexpected);
+    Assert.assertEquals("good", ref.size() - expectedMissing.size() - expectedDiff.size(),
+        bisection.numGood);
+    // only the ranges around the differences are compared row by row
+    Assert.assertTrue("too many compared rows: " + bisection.numComparedRows,
+        bisection.numComparedRows < ref.size() / 10);
+  }
+
+  @Test
+  public void testSmallTable() throws Exception {
+    SortedMap<String, Long> ref = newTable(5, new Random(3));
+    SortedMap<String, Long> target = new TreeMap<>(ref);
+    String serial = ref.firstKey();
+    target.remove(serial);
+
+    MemoryBisection bisection = new MemoryBisection(ref, target, new AtomicBoolean(false));
+    bisection.compare("");
+
+    // not more than leafSize certificates, compared row by row without subdividing
+    Assert.assertEquals("checksum queries", 1, bisection.numChecksumQueries);
+    Assert.assertTrue("missing", bisection.missing.contains(serial));
+    Assert.assertEquals("good", 4, bisection.numGood);
+  }
+
+  @Test(expected = InterruptedException.class)
+  public void testStop() throws Exception {
+    SortedMap<String, Long> ref = newTable(100, new Random(4));
+    new MemoryBisection(ref, new TreeMap<String, Long>(), new AtomicBoolean(true)).compare("");
+  }
+
+  private static SortedMap<String, Long> newTable(int size, Random random) {
+    SortedMap<String, Long> table = new TreeMap<>();
+    while (table.size() < size) {
+      BigInteger serial = new BigInteger(64, random);
+      if (serial.signum() > 0) {
+        table.put(serial.toString(16), random.nextLong());
+      }
+    }
+    return table;
+  }
+
+}
@@ -46,6 +46,8 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
@@ -115,6 +117,7 @@ import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
 import org.xipki.util.CollectionUtil;
+import org.xipki.util.CompareUtil;
 import org.xipki.util.ConfPairs;
 import org.xipki.util.DateUtil;
 import org.xipki.util.FileOrBinary;
@@ -212,8 +215,13 @@ public class CaManagerImpl implements CaManager, Closeable {
             new Date(caChangedTime * 1000L), lastStartTime);
 
         if (caChangedTime > lastStartTime.getTime() / 1000L) {
-          LOG.info("received event to restart CA");
-          restartCaSystem();
+          LOG.info("received event to refresh CA");
+          try {
+            refreshCaSystem();
+          } catch (Throwable th) {
+            LogUtil.error(LOG, th, "could not refresh CA system, restart it");
+            restartCaSystem();
+          }
         } else {
           LOG.debug("received no event to restart CA");
         }
@@ -266,6 +274,8 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private final Map<String, MgmtEntry.Requestor> requestorDbEntries = new ConcurrentHashMap<>();
 
+  private volatile VerifierProviderCache verifierProviderCache;
+
   private final Map<String, Set<String>> caHasProfiles = new ConcurrentHashMap<>();
 
   private final Map<String, Set<String>> caHasPublishers = new ConcurrentHashMap<>();
@@ -279,6 +289,10 @@ public class CaManagerImpl implements CaManager, Closeable {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  private ExecutorService enrollmentExecutor;
+
+  private int housekeepingMaxRate;
+
   private final Map<String, CmpResponder> cmpResponders = new ConcurrentHashMap<>();
 
   private final Map<String, ScepResponder> scepResponders = new ConcurrentHashMap<>();
@@ -357,8 +371,19 @@ public class CaManagerImpl implements CaManager, Closeable {
     return securityFactory;
   }
 
+  public VerifierProviderCache getVerifierProviderCache() {
+    return verifierProviderCache;
+  }
+
+  private void invalidateVerifierProvider(RequestorEntryWrapper requestor) {
+    if (requestor != null && requestor.getCert() != null) {
+      getVerifierProviderCache().remove(requestor.getCert().getCert());
+    }
+  }
+
   public void setSecurityFactory(SecurityFactory securityFactory) {
     this.securityFactory = securityFactory;
+    this.verifierProviderCache = new VerifierProviderCache(securityFactory);
   }
 
   public DataSourceFactory getDataSourceFactory() {
@@ -432,6 +457,34 @@ public class CaManagerImpl implements CaManager, Closeable {
       throw new CaMgmtException("ca.shardId is not in [0, 127]");
     }
 
+    String housekeepingMaxRateStr = confProperties.getProperty("ca.housekeeping.maxRate");
+    if (StringUtil.isNotBlank(housekeepingMaxRateStr)) {
+      try {
+        housekeepingMaxRate = Integer.parseInt(housekeepingMaxRateStr.trim());
+      } catch (NumberFormatException ex) {
+        throw new CaMgmtException(
+            concat("invalid ca.housekeeping.maxRate '", housekeepingMaxRateStr, "'"));
+      }
+    }
+    LOG.info("ca.housekeeping.maxRate: {}", housekeepingMaxRate);
+
+    if (enrollmentExecutor == null) {
+      int enrollmentThreads = Runtime.getRuntime().availableProcessors();
+      String str = confProperties.getProperty("ca.enrollment.threads");
+      if (StringUtil.isNotBlank(str)) {
+        try {
+          enrollmentThreads = Integer.parseInt(str.trim());
+        } catch (NumberFormatException ex) {
+          throw new CaMgmtException(concat("invalid ca.enrollment.threads '", str, "'"));
+        }
+      }
+      LOG.info("ca.enrollment.threads: {}", enrollmentThreads);
+
+      if (enrollmentThreads > 1) {
+        enrollmentExecutor = Executors.newFixedThreadPool(enrollmentThreads);
+      }
+    }
+
     if (this.datasourceNameConfFileMap == null) {
       this.datasourceNameConfFileMap = new ConcurrentHashMap<>();
       for (Object objKey : confProperties.keySet()) {
@@ -471,6 +524,11 @@ public class CaManagerImpl implements CaManager, Closeable {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
 
+    boolean fpFilterEnabled = Boolean.parseBoolean(
+        confProperties.getProperty("ca.fpFilter.enabled", "false").trim());
+    LOG.info("ca.fpFilter.enabled: {}", fpFilterEnabled);
+    this.certstore.setFpFilterEnabled(fpFilterEnabled);
+
     initCaAliases();
     initCertprofiles();
     initPublishers();
@@ -589,6 +647,320 @@ public class CaManagerImpl implements CaManager, Closeable {
     }
   } // method notifyCaChange
 
+  /**
+   * Reloads the configuration from the database, and replaces only the signers, requestors,
+   * certprofiles, publishers and CAs whose configuration has been changed. In contrast to
+   * {@link #restartCaSystem()}, the unchanged objects remain in service.
+   *
+   * @throws CaMgmtException
+   *         if the configuration could not be loaded.
+   */
+  private void refreshCaSystem() throws CaMgmtException {
+    if (!caSystemSetuped) {
+      restartCaSystem();
+      return;
+    }
+
+    LOG.info("refreshing CA system");
+    Date startTime = new Date();
+
+    Set<String> changedSigners = refreshSigners();
+    Set<String> changedRequestors = refreshRequestors();
+    refreshCertprofiles();
+    refreshPublishers();
+
+    caAliasesInitialized = false;
+    initCaAliases();
+
+    refreshCas(changedSigners, changedRequestors);
+
+    this.lastStartTime = startTime;
+    LOG.info("refreshed CA system");
+    auditLogPciEvent(true, "CA_CHANGE");
+  } // method refreshCaSystem
+
+  private Set<String> refreshSigners() throws CaMgmtException {
+    Set<String> changedNames = new HashSet<>();
+    List<String> names = queryExecutor.namesFromTable("SIGNER");
+
+    for (String name : signerDbEntries.keySet()) {
+      if (!names.contains(name)) {
+        signerDbEntries.remove(name);
+        signers.remove(name);
+        changedNames.add(name);
+        LOG.info("removed signer {}", name);
+      }
+    }
+
+    for (String name : names) {
+      MgmtEntry.Signer entry = queryExecutor.createSigner(name);
+      if (entry == null) {
+        LOG.error("could not initialize signer '{}'", name);
+        continue;
+      }
+
+      MgmtEntry.Signer oldEntry = signerDbEntries.get(name);
+      if (entry.equals(oldEntry) && !oldEntry.isFaulty()) {
+        continue;
+      }
+
+      changedNames.add(name);
+      entry.setConfFaulty(true);
+      SignerEntryWrapper signer = null;
+      try {
+        signer = createSigner(entry);
+      } catch (CaMgmtException ex) {
+        LogUtil.error(LOG, ex, "could not load signer " + name);
+      }
+
+      signerDbEntries.put(name, entry);
+      if (signer == null) {
+        signers.remove(name);
+      } else {
+        entry.setConfFaulty(false);
+        signers.put(name, signer);
+        LOG.info("reloaded signer {}", name);
+      }
+    }
+
+    return changedNames;
+  } // method refreshSigners
+
+  private Set<String> refreshRequestors() throws CaMgmtException {
+    Set<String> changedNames = new HashSet<>();
+    List<String> names = queryExecutor.namesFromTable("REQUESTOR");
+
+    for (String name : requestorDbEntries.keySet()) {
+      if (!names.contains(name)) {
+        requestorDbEntries.remove(name);
+        requestors.remove(name);
+        idNameMap.removeRequestor(name);
+        changedNames.add(name);
+        LOG.info("removed requestor {}", name);
+      }
+    }
+
+    for (String name : names) {
+      if (RequestorInfo.NAME_BY_CA.equals(name) || RequestorInfo.NAME_BY_USER.equals(name)) {
+        continue;
+      }
+
+      MgmtEntry.Requestor dbEntry = queryExecutor.createRequestor(name);
+      if (dbEntry == null) {
+        LOG.error("could not load requestor {}", name);
+        continue;
+      }
+
+      if (dbEntry.equals(requestorDbEntries.get(name))) {
+        continue;
+      }
+
+      changedNames.add(name);
+      RequestorEntryWrapper requestor = new RequestorEntryWrapper();
+      requestor.setDbEntry(dbEntry, securityFactory.getPasswordResolver());
+
+      idNameMap.removeRequestor(name);
+      idNameMap.addRequestor(dbEntry.getIdent());
+      requestorDbEntries.put(name, dbEntry);
+      requestors.put(name, requestor);
+      LOG.info("reloaded requestor {}", name);
+    }
+
+    return changedNames;
+  } // method refreshRequestors
+
+  private void refreshCertprofiles() throws CaMgmtException {
+    List<String> names = queryExecutor.namesFromTable("PROFILE");
+
+    for (String name : certprofileDbEntries.keySet()) {
+      if (!names.contains(name)) {
+        certprofileDbEntries.remove(name);
+        idNameMap.removeCertprofile(name);
+        shutdownCertprofile(certprofiles.remove(name));
+        LOG.info("removed certprofile {}", name);
+      }
+    }
+
+    for (String name : names) {
+      MgmtEntry.Certprofile dbEntry = queryExecutor.createCertprofile(name);
+      if (dbEntry == null) {
+        LOG.error("could not initialize Certprofile '{}'", name);
+        continue;
+      }
+
+      MgmtEntry.Certprofile oldDbEntry = certprofileDbEntries.get(name);
+      if (dbEntry.equals(oldDbEntry) && !oldDbEntry.isFaulty()) {
+        continue;
+      }
+
+      dbEntry.setFaulty(true);
+      IdentifiedCertprofile profile = null;
+      try {
+        profile = createCertprofile(dbEntry);
+      } catch (CaMgmtException ex) {
+        LogUtil.error(LOG, ex, "could not load certprofile " + name);
+      }
+
+      idNameMap.removeCertprofile(name);
+      idNameMap.addCertprofile(dbEntry.getIdent());
+      certprofileDbEntries.put(name, dbEntry);
+
+      IdentifiedCertprofile oldProfile;
+      if (profile == null) {
+        oldProfile = certprofiles.remove(name);
+      } else {
+        dbEntry.setFaulty(false);
+        oldProfile = certprofiles.put(name, profile);
+        LOG.info("reloaded certprofile {}", name);
+      }
+      shutdownCertprofile(oldProfile);
+    }
+  } // method refreshCertprofiles
+
+  private void refreshPublishers() throws CaMgmtException {
+    List<String> names = queryExecutor.namesFromTable("PUBLISHER");
+
+    for (String name : publisherDbEntries.keySet()) {
+      if (!names.contains(name)) {
+        publisherDbEntries.remove(name);
+        idNameMap.removePublisher(name);
+        shutdownPublisher(publishers.remove(name));
+        LOG.info("removed publisher {}", name);
+      }
+    }
+
+    for (String name : names) {
+      MgmtEntry.Publisher dbEntry = queryExecutor.createPublisher(name);
+      if (dbEntry == null) {
+        LOG.error("could not initialize publisher '{}'", name);
+        continue;
+      }
+
+      MgmtEntry.Publisher oldDbEntry = publisherDbEntries.get(name);
+      if (dbEntry.equals(oldDbEntry) && !oldDbEntry.isFaulty()) {
+        continue;
+      }
+
+      dbEntry.setFaulty(true);
+      IdentifiedCertPublisher publisher = null;
+      try {
+        publisher = createPublisher(dbEntry);
+      } catch (CaMgmtException ex) {
+        LogUtil.error(LOG, ex, "could not load publisher " + name);
+      }
+
+      idNameMap.removePublisher(name);
+      idNameMap.addPublisher(dbEntry.getIdent());
+      publisherDbEntries.put(name, dbEntry);
+
+      IdentifiedCertPublisher oldPublisher;
+      if (publisher == null) {
+        oldPublisher = publishers.remove(name);
+      } else {
+        dbEntry.setFaulty(false);
+        oldPublisher = publishers.put(name, publisher);
+        LOG.info("reloaded publisher {}", name);
+      }
+      shutdownPublisher(oldPublisher);
+    }
+  } // method refreshPublishers
+
+  private void refreshCas(Set<String> changedSigners, Set<String> changedRequestors)
+      throws CaMgmtException {
+    List<String> names = queryExecutor.namesFromTable("CA");
+
+    for (String name : caInfos.keySet()) {
+      if (!names.contains(name)) {
+        caInfos.remove(name);
+        idNameMap.removeCa(name);
+        caHasProfiles.remove(name);
+        caHasPublishers.remove(name);
+        caHasRequestors.remove(name);
+        removeCmpResponder(name);
+        scepResponders.remove(name);
+        X509Ca oldCa = x509cas.remove(name);
+        if (oldCa != null) {
+          oldCa.close();
+        }
+        LOG.info("removed CA {}", name);
+      }
+    }
+
+    for (String name : names) {
+      CaInfo caInfo = queryExecutor.createCaInfo(name, masterMode, certstore);
+      NameId ident = caInfo.getIdent();
+
+      Set<MgmtEntry.CaHasRequestor> caReqEntries = queryExecutor.createCaHasRequestors(ident);
+
+      Set<String> profileNames = new HashSet<>();
+      for (Integer id : queryExecutor.createCaHasProfiles(ident)) {
+        profileNames.add(idNameMap.getCertprofileName(id));
+      }
+
+      Set<String> publisherNames = new HashSet<>();
+      for (Integer id : queryExecutor.createCaHasPublishers(ident)) {
+        publisherNames.add(idNameMap.getPublisherName(id));
+      }
+
+      CaInfo oldCaInfo = caInfos.get(name);
+      boolean changed = oldCaInfo == null
+          || !caInfo.getCaEntry().equals(oldCaInfo.getCaEntry(), true, false)
+          // MgmtEntry.Ca.equals() does not compare the signerConf
+          || !CompareUtil.equalsObject(caInfo.getCaEntry().getSignerConf(),
+              oldCaInfo.getCaEntry().getSignerConf())
+          || !caReqEntries.equals(caHasRequestors.get(name))
+          || !profileNames.equals(caHasProfiles.get(name))
+          || !publisherNames.equals(caHasPublishers.get(name));
+
+      if (!changed) {
+        // the CA holds references to the signers and requestors, reload it if one has changed.
+        changed = changedSigners.contains(caInfo.getCmpResponderName())
+            || changedSigners.contains(caInfo.getScepResponderName())
+            || changedSigners.contains(caInfo.getCrlSignerName());
+        for (MgmtEntry.CaHasRequestor entry : caReqEntries) {
+          if (changed) {
+            break;
+          }
+          changed = changedRequestors.contains(entry.getRequestorIdent().getName());
+        }
+      }
+
+      if (!changed) {
+        continue;
+      }
+
+      LOG.info("reloaded CA {}: {}", name, caInfo.toString(false));
+      caHasRequestors.put(name, caReqEntries);
+      caHasProfiles.put(name, profileNames);
+      caHasPublishers.put(name, publisherNames);
+      idNameMap.removeCa(name);
+      idNameMap.addCa(ident);
+      caInfos.put(name, caInfo);
+
+      // the new CA objects replace the old ones, the old CA is closed afterwards
+      X509Ca oldCa = x509cas.get(name);
+      boolean started = false;
+      if (CaStatus.ACTIVE == caInfo.getCaEntry().getStatus()) {
+        started = startCa(name);
+        if (started) {
+          LOG.info("started CA {}", name);
+        } else {
+          LOG.error("could not start CA {}", name);
+        }
+      }
+
+      if (!started) {
+        x509cas.remove(name);
+        removeCmpResponder(name);
+        scepResponders.remove(name);
+      }
+
+      if (oldCa != null && oldCa != x509cas.get(name)) {
+        oldCa.close();
+      }
+    }
+  } // method refreshCas
+
   public void startCaSystem() {
     boolean caSystemStarted = false;
     try {
@@ -623,6 +995,9 @@ public class CaManagerImpl implements CaManager, Closeable {
       this.lastStartTime = new Date();
 
       x509cas.clear();
+      for (CmpResponder responder : cmpResponders.values()) {
+        responder.close();
+      }
       cmpResponders.clear();
       scepResponders.clear();
 
@@ -710,6 +1085,13 @@ public class CaManagerImpl implements CaManager, Closeable {
     return true;
   } // method startCaSystem0
 
+  private void removeCmpResponder(String caName) {
+    CmpResponder responder = cmpResponders.remove(caName);
+    if (responder != null) {
+      responder.close();
+    }
+  }
+
   private boolean startCa(String caName) {
     CaInfo caEntry = caInfos.get(caName);
 
@@ -744,15 +1126,19 @@ public class CaManagerImpl implements CaManager, Closeable {
     }
 
     x509cas.put(caName, ca);
-    CmpResponder caResponder;
-    try {
-      caResponder = new CmpResponder(this, caName);
-    } catch (NoSuchAlgorithmException ex) {
-      LogUtil.error(LOG, ex, concat("CmpResponderImpl.<init> (ca=", caName, ")"));
-      return false;
-    }
+    // the responder retrieves the CA by name, reuse it if the CA is restarted so that the
+    // pending certificates waiting for the confirmation are kept.
+    if (!cmpResponders.containsKey(caName)) {
+      CmpResponder caResponder;
+      try {
+        caResponder = new CmpResponder(this, caName);
+      } catch (NoSuchAlgorithmException ex) {
+        LogUtil.error(LOG, ex, concat("CmpResponderImpl.<init> (ca=", caName, ")"));
+        return false;
+      }
 
-    cmpResponders.put(caName, caResponder);
+      cmpResponders.put(caName, caResponder);
+    }
 
     if (caEntry.getScepResponderName() != null) {
       try {
@@ -782,6 +1168,11 @@ public class CaManagerImpl implements CaManager, Closeable {
       persistentScheduledThreadPoolExecutor = null;
     }
 
+    if (enrollmentExecutor != null) {
+      enrollmentExecutor.shutdown();
+      enrollmentExecutor = null;
+    }
+
     for (String caName : x509cas.keySet()) {
       X509Ca ca = x509cas.get(caName);
       try {
@@ -834,6 +1225,25 @@ public class CaManagerImpl implements CaManager, Closeable {
     return cmpResponders.get(Args.toNonBlankLower(name, "name"));
   }
 
+  /**
+   * Returns the executor to generate the certificates of one request in parallel.
+   *
+   * @return the executor, or {@code null} if the certificates shall be generated sequentially.
+   */
+  public ExecutorService getEnrollmentExecutor() {
+    return enrollmentExecutor;
+  }
+
+  /**
+   * Returns the maximal number of certificates per second processed by the housekeeping jobs,
+   * such as removing expired certificates and revoking suspended certificates.
+   *
+   * @return the maximal rate, values less than 1 for unlimited.
+   */
+  public int getHousekeepingMaxRate() {
+    return housekeepingMaxRate;
+  }
+
   public ScheduledThreadPoolExecutor getScheduledThreadPoolExecutor() {
     return scheduledThreadPoolExecutor;
   }
@@ -904,6 +1314,7 @@ public class CaManagerImpl implements CaManager, Closeable {
     idNameMap.clearRequestor();
     requestorDbEntries.clear();
     requestors.clear();
+    getVerifierProviderCache().clear();
     List<String> names = queryExecutor.namesFromTable("REQUESTOR");
     for (String name : names) {
       if (RequestorInfo.NAME_BY_CA.equals(name)) {
@@ -1079,7 +1490,7 @@ public class CaManagerImpl implements CaManager, Closeable {
     caHasPublishers.remove(name);
     caHasRequestors.remove(name);
     X509Ca oldCa = x509cas.remove(name);
-    cmpResponders.remove(name);
+    removeCmpResponder(name);
     scepResponders.remove(name);
     if (oldCa != null) {
       oldCa.close();
@@ -1403,7 +1814,7 @@ public class CaManagerImpl implements CaManager, Closeable {
 
     idNameMap.removeRequestor(requestorDbEntries.get(name).getIdent().getId());
     requestorDbEntries.remove(name);
-    requestors.remove(name);
+    invalidateVerifierProvider(requestors.remove(name));
     LOG.info("removed requestor '{}'", name);
   } // method removeRequestor
 
@@ -1424,7 +1835,7 @@ public class CaManagerImpl implements CaManager, Closeable {
         securityFactory.getPasswordResolver());
 
     requestorDbEntries.remove(name);
-    requestors.remove(name);
+    invalidateVerifierProvider(requestors.remove(name));
 
     requestorDbEntries.put(name, requestor.getDbEntry());
     requestors.put(name, requestor);
@@ -1884,7 +2295,7 @@ public class CaManagerImpl implements CaManager, Closeable {
     caHasPublishers.remove(name);
     caHasRequestors.remove(name);
     X509Ca ca = x509cas.remove(name);
-    cmpResponders.remove(name);
+    removeCmpResponder(name);
     scepResponders.remove(name);
     if (ca != null) {
       ca.close();
@@ -19,6 +19,7 @@ package org.xipki.ca.server;
 
 import java.io.Closeable;
 import java.security.cert.X509CRL;
+import java.util.List;
 import java.util.Map;
 
 import org.xipki.ca.api.CertWithDbId;
@@ -99,6 +100,10 @@ class IdentifiedCertPublisher implements Closeable {
     return certPublisher.certificateRemoved(caCert, cert);
   }
 
+  public boolean certificatesRemoved(X509Cert caCert, List<CertWithDbId> certs) {
+    return certPublisher.certificatesRemoved(caCert, certs);
+  }
+
   public boolean isAsyn() {
     return certPublisher.isAsyn();
   }
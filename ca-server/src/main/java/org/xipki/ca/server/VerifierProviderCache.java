@@ -0,0 +1,100 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server;
+
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.SecurityFactory;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * Cache of the {@link ContentVerifierProvider}s of the requestors' public keys, so that the
+ * public keys need not be converted for each request.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class VerifierProviderCache {
+
+  private static final int DEFAULT_MAX_SIZE = 1000;
+
+  private final SecurityFactory securityFactory;
+
+  private final LruCache<String, ContentVerifierProvider> cache;
+
+  public VerifierProviderCache(SecurityFactory securityFactory) {
+    this(securityFactory, DEFAULT_MAX_SIZE);
+  }
+
+  public VerifierProviderCache(SecurityFactory securityFactory, int maxSize) {
+    this.securityFactory = Args.notNull(securityFactory, "securityFactory");
+    this.cache = new LruCache<>(maxSize);
+  }
+
+  public ContentVerifierProvider get(X509Certificate cert) throws InvalidKeyException {
+    return get(Args.notNull(cert, "cert").getPublicKey(), true);
+  }
+
+  /**
+   * Returns the verifier provider of the public key.
+   *
+   * @param publicKey
+   *          Public key. Must not be {@code null}.
+   * @param cacheNew
+   *          Whether to cache the verifier provider if not present. Should be {@code false}
+   *          for the public keys which are seldom reused, e.g. the keys to be certified.
+   * @return the verifier provider.
+   * @throws InvalidKeyException
+   *          if the public key is not supported.
+   */
+  public ContentVerifierProvider get(PublicKey publicKey, boolean cacheNew)
+      throws InvalidKeyException {
+    String key = keyHash(Args.notNull(publicKey, "publicKey"));
+    ContentVerifierProvider cvp = cache.get(key);
+    if (cvp != null) {
+      return cvp;
+    }
+
+    cvp = securityFactory.getContentVerifierProvider(publicKey);
+    if (cacheNew) {
+      cache.put(key, cvp);
+    }
+    return cvp;
+  }
+
+  public void remove(X509Certificate cert) {
+    if (cert != null) {
+      cache.remove(keyHash(cert.getPublicKey()));
+    }
+  }
+
+  public void clear() {
+    cache.evictAll();
+  }
+
+  private static String keyHash(PublicKey publicKey) {
+    return HashAlgo.SHA1.base64Hash(publicKey.getEncoded());
+  }
+
+}
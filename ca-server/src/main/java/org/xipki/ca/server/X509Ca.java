@@ -56,12 +56,17 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -409,6 +414,11 @@ public class X509Ca implements Closeable {
 
   private final ConcurrentSkipListSet<Long> subjectCertsInProcess = new ConcurrentSkipListSet<>();
 
+  // ID of the last processed certificate of the interrupted housekeeping jobs
+  private long expiredCertsCheckpoint;
+
+  private long suspendedCertsCheckpoint;
+
   public X509Ca(CaManagerImpl caManager, CaInfo caInfo, CertStore certstore)
       throws OperationException {
     this.caManager = Args.notNull(caManager, "caManager");
@@ -467,6 +477,16 @@ public class X509Ca implements Closeable {
       }
     }
 
+    if (!caInfo.isDuplicateKeyPermitted() || !caInfo.isDuplicateSubjectPermitted()) {
+      caManager.getScheduledThreadPoolExecutor().submit(() -> {
+        try {
+          certstore.initFpFilter(caIdent);
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "could not load the certificate fingerprints of CA " + caIdent);
+        }
+      });
+    }
+
     if (!masterMode) {
       return;
     }
@@ -1327,20 +1347,29 @@ public class X509Ca implements Closeable {
     boolean successful = true;
     CertWithDbId certToRemove = certWithRevInfo.getCert();
     for (IdentifiedCertPublisher publisher : publishers()) {
-      boolean singleSuccessful;
-      try {
-        singleSuccessful = publisher.certificateRemoved(caCert, certToRemove);
-      } catch (RuntimeException ex) {
-        singleSuccessful = false;
-        LogUtil.warn(LOG, ex,
-            "could not remove certificate from the publisher " + publisher.getIdent());
-      }
+      successful &= publishCertRemoved(publisher, certToRemove);
+    }
 
-      if (singleSuccessful) {
-        continue;
-      }
+    if (!successful) {
+      return null;
+    }
 
+    certstore.removeCert(caIdent, serialNumber);
+    return certToRemove;
+  } // method removeCertificate0
+
+  private boolean publishCertRemoved(IdentifiedCertPublisher publisher,
+      CertWithDbId certToRemove) {
+    boolean successful;
+    try {
+      successful = publisher.certificateRemoved(caCert, certToRemove);
+    } catch (RuntimeException ex) {
       successful = false;
+      LogUtil.warn(LOG, ex,
+          "could not remove certificate from the publisher " + publisher.getIdent());
+    }
+
+    if (!successful) {
       X509Certificate cert = certToRemove.getCert();
       if (LOG.isErrorEnabled()) {
         LOG.error("removing certificate issuer='{}', serial={}, subject='{}' from publisher"
@@ -1348,15 +1377,9 @@ public class X509Ca implements Closeable {
             LogUtil.formatCsn(cert.getSerialNumber()),
             X509Util.getRfc4519Name(cert.getSubjectX500Principal()), publisher.getIdent());
       }
-    } // end for
-
-    if (!successful) {
-      return null;
     }
-
-    certstore.removeCert(caIdent, serialNumber);
-    return certToRemove;
-  } // method removeCertificate0
+    return successful;
+  } // method publishCertRemoved
 
   private CertWithRevocationInfo revokeCertificate0(BigInteger serialNumber, CrlReason reason,
       Date invalidityTime, boolean force, AuditEvent event) throws OperationException {
@@ -1641,37 +1664,42 @@ public class X509Ca implements Closeable {
     List<CertificateInfo> certInfos = new ArrayList<>(n);
     OperationExceptionWithIndex exception = null;
 
-    for (int i = 0; i < n; i++) {
-      if (exception != null) {
-        break;
+    ExecutorService executor = caManager.getEnrollmentExecutor();
+    if (n > 1 && executor != null && isParallelizable(gcts)) {
+      List<Future<CertificateInfo>> futures = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        final int index = i;
+        final GrantedCertTemplate gct = gcts.get(i);
+        futures.add(executor.submit(
+            () -> generateCert(index, gct, requestor, reqType, transactionId, msgId)));
       }
-      GrantedCertTemplate gct = gcts.get(i);
-      final NameId certprofilIdent = gct.certprofile.getIdent();
-      final String subjectText = gct.grantedSubjectText;
-      LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
-          caIdent.getName(), certprofilIdent.getName(), subjectText);
 
-      boolean successful = false;
-      try {
-        CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
-        successful = true;
-        certInfos.add(certInfo);
-
-        if (LOG.isInfoEnabled()) {
-          String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
-          CertWithDbId cert = certInfo.getCert();
-          LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
-              prefix, caIdent.getName(), certprofilIdent.getName(), cert.getSubject(),
-              LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+      // wait for all tasks, so that all generated certificates can be reverted on error
+      for (int i = 0; i < n; i++) {
+        try {
+          certInfos.add(futures.get(i).get());
+        } catch (ExecutionException ex) {
+          if (exception == null) {
+            Throwable cause = ex.getCause();
+            exception = (cause instanceof OperationExceptionWithIndex)
+                ? (OperationExceptionWithIndex) cause
+                : new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, cause));
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          if (exception == null) {
+            exception = new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE,
+                "interrupted while waiting for the certificate generation"));
+          }
         }
-      } catch (OperationException ex) {
-        exception = new OperationExceptionWithIndex(i, ex);
-      } catch (Throwable th) {
-        exception = new OperationExceptionWithIndex(i, new OperationException(SYSTEM_FAILURE, th));
-      } finally {
-        if (!successful) {
-          LOG.warn("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
-              caIdent.getName(), certprofilIdent.getName(), subjectText);
+      }
+    } else {
+      for (int i = 0; i < n; i++) {
+        try {
+          certInfos.add(generateCert(i, gcts.get(i), requestor, reqType, transactionId, msgId));
+        } catch (OperationExceptionWithIndex ex) {
+          exception = ex;
+          break;
         }
       }
     }
@@ -1696,6 +1724,59 @@ public class X509Ca implements Closeable {
     return certInfos;
   }
 
+  /**
+   * Returns whether the certificates of the given templates can be generated in parallel.
+   * Templates with the same public key or subject are generated sequentially, so that the
+   * duplicate-key and duplicate-subject checks behave as for the single requests.
+   */
+  private boolean isParallelizable(List<GrantedCertTemplate> gcts) {
+    Set<Long> fpPublicKeys = new HashSet<>();
+    Set<Long> fpSubjects = new HashSet<>();
+    for (GrantedCertTemplate gct : gcts) {
+      if (!caInfo.isDuplicateKeyPermitted() && !fpPublicKeys.add(gct.fpPublicKey)) {
+        return false;
+      }
+
+      if (!caInfo.isDuplicateSubjectPermitted() && !fpSubjects.add(gct.fpSubject)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private CertificateInfo generateCert(int index, GrantedCertTemplate gct,
+      RequestorInfo requestor, RequestType reqType, byte[] transactionId, String msgId)
+      throws OperationExceptionWithIndex {
+    final NameId certprofilIdent = gct.certprofile.getIdent();
+    final String subjectText = gct.grantedSubjectText;
+    LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'",
+        caIdent.getName(), certprofilIdent.getName(), subjectText);
+
+    boolean successful = false;
+    try {
+      CertificateInfo certInfo = generateCert(gct, requestor, reqType, transactionId, msgId);
+      successful = true;
+
+      if (LOG.isInfoEnabled()) {
+        String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
+        CertWithDbId cert = certInfo.getCert();
+        LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
+            prefix, caIdent.getName(), certprofilIdent.getName(), cert.getSubject(),
+            LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+      }
+      return certInfo;
+    } catch (OperationException ex) {
+      throw new OperationExceptionWithIndex(index, ex);
+    } catch (Throwable th) {
+      throw new OperationExceptionWithIndex(index, new OperationException(SYSTEM_FAILURE, th));
+    } finally {
+      if (!successful) {
+        LOG.warn("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
+            caIdent.getName(), certprofilIdent.getName(), subjectText);
+      }
+    }
+  }
+
   public CertificateInfo generateCert(CertTemplateData certTemplate, RequestorInfo requestor,
       RequestType reqType, byte[] transactionId, String msgId) throws OperationException {
     Args.notNull(certTemplate, "certTemplate");
@@ -2273,6 +2354,16 @@ public class X509Ca implements Closeable {
       return null;
     }
 
+    // encode the certificate only once, and compare it with the stored encoded certificates
+    // of the requestors.
+    byte[] encodedRequestorCert;
+    try {
+      encodedRequestorCert = requestorCert.getEncoded();
+    } catch (CertificateEncodingException ex) {
+      LogUtil.warn(LOG, ex, "could not encode requestor certificate");
+      return null;
+    }
+
     for (MgmtEntry.CaHasRequestor m : requestorEntries) {
       RequestorEntryWrapper entry =
           caManager.getRequestorWrapper(m.getRequestorIdent().getName());
@@ -2280,8 +2371,10 @@ public class X509Ca implements Closeable {
         continue;
       }
 
-      if (entry.getCert().getCert().equals(requestorCert)) {
-        return new CmpRequestorInfo(m, entry.getCert());
+      CertWithDbId cert = entry.getCert();
+      if (cert.getCert() == requestorCert
+          || Arrays.equals(cert.getEncodedCert(), encodedRequestorCert)) {
+        return new CmpRequestorInfo(m, cert);
       }
     }
 
@@ -2360,33 +2453,101 @@ public class X509Ca implements Closeable {
     final int numEntries = 100;
 
     final long expiredAt = expiredAtTime.getTime() / 1000;
+    final long startTime = System.currentTimeMillis();
 
     int sum = 0;
-    while (true) {
-      List<BigInteger> serials = certstore.getExpiredSerialNumbers(caIdent, expiredAt, numEntries);
-      if (CollectionUtil.isEmpty(serials)) {
-        return sum;
-      }
-
-      for (BigInteger serial : serials) {
-        // do not delete CA's own certificate
-        if ((caInfo.isSelfSigned() && caInfo.getSerialNumber().equals(serial))) {
-          continue;
+    int processed = 0;
+    try {
+      while (true) {
+        List<CertWithDbId> expiredCerts = certstore.getExpiredCerts(caIdent, expiredAt,
+            expiredCertsCheckpoint, numEntries);
+        if (CollectionUtil.isEmpty(expiredCerts)) {
+          // finished, the next run starts from the beginning.
+          expiredCertsCheckpoint = 0;
+          return sum;
         }
 
-        try {
-          if (removeCert(serial, msgId) != null) {
-            sum++;
+        List<CertWithDbId> certs = new ArrayList<>(expiredCerts.size());
+        for (CertWithDbId cert : expiredCerts) {
+          // do not delete CA's own certificate
+          if ((caInfo.isSelfSigned()
+              && caInfo.getSerialNumber().equals(cert.getCert().getSerialNumber()))) {
+            continue;
           }
-        } catch (OperationException ex) {
-          LOG.info("removed {} expired certificates of CA {}", sum, caIdent.getName());
-          LogUtil.error(LOG, ex, "could not remove expired certificate with serial" + serial);
-          throw ex;
+          certs.add(cert);
         }
-      } // end for
-    } // end while (true)
+
+        sum += removeCerts(certs);
+        expiredCertsCheckpoint = expiredCerts.get(expiredCerts.size() - 1).getCertId();
+
+        processed += expiredCerts.size();
+        throttleHousekeeping(startTime, processed);
+      } // end while (true)
+    } finally {
+      event.addEventData(CaAuditConstants.NAME_num, sum);
+    }
   } // method removeExpirtedCerts
 
+  /**
+   * Removes the given certificates. The removal is published to the publishers in bulk, and
+   * the certificates are deleted from the database in one JDBC batch. If a publisher could
+   * not handle the bulk removal, the certificates are published to it one by one, and only
+   * the certificates accepted by it are deleted.
+   */
+  private int removeCerts(List<CertWithDbId> certs) throws OperationException {
+    if (certs.isEmpty()) {
+      return 0;
+    }
+
+    List<IdentifiedCertPublisher> failedPublishers = new LinkedList<>();
+    for (IdentifiedCertPublisher publisher : publishers()) {
+      boolean singleSuccessful;
+      try {
+        singleSuccessful = publisher.certificatesRemoved(caCert, certs);
+      } catch (RuntimeException ex) {
+        singleSuccessful = false;
+        LogUtil.warn(LOG, ex,
+            "could not remove certificates from the publisher " + publisher.getIdent());
+      }
+
+      if (!singleSuccessful) {
+        failedPublishers.add(publisher);
+      }
+    }
+
+    List<Long> certIds = new ArrayList<>(certs.size());
+    for (CertWithDbId cert : certs) {
+      boolean successful = true;
+      // the publishers which have handled the bulk removal are not invoked again.
+      for (IdentifiedCertPublisher publisher : failedPublishers) {
+        successful &= publishCertRemoved(publisher, cert);
+      }
+
+      if (successful) {
+        certIds.add(cert.getCertId());
+      }
+    }
+
+    certstore.removeCerts(certIds);
+    return certIds.size();
+  } // method removeCerts
+
+  private void throttleHousekeeping(long startTime, int processed) {
+    int maxRate = caManager.getHousekeepingMaxRate();
+    if (maxRate < 1) {
+      return;
+    }
+
+    long sleepMs = processed * 1000L / maxRate - (System.currentTimeMillis() - startTime);
+    if (sleepMs > 0) {
+      try {
+        Thread.sleep(sleepMs);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  } // method throttleHousekeeping
+
   private int revokeSuspendedCerts(String msgId) throws OperationException {
     LOG.debug("revoking suspended certificates");
     AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_revoke_suspendedCert, msgId);
@@ -2428,28 +2589,41 @@ public class X509Ca implements Closeable {
     final long latestLastUpdatedAt = (System.currentTimeMillis() - ms) / 1000; // seconds
     final CrlReason reason = caInfo.revokeSuspendedCertsControl().getTargetReason();
 
+    final long startTime = System.currentTimeMillis();
+
     int sum = 0;
-    while (true) {
-      List<BigInteger> serials = certstore.getSuspendedCertSerials(caIdent,
-          latestLastUpdatedAt, numEntries);
-      if (CollectionUtil.isEmpty(serials)) {
-        return sum;
-      }
+    int processed = 0;
+    try {
+      while (true) {
+        List<SerialWithId> serials = certstore.getSuspendedCerts(caIdent,
+            latestLastUpdatedAt, suspendedCertsCheckpoint, numEntries);
+        if (CollectionUtil.isEmpty(serials)) {
+          // finished, the next run starts from the beginning.
+          suspendedCertsCheckpoint = 0;
+          return sum;
+        }
 
-      for (BigInteger serial : serials) {
-        boolean revoked = false;
-        try {
-          revoked = revokeSuspendedCert(serial, reason, msgId) != null;
-          if (revoked) {
-            sum++;
-          }
-        } catch (OperationException ex) {
-          LOG.info("revoked {} suspended certificates of CA {}", sum, caIdent.getName());
-          LogUtil.error(LOG, ex, "could not revoke suspended certificate with serial" + serial);
-          throw ex;
-        } // end try
-      } // end for
-    } // end while (true)
+        for (SerialWithId serial : serials) {
+          boolean revoked = false;
+          try {
+            revoked = revokeSuspendedCert(serial.getSerial(), reason, msgId) != null;
+            if (revoked) {
+              sum++;
+            }
+          } catch (OperationException ex) {
+            LogUtil.error(LOG, ex, "could not revoke suspended certificate with serial"
+                + LogUtil.formatCsn(serial.getSerial()));
+            throw ex;
+          } // end try
+          suspendedCertsCheckpoint = serial.getId();
+        } // end for
+
+        processed += serials.size();
+        throttleHousekeeping(startTime, processed);
+      } // end while (true)
+    } finally {
+      event.addEventData(CaAuditConstants.NAME_num, sum);
+    }
   } // method removeExpirtedCerts
 
   public HealthCheckResult healthCheck() {
@@ -2475,6 +2649,10 @@ public class X509Ca implements Closeable {
     HealthCheckResult databaseHealth = new HealthCheckResult();
     databaseHealth.setName("Database");
     databaseHealth.setHealthy(databaseHealthy);
+    Map<String, Object> databaseStatistics = certstore.getDatabaseStatistics();
+    if (databaseStatistics != null) {
+      databaseHealth.getStatuses().putAll(databaseStatistics);
+    }
     result.addChildCheck(databaseHealth);
 
     SignerEntryWrapper crlSigner = getCrlSigner();
@@ -331,6 +331,11 @@ abstract class BaseCmpResponder {
     return bytes;
   }
 
+  protected ContentVerifierProvider getVerifierProvider(X509Certificate requestorCert)
+      throws InvalidKeyException {
+    return securityFactory.getContentVerifierProvider(requestorCert);
+  }
+
   private ProtectionVerificationResult verifyProtection(String tid, GeneralPKIMessage pkiMessage,
       CmpControl cmpControl) throws CMPException, InvalidKeyException, OperatorCreationException {
     ProtectedPKIMessage protectedMsg = new ProtectedPKIMessage(pkiMessage);
@@ -395,7 +400,7 @@ abstract class BaseCmpResponder {
         return new ProtectionVerificationResult(null, ProtectionResult.SENDER_NOT_AUTHORIZED);
       }
 
-      ContentVerifierProvider verifierProvider = securityFactory.getContentVerifierProvider(
+      ContentVerifierProvider verifierProvider = getVerifierProvider(
           requestor.getCert().getCert());
       if (verifierProvider == null) {
         LOG.warn("tid={}: not authorized requestor '{}'", tid, sender);
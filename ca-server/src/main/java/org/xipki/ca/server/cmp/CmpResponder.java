@@ -38,6 +38,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import javax.crypto.Cipher;
@@ -223,6 +228,8 @@ public class CmpResponder extends BaseCmpResponder {
 
   private final CaManagerImpl caManager;
 
+  private final ScheduledFuture<?> pendingPoolCleaner;
+
   static {
     KNOWN_GENMSG_IDS.add(CMPObjectIdentifiers.it_currentCRL.getId());
     KNOWN_GENMSG_IDS.add(ObjectIdentifiers.id_xipki_cmp_cmpGenmsg.getId());
@@ -287,9 +294,17 @@ public class CmpResponder extends BaseCmpResponder {
     this.pendingCertPool = new PendingCertificatePool();
     this.caName = caName;
 
-    PendingPoolCleaner pendingPoolCleaner = new PendingPoolCleaner();
-    caManager.getScheduledThreadPoolExecutor().scheduleAtFixedRate(pendingPoolCleaner, 10, 10,
-        TimeUnit.MINUTES);
+    // the cleaner visits only the timed-out entries, hence it is cheap to run it frequently.
+    this.pendingPoolCleaner = caManager.getScheduledThreadPoolExecutor().scheduleAtFixedRate(
+        new PendingPoolCleaner(), 1, 1, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Stops the cleaner of the pending certificates. Must be called if this responder is no
+   * longer used.
+   */
+  public void close() {
+    pendingPoolCleaner.cancel(false);
   }
 
   public X509Ca getCa() {
@@ -506,217 +521,230 @@ public class CmpResponder extends BaseCmpResponder {
 
     boolean kup = (request.getBody().getType() == PKIBody.TYPE_KEY_UPDATE_REQ);
 
+    List<CompletableFuture<Boolean>> popoVerifications =
+        verifyPopos(certReqMsgs, tmpRequestor.isRa());
+
     // pre-process requests
-    for (int i = 0; i < n; i++) {
-      if (cmpControl.isGroupEnroll() && certTemplateDatas.size() != i) {
-        // last certReqMsg cannot be used to enroll certificate
-        break;
-      }
+    try {
+      for (int i = 0; i < n; i++) {
+        if (cmpControl.isGroupEnroll() && certTemplateDatas.size() != i) {
+          // last certReqMsg cannot be used to enroll certificate
+          break;
+        }
 
-      CertReqMsg reqMsg = certReqMsgs[i];
-      ASN1Integer certReqId = reqMsg.getCertReq().getCertReqId();
-      CertificateRequestMessage req = new CertificateRequestMessage(reqMsg);
-      CertTemplate certTemp = req.getCertTemplate();
+        if (i > 0) {
+          // the POPO of the previous certReqMsg is not needed if it has been rejected.
+          cancel(popoVerifications.get(i - 1));
+        }
 
-      CmpUtf8Pairs keyvalues = CmpUtil.extract(reqMsg.getRegInfo());
+        CertReqMsg reqMsg = certReqMsgs[i];
+        ASN1Integer certReqId = reqMsg.getCertReq().getCertReqId();
+        CertificateRequestMessage req = new CertificateRequestMessage(reqMsg);
+        CertTemplate certTemp = req.getCertTemplate();
 
-      SubjectPublicKeyInfo publicKey = certTemp.getPublicKey();
-      X500Name subject = certTemp.getSubject();
-      Extensions extensions = certTemp.getExtensions();
+        CmpUtf8Pairs keyvalues = CmpUtil.extract(reqMsg.getRegInfo());
 
-      String certprofileName = (keyvalues == null) ? null
-          : keyvalues.value(CmpUtf8Pairs.KEY_CERTPROFILE);
-      if (certprofileName == null) {
-        certprofileName = dfltCertprofileName;
-      }
+        SubjectPublicKeyInfo publicKey = certTemp.getPublicKey();
+        X500Name subject = certTemp.getSubject();
+        Extensions extensions = certTemp.getExtensions();
 
-      if (certprofileName != null) {
-        certprofileName = certprofileName.toLowerCase();
-      }
+        String certprofileName = (keyvalues == null) ? null
+            : keyvalues.value(CmpUtf8Pairs.KEY_CERTPROFILE);
+        if (certprofileName == null) {
+          certprofileName = dfltCertprofileName;
+        }
 
-      String tmpStr = (keyvalues == null) ? null
-          : keyvalues.value(CmpUtf8Pairs.KEY_CA_GENERATE_KEYPAIR);
-      boolean caGenerateKeypair;
-      if (dfltCaGenKeypair == null) {
-        caGenerateKeypair = (tmpStr == null) ? false : "true".equalsIgnoreCase(tmpStr);
-      } else {
-        caGenerateKeypair = (tmpStr == null) ? dfltCaGenKeypair : "true".equalsIgnoreCase(tmpStr);
-      }
+        if (certprofileName != null) {
+          certprofileName = certprofileName.toLowerCase();
+        }
 
-      if (kup) {
-        // Till BC v1.60, the regCtl-oldCertID will be ignored by calling
-        // req.getControl(CMPObjectIdentifiers.regCtrl_oldCertID);
-        Controls controls = reqMsg.getCertReq().getControls();
-        AttributeTypeAndValue oldCertIdAtv = null;
-        if (controls != null) {
-          ASN1Sequence seq;
-          try {
-            seq = ASN1Sequence.getInstance(controls.getEncoded());
-          } catch (IOException ex) {
-            certResponses.add(
-                buildErrorCertResponse(certReqId, PKIFailureInfo.systemFailure,
-                    "could not parse the controls"));
-            continue;
-          }
+        String tmpStr = (keyvalues == null) ? null
+            : keyvalues.value(CmpUtf8Pairs.KEY_CA_GENERATE_KEYPAIR);
+        boolean caGenerateKeypair;
+        if (dfltCaGenKeypair == null) {
+          caGenerateKeypair = (tmpStr == null) ? false : "true".equalsIgnoreCase(tmpStr);
+        } else {
+          caGenerateKeypair = (tmpStr == null) ? dfltCaGenKeypair : "true".equalsIgnoreCase(tmpStr);
+        }
 
-          final int seqSize = seq.size();
+        if (kup) {
+          // Till BC v1.60, the regCtl-oldCertID will be ignored by calling
+          // req.getControl(CMPObjectIdentifiers.regCtrl_oldCertID);
+          Controls controls = reqMsg.getCertReq().getControls();
+          AttributeTypeAndValue oldCertIdAtv = null;
+          if (controls != null) {
+            ASN1Sequence seq;
+            try {
+              seq = ASN1Sequence.getInstance(controls.getEncoded());
+            } catch (IOException ex) {
+              certResponses.add(
+                  buildErrorCertResponse(certReqId, PKIFailureInfo.systemFailure,
+                      "could not parse the controls"));
+              continue;
+            }
 
-          for (int j = 0; j < seqSize; j++) {
-            AttributeTypeAndValue atv = AttributeTypeAndValue.getInstance(seq.getObjectAt(j));
-            if (atv.getType().equals(CMPObjectIdentifiers.regCtrl_oldCertID)) {
-              oldCertIdAtv = atv;
-              break;
+            final int seqSize = seq.size();
+
+            for (int j = 0; j < seqSize; j++) {
+              AttributeTypeAndValue atv = AttributeTypeAndValue.getInstance(seq.getObjectAt(j));
+              if (atv.getType().equals(CMPObjectIdentifiers.regCtrl_oldCertID)) {
+                oldCertIdAtv = atv;
+                break;
+              }
             }
           }
-        }
 
-        if (oldCertIdAtv == null) {
-          certResponses.add(
-              buildErrorCertResponse(certReqId, PKIFailureInfo.badCertTemplate,
-                  "no getCtrl oldCertID is specified"));
-          continue;
-        }
+          if (oldCertIdAtv == null) {
+            certResponses.add(
+                buildErrorCertResponse(certReqId, PKIFailureInfo.badCertTemplate,
+                    "no getCtrl oldCertID is specified"));
+            continue;
+          }
 
-        CertId oldCertId = CertId.getInstance(oldCertIdAtv.getValue());
+          CertId oldCertId = CertId.getInstance(oldCertIdAtv.getValue());
 
-        if (GeneralName.directoryName != oldCertId.getIssuer().getTagNo()) {
-          certResponses.add(
-              buildErrorCertResponse(certReqId, PKIFailureInfo.badCertId,
-                  "invalid regCtrl oldCertID"));
-          continue;
-        }
+          if (GeneralName.directoryName != oldCertId.getIssuer().getTagNo()) {
+            certResponses.add(
+                buildErrorCertResponse(certReqId, PKIFailureInfo.badCertId,
+                    "invalid regCtrl oldCertID"));
+            continue;
+          }
 
-        X500Name issuer = X500Name.getInstance(oldCertId.getIssuer().getName());
-        BigInteger serialNumber = oldCertId.getSerialNumber().getValue();
-        CertWithRevocationInfo oldCert;
-        try {
-          oldCert = caManager.getCert(issuer, serialNumber);
-        } catch (CaMgmtException ex) {
-          certResponses.add(
-              buildErrorCertResponse(certReqId, PKIFailureInfo.systemFailure,
-                  "error while finding certificate with the issuer " + issuer
-                  + "and serial number " + serialNumber));
-          continue;
-        }
+          X500Name issuer = X500Name.getInstance(oldCertId.getIssuer().getName());
+          BigInteger serialNumber = oldCertId.getSerialNumber().getValue();
+          CertWithRevocationInfo oldCert;
+          try {
+            oldCert = caManager.getCert(issuer, serialNumber);
+          } catch (CaMgmtException ex) {
+            certResponses.add(
+                buildErrorCertResponse(certReqId, PKIFailureInfo.systemFailure,
+                    "error while finding certificate with the issuer " + issuer
+                    + "and serial number " + serialNumber));
+            continue;
+          }
 
-        if (oldCert == null) {
-          certResponses.add(
-              buildErrorCertResponse(certReqId, PKIFailureInfo.badCertId,
-                  "found no certificate with the issuer " + issuer
-                  + "and serial number " + serialNumber));
-          continue;
-        }
+          if (oldCert == null) {
+            certResponses.add(
+                buildErrorCertResponse(certReqId, PKIFailureInfo.badCertId,
+                    "found no certificate with the issuer " + issuer
+                    + "and serial number " + serialNumber));
+            continue;
+          }
 
-        if (oldCert.isRevoked()) {
-          certResponses.add(
-              buildErrorCertResponse(certReqId, PKIFailureInfo.certRevoked,
-                  "could not update a revoked certificate with the issuer " + issuer
-                  + "and serial number " + serialNumber));
-          continue;
-        }
+          if (oldCert.isRevoked()) {
+            certResponses.add(
+                buildErrorCertResponse(certReqId, PKIFailureInfo.certRevoked,
+                    "could not update a revoked certificate with the issuer " + issuer
+                    + "and serial number " + serialNumber));
+            continue;
+          }
 
-        if (certprofileName == null) {
-          certprofileName = oldCert.getCertprofile();
-        }
-        if (certprofileName == null) {
-          LOG.warn("no certprofile is specified");
-          certResponses.add(buildErrorCertResponse(
-                              certReqId, PKIFailureInfo.badCertTemplate, "no certificate profile"));
-          continue;
-        }
+          if (certprofileName == null) {
+            certprofileName = oldCert.getCertprofile();
+          }
+          if (certprofileName == null) {
+            LOG.warn("no certprofile is specified");
+            certResponses.add(buildErrorCertResponse(
+                certReqId, PKIFailureInfo.badCertTemplate, "no certificate profile"));
+            continue;
+          }
 
-        if (subject == null) {
-          subject = oldCert.getCert().getSubjectAsX500Name();
-        }
+          if (subject == null) {
+            subject = oldCert.getCert().getSubjectAsX500Name();
+          }
 
-        if (publicKey == null && !caGenerateKeypair) {
-          publicKey = oldCert.getCert().getCertHolder().getSubjectPublicKeyInfo();
-        }
+          if (publicKey == null && !caGenerateKeypair) {
+            publicKey = oldCert.getCert().getCertHolder().getSubjectPublicKeyInfo();
+          }
 
-        // extensions
-        Map<String, Extension> extns = new HashMap<>();
-        if (extensions != null) {
-          // add all requested extensions
-          ASN1ObjectIdentifier[] oids = extensions.getExtensionOIDs();
-          for (ASN1ObjectIdentifier oid : oids) {
-            extns.put(oid.getId(), extensions.getExtension(oid));
+          // extensions
+          Map<String, Extension> extns = new HashMap<>();
+          if (extensions != null) {
+            // add all requested extensions
+            ASN1ObjectIdentifier[] oids = extensions.getExtensionOIDs();
+            for (ASN1ObjectIdentifier oid : oids) {
+              extns.put(oid.getId(), extensions.getExtension(oid));
+            }
           }
-        }
 
-        // extract extensions from the certificate
-        Extensions oldExtensions = oldCert.getCert().getCertHolder().getExtensions();
-        ASN1ObjectIdentifier[] oldOids = oldExtensions.getExtensionOIDs();
-        for (ASN1ObjectIdentifier oid : oldOids) {
-          String id = oid.getId();
-          if (! (extns.containsKey(id) || kupCertExtnIds.contains(id))) {
-            extns.put(id, oldExtensions.getExtension(oid));
+          // extract extensions from the certificate
+          Extensions oldExtensions = oldCert.getCert().getCertHolder().getExtensions();
+          ASN1ObjectIdentifier[] oldOids = oldExtensions.getExtensionOIDs();
+          for (ASN1ObjectIdentifier oid : oldOids) {
+            String id = oid.getId();
+            if (! (extns.containsKey(id) || kupCertExtnIds.contains(id))) {
+              extns.put(id, oldExtensions.getExtension(oid));
+            }
           }
-        }
 
-        extensions = new Extensions(extns.values().toArray(new Extension[0]));
-      } else {
-        if (certprofileName == null) {
-          LOG.warn("no certprofile is specified");
-          certResponses.add(buildErrorCertResponse(
-                              certReqId, PKIFailureInfo.badCertTemplate, "no certificate profile"));
-          continue;
+          extensions = new Extensions(extns.values().toArray(new Extension[0]));
+        } else {
+          if (certprofileName == null) {
+            LOG.warn("no certprofile is specified");
+            certResponses.add(buildErrorCertResponse(
+                certReqId, PKIFailureInfo.badCertTemplate, "no certificate profile"));
+            continue;
+          }
         }
-      }
-
-      if (!tmpRequestor.isCertprofilePermitted(certprofileName)) {
-        String msg = "certprofile " + certprofileName + " is not allowed";
-        certResponses.add(buildErrorCertResponse(certReqId, PKIFailureInfo.notAuthorized, msg));
-        continue;
-      }
 
-      if (publicKey != null) {
-        if (!req.hasProofOfPossession()) {
-          certResponses.add(buildErrorCertResponse(certReqId, PKIFailureInfo.badPOP, "no POP"));
+        if (!tmpRequestor.isCertprofilePermitted(certprofileName)) {
+          String msg = "certprofile " + certprofileName + " is not allowed";
+          certResponses.add(buildErrorCertResponse(certReqId, PKIFailureInfo.notAuthorized, msg));
           continue;
         }
 
-        if (!verifyPopo(req, publicKey, tmpRequestor.isRa())) {
-          LOG.warn("could not validate POP for request {}", certReqId.getValue());
-          certResponses.add(buildErrorCertResponse(certReqId, PKIFailureInfo.badPOP,
-              "invalid POP"));
-          continue;
-        }
-      } else if (caGenerateKeypair) {
-        if (allowKeyGen) {
-          checkPermission(requestor, PermissionConstants.GEN_KEYPAIR);
+        if (publicKey != null) {
+          if (!req.hasProofOfPossession()) {
+            certResponses.add(buildErrorCertResponse(certReqId, PKIFailureInfo.badPOP, "no POP"));
+            continue;
+          }
+
+          if (!isPopoValid(popoVerifications.get(i), req, publicKey, tmpRequestor.isRa())) {
+            LOG.warn("could not validate POP for request {}", certReqId.getValue());
+            certResponses.add(buildErrorCertResponse(certReqId, PKIFailureInfo.badPOP,
+                "invalid POP"));
+            continue;
+          }
+        } else if (caGenerateKeypair) {
+          if (allowKeyGen) {
+            checkPermission(requestor, PermissionConstants.GEN_KEYPAIR);
+          } else {
+            LOG.warn("no public key is specified and key generation is not allowed {}",
+                certReqId.getValue());
+            certResponses.add(buildErrorCertResponse(certReqId, PKIFailureInfo.badCertTemplate,
+                "no public key"));
+            continue;
+          }
         } else {
-          LOG.warn("no public key is specified and key generation is not allowed {}",
-              certReqId.getValue());
+          LOG.warn("no public key is specified {}", certReqId.getValue());
           certResponses.add(buildErrorCertResponse(certReqId, PKIFailureInfo.badCertTemplate,
               "no public key"));
           continue;
         }
-      } else {
-        LOG.warn("no public key is specified {}", certReqId.getValue());
-        certResponses.add(buildErrorCertResponse(certReqId, PKIFailureInfo.badCertTemplate,
-            "no public key"));
-        continue;
-      }
 
-      OptionalValidity validity = certTemp.getValidity();
+        OptionalValidity validity = certTemp.getValidity();
 
-      Date notBefore = null;
-      Date notAfter = null;
-      if (validity != null) {
-        Time time = validity.getNotBefore();
-        if (time != null) {
-          notBefore = time.getDate();
-        }
-        time = validity.getNotAfter();
-        if (time != null) {
-          notAfter = time.getDate();
+        Date notBefore = null;
+        Date notAfter = null;
+        if (validity != null) {
+          Time time = validity.getNotBefore();
+          if (time != null) {
+            notBefore = time.getDate();
+          }
+          time = validity.getNotAfter();
+          if (time != null) {
+            notAfter = time.getDate();
+          }
         }
-      }
 
-      CertTemplateData certTempData = new CertTemplateData(subject, publicKey, notBefore, notAfter,
-          extensions, certprofileName, certReqId, caGenerateKeypair);
-      certTemplateDatas.add(certTempData);
-    } // end for
+        CertTemplateData certTempData = new CertTemplateData(subject, publicKey, notBefore,
+            notAfter, extensions, certprofileName, certReqId, caGenerateKeypair);
+        certTemplateDatas.add(certTempData);
+      } // end for
+    } finally {
+      // cancel the verifications which are still running after an early exit
+      cancel(popoVerifications);
+    }
 
     if (certResponses.size() == n) {
       // all error
@@ -1537,6 +1565,56 @@ public class CmpResponder extends BaseCmpResponder {
     return successful;
   } // method revokePendingCertificates
 
+  /**
+   * Starts the verification of the POPOs in parallel with the enrollment executor if more than
+   * one certReqMsg is contained.
+   * @return the verifications, the element is {@code null} if the POPO of the corresponding
+   *         certReqMsg is not verified in parallel.
+   */
+  private List<CompletableFuture<Boolean>> verifyPopos(CertReqMsg[] certReqMsgs,
+      boolean allowRaPopo) {
+    final int n = certReqMsgs.length;
+    ExecutorService executor = caManager.getEnrollmentExecutor();
+    List<CompletableFuture<Boolean>> verifications = new ArrayList<>(n);
+    for (CertReqMsg reqMsg : certReqMsgs) {
+      CertificateRequestMessage req = new CertificateRequestMessage(reqMsg);
+      SubjectPublicKeyInfo publicKey = req.getCertTemplate().getPublicKey();
+      if (n == 1 || executor == null || publicKey == null || !req.hasProofOfPossession()) {
+        verifications.add(null);
+      } else {
+        verifications.add(CompletableFuture.supplyAsync(
+            () -> verifyPopo(req, publicKey, allowRaPopo), executor));
+      }
+    }
+    return verifications;
+  } // method verifyPopos
+
+  private boolean isPopoValid(CompletableFuture<Boolean> verification,
+      CertificateRequestMessage certRequest, SubjectPublicKeyInfo spki, boolean allowRaPopo) {
+    if (verification == null) {
+      return verifyPopo(certRequest, spki, allowRaPopo);
+    }
+
+    try {
+      return verification.join();
+    } catch (CompletionException | CancellationException ex) {
+      LogUtil.error(LOG, ex, "could not verify POP");
+      return false;
+    }
+  }
+
+  private static void cancel(List<CompletableFuture<Boolean>> verifications) {
+    for (CompletableFuture<Boolean> verification : verifications) {
+      cancel(verification);
+    }
+  }
+
+  private static void cancel(CompletableFuture<Boolean> verification) {
+    if (verification != null) {
+      verification.cancel(false);
+    }
+  }
+
   private boolean verifyPopo(CertificateRequestMessage certRequest, SubjectPublicKeyInfo spki,
       boolean allowRaPopo) {
     int popType = certRequest.getProofOfPossessionType();
@@ -1567,7 +1645,9 @@ public class CmpResponder extends BaseCmpResponder {
 
     try {
       PublicKey publicKey = securityFactory.generatePublicKey(spki);
-      ContentVerifierProvider cvp = securityFactory.getContentVerifierProvider(publicKey);
+      // the key to be certified is seldom reused, use the cache only if already contained
+      ContentVerifierProvider cvp =
+          caManager.getVerifierProviderCache().get(publicKey, false);
       return certRequest.isValidSigningKeyPOP(cvp);
     } catch (InvalidKeyException | IllegalStateException | CRMFException ex) {
       LogUtil.error(LOG, ex);
@@ -1575,6 +1655,12 @@ public class CmpResponder extends BaseCmpResponder {
     return false;
   } // method verifyPopo
 
+  @Override
+  protected ContentVerifierProvider getVerifierProvider(X509Certificate requestorCert)
+      throws InvalidKeyException {
+    return caManager.getVerifierProviderCache().get(requestorCert);
+  }
+
   @Override
   protected CmpControl getCmpControl() {
     return getCa().getCmpControl();
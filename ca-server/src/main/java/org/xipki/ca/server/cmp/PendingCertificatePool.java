@@ -19,26 +19,31 @@ package org.xipki.ca.server.cmp;
 
 import java.math.BigInteger;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
 
 import org.xipki.ca.api.CertificateInfo;
 import org.xipki.security.HashAlgo;
-import org.xipki.util.CollectionUtil;
 import org.xipki.util.Hex;
 import org.xipki.util.Args;
 
 /**
- * TODO.
+ * Pool of the certificates waiting for the certConf message. The entries are held in
+ * a concurrent map, and the timed-out entries are swept in the order of their deadlines,
+ * so that neither the CMP requests nor the cleaner serialise on a single lock.
+ *
  * @author Lijun Liao
  * @since 2.0.0
  */
 
 class PendingCertificatePool {
 
-  private static class MyEntry {
+  private static class MyEntry implements Comparable<MyEntry> {
+
+    private final String hexTid;
 
     private final BigInteger certReqId;
 
@@ -48,13 +53,20 @@ class PendingCertificatePool {
 
     private final byte[] certHash;
 
-    MyEntry(BigInteger certReqId, long waitForConfirmTill, CertificateInfo certInfo) {
+    MyEntry(String hexTid, BigInteger certReqId, long waitForConfirmTill,
+        CertificateInfo certInfo) {
+      this.hexTid = Args.notNull(hexTid, "hexTid");
       this.certReqId = Args.notNull(certReqId, "certReqId");
       this.certInfo = Args.notNull(certInfo, "certInfo");
       this.waitForConfirmTill = waitForConfirmTill;
       this.certHash = HashAlgo.SHA1.hash(certInfo.getCert().getEncodedCert());
     }
 
+    @Override
+    public int compareTo(MyEntry obj) {
+      return Long.compare(waitForConfirmTill, obj.waitForConfirmTill);
+    }
+
     @Override
     public int hashCode() {
       return certReqId.hashCode() + 961 * (int) waitForConfirmTill + 31 * certInfo.hashCode();
@@ -74,7 +86,13 @@ class PendingCertificatePool {
 
   } // class MyEntry
 
-  private final Map<String, Set<MyEntry>> map = new HashMap<>();
+  // transactionId (hex) -> (certReqId -> entry)
+  private final ConcurrentHashMap<String, Map<BigInteger, MyEntry>> map =
+      new ConcurrentHashMap<>();
+
+  // entries ordered by waitForConfirmTill. May contain entries already removed from the map,
+  // they will be dropped once their deadline is reached.
+  private final PriorityBlockingQueue<MyEntry> deadlines = new PriorityBlockingQueue<>();
 
   PendingCertificatePool() {
   }
@@ -88,15 +106,15 @@ class PendingCertificatePool {
     }
 
     String hexTid = Hex.encode(transactionId);
-    MyEntry myEntry = new MyEntry(certReqId, waitForConfirmTill, certInfo);
-    synchronized (map) {
-      Set<MyEntry> entries = map.get(hexTid);
+    MyEntry myEntry = new MyEntry(hexTid, certReqId, waitForConfirmTill, certInfo);
+    map.compute(hexTid, (tid, entries) -> {
       if (entries == null) {
-        entries = new HashSet<>();
-        map.put(hexTid, entries);
+        entries = new ConcurrentHashMap<>();
       }
-      entries.add(myEntry);
-    }
+      entries.put(certReqId, myEntry);
+      return entries;
+    });
+    deadlines.add(myEntry);
   }
 
   CertificateInfo removeCertificate(byte[] transactionId, BigInteger certReqId, byte[] certHash) {
@@ -105,75 +123,82 @@ class PendingCertificatePool {
     Args.notNull(certHash, "certHash");
 
     String hexTid = Hex.encode(transactionId);
-    MyEntry retEntry = null;
+    MyEntry[] retEntry = new MyEntry[1];
 
-    synchronized (map) {
-      Set<MyEntry> entries = map.get(hexTid);
-      if (entries == null) {
-        return null;
-      }
-
-      for (MyEntry entry : entries) {
-        if (certReqId.equals(entry.certReqId)) {
-          retEntry = entry;
-          break;
-        }
+    map.computeIfPresent(hexTid, (tid, entries) -> {
+      MyEntry entry = entries.get(certReqId);
+      retEntry[0] = entry;
+      if (entry != null && Arrays.equals(certHash, entry.certHash)) {
+        entries.remove(certReqId);
       }
+      return entries.isEmpty() ? null : entries;
+    });
 
-      if (retEntry != null) {
-        if (Arrays.equals(certHash, retEntry.certHash)) {
-          entries.remove(retEntry);
-
-          if (CollectionUtil.isEmpty(entries)) {
-            map.remove(hexTid);
-          }
-        }
-      }
-    }
-
-    return (retEntry == null) ? null : retEntry.certInfo;
+    return (retEntry[0] == null) ? null : retEntry[0].certInfo;
   }
 
   Set<CertificateInfo> removeCertificates(byte[] transactionId) {
     Args.notNull(transactionId, "transactionId");
 
-    String hexId = Hex.encode(transactionId);
-    Set<MyEntry> entries;
-    synchronized  (map) {
-      entries = map.remove(hexId);
-    }
-
+    Map<BigInteger, MyEntry> entries = map.remove(Hex.encode(transactionId));
     if (entries == null) {
       return null;
     }
 
     Set<CertificateInfo> ret = new HashSet<>();
-    for (MyEntry myEntry :entries) {
+    for (MyEntry myEntry : entries.values()) {
       ret.add(myEntry.certInfo);
     }
     return ret;
   }
 
+  /**
+   * Removes the certificates whose confirmation wait time has passed. Only the entries
+   * with reached deadline are visited.
+   *
+   * @return the removed certificates, or {@code null} if no certificate has been removed.
+   */
   Set<CertificateInfo> removeConfirmTimeoutedCertificates() {
-    synchronized (map) {
-      if (CollectionUtil.isEmpty(map)) {
-        return null;
+    long now = System.currentTimeMillis();
+    Set<CertificateInfo> ret = null;
+
+    while (true) {
+      MyEntry head = deadlines.peek();
+      if (head == null || head.waitForConfirmTill >= now) {
+        break;
       }
 
-      long now = System.currentTimeMillis();
+      MyEntry entry = deadlines.poll();
+      if (entry == null) {
+        break;
+      }
+
+      if (entry.waitForConfirmTill >= now) {
+        // polled an entry added concurrently with a later deadline, put it back
+        deadlines.add(entry);
+        break;
+      }
 
-      Set<CertificateInfo> ret = new HashSet<>();
+      boolean[] removed = new boolean[1];
+      map.computeIfPresent(entry.hexTid, (tid, entries) -> {
+        // compare by identity: if the certReqId has been added again, the entry in the map
+        // has its own deadline, the polled one is stale.
+        if (entries.get(entry.certReqId) == entry) {
+          entries.remove(entry.certReqId);
+          removed[0] = true;
+        }
+        return entries.isEmpty() ? null : entries;
+      });
 
-      for (String tid : map.keySet()) {
-        Set<MyEntry> entries = map.get(tid);
-        for (MyEntry entry : entries) {
-          if (entry.waitForConfirmTill < now) {
-            ret.add(entry.certInfo);
-          }
+      if (removed[0]) {
+        if (ret == null) {
+          ret = new HashSet<>();
         }
+        ret.add(entry.certInfo);
       }
-      return ret;
     }
+
+    return ret;
   }
 
 }
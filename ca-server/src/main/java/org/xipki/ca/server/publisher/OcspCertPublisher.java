@@ -22,7 +22,10 @@ import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509CRL;
 import java.sql.Connection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +67,8 @@ public class OcspCertPublisher extends CertPublisher {
 
   private DataSourceWrapper datasource;
 
+  private ScheduledThreadPoolExecutor changeLogCleaner;
+
   public OcspCertPublisher() {
   }
 
@@ -79,6 +84,10 @@ public class OcspCertPublisher extends CertPublisher {
     str = pairs.value("asyn");
     this.asyn = (str == null) ? false : Boolean.parseBoolean(str);
 
+    // required by the OCSP responders with serial filter
+    str = pairs.value("changelog.addedcerts");
+    boolean logAddedCerts = (str == null) ? false : Boolean.parseBoolean(str);
+
     ConfPairs confPairs = new ConfPairs(conf);
     String datasourceName = confPairs.value("datasource");
 
@@ -94,10 +103,16 @@ public class OcspCertPublisher extends CertPublisher {
     datasource = loadDatasource(datasourceName, datasourceConfFile, passwordResolver);
 
     try {
-      queryExecutor = new OcspStoreQueryExecutor(datasource, this.publishsGoodCert);
+      queryExecutor = new OcspStoreQueryExecutor(datasource, this.publishsGoodCert,
+          logAddedCerts);
     } catch (NoSuchAlgorithmException | DataAccessException ex) {
       throw new CertPublisherException(ex.getMessage(), ex);
     }
+
+    // remove the outdated entries of the table CHANGELOG once per hour
+    changeLogCleaner = new ScheduledThreadPoolExecutor(1);
+    changeLogCleaner.scheduleAtFixedRate(queryExecutor::removeOutdatedChangeLogs,
+        60, 3600, TimeUnit.SECONDS);
   } // method initialize
 
   private DataSourceWrapper loadDatasource(String datasourceName, String datasourceFile,
@@ -241,6 +256,18 @@ public class OcspCertPublisher extends CertPublisher {
     }
   }
 
+  @Override
+  public boolean certificatesRemoved(X509Cert issuerCert, List<CertWithDbId> certs) {
+    try {
+      queryExecutor.removeCerts(issuerCert, certs);
+      return true;
+    } catch (Exception ex) {
+      String issuerText = X509Util.getRfc4519Name(issuerCert.getCert().getIssuerX500Principal());
+      logAndAudit(issuerText, issuerCert, ex, "could not publish removal of certificates");
+      return false;
+    }
+  }
+
   @Override
   public boolean isAsyn() {
     return asyn;
@@ -253,6 +280,11 @@ public class OcspCertPublisher extends CertPublisher {
 
   @Override
   public void close() {
+    if (changeLogCleaner != null) {
+      changeLogCleaner.shutdownNow();
+      changeLogCleaner = null;
+    }
+
     if (datasource != null) {
       datasource.close();
     }
@@ -121,6 +121,20 @@ class OcspStoreQueryExecutor {
       "INSERT INTO CERT (ID,LUPDATE,SN,NBEFORE,NAFTER,REV,IID,HASH,SUBJECT) "
       + "VALUES (?,?,?,?,?,?,?,?,?)";
 
+  // the column ID is generated by the database
+  private static final String SQL_ADD_CHANGELOG =
+      "INSERT INTO CHANGELOG (IID,SN,OP,TIME) VALUES (?,?,?,?)";
+
+  // values of the column CHANGELOG.OP
+  private static final int OP_ADDED = 1;
+
+  private static final int OP_CHANGED = 2;
+
+  private static final String SQL_DELETE_CHANGELOG = "DELETE FROM CHANGELOG WHERE TIME<?";
+
+  // 1 day, in seconds
+  private static final long CHANGELOG_RETENTION = 24L * 60 * 60;
+
   private static final Logger LOG = LoggerFactory.getLogger(OcspStoreQueryExecutor.class);
 
   private final DataSourceWrapper datasource;
@@ -138,8 +152,12 @@ class OcspStoreQueryExecutor {
 
   private final HashAlgo certhashAlgo;
 
-  OcspStoreQueryExecutor(DataSourceWrapper datasource, boolean publishGoodCerts)
-      throws DataAccessException, NoSuchAlgorithmException {
+  private final boolean logChanges;
+
+  private final boolean logAddedCerts;
+
+  OcspStoreQueryExecutor(DataSourceWrapper datasource, boolean publishGoodCerts,
+      boolean logAddedCerts) throws DataAccessException, NoSuchAlgorithmException {
     this.datasource = Args.notNull(datasource, "datasource");
     this.issuerStore = initIssuerStore();
     this.publishGoodCerts = publishGoodCerts;
@@ -176,6 +194,13 @@ class OcspStoreQueryExecutor {
 
     str = variables.get("CERTHASH_ALGO");
     this.certhashAlgo = HashAlgo.getNonNullInstance(str);
+
+    // table CHANGELOG is not available in the databases created by older versions.
+    this.logChanges = datasource.tableExists(null, "CHANGELOG");
+    // the added certificates are only required by the OCSP responders with serial filter.
+    this.logAddedCerts = logChanges && logAddedCerts;
+    LOG.info("log changes of certificate status in table CHANGELOG: {}, added certificates: {}",
+        logChanges, this.logAddedCerts);
   } // constructor
 
   private IssuerStore initIssuerStore() throws DataAccessException {
@@ -224,6 +249,7 @@ class OcspStoreQueryExecutor {
 
     if (certRegisteredId != null) {
       updateRegisteredCert(certRegisteredId, revInfo);
+      logChange(issuerId, serialNumber, OP_CHANGED);
       return;
     }
 
@@ -285,6 +311,10 @@ class OcspStoreQueryExecutor {
     } finally {
       datasource.releaseResources(ps, null);
     }
+
+    if (logAddedCerts) {
+      logChange(issuerId, serialNumber, OP_ADDED);
+    }
   } // method addOrUpdateCert
 
   private void updateRegisteredCert(long registeredCertId, CertRevocationInfo revInfo)
@@ -376,6 +406,7 @@ class OcspStoreQueryExecutor {
       }
     }
 
+    logChange(issuerId, serialNumber, OP_CHANGED);
   } // method unrevokeCert
 
   void removeCert(X509Cert issuer, CertWithDbId cert) throws DataAccessException {
@@ -399,8 +430,40 @@ class OcspStoreQueryExecutor {
     } finally {
       datasource.releaseResources(ps, null);
     }
+
+    logChange(issuerId, cert.getCert().getSerialNumber(), OP_CHANGED);
   } // method removeCert
 
+  void removeCerts(X509Cert issuer, List<CertWithDbId> certs) throws DataAccessException {
+    Args.notNull(issuer, "issuer");
+    Args.notNull(certs, "certs");
+
+    Integer issuerId = issuerStore.getIdForCert(issuer.getEncodedCert());
+    if (issuerId == null || certs.isEmpty()) {
+      return;
+    }
+
+    final String sql = "DELETE FROM CERT WHERE IID=? AND SN=?";
+    PreparedStatement ps = datasource.prepareStatement(sql);
+
+    try {
+      for (CertWithDbId cert : certs) {
+        ps.setInt(1, issuerId);
+        ps.setString(2, cert.getCert().getSerialNumber().toString(16));
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+
+    for (CertWithDbId cert : certs) {
+      logChange(issuerId, cert.getCert().getSerialNumber(), OP_CHANGED);
+    }
+  } // method removeCerts
+
   void revokeCa(X509Cert caCert, CertRevocationInfo revInfo) throws DataAccessException {
     Args.notNull(caCert, "caCert");
     Args.notNull(revInfo, "revInfo");
@@ -418,6 +481,8 @@ class OcspStoreQueryExecutor {
     } finally {
       datasource.releaseResources(ps, null);
     }
+
+    logChange(issuerId, null, OP_CHANGED);
   } // method revokeCa
 
   void unrevokeCa(X509Cert caCert) throws DataAccessException {
@@ -434,8 +499,73 @@ class OcspStoreQueryExecutor {
     } finally {
       datasource.releaseResources(ps, null);
     }
+
+    logChange(issuerId, null, OP_CHANGED);
   } // method unrevokeCa
 
+  /**
+   * Records the change in the table CHANGELOG, so that the OCSP responders can invalidate
+   * their cached responses and update their filters of known serial numbers.
+   *
+   * @param issuerId
+   *          Database id of the issuer.
+   * @param serialNumber
+   *          Serial number of the certificate, {@code null} for all certificates of the issuer.
+   * @param op
+   *          {@link #OP_ADDED} or {@link #OP_CHANGED}.
+   */
+  private void logChange(int issuerId, BigInteger serialNumber, int op)
+      throws DataAccessException {
+    if (!logChanges) {
+      return;
+    }
+
+    final String sql = SQL_ADD_CHANGELOG;
+    PreparedStatement ps = datasource.prepareStatement(sql);
+    try {
+      int idx = 1;
+      ps.setInt(idx++, issuerId);
+      if (serialNumber == null) {
+        ps.setNull(idx++, Types.VARCHAR);
+      } else {
+        ps.setString(idx++, serialNumber.toString(16));
+      }
+      ps.setInt(idx++, op);
+      ps.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+      ps.executeUpdate();
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method logChange
+
+  /**
+   * Removes the entries of the table CHANGELOG older than one day, the OCSP responders have
+   * read them long before.
+   */
+  void removeOutdatedChangeLogs() {
+    if (!logChanges) {
+      return;
+    }
+
+    final String sql = SQL_DELETE_CHANGELOG;
+    PreparedStatement ps = null;
+    try {
+      ps = datasource.prepareStatement(sql);
+      ps.setLong(1, System.currentTimeMillis() / 1000 - CHANGELOG_RETENTION);
+      int num = ps.executeUpdate();
+      LOG.info("removed {} outdated entries from CHANGELOG", num);
+    } catch (SQLException ex) {
+      LogUtil.warn(LOG, datasource.translate(sql, ex),
+          "could not remove outdated entries from CHANGELOG");
+    } catch (DataAccessException ex) {
+      LogUtil.warn(LOG, ex, "could not remove outdated entries from CHANGELOG");
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method removeOutdatedChangeLogs
+
   private int getIssuerId(X509Cert issuerCert) throws DataAccessException {
     Args.notNull(issuerCert, "issuerCert");
     Integer id = issuerStore.getIdForCert(issuerCert.getEncodedCert());
@@ -37,10 +37,13 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.DEROctetString;
@@ -71,6 +74,7 @@ import org.xipki.ca.server.SerialWithId;
 import org.xipki.ca.server.UniqueIdGenerator;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.datasource.SqlMetrics;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
 import org.xipki.security.FpIdCalculator;
@@ -81,6 +85,7 @@ import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
 import org.xipki.util.LogUtil;
+import org.xipki.util.LongBloomFilter;
 import org.xipki.util.LruCache;
 import org.xipki.util.StringUtil;
 
@@ -92,6 +97,24 @@ import org.xipki.util.StringUtil;
 
 public class CertStore {
 
+  /**
+   * Filters of the public key and subject fingerprints of the certificates issued by one CA.
+   */
+  private static class FpFilter {
+
+    private final LongBloomFilter keys;
+
+    private final LongBloomFilter subjects;
+
+    private volatile boolean ready;
+
+    FpFilter(long expectedEntries) {
+      this.keys = new LongBloomFilter(expectedEntries);
+      this.subjects = new LongBloomFilter(expectedEntries);
+    }
+
+  } // class FpFilter
+
   private static final Logger LOG = LoggerFactory.getLogger(CertStore.class);
 
   private static final String SQL_ADD_CERT =
@@ -131,6 +154,10 @@ public class CertStore {
 
   private static final String SQL_REMOVE_CERT = "DELETE FROM CERT WHERE CA_ID=? AND SN=?";
 
+  private static final String SQL_REMOVE_CERT_FOR_ID = "DELETE FROM CERT WHERE ID=?";
+
+  private static final String SQL_COUNT_CERTS_OF_CA = "SELECT COUNT(*) FROM CERT WHERE CA_ID=?";
+
   private static final String SQL_DELETE_UNREFERENCED_REQUEST =
       "DELETE FROM REQUEST WHERE ID NOT IN (SELECT req.RID FROM REQCERT req)";
 
@@ -200,6 +227,10 @@ public class CertStore {
 
   private final UniqueIdGenerator idGenerator;
 
+  private final ConcurrentHashMap<Integer, FpFilter> fpFilters = new ConcurrentHashMap<>();
+
+  private boolean fpFilterEnabled;
+
   public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator)
       throws DataAccessException {
     this.datasource = Args.notNull(datasource, "datasource");
@@ -237,6 +268,98 @@ public class CertStore {
         "THISUPDATE,CRL FROM CRL WHERE CA_ID=? AND CRL_NO=?");
   } // constructor
 
+  public void setFpFilterEnabled(boolean fpFilterEnabled) {
+    this.fpFilterEnabled = fpFilterEnabled;
+  }
+
+  /**
+   * Loads the fingerprints of the public keys and subjects of all certificates issued by the
+   * given CA into memory, so that the checks whether a key or subject is already used need
+   * only to query the database for the potential hits. Does nothing if the filter is not
+   * enabled or has been loaded already.
+   *
+   * <p>The filter is only correct if no other process adds certificates of this CA to the
+   * database.
+   *
+   * @param ca
+   *          CA identifier. Must not be {@code null}.
+   * @throws OperationException
+   *          if database error occurs.
+   */
+  public void initFpFilter(NameId ca) throws OperationException {
+    Args.notNull(ca, "ca");
+    if (!fpFilterEnabled || fpFilters.containsKey(ca.getId())) {
+      return;
+    }
+
+    long count = 0;
+    String sql = SQL_COUNT_CERTS_OF_CA;
+    ResultSet rs = null;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+    try {
+      ps.setInt(1, ca.getId());
+      rs = ps.executeQuery();
+      if (rs.next()) {
+        count = rs.getLong(1);
+      }
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    // reserve space for the certificates issued later
+    FpFilter filter = new FpFilter(Math.max(2 * count, 1000000));
+    // registered before loading, so that the certificates added meanwhile are not missed.
+    if (fpFilters.putIfAbsent(ca.getId(), filter) != null) {
+      return;
+    }
+
+    LOG.info("loading fingerprints of {} certificates of CA {}", count, ca.getName());
+    final int numEntries = 1000;
+    sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+        "ID,FP_K,FP_S FROM CERT WHERE ID>? AND CA_ID=?");
+
+    long minId = 0;
+    try {
+      while (true) {
+        ps = borrowPreparedStatement(sql);
+        int num = 0;
+        try {
+          ps.setLong(1, minId);
+          ps.setInt(2, ca.getId());
+          rs = ps.executeQuery();
+          while (rs.next()) {
+            minId = rs.getLong("ID");
+            filter.keys.add(rs.getLong("FP_K"));
+            filter.subjects.add(rs.getLong("FP_S"));
+            num++;
+          }
+        } catch (SQLException ex) {
+          throw new OperationException(DATABASE_FAILURE,
+              datasource.translate(sql, ex).getMessage());
+        } finally {
+          datasource.releaseResources(ps, rs);
+        }
+
+        if (num < numEntries) {
+          break;
+        }
+      }
+    } catch (OperationException | RuntimeException ex) {
+      fpFilters.remove(ca.getId(), filter);
+      throw ex;
+    }
+
+    filter.ready = true;
+    LOG.info("loaded fingerprints of the certificates of CA {}", ca.getName());
+  } // method initFpFilter
+
+  private FpFilter getReadyFpFilter(NameId ca) {
+    FpFilter filter = fpFilters.get(ca.getId());
+    return (filter != null && filter.ready) ? filter : null;
+  }
+
   private String buildSelectFirstSql(String coreSql) {
     return datasource.buildSelectFirstSql(1, coreSql);
   }
@@ -320,6 +443,12 @@ public class CertStore {
       ps.executeUpdate();
 
       certificate.setCertId(certId);
+
+      FpFilter filter = fpFilters.get(ca.getId());
+      if (filter != null) {
+        filter.keys.add(fpPk);
+        filter.subjects.add(fpSubject);
+      }
     } catch (SQLException ex) {
       throw datasource.translate(null, ex);
     } finally {
@@ -772,6 +901,36 @@ public class CertStore {
     }
   } // method removeCert
 
+  /**
+   * Removes the certificates with given IDs in one JDBC batch.
+   *
+   * @param certIds
+   *          IDs of the certificates to be removed. Must not be {@code null}.
+   * @throws OperationException
+   *          if database error occurs.
+   */
+  public void removeCerts(List<Long> certIds) throws OperationException {
+    Args.notNull(certIds, "certIds");
+    if (certIds.isEmpty()) {
+      return;
+    }
+
+    final String sql = SQL_REMOVE_CERT_FOR_ID;
+    PreparedStatement ps = borrowPreparedStatement(sql);
+
+    try {
+      for (Long certId : certIds) {
+        ps.setLong(1, certId);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    } catch (SQLException ex) {
+      throw new OperationException(DATABASE_FAILURE, datasource.translate(sql, ex).getMessage());
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method removeCerts
+
   public List<Long> getPublishQueueEntries(NameId ca, NameId publisher, int numEntries)
       throws OperationException {
     final String sql = getSqlCidFromPublishQueue(numEntries);
@@ -884,8 +1043,24 @@ public class CertStore {
     }
   } // method getSerialNumbers
 
-  public List<BigInteger> getExpiredSerialNumbers(NameId ca, long expiredAt, int numEntries)
-      throws OperationException {
+  /**
+   * Returns the expired certificates with ID greater than {@code minId}, ordered by the ID.
+   *
+   * @param ca
+   *          CA identifier. Must not be {@code null}.
+   * @param expiredAt
+   *          Certificates with notAfter before it are returned, in seconds since January 1,
+   *          1970, 00:00:00 GMT.
+   * @param minId
+   *          Only certificates with ID greater than it are returned.
+   * @param numEntries
+   *          Maximal number of entries.
+   * @return the expired certificates, fetched in one query.
+   * @throws OperationException
+   *          if database error occurs.
+   */
+  public List<CertWithDbId> getExpiredCerts(NameId ca, long expiredAt, long minId,
+      int numEntries) throws OperationException {
     Args.notNull(ca, "ca");
     Args.positive(numEntries, "numEntries");
 
@@ -895,13 +1070,23 @@ public class CertStore {
     PreparedStatement ps = borrowPreparedStatement(sql);
 
     try {
-      ps.setInt(1, ca.getId());
-      ps.setLong(2, expiredAt);
+      ps.setLong(1, minId);
+      ps.setInt(2, ca.getId());
+      ps.setLong(3, expiredAt);
       rs = ps.executeQuery();
-      List<BigInteger> ret = new ArrayList<>();
+      List<CertWithDbId> ret = new ArrayList<>();
       while (rs.next() && ret.size() < numEntries) {
-        String serial = rs.getString("SN");
-        ret.add(new BigInteger(serial, 16));
+        byte[] encodedCert = Base64.decodeFast(rs.getString("CERT"));
+        X509Certificate cert;
+        try {
+          cert = X509Util.parseCert(encodedCert);
+        } catch (CertificateException ex) {
+          throw new OperationException(SYSTEM_FAILURE, ex);
+        }
+
+        CertWithDbId certWithMeta = new CertWithDbId(cert, encodedCert);
+        certWithMeta.setCertId(rs.getLong("ID"));
+        ret.add(certWithMeta);
       }
       return ret;
     } catch (SQLException ex) {
@@ -909,10 +1094,26 @@ public class CertStore {
     } finally {
       datasource.releaseResources(ps, rs);
     }
-  } // method getExpiredSerialNumbers
+  } // method getExpiredCerts
 
-  public List<BigInteger> getSuspendedCertSerials(NameId ca, long latestLastUpdate, int numEntries)
-      throws OperationException {
+  /**
+   * Returns the suspended certificates with ID greater than {@code minId}, ordered by the ID.
+   *
+   * @param ca
+   *          CA identifier. Must not be {@code null}.
+   * @param latestLastUpdate
+   *          Only certificates not changed after it are returned, in seconds since January 1,
+   *          1970, 00:00:00 GMT.
+   * @param minId
+   *          Only certificates with ID greater than it are returned.
+   * @param numEntries
+   *          Maximal number of entries.
+   * @return the suspended certificates
+   * @throws OperationException
+   *          if database error occurs.
+   */
+  public List<SerialWithId> getSuspendedCerts(NameId ca, long latestLastUpdate, long minId,
+      int numEntries) throws OperationException {
     Args.notNull(ca, "ca");
     Args.positive(numEntries, "numEntries");
 
@@ -921,14 +1122,14 @@ public class CertStore {
     PreparedStatement ps = borrowPreparedStatement(sql);
 
     try {
-      ps.setInt(1, ca.getId());
-      ps.setLong(2, latestLastUpdate + 1);
-      ps.setInt(3, CrlReason.CERTIFICATE_HOLD.getCode());
+      ps.setLong(1, minId);
+      ps.setInt(2, ca.getId());
+      ps.setLong(3, latestLastUpdate + 1);
+      ps.setInt(4, CrlReason.CERTIFICATE_HOLD.getCode());
       rs = ps.executeQuery();
-      List<BigInteger> ret = new ArrayList<>();
+      List<SerialWithId> ret = new ArrayList<>();
       while (rs.next() && ret.size() < numEntries) {
-        String str = rs.getString("SN");
-        ret.add(new BigInteger(str, 16));
+        ret.add(new SerialWithId(rs.getLong("ID"), new BigInteger(rs.getString("SN"), 16)));
       }
       return ret;
     } catch (SQLException ex) {
@@ -936,7 +1137,7 @@ public class CertStore {
     } finally {
       datasource.releaseResources(ps, rs);
     }
-  } // method getSuspendedCertIds
+  } // method getSuspendedCerts
 
   public byte[] getEncodedCrl(NameId ca, BigInteger crlNumber) throws OperationException {
     Args.notNull(ca, "ca");
@@ -1291,7 +1492,7 @@ public class CertStore {
 
     String sql = sqlReqIdForSerial;
     ResultSet rs = null;
-    PreparedStatement ps = borrowPreparedStatement(sql);
+    PreparedStatement ps = borrowReadOnlyPreparedStatement(sql);
 
     Long reqId = null;
     try {
@@ -1314,7 +1515,7 @@ public class CertStore {
 
     String b64Req = null;
     sql = sqlReqForId;
-    ps = borrowPreparedStatement(sql);
+    ps = borrowReadOnlyPreparedStatement(sql);
     try {
       ps.setLong(1, reqId);
       rs = ps.executeQuery();
@@ -1404,7 +1605,7 @@ public class CertStore {
 
     final String sql = datasource.buildSelectFirstSql(numEntries, sortByStr, sb.toString());
     ResultSet rs = null;
-    PreparedStatement ps = borrowPreparedStatement(sql);
+    PreparedStatement ps = borrowReadOnlyPreparedStatement(sql);
 
     try {
       ps.setInt(1, ca.getId());
@@ -1671,6 +1872,11 @@ public class CertStore {
       throws OperationException {
     Args.notNull(ca, "ca");
 
+    FpFilter filter = getReadyFpFilter(ca);
+    if (filter != null && !filter.subjects.mightContain(subjectFp)) {
+      return CertStatus.UNKNOWN;
+    }
+
     final String sql = sqlCertStatusForSubjectFp;
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1692,6 +1898,11 @@ public class CertStore {
 
   public boolean isCertForSubjectIssued(NameId ca, long subjectFp) throws OperationException {
     Args.notNull(ca, "ca");
+    FpFilter filter = getReadyFpFilter(ca);
+    if (filter != null && !filter.subjects.mightContain(subjectFp)) {
+      return false;
+    }
+
     String sql = sqlCertforSubjectIssued;
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1710,6 +1921,11 @@ public class CertStore {
 
   public boolean isCertForKeyIssued(NameId ca, long keyFp) throws OperationException {
     Args.notNull(ca, "ca");
+    FpFilter filter = getReadyFpFilter(ca);
+    if (filter != null && !filter.keys.mightContain(keyFp)) {
+      return false;
+    }
+
     String sql = sqlCertForKeyIssued;
     ResultSet rs = null;
     PreparedStatement ps = borrowPreparedStatement(sql);
@@ -1739,6 +1955,19 @@ public class CertStore {
     }
   } // method borrowPreparedStatement
 
+  /**
+   * Borrows a statement for queries which tolerate the replication lag of read-only replicas.
+   */
+  private PreparedStatement borrowReadOnlyPreparedStatement(String sqlQuery)
+      throws OperationException {
+    try {
+      return datasource.prepareReadOnlyStatement(sqlQuery);
+    } catch (DataAccessException ex) {
+      LOG.debug("DataAccessException", ex);
+      throw new OperationException(DATABASE_FAILURE, ex.getMessage());
+    }
+  } // method borrowReadOnlyPreparedStatement
+
   public boolean isHealthy() {
     final String sql = "SELECT ID FROM CA";
 
@@ -1759,6 +1988,25 @@ public class CertStore {
     }
   } // method isHealthy
 
+  /**
+   * Returns the statistics of the underlying datasource.
+   *
+   * @return the statistics, {@code null} if neither SQL metrics nor replicas are configured.
+   */
+  public Map<String, Object> getDatabaseStatistics() {
+    SqlMetrics sqlMetrics = datasource.getSqlMetrics();
+    if (sqlMetrics == null && !datasource.hasReplicas()) {
+      return null;
+    }
+
+    Map<String, Object> statistics = new HashMap<>();
+    statistics.put("pools", datasource.getPoolStatistics());
+    if (sqlMetrics != null) {
+      statistics.putAll(sqlMetrics.getStatistics());
+    }
+    return statistics;
+  } // method getDatabaseStatistics
+
   public String getLatestSerialNumber(X500Name nameWithSn) throws OperationException {
     RDN[] rdns1 = nameWithSn.getRDNs();
     RDN[] rdns2 = new RDN[rdns1.length];
@@ -1863,7 +2111,8 @@ public class CertStore {
   private String getSqlExpiredSerials(int numEntries) {
     String sql = cacheSqlExpiredSerials.get(numEntries);
     if (sql == null) {
-      sql = datasource.buildSelectFirstSql(numEntries, "SN FROM CERT WHERE CA_ID=? AND NAFTER<?");
+      sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+          "ID,CERT FROM CERT WHERE ID>? AND CA_ID=? AND NAFTER<?");
       cacheSqlExpiredSerials.put(numEntries, sql);
     }
     return sql;
@@ -1872,8 +2121,8 @@ public class CertStore {
   private String getSqlSuspendedSerials(int numEntries) {
     String sql = cacheSqlSuspendedSerials.get(numEntries);
     if (sql == null) {
-      sql = datasource.buildSelectFirstSql(numEntries,
-          "SN FROM CERT WHERE CA_ID=? AND LUPDATE<? AND RR=?");
+      sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+          "ID,SN FROM CERT WHERE ID>? AND CA_ID=? AND LUPDATE<? AND RR=?");
       cacheSqlSuspendedSerials.put(numEntries, sql);
     }
     return sql;
@@ -0,0 +1,148 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.cmp;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Set;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.CertificateInfo;
+import org.xipki.ca.api.NameId;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.X509Cert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class PendingCertificatePoolTest {
+
+  private static final byte[] TID = new byte[]{1, 2, 3, 4};
+
+  private static KeyPair keypair;
+
+  private static X509Cert issuerCert;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    keypair = kpGen.generateKeyPair();
+    issuerCert = new X509Cert(generateCert(BigInteger.ONE));
+  }
+
+  @Test
+  public void testRemoveByDeadline() throws Exception {
+    PendingCertificatePool pool = new PendingCertificatePool();
+    long now = System.currentTimeMillis();
+
+    CertificateInfo expired1 = newCertInfo(2);
+    CertificateInfo expired2 = newCertInfo(3);
+    CertificateInfo pending = newCertInfo(4);
+    // added not in the order of the deadlines
+    pool.addCertificate(TID, BigInteger.valueOf(1), pending, now + 60000);
+    pool.addCertificate(TID, BigInteger.valueOf(2), expired2, now - 1000);
+    pool.addCertificate(TID, BigInteger.valueOf(3), expired1, now - 2000);
+
+    Set<CertificateInfo> removed = pool.removeConfirmTimeoutedCertificates();
+    Assert.assertNotNull("removed certificates", removed);
+    Assert.assertEquals("number of removed certificates", 2, removed.size());
+    Assert.assertTrue("expired1 removed", removed.contains(expired1));
+    Assert.assertTrue("expired2 removed", removed.contains(expired2));
+
+    Assert.assertNull("nothing more to remove", pool.removeConfirmTimeoutedCertificates());
+    Assert.assertSame("pending certificate", pending,
+        pool.removeCertificate(TID, BigInteger.valueOf(1), certHash(pending)));
+  }
+
+  @Test
+  public void testRemoveCertificate() throws Exception {
+    PendingCertificatePool pool = new PendingCertificatePool();
+    CertificateInfo certInfo = newCertInfo(5);
+    pool.addCertificate(TID, BigInteger.ONE, certInfo, System.currentTimeMillis() - 1000);
+
+    Assert.assertSame("removed certificate", certInfo,
+        pool.removeCertificate(TID, BigInteger.ONE, certHash(certInfo)));
+    Assert.assertNull("already confirmed certificate is not timed out",
+        pool.removeConfirmTimeoutedCertificates());
+    Assert.assertNull("removed twice",
+        pool.removeCertificate(TID, BigInteger.ONE, certHash(certInfo)));
+  }
+
+  @Test
+  public void testDuplicateCertReqId() throws Exception {
+    PendingCertificatePool pool = new PendingCertificatePool();
+    long now = System.currentTimeMillis();
+    CertificateInfo certInfo = newCertInfo(6);
+
+    // the same certificate is added again with a later deadline, the first deadline is stale
+    pool.addCertificate(TID, BigInteger.ONE, certInfo, now - 1000);
+    pool.addCertificate(TID, BigInteger.ONE, certInfo, now + 60000);
+
+    Assert.assertNull("stale deadline must not remove the certificate",
+        pool.removeConfirmTimeoutedCertificates());
+    Assert.assertSame("pending certificate", certInfo,
+        pool.removeCertificate(TID, BigInteger.ONE, certHash(certInfo)));
+  }
+
+  @Test
+  public void testAlreadyIssued() throws Exception {
+    PendingCertificatePool pool = new PendingCertificatePool();
+    CertificateInfo certInfo = newCertInfo(7);
+    certInfo.setAlreadyIssued(true);
+    pool.addCertificate(TID, BigInteger.ONE, certInfo, System.currentTimeMillis() + 60000);
+    Assert.assertNull("already issued certificate is not pending",
+        pool.removeCertificates(TID));
+  }
+
+  private static CertificateInfo newCertInfo(long serial) throws Exception {
+    X509Certificate cert = generateCert(BigInteger.valueOf(serial));
+    NameId nameId = new NameId(1, "dummy");
+    return new CertificateInfo(new CertWithDbId(cert), null, nameId, issuerCert,
+        keypair.getPublic().getEncoded(), nameId, nameId);
+  }
+
+  private static byte[] certHash(CertificateInfo certInfo) {
+    return HashAlgo.SHA1.hash(certInfo.getCert().getEncodedCert());
+  }
+
+  private static X509Certificate generateCert(BigInteger serial) throws Exception {
+    X500Name name = new X500Name("CN=test");
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 86400000L);
+    X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, serial, notBefore,
+        notAfter, name, keypair.getPublic());
+    return new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keypair.getPrivate())));
+  }
+
+}
@@ -26,7 +26,6 @@ import javax.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.security.util.X509Util;
-import org.xipki.util.LruCache;
 import org.xipki.util.StringUtil;
 
 /**
@@ -47,8 +46,6 @@ public class TlsHelper {
 
   private static final Logger LOG = LoggerFactory.getLogger(TlsHelper.class);
 
-  private static final LruCache<String, X509Certificate> clientCerts = new LruCache<>(50);
-
   private static String reverseProxyMode = null;
 
   static {
@@ -83,7 +80,7 @@ public class TlsHelper {
         return null;
       }
 
-      if ("SUCCESS".equalsIgnoreCase(clientVerify.trim())) {
+      if (!"SUCCESS".equalsIgnoreCase(clientVerify.trim())) {
         return null;
       }
 
@@ -92,19 +89,12 @@ public class TlsHelper {
         return null;
       }
 
-      X509Certificate clientCert = clientCerts.get(pemClientCert);
-      if (clientCert != null) {
-        return clientCert;
-      }
-
       try {
-        clientCert = X509Util.parseCert(pemClientCert.getBytes());
+        // the same few client certificates are forwarded repeatedly.
+        return X509Util.parseCertCached(pemClientCert.getBytes());
       } catch (CertificateException ex) {
         throw new IOException("could not parse Certificate", ex);
       }
-
-      clientCerts.put(pemClientCert, clientCert);
-      return clientCert;
     } else {
       throw new IllegalStateException("unknown reverseProxyMode " + reverseProxyMode);
     }
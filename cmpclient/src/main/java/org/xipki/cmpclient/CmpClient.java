@@ -23,8 +23,10 @@ import java.security.cert.Certificate;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.bouncycastle.asn1.pkcs.CertificationRequest;
 import org.bouncycastle.asn1.x500.X500Name;
@@ -97,6 +99,48 @@ public interface CmpClient extends Closeable {
   EnrollCertResult enrollCerts(String caName, EnrollCertRequest request, ReqRespDebug debug)
       throws CmpClientException, PkiErrorException;
 
+  /**
+   * Enrolls a set of certificates asynchronously. The request is processed by a pool of
+   * maxConcurrentRequests threads of this client, each blocking until the response is received.
+   *
+   * @param caName
+   *          CA name. Could be {@code null}.
+   * @param request
+   *          Request. Must not be {@code null}.
+   * @param debug
+   *          Request/response debug control. Could be {@code null}.
+   * @return the future of the enrolling result, which completes exceptionally with
+   *          {@link PkiErrorException} or {@link CmpClientException} as in
+   *          {@link #enrollCerts(String, EnrollCertRequest, ReqRespDebug)}.
+   */
+  CompletableFuture<EnrollCertResult> enrollCertsAsync(String caName, EnrollCertRequest request,
+      ReqRespDebug debug);
+
+  /**
+   * Enrolls a large number of certificates. The request entries are packed into PKI messages
+   * with at most {@code batchSize} entries, and up to {@code maxTransactions} transactions are
+   * processed concurrently. The result of each entry is reported to the callback.
+   *
+   * @param caName
+   *          CA name. Could be {@code null}.
+   * @param type
+   *          Type of the enrollment. Must not be {@code null}.
+   * @param requestEntries
+   *          Request entries, read as the transactions progress. Must not be {@code null}.
+   * @param batchSize
+   *          Maximal number of entries in one PKI message.
+   * @param maxTransactions
+   *          Maximal number of concurrent transactions.
+   * @param callback
+   *          Callback to receive the results. Must not be {@code null}.
+   * @return number of processed request entries.
+   * @throws CmpClientException
+   *          if client error occurs.
+   */
+  int enrollCertsInBatches(String caName, EnrollCertRequest.EnrollType type,
+      Iterator<EnrollCertRequest.Entry> requestEntries, int batchSize, int maxTransactions,
+      EnrollCertCallback callback) throws CmpClientException;
+
   /**
    * Revokes a certificate.
    * @param caName
@@ -157,6 +201,21 @@ public interface CmpClient extends Closeable {
   Map<String, CertIdOrError> revokeCerts(RevokeCertRequest request, ReqRespDebug debug)
       throws CmpClientException, PkiErrorException;
 
+  /**
+   * Revoke a set of certificates asynchronously. The request is processed by a pool of
+   * maxConcurrentRequests threads of this client, each blocking until the response is received.
+   *
+   * @param request
+   *          Request. Must not be {@code null}.
+   * @param debug
+   *          Request/response debug control. Could be {@code null}.
+   * @return the future of the revocation result, which completes exceptionally with
+   *          {@link PkiErrorException} or {@link CmpClientException} as in
+   *          {@link #revokeCerts(RevokeCertRequest, ReqRespDebug)}.
+   */
+  CompletableFuture<Map<String, CertIdOrError>> revokeCertsAsync(RevokeCertRequest request,
+      ReqRespDebug debug);
+
   /**
    * Downloads the current CRL.
    *
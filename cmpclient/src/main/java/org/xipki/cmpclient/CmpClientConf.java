@@ -650,6 +650,11 @@ public class CmpClientConf extends ValidatableConf {
    */
   private Integer cainfoUpdateInterval;
 
+  /**
+   * Maximal number of concurrent HTTP requests, default to 50.
+   */
+  private Integer maxConcurrentRequests;
+
   private List<Ca> cas;
 
   public List<Ssl> getSsls() {
@@ -693,6 +698,14 @@ public class CmpClientConf extends ValidatableConf {
     this.cainfoUpdateInterval = cainfoUpdateInterval;
   }
 
+  public Integer getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+    this.maxConcurrentRequests = maxConcurrentRequests;
+  }
+
   public List<Ca> getCas() {
     if (cas == null) {
       cas = new LinkedList<>();
@@ -0,0 +1,52 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.cmpclient;
+
+import org.xipki.cmpclient.EnrollCertResult.CertifiedKeyPairOrError;
+
+/**
+ * Receives the results of the batched enrollment. The methods may be called concurrently
+ * from different threads.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public interface EnrollCertCallback {
+
+  /**
+   * Called if the CA has answered the request entry.
+   *
+   * @param id
+   *          Identifier of the request entry.
+   * @param certOrError
+   *          The enrolled certificate or the error returned by the CA.
+   */
+  void enrolled(String id, CertifiedKeyPairOrError certOrError);
+
+  /**
+   * Called if the request entry could not be processed, e.g. the transaction failed.
+   *
+   * @param id
+   *          Identifier of the request entry.
+   * @param ex
+   *          The cause.
+   */
+  void failed(String id, Exception ex);
+
+}
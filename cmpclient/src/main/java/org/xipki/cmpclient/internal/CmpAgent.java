@@ -18,10 +18,7 @@
 package org.xipki.cmpclient.internal;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.math.BigInteger;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.InvalidAlgorithmParameterException;
@@ -54,7 +51,6 @@ import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
 
 import org.bouncycastle.asn1.ASN1Encodable;
@@ -164,10 +160,11 @@ import org.xipki.util.Args;
 import org.xipki.util.CollectionUtil;
 import org.xipki.util.DateUtil;
 import org.xipki.util.Hex;
-import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.ReqRespDebug;
 import org.xipki.util.ReqRespDebug.ReqRespPair;
+import org.xipki.util.http.DefaultHttpTransport;
+import org.xipki.util.http.HttpTransport;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
@@ -222,6 +219,8 @@ class CmpAgent {
 
   private final HostnameVerifier hostnameVerifier;
 
+  private HttpTransport transport = DefaultHttpTransport.getInstance();
+
   CmpAgent(Requestor requestor, Responder responder,
       String serverUrl, SecurityFactory securityFactory,
       SSLSocketFactory sslSocketFactory, HostnameVerifier hostnameVerifier) {
@@ -252,50 +251,11 @@ class CmpAgent {
 
   private byte[] send(byte[] request) throws IOException {
     Args.notNull(request, "request");
-    HttpURLConnection httpUrlConnection = IoUtil.openHttpConn(serverUrl);
-    if (httpUrlConnection instanceof HttpsURLConnection) {
-      if (sslSocketFactory != null) {
-        ((HttpsURLConnection) httpUrlConnection).setSSLSocketFactory(sslSocketFactory);
-      }
-
-      if (hostnameVerifier != null) {
-        ((HttpsURLConnection) httpUrlConnection).setHostnameVerifier(hostnameVerifier);
-      }
-    }
-
-    httpUrlConnection.setDoOutput(true);
-    httpUrlConnection.setUseCaches(false);
-
-    int size = request.length;
-
-    httpUrlConnection.setRequestMethod("POST");
-    httpUrlConnection.setRequestProperty("Content-Type", CMP_REQUEST_MIMETYPE);
-    httpUrlConnection.setRequestProperty("Content-Length", java.lang.Integer.toString(size));
-    OutputStream outputstream = httpUrlConnection.getOutputStream();
-    outputstream.write(request);
-    outputstream.flush();
-
-    InputStream inputStream = httpUrlConnection.getInputStream();
-    if (httpUrlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-      inputStream.close();
-      throw new IOException("bad response: " + httpUrlConnection.getResponseCode() + "    "
-              + httpUrlConnection.getResponseMessage());
-    }
-
-    String responseContentType = httpUrlConnection.getContentType();
-    boolean isValidContentType = false;
-    if (responseContentType != null) {
-      if (responseContentType.equalsIgnoreCase(CMP_RESPONSE_MIMETYPE)) {
-        isValidContentType = true;
-      }
-    }
-
-    if (!isValidContentType) {
-      inputStream.close();
-      throw new IOException("bad response: mime type " + responseContentType + " not supported!");
-    }
-
-    return IoUtil.read(inputStream);
+    HttpTransport.Request httpRequest = new HttpTransport.Request(serverUrl, request,
+        CMP_REQUEST_MIMETYPE, CMP_RESPONSE_MIMETYPE);
+    httpRequest.setSslSocketFactory(sslSocketFactory);
+    httpRequest.setHostnameVerifier(hostnameVerifier);
+    return transport.send(httpRequest);
   } // method send
 
   private PKIMessage sign(PKIMessage request) throws CmpClientException {
@@ -692,6 +652,10 @@ class CmpAgent {
     }
   }
 
+  public void setTransport(HttpTransport transport) {
+    this.transport = Args.notNull(transport, "transport");
+  }
+
   public boolean isSendRequestorCert() {
     return sendRequestorCert;
   }
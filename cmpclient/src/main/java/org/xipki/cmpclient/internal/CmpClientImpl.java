@@ -46,7 +46,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -68,6 +74,7 @@ import org.xipki.cmpclient.CertprofileInfo;
 import org.xipki.cmpclient.CmpClient;
 import org.xipki.cmpclient.CmpClientConf;
 import org.xipki.cmpclient.CmpClientException;
+import org.xipki.cmpclient.EnrollCertCallback;
 import org.xipki.cmpclient.EnrollCertRequest;
 import org.xipki.cmpclient.EnrollCertResult;
 import org.xipki.cmpclient.PkiErrorException;
@@ -92,7 +99,9 @@ import org.xipki.util.IoUtil;
 import org.xipki.util.LogUtil;
 import org.xipki.util.ObjectCreationException;
 import org.xipki.util.ReqRespDebug;
+import org.xipki.util.http.DefaultHttpTransport;
 import org.xipki.util.http.HostnameVerifiers;
+import org.xipki.util.http.HttpTransport;
 import org.xipki.util.http.SSLContextBuilder;
 
 import com.alibaba.fastjson.JSON;
@@ -180,9 +189,22 @@ public final class CmpClientImpl implements CmpClient {
 
   private AtomicBoolean initialized = new AtomicBoolean(false);
 
+  /**
+   * Transport set via {@link #setTransport(HttpTransport)}, will not be closed by this client.
+   */
+  private HttpTransport externalTransport;
+
+  private HttpTransport transport;
+
+  private ExecutorService asyncExecutor;
+
   public CmpClientImpl() {
   }
 
+  public void setTransport(HttpTransport transport) {
+    this.externalTransport = transport;
+  }
+
   public void setSecurityFactory(SecurityFactory securityFactory) {
     this.securityFactory = securityFactory;
   }
@@ -271,6 +293,17 @@ public final class CmpClientImpl implements CmpClient {
       LOG.warn("no CA is configured");
     }
 
+    closeTransport();
+    int maxConcurrentRequests = (conf.getMaxConcurrentRequests() == null)
+        ? 50 : conf.getMaxConcurrentRequests();
+    transport = (externalTransport != null) ? externalTransport
+        : new DefaultHttpTransport(maxConcurrentRequests);
+    asyncExecutor = Executors.newFixedThreadPool(maxConcurrentRequests, runnable -> {
+      Thread thread = new Thread(runnable, "cmpclient-async");
+      thread.setDaemon(true);
+      return thread;
+    });
+
     // ssl configurations
     Map<String, SslConf> sslConfs = new HashMap<>();
     if (conf.getSsls() != null) {
@@ -491,6 +524,7 @@ public final class CmpClientImpl implements CmpClient {
       if (requestors.containsKey(requestorName)) {
         CmpAgent agent = new CmpAgent(requestors.get(requestorName), ca.getResponder(), ca.getUrl(),
             securityFactory, ca.getSslSocketFactory(), ca.getHostnameVerifier());
+        agent.setTransport(transport);
         ca.setAgent(agent);
       } else {
         LOG.error("could not find requestor named {} for CA {}", requestorName, ca.getName());
@@ -543,6 +577,132 @@ public final class CmpClientImpl implements CmpClient {
       }
       scheduledThreadPoolExecutor = null;
     }
+
+    closeTransport();
+  }
+
+  private void closeTransport() {
+    if (asyncExecutor != null) {
+      asyncExecutor.shutdown();
+      asyncExecutor = null;
+    }
+
+    if (transport != null && transport != externalTransport) {
+      try {
+        transport.close();
+      } catch (IOException ex) {
+        LogUtil.warn(LOG, ex, "could not close the HTTP transport");
+      }
+    }
+    transport = null;
+  }
+
+  /**
+   * Executes the blocking task in the thread pool of this client.
+   */
+  private <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    ExecutorService executor = asyncExecutor;
+    if (executor == null) {
+      future.completeExceptionally(new CmpClientException("CA client is not initialized"));
+      return future;
+    }
+
+    try {
+      executor.execute(() -> {
+        try {
+          future.complete(task.call());
+        } catch (Throwable th) {
+          future.completeExceptionally(th);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      future.completeExceptionally(new CmpClientException("CA client is closed", ex));
+    }
+    return future;
+  }
+
+  @Override
+  public CompletableFuture<EnrollCertResult> enrollCertsAsync(String caName,
+      EnrollCertRequest request, ReqRespDebug debug) {
+    return supplyAsync(() -> enrollCerts(caName, request, debug));
+  }
+
+  @Override
+  public int enrollCertsInBatches(String caName, EnrollCertRequest.EnrollType type,
+      Iterator<EnrollCertRequest.Entry> requestEntries, int batchSize, int maxTransactions,
+      EnrollCertCallback callback) throws CmpClientException {
+    Args.notNull(type, "type");
+    Args.notNull(requestEntries, "requestEntries");
+    Args.positive(batchSize, "batchSize");
+    Args.positive(maxTransactions, "maxTransactions");
+    Args.notNull(callback, "callback");
+
+    initIfNotInitialized();
+
+    Semaphore permits = new Semaphore(maxTransactions);
+    int count = 0;
+    try {
+      EnrollCertRequest batch = new EnrollCertRequest(type);
+      while (requestEntries.hasNext()) {
+        EnrollCertRequest.Entry entry = requestEntries.next();
+        count++;
+        // an entry with duplicated id or certReqId is sent in the next message
+        if (batch.getRequestEntries().size() == batchSize || !batch.addRequestEntry(entry)) {
+          enrollBatch(caName, batch, permits, callback);
+          batch = new EnrollCertRequest(type);
+          batch.addRequestEntry(entry);
+        }
+      }
+
+      if (!batch.getRequestEntries().isEmpty()) {
+        enrollBatch(caName, batch, permits, callback);
+      }
+
+      // wait for the completion of all transactions
+      permits.acquire(maxTransactions);
+      permits.release(maxTransactions);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new CmpClientException("interrupted while enrolling certificates", ex);
+    }
+
+    return count;
+  } // method enrollCertsInBatches
+
+  private void enrollBatch(String caName, EnrollCertRequest batch, Semaphore permits,
+      EnrollCertCallback callback) throws InterruptedException {
+    permits.acquire();
+    supplyAsync(() -> enrollCerts(caName, batch, null)).whenComplete((result, th) -> {
+      try {
+        for (EnrollCertRequest.Entry entry : batch.getRequestEntries()) {
+          String id = entry.getId();
+          if (th != null) {
+            callback.failed(id, (th instanceof Exception) ? (Exception) th
+                : new CmpClientException(th.getMessage(), th));
+            continue;
+          }
+
+          EnrollCertResult.CertifiedKeyPairOrError certOrError =
+              (result == null) ? null : result.getCertOrError(id);
+          if (certOrError == null) {
+            callback.failed(id, new CmpClientException("CA did not answer the request " + id));
+          } else {
+            callback.enrolled(id, certOrError);
+          }
+        }
+      } catch (RuntimeException ex) {
+        LogUtil.error(LOG, ex, "error while processing the enrollment result");
+      } finally {
+        permits.release();
+      }
+    });
+  } // method enrollBatch
+
+  @Override
+  public CompletableFuture<Map<String, CertIdOrError>> revokeCertsAsync(
+      RevokeCertRequest request, ReqRespDebug debug) {
+    return supplyAsync(() -> revokeCerts(request, debug));
   }
 
   @Override
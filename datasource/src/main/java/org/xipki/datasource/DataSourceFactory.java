@@ -22,8 +22,11 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +45,8 @@ public class DataSourceFactory {
 
   private static final Logger LOG = LoggerFactory.getLogger(DataSourceFactory.class);
 
+  private static final String REPLICA_PREFIX = "replica.";
+
   public DataSourceWrapper createDataSourceForFile(String name, String confFile,
       PasswordResolver passwordResolver) throws PasswordResolverException, IOException {
     Args.notBlank(confFile, "confFile");
@@ -131,7 +136,76 @@ public class DataSourceFactory {
       }
     }
 
-    return DataSourceWrapper.createDataSource(name, conf, databaseType);
+    // SQL metrics
+    String str = (String) conf.remove("sqlMetrics.enabled");
+    boolean sqlMetricsEnabled = str != null && Boolean.parseBoolean(str.trim());
+    str = (String) conf.remove("sqlMetrics.slowQueryThreshold");
+    long slowQueryThreshold = (str == null) ? 0 : Long.parseLong(str.trim());
+    // the SQL texts reveal the database schema, they are only exposed if explicitly configured.
+    str = (String) conf.remove("sqlMetrics.exposeSql");
+    boolean exposeSql = str != null && Boolean.parseBoolean(str.trim());
+
+    /*
+     * Read-only replicas, e.g.
+     *   replica.r1.dataSource.serverName = replica1.example.org
+     *   replica.r1.dataSource.password = ...
+     *   replica.lagQuery = SELECT ...
+     * Each replica inherits the configuration of the primary database, which can be
+     * overwritten by the properties replica.<replica-name>.<property>.
+     */
+    Properties replicaProps = new Properties();
+    for (Object key : keySet) {
+      String keyStr = (String) key;
+      if (keyStr.startsWith(REPLICA_PREFIX)) {
+        replicaProps.setProperty(keyStr.substring(REPLICA_PREFIX.length()),
+            conf.getProperty(keyStr));
+        conf.remove(key);
+      }
+    }
+
+    DataSourceWrapper.ReplicaConf replicaConf = null;
+    if (!replicaProps.isEmpty()) {
+      String lagQuery = (String) replicaProps.remove("lagQuery");
+      str = (String) replicaProps.remove("maxLag");
+      int maxLag = (str == null) ? 30 : Integer.parseInt(str.trim());
+      str = (String) replicaProps.remove("checkInterval");
+      int checkInterval = (str == null) ? 10 : Integer.parseInt(str.trim());
+
+      Map<String, Properties> replicas = new LinkedHashMap<>();
+      for (String key : new TreeSet<>(replicaProps.stringPropertyNames())) {
+        int idx = key.indexOf('.');
+        if (idx < 1) {
+          throw new IllegalArgumentException("invalid property " + REPLICA_PREFIX + key);
+        }
+
+        String replicaName = key.substring(0, idx);
+        Properties props = replicas.get(replicaName);
+        if (props == null) {
+          props = new Properties();
+          props.putAll(conf);
+          String poolName = conf.getProperty("poolName");
+          props.setProperty("poolName", (poolName == null ? name : poolName) + "-" + replicaName);
+          replicas.put(replicaName, props);
+        }
+
+        String propName = key.substring(idx + 1);
+        String value = replicaProps.getProperty(key);
+        if (passwordResolver != null
+            && ("password".equals(propName) || "dataSource.password".equals(propName))) {
+          value = new String(passwordResolver.resolvePassword(value));
+        }
+        props.setProperty(propName, value);
+      }
+
+      replicaConf = new DataSourceWrapper.ReplicaConf(replicas, lagQuery, maxLag, checkInterval);
+    }
+
+    DataSourceWrapper datasource =
+        DataSourceWrapper.createDataSource(name, conf, databaseType, replicaConf);
+    if (sqlMetricsEnabled) {
+      datasource.setSqlMetrics(new SqlMetrics(name, slowQueryThreshold, exposeSql));
+    }
+    return datasource;
   } // method createDataSource
 
 }
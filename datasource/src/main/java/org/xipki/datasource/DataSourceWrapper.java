@@ -25,8 +25,18 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +48,7 @@ import org.xipki.util.StringUtil;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 /**
  * TODO.
@@ -364,6 +375,69 @@ public abstract class DataSourceWrapper implements Closeable {
 
   } // class HSQL
 
+  /**
+   * Read-only replica of the database.
+   */
+  private static class ReplicaPool {
+
+    private final String name;
+
+    private final Properties props;
+
+    // null if the pool could not be created, the replica checker tries it again.
+    private volatile HikariDataSource service;
+
+    private volatile boolean healthy;
+
+    private final AtomicLong reads = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    ReplicaPool(String name, Properties props, HikariDataSource service) {
+      this.name = name;
+      this.props = props;
+      this.service = service;
+      this.healthy = service != null;
+    }
+
+  } // class ReplicaPool
+
+  /**
+   * Configuration of the read-only replicas.
+   */
+  static class ReplicaConf {
+
+    private final Map<String, Properties> replicas;
+
+    private final String lagQuery;
+
+    private final int maxLag;
+
+    private final int checkInterval;
+
+    /**
+     * Constructor.
+     *
+     * @param replicas
+     *          Map of replica name to the HikariCP configuration.
+     * @param lagQuery
+     *          SQL query which returns the replication lag of a replica in seconds.
+     *          Could be {@code null}, then only the connectivity is checked.
+     * @param maxLag
+     *          Maximal accepted replication lag in seconds.
+     * @param checkInterval
+     *          Interval in seconds to check the replicas.
+     */
+    ReplicaConf(Map<String, Properties> replicas, String lagQuery, int maxLag,
+        int checkInterval) {
+      this.replicas = Args.notEmpty(replicas, "replicas");
+      this.lagQuery = lagQuery;
+      this.maxLag = maxLag;
+      this.checkInterval = Args.positive(checkInterval, "checkInterval");
+    }
+
+  } // class ReplicaConf
+
   private static final Logger LOG = LoggerFactory.getLogger(DataSourceWrapper.class);
 
   /**
@@ -386,6 +460,16 @@ public abstract class DataSourceWrapper implements Closeable {
 
   private final LruCache<String, String> cacheSeqNameSqls;
 
+  private List<ReplicaPool> replicas = Collections.emptyList();
+
+  private final AtomicInteger replicaIndex = new AtomicInteger();
+
+  private final AtomicLong primaryReads = new AtomicLong();
+
+  private ScheduledExecutorService replicaChecker;
+
+  private SqlMetrics sqlMetrics;
+
   private DataSourceWrapper(String name, HikariDataSource service, DatabaseType dbType) {
     this.service = Args.notNull(service, "service");
     this.databaseType = Args.notNull(dbType, "dbType");
@@ -408,8 +492,28 @@ public abstract class DataSourceWrapper implements Closeable {
   }
 
   public final Connection getConnection() throws DataAccessException {
+    return getConnection(service);
+  }
+
+  private Connection getConnection(HikariDataSource pool) throws DataAccessException {
+    if (sqlMetrics == null) {
+      return getConnection0(pool);
+    }
+
+    long start = System.nanoTime();
+    boolean failed = true;
     try {
-      return service.getConnection();
+      Connection conn = getConnection0(pool);
+      failed = false;
+      return conn;
+    } finally {
+      sqlMetrics.recordConnectionAcquire(System.nanoTime() - start, failed);
+    }
+  }
+
+  private Connection getConnection0(HikariDataSource pool) throws DataAccessException {
+    try {
+      return pool.getConnection();
     } catch (Exception ex) {
       Throwable cause = ex.getCause();
       if (cause instanceof SQLException) {
@@ -425,6 +529,152 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   }
 
+  /**
+   * Returns a connection for read-only statements. The connection is taken from one of the
+   * healthy replicas in round-robin manner, or from the primary database if no replica is
+   * configured or available. The connection must be returned via
+   * {@link #returnConnection(Connection)}.
+   *
+   * @return the connection.
+   * @throws DataAccessException
+   *           if no connection could be created.
+   */
+  public final Connection getReadOnlyConnection() throws DataAccessException {
+    List<ReplicaPool> pools = replicas;
+    int size = pools.size();
+    if (size > 0) {
+      int start = replicaIndex.getAndIncrement() & Integer.MAX_VALUE;
+      for (int i = 0; i < size; i++) {
+        ReplicaPool pool = pools.get((start + i) % size);
+        if (!pool.healthy) {
+          continue;
+        }
+
+        try {
+          Connection conn = getConnection(pool.service);
+          pool.reads.incrementAndGet();
+          return conn;
+        } catch (DataAccessException ex) {
+          pool.healthy = false;
+          pool.failures.incrementAndGet();
+          LOG.warn("could not get connection from replica {} of datasource {}, failover: {}",
+              pool.name, name, ex.getMessage());
+        }
+      }
+    }
+
+    Connection conn = getConnection();
+    primaryReads.incrementAndGet();
+    return conn;
+  }
+
+  /**
+   * Whether read-only replicas are configured.
+   *
+   * @return whether read-only replicas are configured.
+   */
+  public boolean hasReplicas() {
+    return !replicas.isEmpty();
+  }
+
+  /**
+   * Returns the statistics of the connection pools.
+   *
+   * @return the statistics, one line for each pool.
+   */
+  public String getPoolStatistics() {
+    StringBuilder sb = new StringBuilder();
+    appendPoolStatistics(sb, "primary", service, true, primaryReads.get(), 0);
+    for (ReplicaPool pool : replicas) {
+      if (pool.service == null) {
+        sb.append("\n").append(pool.name).append(": not available");
+        continue;
+      }
+
+
+      sb.append("\n");
+      appendPoolStatistics(sb, pool.name, pool.service, pool.healthy, pool.reads.get(),
+          pool.failures.get());
+    }
+    return sb.toString();
+  }
+
+  private static void appendPoolStatistics(StringBuilder sb, String poolName,
+      HikariDataSource pool, boolean healthy, long reads, long failures) {
+    sb.append(poolName).append(": healthy=").append(healthy)
+      .append(", readOnlyConnections=").append(reads)
+      .append(", failures=").append(failures);
+    HikariPoolMXBean mxBean = pool.getHikariPoolMXBean();
+    if (mxBean != null) {
+      sb.append(", active=").append(mxBean.getActiveConnections())
+        .append(", idle=").append(mxBean.getIdleConnections())
+        .append(", waiting=").append(mxBean.getThreadsAwaitingConnection());
+    }
+  }
+
+  private void setReplicas(List<ReplicaPool> pools, final ReplicaConf conf) {
+    this.replicas = Collections.unmodifiableList(pools);
+    this.replicaChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "datasource-" + name + "-replica-checker");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    replicaChecker.scheduleAtFixedRate(() -> {
+      for (ReplicaPool pool : replicas) {
+        if (pool.service == null) {
+          pool.service = createReplicaDataSource(pool.name, pool.props);
+          if (pool.service == null) {
+            continue;
+          }
+        }
+
+        boolean healthy = checkReplica(pool, conf);
+        if (healthy != pool.healthy) {
+          LOG.info("replica {} of datasource {} is now {}", pool.name, name,
+              healthy ? "healthy" : "unhealthy");
+          pool.healthy = healthy;
+        }
+      }
+    }, conf.checkInterval, conf.checkInterval, TimeUnit.SECONDS);
+  }
+
+  private boolean checkReplica(ReplicaPool pool, ReplicaConf conf) {
+    Connection conn = null;
+    try {
+      conn = pool.service.getConnection();
+      if (conf.lagQuery == null) {
+        return conn.isValid(5);
+      }
+
+      try (Statement stmt = conn.createStatement();
+          ResultSet rs = stmt.executeQuery(conf.lagQuery)) {
+        if (!rs.next()) {
+          return false;
+        }
+
+        long lag = rs.getLong(1);
+        if (lag > conf.maxLag) {
+          LOG.warn("replica {} of datasource {} lags {} seconds behind", pool.name, name, lag);
+          return false;
+        }
+        return true;
+      }
+    } catch (Exception ex) {
+      LOG.warn("could not check replica {} of datasource {}: {}", pool.name, name,
+          ex.getMessage());
+      return false;
+    } finally {
+      if (conn != null) {
+        try {
+          conn.close();
+        } catch (SQLException ex) {
+          LOG.warn("could not close connection: {}", ex.getMessage());
+        }
+      }
+    }
+  }
+
   public void returnConnection(Connection conn) {
     if (conn == null) {
       return;
@@ -443,6 +693,23 @@ public abstract class DataSourceWrapper implements Closeable {
 
   @Override
   public void close() {
+    if (replicaChecker != null) {
+      replicaChecker.shutdownNow();
+    }
+
+    for (ReplicaPool pool : replicas) {
+      if (pool.service == null) {
+        continue;
+      }
+
+      try {
+        pool.service.close();
+      } catch (RuntimeException ex) {
+        LOG.warn("could not close replica {}: {}", pool.name, ex.getMessage());
+        LOG.debug("could not close replica " + pool.name, ex);
+      }
+    }
+
     try {
       service.close();
     } catch (RuntimeException ex) {
@@ -484,7 +751,7 @@ public abstract class DataSourceWrapper implements Closeable {
       throws DataAccessException {
     Args.notNull(conn, "conn");
     try {
-      return conn.prepareStatement(sqlQuery);
+      return instrument(conn.prepareStatement(sqlQuery), sqlQuery);
     } catch (SQLException ex) {
       throw translate(sqlQuery, ex);
     }
@@ -495,7 +762,35 @@ public abstract class DataSourceWrapper implements Closeable {
 
     boolean succ = false;
     try {
-      PreparedStatement ps = conn.prepareStatement(sqlQuery);
+      PreparedStatement ps = instrument(conn.prepareStatement(sqlQuery), sqlQuery);
+      succ = true;
+      return ps;
+    } catch (SQLException ex) {
+      throw translate(sqlQuery, ex);
+    } finally {
+      if (!succ) {
+        returnConnection(conn);
+      }
+    }
+  }
+
+  /**
+   * Prepares a read-only statement on the connection returned by
+   * {@link #getReadOnlyConnection()}. The statement must be released via
+   * {@link #releaseResources(Statement, ResultSet)}.
+   *
+   * @param sqlQuery
+   *          the SQL query.
+   * @return the prepared statement.
+   * @throws DataAccessException
+   *           if database error occurs.
+   */
+  public PreparedStatement prepareReadOnlyStatement(String sqlQuery) throws DataAccessException {
+    Connection conn = getReadOnlyConnection();
+
+    boolean succ = false;
+    try {
+      PreparedStatement ps = instrument(conn.prepareStatement(sqlQuery), sqlQuery);
       succ = true;
       return ps;
     } catch (SQLException ex) {
@@ -507,6 +802,23 @@ public abstract class DataSourceWrapper implements Closeable {
     }
   }
 
+  private PreparedStatement instrument(PreparedStatement ps, String sqlQuery) {
+    return (sqlMetrics == null) ? ps : sqlMetrics.wrap(ps, sqlQuery);
+  }
+
+  /**
+   * Returns the SQL metrics.
+   *
+   * @return the SQL metrics, {@code null} if the collection of SQL metrics is not enabled.
+   */
+  public SqlMetrics getSqlMetrics() {
+    return sqlMetrics;
+  }
+
+  void setSqlMetrics(SqlMetrics sqlMetrics) {
+    this.sqlMetrics = sqlMetrics;
+  }
+
   public void releaseResources(Statement ps, ResultSet rs) {
     releaseResources(ps, rs, true);
   }
@@ -1121,9 +1433,81 @@ public abstract class DataSourceWrapper implements Closeable {
 
   static DataSourceWrapper createDataSource(String name, Properties props,
       DatabaseType databaseType) {
+    return createDataSource(name, props, databaseType, null);
+  }
+
+  static DataSourceWrapper createDataSource(String name, Properties props,
+      DatabaseType databaseType, ReplicaConf replicaConf) {
     Args.notNull(props, "props");
     Args.notNull(databaseType, "databaseType");
 
+    if (databaseType == DatabaseType.DB2 || databaseType == DatabaseType.H2
+        || databaseType == DatabaseType.HSQL || databaseType == DatabaseType.MYSQL
+        || databaseType == DatabaseType.MARIADB || databaseType == DatabaseType.ORACLE
+        || databaseType == DatabaseType.POSTGRES) {
+      HikariDataSource service = createHikariDataSource(props);
+      DataSourceWrapper ds;
+      switch (databaseType) {
+        case DB2:
+          ds = new DB2(name, service);
+          break;
+        case H2:
+          ds = new H2(name, service);
+          break;
+        case HSQL:
+          ds = new HSQL(name, service);
+          break;
+        case MYSQL:
+          ds = new MySQL(name, service);
+          break;
+        case MARIADB:
+          ds = new MariaDB(name, service);
+          break;
+        case ORACLE:
+          ds = new Oracle(name, service);
+          break;
+        default: // POSTGRESQL:
+          ds = new PostgreSQL(name, service);
+          break;
+      }
+
+      if (replicaConf != null) {
+        List<ReplicaPool> pools = new ArrayList<>(replicaConf.replicas.size());
+        for (Entry<String, Properties> entry : replicaConf.replicas.entrySet()) {
+          // an unavailable replica must not block the primary database, it is added as
+          // unhealthy and created again by the replica checker.
+          String replicaName = entry.getKey();
+          HikariDataSource replicaService = ds.createReplicaDataSource(replicaName,
+              entry.getValue());
+          pools.add(new ReplicaPool(replicaName, entry.getValue(), replicaService));
+          LOG.info("added replica {} to datasource {}, healthy: {}", replicaName, name,
+              replicaService != null);
+        }
+        ds.setReplicas(pools, replicaConf);
+      }
+      return ds;
+    } else {
+      throw new IllegalArgumentException("unknown datasource type " + databaseType);
+    }
+  } // method createDataSource
+
+  /**
+   * Creates the connection pool of a replica.
+   *
+   * @return the connection pool, or {@code null} if it could not be created.
+   */
+  private HikariDataSource createReplicaDataSource(String replicaName, Properties props) {
+    try {
+      return createHikariDataSource(props);
+    } catch (RuntimeException ex) {
+      LOG.warn("could not create replica {} of datasource {}: {}", replicaName, name,
+          ex.getMessage());
+      LOG.debug("could not create replica " + replicaName, ex);
+      return null;
+    }
+  }
+
+  private static HikariDataSource createHikariDataSource(Properties props) {
     // The DB2 schema name is case-sensitive, and must be specified in uppercase characters
     String datasourceClassName = props.getProperty("dataSourceClassName");
     if (datasourceClassName != null) {
@@ -1158,31 +1542,7 @@ public abstract class DataSourceWrapper implements Closeable {
       }
     } // end if
 
-    if (databaseType == DatabaseType.DB2 || databaseType == DatabaseType.H2
-        || databaseType == DatabaseType.HSQL || databaseType == DatabaseType.MYSQL
-        || databaseType == DatabaseType.MARIADB || databaseType == DatabaseType.ORACLE
-        || databaseType == DatabaseType.POSTGRES) {
-      HikariConfig conf = new HikariConfig(props);
-      HikariDataSource service = new HikariDataSource(conf);
-      switch (databaseType) {
-        case DB2:
-          return new DB2(name, service);
-        case H2:
-          return new H2(name, service);
-        case HSQL:
-          return new HSQL(name, service);
-        case MYSQL:
-          return new MySQL(name, service);
-        case MARIADB:
-          return new MariaDB(name, service);
-        case ORACLE:
-          return new Oracle(name, service);
-        default: // POSTGRESQL:
-          return new PostgreSQL(name, service);
-      }
-    } else {
-      throw new IllegalArgumentException("unknown datasource type " + databaseType);
-    }
-  } // method createDataSource
+    return new HikariDataSource(new HikariConfig(props));
+  } // method createHikariDataSource
 
 }
@@ -0,0 +1,281 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the execution statistics of the SQL statements prepared by the
+ * {@link DataSourceWrapper}, grouped by the SQL template.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class SqlMetrics {
+
+  private static class Stats {
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder rows = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MS.length + 1];
+
+    Stats() {
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void record(long nanos, boolean failed) {
+      count.increment();
+      if (failed) {
+        errors.increment();
+      }
+      totalNanos.add(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+
+      long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+      int idx = 0;
+      while (idx < BUCKET_BOUNDS_MS.length && ms >= BUCKET_BOUNDS_MS[idx]) {
+        idx++;
+      }
+      buckets[idx].increment();
+    }
+
+    void add(Stats other) {
+      count.add(other.count.sum());
+      errors.add(other.errors.sum());
+      rows.add(other.rows.sum());
+      totalNanos.add(other.totalNanos.sum());
+      maxNanos.accumulateAndGet(other.maxNanos.get(), Math::max);
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i].add(other.buckets[i].sum());
+      }
+    }
+
+    Map<String, Object> toMap() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      long cnt = count.sum();
+      map.put("count", cnt);
+      map.put("errors", errors.sum());
+      map.put("rows", rows.sum());
+      long total = totalNanos.sum();
+      map.put("totalMs", TimeUnit.NANOSECONDS.toMillis(total));
+      map.put("avgUs", cnt == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(total / cnt));
+      map.put("maxUs", TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+
+      Map<String, Long> histogram = new LinkedHashMap<>();
+      for (int i = 0; i < buckets.length; i++) {
+        String label = (i < BUCKET_BOUNDS_MS.length)
+            ? "<" + BUCKET_BOUNDS_MS[i] + "ms" : ">=" + BUCKET_BOUNDS_MS[i - 1] + "ms";
+        histogram.put(label, buckets[i].sum());
+      }
+      map.put("histogram", histogram);
+      return map;
+    }
+
+  } // class Stats
+
+  private class StatementHandler implements InvocationHandler {
+
+    private final PreparedStatement target;
+
+    private final Stats stats;
+
+    private final String sql;
+
+    StatementHandler(PreparedStatement target, Stats stats, String sql) {
+      this.target = target;
+      this.stats = stats;
+      this.sql = sql;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if (!name.startsWith("execute")) {
+        return invokeTarget(target, method, args);
+      }
+
+      long start = System.nanoTime();
+      boolean failed = true;
+      try {
+        Object ret = invokeTarget(target, method, args);
+        failed = false;
+        if (ret instanceof ResultSet) {
+          return wrap((ResultSet) ret, stats);
+        } else if (ret instanceof Integer || ret instanceof Long) {
+          stats.rows.add(((Number) ret).longValue());
+        } else if (ret instanceof int[]) {
+          for (int i : (int[]) ret) {
+            if (i > 0) {
+              stats.rows.add(i);
+            }
+          }
+        }
+        return ret;
+      } finally {
+        long duration = System.nanoTime() - start;
+        stats.record(duration, failed);
+        if (slowQueryThresholdNanos > 0 && duration >= slowQueryThresholdNanos) {
+          LOG.warn("datasource {}: slow SQL took {} ms: {}", datasourceName,
+              TimeUnit.NANOSECONDS.toMillis(duration), sql);
+        }
+      }
+    }
+
+  } // class StatementHandler
+
+  private static class ResultSetHandler implements InvocationHandler {
+
+    private final ResultSet target;
+
+    private final Stats stats;
+
+    ResultSetHandler(ResultSet target, Stats stats) {
+      this.target = target;
+      this.stats = stats;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object ret = invokeTarget(target, method, args);
+      if ("next".equals(method.getName()) && Boolean.TRUE.equals(ret)) {
+        stats.rows.increment();
+      }
+      return ret;
+    }
+
+  } // class ResultSetHandler
+
+  private static final Logger LOG = LoggerFactory.getLogger(SqlMetrics.class);
+
+  private static final long[] BUCKET_BOUNDS_MS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+  private static final int MAX_TEMPLATES = 1000;
+
+  private static final String OTHER_TEMPLATES = "<other>";
+
+  private final String datasourceName;
+
+  private final long slowQueryThresholdNanos;
+
+  private final boolean exposeSql;
+
+  private final ConcurrentHashMap<String, Stats> statsMap = new ConcurrentHashMap<>();
+
+  private final Stats connectionStats = new Stats();
+
+  /**
+   * Constructor.
+   *
+   * @param datasourceName
+   *          Name of the datasource.
+   * @param slowQueryThresholdMs
+   *          Statements taking at least this number of milliseconds will be logged.
+   *          Non-positive value to disable the logging.
+   * @param exposeSql
+   *          Whether the statistics of each SQL template, keyed by the SQL text, are contained
+   *          in {@link #getStatistics()}.
+   */
+  public SqlMetrics(String datasourceName, long slowQueryThresholdMs, boolean exposeSql) {
+    this.datasourceName = datasourceName;
+    this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMs);
+    this.exposeSql = exposeSql;
+  }
+
+  PreparedStatement wrap(PreparedStatement ps, String sql) {
+    Stats stats = statsMap.get(sql);
+    if (stats == null) {
+      String key = (statsMap.size() < MAX_TEMPLATES) ? sql : OTHER_TEMPLATES;
+      stats = statsMap.computeIfAbsent(key, k -> new Stats());
+    }
+
+    return (PreparedStatement) Proxy.newProxyInstance(SqlMetrics.class.getClassLoader(),
+        new Class<?>[]{PreparedStatement.class}, new StatementHandler(ps, stats, sql));
+  }
+
+  private static ResultSet wrap(ResultSet rs, Stats stats) {
+    return (ResultSet) Proxy.newProxyInstance(SqlMetrics.class.getClassLoader(),
+        new Class<?>[]{ResultSet.class}, new ResultSetHandler(rs, stats));
+  }
+
+  void recordConnectionAcquire(long nanos, boolean failed) {
+    connectionStats.record(nanos, failed);
+  }
+
+  /**
+   * Returns the collected statistics.
+   *
+   * @return the statistics of the connection acquisition and of all SQL statements, and if
+   *         enabled, of each SQL template.
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("connectionAcquire", connectionStats.toMap());
+
+    Stats total = new Stats();
+    for (Stats stats : statsMap.values()) {
+      total.add(stats);
+    }
+    map.put("statements", total.toMap());
+    map.put("templates", statsMap.size());
+
+    if (exposeSql) {
+      Map<String, Object> sqls = new TreeMap<>();
+      for (Map.Entry<String, Stats> entry : statsMap.entrySet()) {
+        sqls.put(entry.getKey(), entry.getValue().toMap());
+      }
+      map.put("sql", sqls);
+    }
+    return map;
+  }
+
+  private static Object invokeTarget(Object target, Method method, Object[] args)
+      throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException ex) {
+      throw ex.getCause();
+    }
+  }
+
+}
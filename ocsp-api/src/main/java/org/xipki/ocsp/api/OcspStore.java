@@ -23,6 +23,8 @@ import java.security.cert.X509Certificate;
 import java.util.Date;
 
 import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.CrlReason;
 import org.xipki.util.Args;
 
 /**
@@ -36,6 +38,27 @@ public abstract class OcspStore implements Closeable {
   public static interface SourceConf {
   }
 
+  /**
+   * Listener of the changes of certificate status, e.g. to invalidate the cached responses.
+   *
+   * @since 5.0.2
+   */
+  public static interface CertStatusListener {
+
+    /**
+     * The status of a certificate has been changed.
+     * @param issuerCert
+     *          Certificate of the issuer. Must not be {@code null}.
+     * @param serialNumber
+     *          Serial number of the certificate, {@code null} for all certificates of the issuer.
+     * @param changeTime
+     *          Time of the change or a later time, e.g. when the change has been noticed,
+     *          seconds since January 1, 1970, 00:00:00 GMT.
+     */
+    void certStatusChanged(X509Certificate issuerCert, BigInteger serialNumber, long changeTime);
+
+  }
+
   protected static final long DAY = 24L * 60 * 60 * 1000;
 
   protected String name;
@@ -52,6 +75,8 @@ public abstract class OcspStore implements Closeable {
 
   protected boolean ignoreNotYetValidCert;
 
+  protected volatile CertStatusListener certStatusListener;
+
   public OcspStore() {
   }
 
@@ -103,10 +128,91 @@ public abstract class OcspStore implements Closeable {
 
   public abstract boolean isHealthy();
 
+  /**
+   * Sets the listener of the changes of certificate status. The stores which cannot detect
+   * the changes just ignore it.
+   * @param certStatusListener
+   *          Listener. Could be {@code null}.
+   */
+  public void setCertStatusListener(CertStatusListener certStatusListener) {
+    this.certStatusListener = certStatusListener;
+  }
+
   public void setName(String name) {
     this.name = Args.notBlank(name, "name");
   }
 
+  /**
+   * Sets the archiveCutoff of the certificate status if configured.
+   * @param certStatusInfo
+   *          Certificate status. Must not be {@code null}.
+   * @param issuerNotBefore
+   *          notBefore of the issuer certificate. Must not be {@code null}.
+   * @since 5.0.2
+   */
+  protected void setArchiveCutoff(CertStatusInfo certStatusInfo, Date issuerNotBefore) {
+    if (!includeArchiveCutoff || retentionInterval == 0) {
+      return;
+    }
+
+    Date date;
+    // expired certificate remains in status store for ever
+    if (retentionInterval < 0) {
+      date = issuerNotBefore;
+    } else {
+      long nowInMs = System.currentTimeMillis();
+      long dateInMs = Math.max(issuerNotBefore.getTime(), nowInMs - DAY * retentionInterval);
+      date = new Date(dateInMs);
+    }
+
+    certStatusInfo.setArchiveCutOff(date);
+  }
+
+  /**
+   * Returns the certificate status which inherits the revocation of the CA: the good and unknown
+   * certificates and the certificates revoked after the CA are considered as revoked with the
+   * reason cACompromise at the revocation time of the CA.
+   * @param certStatusInfo
+   *          Certificate status. Must not be {@code null}.
+   * @param caRevInfo
+   *          Revocation information of the CA. Could be {@code null}.
+   * @return the certificate status.
+   * @since 5.0.2
+   */
+  protected static CertStatusInfo inheritCaRevocation(CertStatusInfo certStatusInfo,
+      CertRevocationInfo caRevInfo) {
+    if (caRevInfo == null) {
+      return certStatusInfo;
+    }
+
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD || certStatus == CertStatus.UNKNOWN) {
+      replaced = true;
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (!replaced) {
+      return certStatusInfo;
+    }
+
+    CertRevocationInfo newRevInfo;
+    if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+      newRevInfo = caRevInfo;
+    } else {
+      newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+          caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+    }
+    return CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+        certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+        certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+        certStatusInfo.getCertprofile());
+  }
+
   public String getName() {
     return name;
   }
@@ -0,0 +1,478 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.client;
+
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.net.URL;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.SecurityFactory;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+import org.xipki.util.ReqRespDebug;
+import org.xipki.util.StringUtil;
+
+/**
+ * {@link OcspRequestor} which caches the responses of an underlying requestor.
+ *
+ * <p>Only requests for a single certificate without nonce are cached, as recommended by
+ * RFC 5019. A response is only cached if it answers the requested certificate and is signed
+ * by the issuer or by a responder authorized by the issuer. It is cached until its nextUpdate,
+ * but at most maxAge, responses without nextUpdate are not cached. The least recently used
+ * entries are removed if the cache is full. Concurrent lookups of the same certificate result
+ * in only one request, and a response is refreshed in background if it is accessed shortly
+ * before its expiration.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class CachingOcspRequestor implements OcspRequestor, Closeable {
+
+  private static class CacheEntry {
+
+    private final OCSPResp response;
+
+    private final long expiresAt;
+
+    private final long refreshAt;
+
+    CacheEntry(OCSPResp response, long expiresAt, long refreshAt) {
+      this.response = response;
+      this.expiresAt = expiresAt;
+      this.refreshAt = refreshAt;
+    }
+
+  }
+
+  private static final Logger LOG = LoggerFactory.getLogger(CachingOcspRequestor.class);
+
+  private OcspRequestor underlying;
+
+  private int cacheSize = 1000;
+
+  private SecurityFactory securityFactory;
+
+  private long maxAge = 3600 * 1000L;
+
+  private long prefetchBefore;
+
+  private final Map<String, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final ConcurrentHashMap<String, CompletableFuture<OCSPResp>> inflightRequests =
+      new ConcurrentHashMap<>();
+
+  private ExecutorService prefetchExecutor;
+
+  public CachingOcspRequestor() {
+  }
+
+  public CachingOcspRequestor(OcspRequestor underlying) {
+    this.underlying = Args.notNull(underlying, "underlying");
+  }
+
+  public void setUnderlying(OcspRequestor underlying) {
+    this.underlying = Args.notNull(underlying, "underlying");
+  }
+
+  /**
+   * Sets the security factory to verify the signatures of the responses. Without it, no
+   * response is cached.
+   */
+  public void setSecurityFactory(SecurityFactory securityFactory) {
+    this.securityFactory = securityFactory;
+  }
+
+  /**
+   * Sets the maximal number of cached responses, 0 to disable the cache.
+   */
+  public void setCacheSize(int cacheSize) {
+    this.cacheSize = Args.notNegative(cacheSize, "cacheSize");
+    synchronized (cache) {
+      removeEldestEntries();
+    }
+  }
+
+  /**
+   * Sets the maximal duration in seconds a response is cached, even if its nextUpdate is later.
+   * Default is 3600.
+   */
+  public void setMaxAge(int maxAge) {
+    this.maxAge = Args.positive(maxAge, "maxAge") * 1000L;
+  }
+
+  /**
+   * Sets how many seconds before its expiration a cached response is refreshed in background,
+   * 0 to disable the prefetch.
+   */
+  public void setPrefetchBefore(int prefetchBefore) {
+    this.prefetchBefore = Args.notNegative(prefetchBefore, "prefetchBefore") * 1000L;
+  }
+
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  @Override
+  public OCSPResp ask(X509Certificate issuerCert, X509Certificate cert, URL responderUrl,
+      RequestOptions requestOptions, ReqRespDebug debug)
+      throws OcspResponseException, OcspRequestorException {
+    Args.notNull(issuerCert, "issuerCert");
+    Args.notNull(cert, "cert");
+
+    try {
+      if (!X509Util.issues(issuerCert, cert)) {
+        throw new IllegalArgumentException("cert and issuerCert do not match");
+      }
+    } catch (CertificateEncodingException ex) {
+      throw new OcspRequestorException(ex.getMessage(), ex);
+    }
+
+    return ask(issuerCert, cert.getSerialNumber(), responderUrl, requestOptions, debug);
+  }
+
+  @Override
+  public OCSPResp ask(X509Certificate issuerCert, X509Certificate[] certs, URL responderUrl,
+      RequestOptions requestOptions, ReqRespDebug debug)
+      throws OcspResponseException, OcspRequestorException {
+    Args.notNull(certs, "certs");
+    if (certs.length == 1) {
+      return ask(issuerCert, certs[0], responderUrl, requestOptions, debug);
+    }
+    return underlying.ask(issuerCert, certs, responderUrl, requestOptions, debug);
+  }
+
+  @Override
+  public OCSPResp ask(X509Certificate issuerCert, BigInteger[] serialNumbers, URL responderUrl,
+      RequestOptions requestOptions, ReqRespDebug debug)
+      throws OcspResponseException, OcspRequestorException {
+    Args.notNull(serialNumbers, "serialNumbers");
+    if (serialNumbers.length == 1) {
+      return ask(issuerCert, serialNumbers[0], responderUrl, requestOptions, debug);
+    }
+    return underlying.ask(issuerCert, serialNumbers, responderUrl, requestOptions, debug);
+  }
+
+  @Override
+  public OCSPResp ask(X509Certificate issuerCert, BigInteger serialNumber, URL responderUrl,
+      RequestOptions requestOptions, ReqRespDebug debug)
+      throws OcspResponseException, OcspRequestorException {
+    Args.notNull(issuerCert, "issuerCert");
+    Args.notNull(serialNumber, "serialNumber");
+    Args.notNull(responderUrl, "responderUrl");
+    Args.notNull(requestOptions, "requestOptions");
+
+    // a cached response cannot answer a request with nonce
+    if (cacheSize == 0 || requestOptions.isUseNonce()) {
+      return underlying.ask(issuerCert, serialNumber, responderUrl, requestOptions, debug);
+    }
+
+    String key = buildKey(issuerCert, serialNumber, responderUrl, requestOptions);
+
+    CacheEntry entry;
+    synchronized (cache) {
+      entry = cache.get(key);
+    }
+
+    long now = System.currentTimeMillis();
+    if (entry != null) {
+      if (now < entry.expiresAt) {
+        if (now >= entry.refreshAt) {
+          prefetch(key, issuerCert, serialNumber, responderUrl, requestOptions);
+        }
+        return entry.response;
+      }
+
+      synchronized (cache) {
+        cache.remove(key, entry);
+      }
+    }
+
+    return load(key, issuerCert, serialNumber, responderUrl, requestOptions, debug);
+  } // method ask
+
+  private OCSPResp load(String key, X509Certificate issuerCert, BigInteger serialNumber,
+      URL responderUrl, RequestOptions requestOptions, ReqRespDebug debug)
+      throws OcspResponseException, OcspRequestorException {
+    CompletableFuture<OCSPResp> future = new CompletableFuture<>();
+    CompletableFuture<OCSPResp> inflight = inflightRequests.putIfAbsent(key, future);
+    if (inflight != null) {
+      // the same certificate is being requested by another thread
+      return await(inflight);
+    }
+
+    try {
+      OCSPResp response = underlying.ask(issuerCert, serialNumber, responderUrl,
+          requestOptions, debug);
+      store(key, response, issuerCert, serialNumber);
+      future.complete(response);
+      return response;
+    } catch (OcspResponseException | OcspRequestorException | RuntimeException ex) {
+      future.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inflightRequests.remove(key, future);
+    }
+  } // method load
+
+  private void prefetch(String key, X509Certificate issuerCert, BigInteger serialNumber,
+      URL responderUrl, RequestOptions requestOptions) {
+    if (inflightRequests.containsKey(key)) {
+      return;
+    }
+
+    try {
+      getPrefetchExecutor().execute(() -> {
+        try {
+          load(key, issuerCert, serialNumber, responderUrl, requestOptions, null);
+        } catch (Exception ex) {
+          LogUtil.warn(LOG, ex, "could not prefetch OCSP response for serial number "
+              + LogUtil.formatCsn(serialNumber));
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      LOG.debug("prefetch of OCSP response rejected: {}", ex.getMessage());
+    }
+  } // method prefetch
+
+  private static OCSPResp await(CompletableFuture<OCSPResp> future)
+      throws OcspResponseException, OcspRequestorException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new OcspRequestorException("interrupted while waiting for the OCSP response", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof OcspResponseException) {
+        throw (OcspResponseException) cause;
+      } else if (cause instanceof OcspRequestorException) {
+        throw (OcspRequestorException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw new OcspRequestorException(cause.getMessage(), cause);
+      }
+    }
+  } // method await
+
+  private void store(String key, OCSPResp response, X509Certificate issuerCert,
+      BigInteger serialNumber) {
+    if (securityFactory == null || response.getStatus() != OCSPResp.SUCCESSFUL) {
+      return;
+    }
+
+    BasicOCSPResp basicResp;
+    SingleResp singleResp;
+    try {
+      Object respObject = response.getResponseObject();
+      if (!(respObject instanceof BasicOCSPResp)) {
+        return;
+      }
+
+      basicResp = (BasicOCSPResp) respObject;
+      SingleResp[] singleResps = basicResp.getResponses();
+      if (singleResps == null || singleResps.length != 1) {
+        return;
+      }
+      singleResp = singleResps[0];
+    } catch (OCSPException ex) {
+      return;
+    }
+
+    // the response will be returned to the later requests without involving the underlying
+    // requestor, hence it must be verified before.
+    if (!matchesCertId(singleResp.getCertID(), issuerCert, serialNumber)) {
+      LOG.warn("OCSP response for serial number {} is not cached: CertID does not match",
+          LogUtil.formatCsn(serialNumber));
+      return;
+    }
+
+    if (!isSignatureValid(basicResp, issuerCert)) {
+      LOG.warn("OCSP response for serial number {} is not cached: signature is not trusted",
+          LogUtil.formatCsn(serialNumber));
+      return;
+    }
+
+    Date nextUpdate = singleResp.getNextUpdate();
+    if (nextUpdate == null) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    long expiresAt = Math.min(nextUpdate.getTime(), now + maxAge);
+
+    if (expiresAt <= now) {
+      return;
+    }
+
+    long refreshAt = (prefetchBefore > 0) ? expiresAt - prefetchBefore : Long.MAX_VALUE;
+    // do not refresh more often than every second
+    refreshAt = Math.max(refreshAt, now + 1000);
+
+    synchronized (cache) {
+      cache.put(key, new CacheEntry(response, expiresAt, refreshAt));
+      removeEldestEntries();
+    }
+  } // method store
+
+  private static boolean matchesCertId(CertificateID certId, X509Certificate issuerCert,
+      BigInteger serialNumber) {
+    if (!serialNumber.equals(certId.getSerialNumber())) {
+      return false;
+    }
+
+    HashAlgo hashAlgo = HashAlgo.getInstance(certId.getHashAlgOID());
+    if (hashAlgo == null) {
+      return false;
+    }
+
+    byte[] issuerNameHash = hashAlgo.hash(issuerCert.getSubjectX500Principal().getEncoded());
+    byte[] issuerKeyHash = hashAlgo.hash(SubjectPublicKeyInfo.getInstance(
+        issuerCert.getPublicKey().getEncoded()).getPublicKeyData().getOctets());
+    return Arrays.equals(issuerNameHash, certId.getIssuerNameHash())
+        && Arrays.equals(issuerKeyHash, certId.getIssuerKeyHash());
+  }
+
+  /**
+   * Returns whether the response is signed by the issuer, or by a responder whose
+   * certificate is issued by the issuer for OCSP signing (RFC 6960, section 4.2.2.2).
+   */
+  private boolean isSignatureValid(BasicOCSPResp basicResp, X509Certificate issuerCert) {
+    try {
+      X509CertificateHolder issuer = new X509CertificateHolder(issuerCert.getEncoded());
+      if (matchesResponderId(basicResp.getResponderId(), issuer)) {
+        return basicResp.isSignatureValid(securityFactory.getContentVerifierProvider(issuer));
+      }
+
+      X509CertificateHolder[] certs = basicResp.getCerts();
+      if (certs == null) {
+        return false;
+      }
+
+      for (X509CertificateHolder cert : certs) {
+        if (!matchesResponderId(basicResp.getResponderId(), cert)) {
+          continue;
+        }
+
+        ExtendedKeyUsage eku = ExtendedKeyUsage.fromExtensions(cert.getExtensions());
+        boolean authorized = eku != null && eku.hasKeyPurposeId(KeyPurposeId.id_kp_OCSPSigning)
+            && cert.getIssuer().equals(issuer.getSubject())
+            && cert.isValidOn(new Date())
+            && cert.isSignatureValid(securityFactory.getContentVerifierProvider(issuer));
+        return authorized
+            && basicResp.isSignatureValid(securityFactory.getContentVerifierProvider(cert));
+      }
+      return false;
+    } catch (Exception ex) {
+      LogUtil.warn(LOG, ex, "could not verify the signature of OCSP response");
+      return false;
+    }
+  } // method isSignatureValid
+
+  private static boolean matchesResponderId(RespID respId, X509CertificateHolder cert) {
+    X500Name name = respId.toASN1Primitive().getName();
+    if (name != null) {
+      return name.equals(cert.getSubject());
+    }
+
+    byte[] keyHash = HashAlgo.SHA1.hash(
+        cert.getSubjectPublicKeyInfo().getPublicKeyData().getOctets());
+    return Arrays.equals(keyHash, respId.toASN1Primitive().getKeyHash());
+  }
+
+  private void removeEldestEntries() {
+    while (cache.size() > cacheSize) {
+      cache.remove(cache.keySet().iterator().next());
+    }
+  }
+
+  private static String buildKey(X509Certificate issuerCert, BigInteger serialNumber,
+      URL responderUrl, RequestOptions requestOptions) throws OcspRequestorException {
+    String issuerHash;
+    try {
+      issuerHash = HashAlgo.SHA1.base64Hash(issuerCert.getEncoded());
+    } catch (CertificateEncodingException ex) {
+      throw new OcspRequestorException(ex.getMessage(), ex);
+    }
+
+    return StringUtil.concat(issuerHash, ":", serialNumber.toString(16), ":",
+        requestOptions.getHashAlgorithmId().getId(), ":",
+        Boolean.toString(requestOptions.isSignRequest()), ":", responderUrl.toString());
+  }
+
+  private synchronized ExecutorService getPrefetchExecutor() {
+    if (prefetchExecutor == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(1000), runnable -> {
+            Thread thread = new Thread(runnable, "ocsp-client-prefetch");
+            thread.setDaemon(true);
+            return thread;
+          });
+      executor.allowCoreThreadTimeOut(true);
+      prefetchExecutor = executor;
+    }
+    return prefetchExecutor;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (prefetchExecutor != null) {
+      prefetchExecutor.shutdown();
+      prefetchExecutor = null;
+    }
+  }
+
+}
@@ -18,16 +18,14 @@
 package org.xipki.ocsp.client;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 
 import org.xipki.util.Base64;
-import org.xipki.util.IoUtil;
 import org.xipki.util.Args;
 import org.xipki.util.StringUtil;
+import org.xipki.util.http.DefaultHttpTransport;
+import org.xipki.util.http.HttpTransport;
 
 /**
  * TODO.
@@ -44,9 +42,16 @@ public class HttpOcspRequestor extends AbstractOcspRequestor {
 
   private static final String CT_RESPONSE = "application/ocsp-response";
 
+  // shared, without limit of the concurrent requests. A limited transport is set explicitly.
+  private HttpTransport transport = DefaultHttpTransport.getInstance();
+
   public HttpOcspRequestor() {
   }
 
+  public void setTransport(HttpTransport transport) {
+    this.transport = Args.notNull(transport, "transport");
+  }
+
   @Override
   protected byte[] send(byte[] request, URL responderUrl, RequestOptions requestOptions)
       throws IOException {
@@ -55,48 +60,19 @@ public class HttpOcspRequestor extends AbstractOcspRequestor {
     Args.notNull(requestOptions, "requestOptions");
 
     int size = request.length;
-    HttpURLConnection httpUrlConnection;
+    HttpTransport.Request httpRequest;
     if (size <= MAX_LEN_GET && requestOptions.isUseHttpGetForRequest()) {
       String b64Request = Base64.encodeToString(request);
       String urlEncodedReq = URLEncoder.encode(b64Request, "UTF-8");
       String baseUrl = responderUrl.toString();
       String url = StringUtil.concat(baseUrl, (baseUrl.endsWith("/") ? "" : "/"), urlEncodedReq);
 
-      URL newUrl = new URL(url);
-      httpUrlConnection = IoUtil.openHttpConn(newUrl);
-      httpUrlConnection.setRequestMethod("GET");
+      httpRequest = new HttpTransport.Request(new URL(url), null, null, CT_RESPONSE);
     } else {
-      httpUrlConnection = IoUtil.openHttpConn(responderUrl);
-      httpUrlConnection.setDoOutput(true);
-      httpUrlConnection.setUseCaches(false);
-
-      httpUrlConnection.setRequestMethod("POST");
-      httpUrlConnection.setRequestProperty("Content-Type", CT_REQUEST);
-      httpUrlConnection.setRequestProperty("Content-Length", Integer.toString(size));
-      OutputStream outputstream = httpUrlConnection.getOutputStream();
-      outputstream.write(request);
-      outputstream.flush();
-    }
-
-    InputStream inputstream = httpUrlConnection.getInputStream();
-    if (httpUrlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-      inputstream.close();
-      throw new IOException("bad response: " + httpUrlConnection.getResponseCode() + "    "
-          + httpUrlConnection.getResponseMessage());
-    }
-    String responseContentType = httpUrlConnection.getContentType();
-    boolean isValidContentType = false;
-    if (responseContentType != null) {
-      if (responseContentType.equalsIgnoreCase(CT_RESPONSE)) {
-        isValidContentType = true;
-      }
-    }
-    if (!isValidContentType) {
-      inputstream.close();
-      throw new IOException("bad response: mime type " + responseContentType + " not supported!");
+      httpRequest = new HttpTransport.Request(responderUrl, request, CT_REQUEST, CT_RESPONSE);
     }
 
-    return IoUtil.read(inputstream);
+    return transport.send(httpRequest);
   } // method send
 
 }
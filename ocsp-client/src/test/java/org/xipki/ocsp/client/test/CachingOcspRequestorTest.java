@@ -0,0 +1,379 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.client.test;
+
+import java.math.BigInteger;
+import java.net.URL;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.client.CachingOcspRequestor;
+import org.xipki.ocsp.client.OcspRequestor;
+import org.xipki.ocsp.client.RequestOptions;
+import org.xipki.security.SecurityFactoryImpl;
+import org.xipki.util.ReqRespDebug;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class CachingOcspRequestorTest {
+
+  /**
+   * Answers each request with the response produced by {@link #responder}, and counts the
+   * requests.
+   */
+  private static class CountingRequestor implements OcspRequestor {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private volatile ResponseFactory responder;
+
+    private volatile CountDownLatch entered;
+
+    private volatile CountDownLatch release;
+
+    @Override
+    public OCSPResp ask(X509Certificate issuerCert, X509Certificate cert, URL responderUrl,
+        RequestOptions requestOptions, ReqRespDebug debug) {
+      return ask(issuerCert, cert.getSerialNumber(), responderUrl, requestOptions, debug);
+    }
+
+    @Override
+    public OCSPResp ask(X509Certificate issuerCert, X509Certificate[] certs, URL responderUrl,
+        RequestOptions requestOptions, ReqRespDebug debug) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public OCSPResp ask(X509Certificate issuerCert, BigInteger serialNumber, URL responderUrl,
+        RequestOptions requestOptions, ReqRespDebug debug) {
+      count.incrementAndGet();
+      if (entered != null) {
+        entered.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      try {
+        return responder.create(serialNumber);
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+
+    @Override
+    public OCSPResp ask(X509Certificate issuerCert, BigInteger[] serialNumbers,
+        URL responderUrl, RequestOptions requestOptions, ReqRespDebug debug) {
+      throw new UnsupportedOperationException();
+    }
+
+  } // class CountingRequestor
+
+  private interface ResponseFactory {
+
+    OCSPResp create(BigInteger serialNumber) throws Exception;
+
+  }
+
+  private static final BigInteger SERIAL = BigInteger.valueOf(100);
+
+  private static KeyPair issuerKeypair;
+
+  private static X509Certificate issuerCert;
+
+  private static KeyPair otherKeypair;
+
+  private static X509Certificate otherCert;
+
+  private static URL responderUrl;
+
+  private CountingRequestor underlying;
+
+  private CachingOcspRequestor requestor;
+
+  private RequestOptions requestOptions;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    issuerKeypair = generateKeypair();
+    issuerCert = generateCert(new X500Name("CN=issuer"), issuerKeypair.getPublic(),
+        new X500Name("CN=issuer"), issuerKeypair.getPrivate(), false);
+    otherKeypair = generateKeypair();
+    otherCert = generateCert(new X500Name("CN=other"), otherKeypair.getPublic(),
+        new X500Name("CN=other"), otherKeypair.getPrivate(), false);
+    responderUrl = new URL("http://localhost/ocsp");
+  }
+
+  @Before
+  public void setUp() {
+    underlying = new CountingRequestor();
+    underlying.responder = serial -> buildResponse(serial, 60000, issuerCert,
+        issuerKeypair.getPrivate(), null);
+
+    requestor = new CachingOcspRequestor(underlying);
+    requestor.setSecurityFactory(new SecurityFactoryImpl());
+
+    requestOptions = new RequestOptions();
+    requestOptions.setUseNonce(false);
+  }
+
+  @After
+  public void tearDown() {
+    requestor.close();
+  }
+
+  @Test
+  public void testCached() throws Exception {
+    OCSPResp resp1 = ask();
+    OCSPResp resp2 = ask();
+    Assert.assertEquals("requests", 1, underlying.count.get());
+    Assert.assertSame("cached response", resp1, resp2);
+    Assert.assertEquals("size", 1, requestor.size());
+  }
+
+  @Test
+  public void testNonceNotCached() throws Exception {
+    requestOptions.setUseNonce(true);
+    ask();
+    ask();
+    Assert.assertEquals("requests", 2, underlying.count.get());
+    Assert.assertEquals("size", 0, requestor.size());
+  }
+
+  @Test
+  public void testUntrustedSignatureNotCached() throws Exception {
+    underlying.responder = serial -> buildResponse(serial, 60000, issuerCert,
+        otherKeypair.getPrivate(), null);
+    ask();
+    ask();
+    Assert.assertEquals("requests", 2, underlying.count.get());
+    Assert.assertEquals("size", 0, requestor.size());
+  }
+
+  @Test
+  public void testOtherResponderNotCached() throws Exception {
+    // correctly signed by a responder which is not authorized by the issuer
+    underlying.responder = serial -> buildResponse(serial, 60000, otherCert,
+        otherKeypair.getPrivate(), otherCert);
+    ask();
+    Assert.assertEquals("size", 0, requestor.size());
+  }
+
+  @Test
+  public void testCertIdMismatchNotCached() throws Exception {
+    underlying.responder = serial -> buildResponse(serial.add(BigInteger.ONE), 60000,
+        issuerCert, issuerKeypair.getPrivate(), null);
+    ask();
+    ask();
+    Assert.assertEquals("requests", 2, underlying.count.get());
+  }
+
+  @Test
+  public void testDelegatedResponder() throws Exception {
+    KeyPair responderKeypair = generateKeypair();
+    X509Certificate responderCert = generateCert(new X500Name("CN=responder"),
+        responderKeypair.getPublic(), new X500Name("CN=issuer"), issuerKeypair.getPrivate(),
+        true);
+    underlying.responder = serial -> buildResponse(serial, 60000, responderCert,
+        responderKeypair.getPrivate(), responderCert);
+    ask();
+    ask();
+    Assert.assertEquals("requests", 1, underlying.count.get());
+  }
+
+  @Test
+  public void testSingleFlight() throws Exception {
+    underlying.entered = new CountDownLatch(1);
+    underlying.release = new CountDownLatch(1);
+
+    final int n = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(n);
+    try {
+      List<Future<OCSPResp>> futures = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        futures.add(executor.submit(() -> ask()));
+      }
+
+      Assert.assertTrue("underlying not invoked",
+          underlying.entered.await(10, TimeUnit.SECONDS));
+      // give the other threads the chance to join the in-flight request
+      Thread.sleep(200);
+      underlying.release.countDown();
+
+      OCSPResp resp = futures.get(0).get(10, TimeUnit.SECONDS);
+      for (Future<OCSPResp> future : futures) {
+        Assert.assertSame("response", resp, future.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Assert.assertEquals("requests", 1, underlying.count.get());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    requestor.setMaxAge(1);
+    ask();
+    ask();
+    Assert.assertEquals("requests before expiry", 1, underlying.count.get());
+
+    Thread.sleep(1100);
+    ask();
+    Assert.assertEquals("requests after expiry", 2, underlying.count.get());
+  }
+
+  @Test
+  public void testNoNextUpdateNotCached() throws Exception {
+    underlying.responder = serial -> buildResponse(serial, 0, issuerCert,
+        issuerKeypair.getPrivate(), null);
+    ask();
+    ask();
+    Assert.assertEquals("requests", 2, underlying.count.get());
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    requestor.setMaxAge(5);
+    requestor.setPrefetchBefore(5);
+    OCSPResp resp1 = ask();
+
+    // the refresh is due after one second
+    Thread.sleep(1100);
+    OCSPResp resp2 = ask();
+    Assert.assertSame("cached response returned while refreshing", resp1, resp2);
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (underlying.count.get() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals("requests", 2, underlying.count.get());
+
+    // the refreshed response replaces the cached one
+    deadline = System.currentTimeMillis() + 5000;
+    OCSPResp resp3 = ask();
+    while (resp3 == resp1 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      resp3 = ask();
+    }
+    Assert.assertNotSame("refreshed response", resp1, resp3);
+    Assert.assertEquals("requests", 2, underlying.count.get());
+  }
+
+  private OCSPResp ask() throws Exception {
+    return requestor.ask(issuerCert, SERIAL, responderUrl, requestOptions, null);
+  }
+
+  /**
+   * Builds a response with status good.
+   *
+   * @param validity milliseconds between thisUpdate and nextUpdate, 0 for no nextUpdate.
+   * @param responderCert certificate identifying the responder.
+   * @param includedCert certificate included in the response, may be {@code null}.
+   */
+  private static OCSPResp buildResponse(BigInteger serialNumber, long validity,
+      X509Certificate responderCert, PrivateKey signingKey, X509Certificate includedCert)
+      throws Exception {
+    CertificateID certId = new CertificateID(
+        new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+        new X509CertificateHolder(issuerCert.getEncoded()), serialNumber);
+
+    X500Name responderName = new X509CertificateHolder(responderCert.getEncoded()).getSubject();
+    BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(new RespID(responderName));
+    Date now = new Date();
+    builder.addResponse(certId, CertificateStatus.GOOD, now,
+        (validity == 0) ? null : new Date(now.getTime() + validity));
+
+    X509CertificateHolder[] chain = (includedCert == null) ? null
+        : new X509CertificateHolder[]{new X509CertificateHolder(includedCert.getEncoded())};
+    BasicOCSPResp basicResp = builder.build(
+        new JcaContentSignerBuilder("SHA256withECDSA").build(signingKey), chain, now);
+    return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResp);
+  }
+
+  private static KeyPair generateKeypair() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    return kpGen.generateKeyPair();
+  }
+
+  private static X509Certificate generateCert(X500Name subject, PublicKey publicKey,
+      X500Name issuer, PrivateKey issuerKey, boolean ocspSigning) throws Exception {
+    Date notBefore = new Date(System.currentTimeMillis() - 60000);
+    Date notAfter = new Date(notBefore.getTime() + 86400000L);
+    X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(issuer, BigInteger.ONE,
+        notBefore, notAfter, subject, publicKey);
+    if (ocspSigning) {
+      builder.addExtension(Extension.extendedKeyUsage, false,
+          new ExtendedKeyUsage(KeyPurposeId.id_kp_OCSPSigning));
+    } else {
+      builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+    }
+    return new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(issuerKey)));
+  }
+
+}
@@ -382,6 +382,12 @@ public class OcspServerConf extends ValidatableConf {
 
     private String name;
 
+    /**
+     * Limit of the concurrent requests which are not answered from the response cache.
+     * optional. Default is unlimited.
+     */
+    private ConcurrencyLimit concurrencyLimit;
+
     public List<String> getServletPaths() {
       if (servletPaths == null) {
         servletPaths = new LinkedList<>();
@@ -452,6 +458,14 @@ public class OcspServerConf extends ValidatableConf {
       this.name = name;
     }
 
+    public ConcurrencyLimit getConcurrencyLimit() {
+      return concurrencyLimit;
+    }
+
+    public void setConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+      this.concurrencyLimit = concurrencyLimit;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notEmpty(servletPaths, "servletPaths");
@@ -460,6 +474,69 @@ public class OcspServerConf extends ValidatableConf {
       notEmpty(response, "response");
       notEmpty(stores, "stores");
       notEmpty(name, "name");
+      validate(concurrencyLimit);
+    }
+
+  }
+
+  public static class ConcurrencyLimit extends ValidatableConf {
+
+    /**
+     * Maximal number of concurrent requests, also the initial limit.<br/>
+     * required
+     */
+    private int max;
+
+    /**
+     * The limit is not decreased below this value.<br/>
+     * optional. Default is 1
+     */
+    private int min = 1;
+
+    /**
+     * Requests taking longer than this time in milliseconds decrease the limit.<br/>
+     * optional. Default is 1000
+     */
+    private int latencyThreshold = 1000;
+
+    public int getMax() {
+      return max;
+    }
+
+    public void setMax(int max) {
+      this.max = max;
+    }
+
+    public int getMin() {
+      return min;
+    }
+
+    public void setMin(int min) {
+      this.min = min;
+    }
+
+    public int getLatencyThreshold() {
+      return latencyThreshold;
+    }
+
+    public void setLatencyThreshold(int latencyThreshold) {
+      this.latencyThreshold = latencyThreshold;
+    }
+
+    @Override
+    public void validate() throws InvalidConfException {
+      if (min < 1) {
+        throw new InvalidConfException("min must not be less than 1: " + min);
+      }
+
+      if (max < min) {
+        throw new InvalidConfException("max must not be less than min " + min + ": " + max);
+      }
+
+      if (latencyThreshold < 1) {
+        throw new InvalidConfException(
+            "latencyThreshold must not be less than 1: " + latencyThreshold);
+      }
     }
 
   }
@@ -470,6 +547,14 @@ public class OcspServerConf extends ValidatableConf {
 
     private int validity = 86400;
 
+    /**
+     * Maximal difference in seconds between the clocks of the CA and of the OCSP responders.
+     * The cached responses generated within this time after the change of the certificate
+     * status are regenerated.<br/>
+     * optional. Default is 60
+     */
+    private int clockSkew = 60;
+
     public Datasource getDatasource() {
       return datasource;
     }
@@ -486,6 +571,14 @@ public class OcspServerConf extends ValidatableConf {
       this.validity = validity;
     }
 
+    public int getClockSkew() {
+      return clockSkew;
+    }
+
+    public void setClockSkew(int clockSkew) {
+      this.clockSkew = clockSkew;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notNull(datasource, "datasource");
@@ -874,6 +967,34 @@ public class OcspServerConf extends ValidatableConf {
 
     private CaCerts caCerts;
 
+    /**
+     * Interval in seconds to poll the table CHANGELOG for the changes of certificate status,
+     * which are used to invalidate the cached responses and to update the filter of known
+     * serial numbers. 0 to disable it.<br/>
+     * optional. Default is 5
+     */
+    private int changeLogInterval = 5;
+
+    /**
+     * Whether to keep a filter of the known serial numbers of each issuer in memory, so that
+     * the requests for unknown serial numbers are answered without querying the database.
+     * Requires the table CHANGELOG, which is polled to add the newly published certificates.
+     * Only the certificates added by the OCSP publisher of the CA with the configuration
+     * changelog.addedcerts=true are logged in CHANGELOG, the certificates imported by the
+     * dbtool or written by other tools are not known before the filter is reloaded, see
+     * serialFilterMaxAge.
+     * <br/>
+     * optional. Default is false
+     */
+    private boolean serialFilter;
+
+    /**
+     * Maximal age in minutes of the filter of known serial numbers, it is reloaded from the
+     * database afterwards.<br/>
+     * optional. Default is 60
+     */
+    private int serialFilterMaxAge = 60;
+
     public CaCerts getCaCerts() {
       return caCerts;
     }
@@ -882,8 +1003,35 @@ public class OcspServerConf extends ValidatableConf {
       this.caCerts = caCerts;
     }
 
+    public int getChangeLogInterval() {
+      return changeLogInterval;
+    }
+
+    public void setChangeLogInterval(int changeLogInterval) {
+      this.changeLogInterval = changeLogInterval;
+    }
+
+    public boolean isSerialFilter() {
+      return serialFilter;
+    }
+
+    public void setSerialFilter(boolean serialFilter) {
+      this.serialFilter = serialFilter;
+    }
+
+    public int getSerialFilterMaxAge() {
+      return serialFilterMaxAge;
+    }
+
+    public void setSerialFilterMaxAge(int serialFilterMaxAge) {
+      this.serialFilterMaxAge = serialFilterMaxAge;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
+      if (serialFilterMaxAge < 1) {
+        throw new InvalidConfException("serialFilterMaxAge must be positive");
+      }
     }
 
   }
@@ -929,6 +1077,12 @@ public class OcspServerConf extends ValidatableConf {
      */
     private String certsDir;
 
+    /**
+     * Index file compiled from the CRL, used only by the store of type crl-index.<br/>
+     * optional. Default is ${crlFile}.idx
+     */
+    private String indexFile;
+
     public String getCrlFile() {
       return crlFile;
     }
@@ -977,6 +1131,14 @@ public class OcspServerConf extends ValidatableConf {
       this.certsDir = certsDir;
     }
 
+    public String getIndexFile() {
+      return indexFile;
+    }
+
+    public void setIndexFile(String indexFile) {
+      this.indexFile = indexFile;
+    }
+
     @Override
     public void validate() throws InvalidConfException {
       notEmpty(crlFile, "crlFile");
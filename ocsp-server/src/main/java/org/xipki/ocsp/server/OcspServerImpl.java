@@ -39,6 +39,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -101,6 +102,7 @@ import org.xipki.util.LogUtil;
 import org.xipki.util.ObjectCreationException;
 import org.xipki.util.StringUtil;
 import org.xipki.util.TripleState;
+import org.xipki.util.concurrent.AdaptiveConcurrencyLimiter;
 
 import com.alibaba.fastjson.JSON;
 
@@ -183,6 +185,8 @@ public class OcspServerImpl implements OcspServer {
 
   private Map<String, OcspStore> stores = new HashMap<>();
 
+  private Map<String, DataSourceWrapper> datasources = new HashMap<>();
+
   private List<String> servletPaths = new ArrayList<>();
 
   private Map<String, ResponderImpl> path2responderMap = new HashMap<>();
@@ -413,7 +417,8 @@ public class OcspServerImpl implements OcspServer {
       } finally {
         closeStream(dsStream);
       }
-      responseCacher = new ResponseCacher(datasource, master, cacheType.getValidity());
+      responseCacher = new ResponseCacher(datasource, master, cacheType.getValidity(),
+          cacheType.getClockSkew());
       responseCacher.init();
     }
 
@@ -454,6 +459,7 @@ public class OcspServerImpl implements OcspServer {
         datasources.put(name, datasource);
       } // end for
     } // end if
+    this.datasources = datasources;
 
     // responders
     Map<String, ResponderOption> responderOptions = new HashMap<>();
@@ -489,6 +495,9 @@ public class OcspServerImpl implements OcspServer {
     // stores
     for (OcspServerConf.Store m : conf.getStores()) {
       OcspStore store = newStore(m, datasources);
+      if (responseCacher != null) {
+        store.setCertStatusListener(responseCacher::invalidate);
+      }
       stores.put(m.getName(), store);
     }
 
@@ -583,6 +592,11 @@ public class OcspServerImpl implements OcspServer {
     ResponderSigner signer = responder.getSigner();
     OcspServerConf.ResponseOption repOpt = responder.getResponseOption();
 
+    AdaptiveConcurrencyLimiter limiter = responder.getConcurrencyLimiter();
+    boolean limiterAcquired = false;
+    long limiterStartNanos = 0;
+    boolean overloaded = false;
+
     try {
       Object reqOrRrrorResp = checkSignature(request, reqOpt);
       if (reqOrRrrorResp instanceof OcspRespWithCacheInfo) {
@@ -727,6 +741,17 @@ public class OcspServerImpl implements OcspServer {
         }
       }
 
+      // The cached responses are answered above without limit. Only the status lookup and
+      // signing are limited, the requests beyond the limit are rejected immediately.
+      if (limiter != null) {
+        if (!limiter.tryAcquire()) {
+          LOG.debug("too many concurrent requests, answer with tryLater");
+          return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
+        }
+        limiterAcquired = true;
+        limiterStartNanos = System.nanoTime();
+      }
+
       ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
       OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
 
@@ -763,6 +788,7 @@ public class OcspServerImpl implements OcspServer {
       try {
         encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner, certsInResp, new Date());
       } catch (NoIdleSignerException ex) {
+        overloaded = true;
         return unsuccesfulOCSPRespMap.get(OcspResponseStatus.tryLater);
       } catch (OCSPException ex) {
         LogUtil.error(LOG, ex, "answer() basicOcspBuilder.build");
@@ -790,6 +816,10 @@ public class OcspServerImpl implements OcspServer {
     } catch (Throwable th) {
       LogUtil.error(LOG, th);
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.internalError);
+    } finally {
+      if (limiterAcquired) {
+        limiter.release(System.nanoTime() - limiterStartNanos, overloaded);
+      }
     }
   } // method ask
 
@@ -943,6 +973,35 @@ public class OcspServerImpl implements OcspServer {
       result.addChildCheck(storeHealth);
     }
 
+    for (Entry<String, DataSourceWrapper> entry : datasources.entrySet()) {
+      DataSourceWrapper datasource = entry.getValue();
+      if (datasource.getSqlMetrics() == null && !datasource.hasReplicas()) {
+        continue;
+      }
+
+      HealthCheckResult datasourceHealth = new HealthCheckResult();
+      datasourceHealth.setName("Datasource." + entry.getKey());
+      datasourceHealth.setHealthy(true);
+      datasourceHealth.getStatuses().put("pools", datasource.getPoolStatistics());
+      if (datasource.getSqlMetrics() != null) {
+        datasourceHealth.getStatuses().putAll(datasource.getSqlMetrics().getStatistics());
+      }
+      result.addChildCheck(datasourceHealth);
+    }
+
+    AdaptiveConcurrencyLimiter limiter = responder.getConcurrencyLimiter();
+    if (limiter != null) {
+      HealthCheckResult limiterHealth = new HealthCheckResult();
+      limiterHealth.setName("ConcurrencyLimit");
+      limiterHealth.setHealthy(true);
+      Map<String, Object> statuses = limiterHealth.getStatuses();
+      statuses.put("limit", limiter.getLimit());
+      statuses.put("inFlight", limiter.getInFlight());
+      statuses.put("accepted", limiter.getAccepted());
+      statuses.put("rejected", limiter.getRejected());
+      result.addChildCheck(limiterHealth);
+    }
+
     boolean signerHealthy = responder.getSigner().isHealthy();
     healthy &= signerHealthy;
 
@@ -1081,43 +1140,75 @@ public class OcspServerImpl implements OcspServer {
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
     }
 
-    ContentVerifierProvider cvp;
+    String signerCertHash;
     try {
-      cvp = securityFactory.getContentVerifierProvider(certs[0]);
-    } catch (InvalidKeyException ex) {
-      String message = ex.getMessage();
-      LOG.warn("securityFactory.getContentVerifierProvider, InvalidKeyException: {}",
-          message);
+      signerCertHash = HashAlgo.SHA1.base64Hash(certs[0].getEncoded());
+    } catch (IOException ex) {
+      LOG.warn("could not encode the request's signer certificate: {}", ex.getMessage());
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
     }
 
+    long now = System.currentTimeMillis();
+    ValidatedSignerCache signerCache = requestOption.getValidatedSignerCache();
+    // verifier provider of the signer whose certpath has been validated
+    ContentVerifierProvider cvp = signerCache.getVerifierProvider(signerCertHash, now);
+    final boolean certpathValidated = (cvp != null);
+
+    if (cvp == null) {
+      try {
+        cvp = securityFactory.getContentVerifierProvider(certs[0]);
+      } catch (InvalidKeyException ex) {
+        String message = ex.getMessage();
+        LOG.warn("securityFactory.getContentVerifierProvider, InvalidKeyException: {}",
+            message);
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+      }
+    }
+
     boolean sigValid = ocspReq.isSignatureValid(cvp);
     if (!sigValid) {
       LOG.warn("request signature is invalid");
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
     }
 
-    // validate the certPath
-    Date referenceTime = new Date();
-    if (canBuildCertpath(certs, requestOption, referenceTime)) {
-      try {
-        return OcspRequest.getInstance(req);
-      } catch (EncodingException ex) {
-        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+    if (!certpathValidated) {
+      // validate the certPath
+      X509Certificate[] certpath = buildValidatedCertpath(certs, requestOption, new Date(now));
+      if (certpath == null) {
+        LOG.warn("could not build certpath for the request's signer certificate");
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+      }
+
+      long validFrom = Long.MIN_VALUE;
+      long validUntil = Long.MAX_VALUE;
+      CertpathValidationModel model = requestOption.getCertpathValidationModel();
+      if (model == null || model == CertpathValidationModel.PKIX) {
+        for (X509Certificate m : certpath) {
+          validFrom = Math.max(validFrom, m.getNotBefore().getTime());
+          validUntil = Math.min(validUntil, m.getNotAfter().getTime());
+        }
       }
+      signerCache.add(signerCertHash, cvp, validFrom, validUntil);
     }
 
-    LOG.warn("could not build certpath for the request's signer certificate");
-    return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+    try {
+      return OcspRequest.getInstance(req);
+    } catch (EncodingException ex) {
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+    }
   } // method checkSignature
 
-  private static boolean canBuildCertpath(X509CertificateHolder[] certsInReq,
+  /**
+   * Builds and validates the certification path of the request's signer certificate.
+   * @return the certification path, or {@code null} if no valid one could be built.
+   */
+  private static X509Certificate[] buildValidatedCertpath(X509CertificateHolder[] certsInReq,
       RequestOption requestOption, Date referenceTime) {
     X509Certificate target;
     try {
       target = X509Util.toX509Cert(certsInReq[0].toASN1Structure());
     } catch (CertificateException ex) {
-      return false;
+      return null;
     }
     Set<Certificate> certstore = new HashSet<>();
 
@@ -1147,11 +1238,10 @@ public class OcspServerImpl implements OcspServer {
     X509Certificate[] certpath = X509Util.buildCertPath(target, certstore);
     CertpathValidationModel model = requestOption.getCertpathValidationModel();
 
-    Date now = new Date();
     if (model == null || model == CertpathValidationModel.PKIX) {
       for (X509Certificate m : certpath) {
-        if (m.getNotBefore().after(now) || m.getNotAfter().before(now)) {
-          return false;
+        if (m.getNotBefore().after(referenceTime) || m.getNotAfter().before(referenceTime)) {
+          return null;
         }
       }
     } else if (model == CertpathValidationModel.CHAIN) {
@@ -1164,13 +1254,13 @@ public class OcspServerImpl implements OcspServer {
       X509Certificate targetCert = certpath[i];
       for (CertWithEncoded m : trustAnchors) {
         if (m.equalsCert(targetCert)) {
-          return true;
+          return certpath;
         }
       }
     }
 
-    return false;
-  } // method canBuildCertpath
+    return null;
+  } // method buildValidatedCertpath
 
   private static boolean getBoolean(Boolean bo, boolean defaultValue) {
     return (bo == null) ? defaultValue : bo.booleanValue();
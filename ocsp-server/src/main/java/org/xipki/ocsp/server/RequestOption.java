@@ -90,6 +90,8 @@ public class RequestOption {
 
   private final CertpathValidationModel certpathValidationModel;
 
+  private final ValidatedSignerCache validatedSignerCache = new ValidatedSignerCache(1000);
+
   RequestOption(OcspServerConf.RequestOption conf) throws InvalidConfException {
     Args.notNull(conf, "conf");
 
@@ -229,6 +231,10 @@ public class RequestOption {
     return certs;
   }
 
+  ValidatedSignerCache getValidatedSignerCache() {
+    return validatedSignerCache;
+  }
+
   private static Set<X509Certificate> getCerts(OcspServerConf.CertCollection conf)
       throws KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException {
     Args.notNull(conf, "conf");
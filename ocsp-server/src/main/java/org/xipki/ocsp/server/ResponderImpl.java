@@ -23,6 +23,7 @@ import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.server.OcspServerConf.ResponseOption;
 import org.xipki.util.Args;
+import org.xipki.util.concurrent.AdaptiveConcurrencyLimiter;
 
 /**
  * TODO.
@@ -42,6 +43,8 @@ public class ResponderImpl implements Responder {
 
   private final List<OcspStore> stores;
 
+  private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
   ResponderImpl(ResponderOption responderOption, RequestOption requestOption,
       ResponseOption responseOption, ResponderSigner signer, List<OcspStore> stores) {
     this.responderOption = Args.notNull(responderOption, "responderOption");
@@ -49,6 +52,10 @@ public class ResponderImpl implements Responder {
     this.responseOption = Args.notNull(responseOption, "responseOption");
     this.signer = Args.notNull(signer, "signer");
     this.stores = Args.notEmpty(stores, "stores");
+
+    OcspServerConf.ConcurrencyLimit limit = responderOption.getConcurrencyLimit();
+    this.concurrencyLimiter = (limit == null) ? null : new AdaptiveConcurrencyLimiter(
+        limit.getMin(), limit.getMax(), limit.getLatencyThreshold());
   }
 
   public ResponderOption getResponderOption() {
@@ -71,6 +78,14 @@ public class ResponderImpl implements Responder {
     return stores;
   }
 
+  /**
+   * Returns the limiter of the concurrent requests.
+   * @return the limiter, or {@code null} if the requests are not limited.
+   */
+  public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
   @Override
   public int getMaxRequestSize() {
     return requestOption.getMaxRequestSize();
@@ -53,6 +53,8 @@ class ResponderOption {
 
   private final List<String> servletPaths;
 
+  private final OcspServerConf.ConcurrencyLimit concurrencyLimit;
+
   ResponderOption(OcspServerConf.Responder conf) throws InvalidConfException {
     Args.notNull(conf, "conf");
     String str = conf.getMode();
@@ -68,6 +70,7 @@ class ResponderOption {
     this.requestOptionName = conf.getRequest();
     this.responseOptionName = conf.getResponse();
     this.inheritCaRevocation = conf.isInheritCaRevocation();
+    this.concurrencyLimit = conf.getConcurrencyLimit();
 
     List<String> list = new ArrayList<>(conf.getStores());
     this.storeNames = Collections.unmodifiableList(list);
@@ -114,4 +117,8 @@ class ResponderOption {
     return servletPaths;
   }
 
+  public OcspServerConf.ConcurrencyLimit getConcurrencyLimit() {
+    return concurrencyLimit;
+  }
+
 }
@@ -25,10 +25,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -80,6 +84,9 @@ class ResponseCacher implements Closeable {
   private static final String SQL_UPDATE_RESP = "UPDATE OCSP SET THIS_UPDATE=?,"
       + "NEXT_UPDATE=?,RESP=? WHERE ID=?";
 
+  // if exceeded, the invalidations of single certificates are merged into their issuers.
+  private static final int MAX_INVALIDATIONS = 100000;
+
   private final ConcurrentBag<ConcurrentBagEntry<Digest>> idDigesters;
 
   private class IssuerUpdater implements Runnable {
@@ -106,10 +113,15 @@ class ResponseCacher implements Closeable {
       }
 
       inProcess = true;
-      long maxThisUpdate = System.currentTimeMillis() / 1000 - validity;
+      // the column THIS_UPDATE contains the time in milliseconds
+      long maxThisUpdate = System.currentTimeMillis() - validity * 1000L;
       try {
         int num = removeExpiredResponses(maxThisUpdate);
         LOG.info("removed {} response with thisUpdate < {}", num, maxThisUpdate);
+
+        // responses with thisUpdate before the change have been removed.
+        long maxChangeTime = maxThisUpdate / 1000 - clockSkew;
+        invalidations.values().removeIf(changeTime -> changeTime < maxChangeTime);
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not remove expired responses");
       } finally {
@@ -127,11 +139,20 @@ class ResponseCacher implements Closeable {
 
   private final int validity;
 
+  private final int clockSkew;
+
   private final AtomicBoolean onService;
 
+  /**
+   * Time of the last status change, keyed by {@link #invalidationKey(int, BigInteger)}. The
+   * cached responses generated not after this time are ignored, and will be replaced by
+   * the newly generated ones.
+   */
+  private final ConcurrentHashMap<String, Long> invalidations = new ConcurrentHashMap<>();
+
   private DataSourceWrapper datasource;
 
-  private IssuerStore issuerStore;
+  private volatile IssuerStore issuerStore;
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
@@ -139,10 +160,11 @@ class ResponseCacher implements Closeable {
 
   private ScheduledFuture<?> issuerUpdater;
 
-  ResponseCacher(DataSourceWrapper datasource, boolean master, int validity) {
+  ResponseCacher(DataSourceWrapper datasource, boolean master, int validity, int clockSkew) {
     this.datasource = Args.notNull(datasource, "datasource");
     this.master = master;
     this.validity = Args.positive(validity, "validity");
+    this.clockSkew = Args.notNegative(clockSkew, "clockSkew");
     this.sqlSelectIssuerCert = datasource.buildSelectFirstSql(1, "CERT FROM ISSUER WHERE ID=?");
     this.sqlSelectOcsp = datasource.buildSelectFirstSql(1,
         "IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP FROM OCSP WHERE ID=?");
@@ -215,10 +237,9 @@ class ResponseCacher implements Closeable {
       throw new IllegalStateException("storeIssuer is not permitted in slave mode");
     }
 
-    for (Integer id : issuerStore.getIds()) {
-      if (issuerStore.getIssuerForId(id).getCert().equals(issuerCert)) {
-        return id;
-      }
+    IssuerEntry existingIssuer = issuerStore.getIssuerForCert(issuerCert);
+    if (existingIssuer != null) {
+      return existingIssuer.getId();
     }
 
     byte[] encodedCert = issuerCert.getEncoded();
@@ -280,6 +301,12 @@ class ResponseCacher implements Closeable {
         return null;
       }
 
+      // the expired responses may be still there if the cleaner failed to remove them
+      long thisUpdate = rs.getLong("THIS_UPDATE");
+      if (thisUpdate < System.currentTimeMillis() - validity * 1000L) {
+        return null;
+      }
+
       long nextUpdate = rs.getLong("NEXT_UPDATE");
       if (nextUpdate != 0) {
         // nextUpdate must be at least in 600 seconds
@@ -290,7 +317,10 @@ class ResponseCacher implements Closeable {
         }
       }
 
-      long thisUpdate = rs.getLong("THIS_UPDATE");
+      if (!invalidations.isEmpty() && isInvalidated(issuerId, serialNumber, thisUpdate)) {
+        return null;
+      }
+
       String b64Resp = rs.getString("RESP");
       byte[] encoded = Base64.decodeFast(b64Resp);
       ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
@@ -305,6 +335,83 @@ class ResponseCacher implements Closeable {
     }
   }
 
+  /**
+   * Invalidates the cached responses of the certificate whose status has been changed.
+   *
+   * @param issuerCert
+   *          Certificate of the issuer. Must not be {@code null}.
+   * @param serialNumber
+   *          Serial number of the certificate, {@code null} for all certificates of the issuer.
+   * @param changeTime
+   *          Time of the change or a later time, seconds since January 1, 1970,
+   *          00:00:00 GMT.
+   */
+  void invalidate(X509Certificate issuerCert, BigInteger serialNumber, long changeTime) {
+    if (issuerStore == null) {
+      return;
+    }
+
+    IssuerEntry issuer = issuerStore.getIssuerForCert(issuerCert);
+    if (issuer == null) {
+      // no response of this issuer is cached.
+      return;
+    }
+
+    invalidations.merge(invalidationKey(issuer.getId(), serialNumber), changeTime, Math::max);
+    if (invalidations.size() > MAX_INVALIDATIONS) {
+      mergeInvalidations();
+    }
+  }
+
+  /**
+   * Replaces the invalidations of single certificates by the invalidation of all certificates
+   * of the issuer, with the latest change time. This invalidates more cached responses than
+   * necessary, but limits the memory.
+   */
+  private synchronized void mergeInvalidations() {
+    if (invalidations.size() <= MAX_INVALIDATIONS) {
+      return;
+    }
+
+    Map<String, Long> issuerInvalidations = new HashMap<>();
+    Iterator<Map.Entry<String, Long>> it = invalidations.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, Long> entry = it.next();
+      String key = entry.getKey();
+      int idx = key.indexOf(':');
+      if (idx != -1) {
+        issuerInvalidations.merge(key.substring(0, idx), entry.getValue(), Math::max);
+        it.remove();
+      }
+    }
+
+    for (Map.Entry<String, Long> entry : issuerInvalidations.entrySet()) {
+      invalidations.merge(entry.getKey(), entry.getValue(), Math::max);
+    }
+
+    LOG.info("merged the invalidations of single certificates into {} issuers",
+        issuerInvalidations.size());
+  }
+
+  private boolean isInvalidated(int issuerId, BigInteger serialNumber, long thisUpdateMs) {
+    // the change time is set by the OCSP responder which noticed the change, and the
+    // thisUpdate by the OCSP responder which generated the response. The responses generated
+    // shortly after the change may not reflect it if the clocks differ.
+    long thisUpdate = thisUpdateMs / 1000 - clockSkew;
+    Long changeTime = invalidations.get(invalidationKey(issuerId, serialNumber));
+    if (changeTime != null && thisUpdate <= changeTime) {
+      return true;
+    }
+
+    changeTime = invalidations.get(invalidationKey(issuerId, null));
+    return changeTime != null && thisUpdate <= changeTime;
+  }
+
+  private static String invalidationKey(int issuerId, BigInteger serialNumber) {
+    return (serialNumber == null) ? Integer.toString(issuerId)
+        : issuerId + ":" + serialNumber.toString(16);
+  }
+
   void storeOcspResponse(int issuerId, BigInteger serialNumber, long thisUpdate, Long nextUpdate,
       AlgorithmCode sigAlgCode, byte[] response) {
     byte[] identBytes = buildIdent(serialNumber, sigAlgCode);
@@ -459,7 +566,7 @@ class ResponseCacher implements Closeable {
           ps.setInt(1, id);
           rs = ps.executeQuery();
           rs.next();
-          X509Certificate cert = X509Util.parseCert(rs.getString("CERT").getBytes());
+          X509Certificate cert = X509Util.parseCertCached(rs.getString("CERT").getBytes());
           IssuerEntry caInfoEntry = new IssuerEntry(id, cert);
           issuerStore.addIssuer(caInfoEntry);
           LOG.info("added issuer {}", id);
@@ -502,7 +609,7 @@ class ResponseCacher implements Closeable {
 
       while (rs.next()) {
         int id = rs.getInt("ID");
-        X509Certificate cert = X509Util.parseCert(rs.getString("CERT").getBytes());
+        X509Certificate cert = X509Util.parseCertCached(rs.getString("CERT").getBytes());
         IssuerEntry caInfoEntry = new IssuerEntry(id, cert);
         RequestIssuer reqIssuer = new RequestIssuer(HashAlgo.SHA1,
             caInfoEntry.getEncodedHash(HashAlgo.SHA1));
@@ -0,0 +1,100 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server;
+
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.xipki.util.Args;
+import org.xipki.util.LruCache;
+
+/**
+ * Cache of the request signers whose certification path has been validated, together with
+ * the verifier providers of their public keys. Each {@link RequestOption} has its own cache,
+ * so that the cache is discarded if the trust anchors are reconfigured.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class ValidatedSignerCache {
+
+  private static class Entry {
+
+    private final ContentVerifierProvider verifierProvider;
+
+    private final long validFrom;
+
+    private final long validUntil;
+
+    Entry(ContentVerifierProvider verifierProvider, long validFrom, long validUntil) {
+      this.verifierProvider = verifierProvider;
+      this.validFrom = validFrom;
+      this.validUntil = validUntil;
+    }
+
+  }
+
+  private final LruCache<String, Entry> cache;
+
+  ValidatedSignerCache(int maxSize) {
+    this.cache = new LruCache<>(maxSize);
+  }
+
+  /**
+   * Returns the verifier provider of the validated signer.
+   *
+   * @param signerCertHash
+   *          Hash of the signer certificate. Must not be {@code null}.
+   * @param now
+   *          Current time in milliseconds.
+   * @return the verifier provider, or {@code null} if the signer has not been validated or the
+   *         certification path is not valid at the given time.
+   */
+  ContentVerifierProvider getVerifierProvider(String signerCertHash, long now) {
+    Entry entry = cache.get(signerCertHash);
+    if (entry == null) {
+      return null;
+    }
+
+    if (now < entry.validFrom || now > entry.validUntil) {
+      cache.remove(signerCertHash);
+      return null;
+    }
+
+    return entry.verifierProvider;
+  }
+
+  /**
+   * Adds the validated signer.
+   *
+   * @param signerCertHash
+   *          Hash of the signer certificate. Must not be {@code null}.
+   * @param verifierProvider
+   *          Verifier provider of the signer's public key. Must not be {@code null}.
+   * @param validFrom
+   *          Since when the certification path is valid, in milliseconds.
+   * @param validUntil
+   *          Until when the certification path is valid, in milliseconds.
+   */
+  void add(String signerCertHash, ContentVerifierProvider verifierProvider, long validFrom,
+      long validUntil) {
+    Args.notNull(signerCertHash, "signerCertHash");
+    Args.notNull(verifierProvider, "verifierProvider");
+    cache.put(signerCertHash, new Entry(verifierProvider, validFrom, validUntil));
+  }
+
+}
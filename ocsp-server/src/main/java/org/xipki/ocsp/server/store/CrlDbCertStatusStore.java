@@ -139,6 +139,39 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
     }
   }
 
+  /**
+   * Reads the revocation information of the CA from the file ${crlFile}.revocation.
+   * @return the revocation information, or {@code null} if the CA is not revoked.
+   */
+  static CertRevocationInfo readCaRevocationInfo(String crlFilename) throws IOException {
+    File revFile = new File(crlFilename + ".revocation");
+    if (!revFile.exists()) {
+      return null;
+    }
+
+    Properties props = new Properties();
+    InputStream is = Files.newInputStream(revFile.toPath());
+    try {
+      props.load(is);
+    } finally {
+      is.close();
+    }
+
+    String str = props.getProperty(KEY_CA_REVOCATION_TIME);
+    if (StringUtil.isBlank(str)) {
+      return null;
+    }
+
+    Date revocationTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
+    Date invalidityTime = null;
+
+    str = props.getProperty(KEY_CA_INVALIDITY_TIME);
+    if (StringUtil.isNotBlank(str)) {
+      invalidityTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
+    }
+    return new CertRevocationInfo(CrlReason.UNSPECIFIED, revocationTime, invalidityTime);
+  }
+
   private synchronized void initializeStore(DataSourceWrapper datasource) {
     if (crlUpdateInProcess.get()) {
       return;
@@ -167,29 +200,7 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
 
       X509CRL crl = X509Util.parseCrl(new File(crlFilename));
 
-      File revFile = new File(crlFilename + ".revocation");
-      CertRevocationInfo caRevInfo = null;
-      if (revFile.exists()) {
-        Properties props = new Properties();
-        InputStream is = Files.newInputStream(revFile.toPath());
-        try {
-          props.load(is);
-        } finally {
-          is.close();
-        }
-
-        String str = props.getProperty(KEY_CA_REVOCATION_TIME);
-        if (StringUtil.isNotBlank(str)) {
-          Date revocationTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
-          Date invalidityTime = null;
-
-          str = props.getProperty(KEY_CA_INVALIDITY_TIME);
-          if (StringUtil.isNotBlank(str)) {
-            invalidityTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
-          }
-          caRevInfo = new CertRevocationInfo(CrlReason.UNSPECIFIED, revocationTime, invalidityTime);
-        }
-      }
+      CertRevocationInfo caRevInfo = readCaRevocationInfo(crlFilename);
 
       ImportCrl importCrl = new ImportCrl(datasource, useUpdateDatesFromCrl, crl, crlUrl,
           caCert, issuerCert, caRevInfo, certsDirName);
@@ -0,0 +1,413 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.xipki.util.Args;
+
+/**
+ * Read-only index of the certificate status, compiled from a CRL and memory-mapped from a file.
+ *
+ * <p>The file starts with a header, followed by fixed-size entries sorted by serial number:
+ * <pre>
+ * header:
+ *   int    magic
+ *   int    version
+ *   long   size of the CRL file
+ *   long   last modification time of the CRL file, in milliseconds
+ *   long   thisUpdate of the CRL, in milliseconds
+ *   long   nextUpdate of the CRL, in milliseconds, 0 if absent
+ *   long   revocation time of the CA, in seconds, 0 if the CA is not revoked
+ *   long   invalidity time of the CA revocation, in seconds, 0 if absent
+ *   int    length of the serial numbers (keyLen)
+ *   int    length of the certificate hashes (hashLen)
+ *   int    number of entries
+ *   int    length of the CRL number, followed by the unsigned CRL number
+ * entry:
+ *   byte[keyLen]   serial number, unsigned big-endian, left padded with zeros
+ *   byte           flags, see FLAG_*
+ *   byte           revocation reason
+ *   long           revocation time, in seconds
+ *   long           invalidity time, in seconds, 0 if absent
+ *   long           notBefore of the certificate, in seconds, 0 if unknown
+ *   long           notAfter of the certificate, in seconds, 0 if unknown
+ *   byte[hashLen]  hash of the certificate, zeros if unknown
+ * </pre>
+ * Since the serial numbers are padded to the same length, comparing them byte-by-byte as
+ * unsigned values is the same as comparing the numbers, so that an entry can be found with a
+ * binary search.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+class CrlIndex {
+
+  static class Entry {
+
+    private boolean revoked;
+
+    private int reason;
+
+    private long revTime;
+
+    private long invalidityTime;
+
+    private long notBefore;
+
+    private long notAfter;
+
+    private byte[] certHash;
+
+    boolean isRevoked() {
+      return revoked;
+    }
+
+    void setRevoked(int reason, long revTime, long invalidityTime) {
+      this.revoked = true;
+      this.reason = reason;
+      this.revTime = revTime;
+      this.invalidityTime = invalidityTime;
+    }
+
+    int getReason() {
+      return reason;
+    }
+
+    long getRevTime() {
+      return revTime;
+    }
+
+    long getInvalidityTime() {
+      return invalidityTime;
+    }
+
+    long getNotBefore() {
+      return notBefore;
+    }
+
+    long getNotAfter() {
+      return notAfter;
+    }
+
+    byte[] getCertHash() {
+      return certHash;
+    }
+
+    void setCertInfo(long notBefore, long notAfter, byte[] certHash) {
+      this.notBefore = notBefore;
+      this.notAfter = notAfter;
+      this.certHash = certHash;
+    }
+
+  }
+
+  private static final int MAGIC = 0x58434958; // "XCIX"
+
+  private static final int VERSION = 1;
+
+  private static final int FIXED_HEADER_LEN = 4 + 4 + 6 * 8 + 4 * 4;
+
+  private static final int FLAG_REVOKED = 1;
+
+  private static final int FLAG_CERTINFO = 2;
+
+  private final ByteBuffer buffer;
+
+  private final long crlFileSize;
+
+  private final long crlFileLastModified;
+
+  private final long thisUpdate;
+
+  private final long nextUpdate;
+
+  private final long caRevTime;
+
+  private final long caInvalidityTime;
+
+  private final BigInteger crlNumber;
+
+  private final int keyLen;
+
+  private final int hashLen;
+
+  private final int entryLen;
+
+  private final int count;
+
+  private final int entriesOffset;
+
+  private CrlIndex(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.capacity() < FIXED_HEADER_LEN) {
+      throw new IOException("index file too short");
+    }
+
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException("unknown index file format");
+    }
+
+    int off = 8;
+    this.crlFileSize = buffer.getLong(off);
+    off += 8;
+    this.crlFileLastModified = buffer.getLong(off);
+    off += 8;
+    this.thisUpdate = buffer.getLong(off);
+    off += 8;
+    this.nextUpdate = buffer.getLong(off);
+    off += 8;
+    this.caRevTime = buffer.getLong(off);
+    off += 8;
+    this.caInvalidityTime = buffer.getLong(off);
+    off += 8;
+    this.keyLen = buffer.getInt(off);
+    off += 4;
+    this.hashLen = buffer.getInt(off);
+    off += 4;
+    this.count = buffer.getInt(off);
+    off += 4;
+    int crlNumberLen = buffer.getInt(off);
+    off += 4;
+
+    if (keyLen < 1 || hashLen < 0 || count < 0 || crlNumberLen < 1) {
+      throw new IOException("invalid header of the index file");
+    }
+
+    byte[] crlNumberBytes = new byte[crlNumberLen];
+    for (int i = 0; i < crlNumberLen; i++) {
+      crlNumberBytes[i] = buffer.get(off + i);
+    }
+    this.crlNumber = new BigInteger(1, crlNumberBytes);
+
+    this.entriesOffset = off + crlNumberLen;
+    this.entryLen = keyLen + 2 + 4 * 8 + hashLen;
+    if ((long) entriesOffset + (long) entryLen * count != buffer.capacity()) {
+      throw new IOException("invalid length of the index file");
+    }
+  }
+
+  /**
+   * Maps the index file into memory.
+   */
+  static CrlIndex open(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // the mapping remains valid after the channel is closed.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new CrlIndex(buffer);
+    }
+  }
+
+  /**
+   * Writes the index file. The file is first written to a temporary file and then moved to the
+   * target, so that the readers never see an incomplete file.
+   */
+  static void write(File file, long crlFileSize, long crlFileLastModified, long thisUpdate,
+      long nextUpdate, BigInteger crlNumber, long caRevTime, long caInvalidityTime, int hashLen,
+      SortedMap<BigInteger, Entry> entries) throws IOException {
+    Args.notNull(crlNumber, "crlNumber");
+    int keyLen = 1;
+    for (BigInteger serial : entries.keySet()) {
+      keyLen = Math.max(keyLen, magnitudeLength(serial));
+    }
+
+    byte[] crlNumberBytes = toUnsigned(crlNumber, magnitudeLength(crlNumber));
+
+    File tmpFile = new File(file.getPath() + ".tmp");
+    try (OutputStream os = Files.newOutputStream(tmpFile.toPath());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 65536))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(crlFileSize);
+      out.writeLong(crlFileLastModified);
+      out.writeLong(thisUpdate);
+      out.writeLong(nextUpdate);
+      out.writeLong(caRevTime);
+      out.writeLong(caInvalidityTime);
+      out.writeInt(keyLen);
+      out.writeInt(hashLen);
+      out.writeInt(entries.size());
+      out.writeInt(crlNumberBytes.length);
+      out.write(crlNumberBytes);
+
+      byte[] zeroHash = new byte[hashLen];
+      for (Map.Entry<BigInteger, Entry> m : entries.entrySet()) {
+        Entry entry = m.getValue();
+        out.write(toUnsigned(m.getKey(), keyLen));
+
+        int flags = 0;
+        if (entry.revoked) {
+          flags |= FLAG_REVOKED;
+        }
+
+        byte[] certHash = entry.certHash;
+        if (certHash != null && certHash.length != hashLen) {
+          throw new IOException("invalid length of the certificate hash");
+        }
+
+        if (entry.notBefore != 0 || entry.notAfter != 0 || certHash != null) {
+          flags |= FLAG_CERTINFO;
+        }
+
+        out.writeByte(flags);
+        out.writeByte(entry.reason);
+        out.writeLong(entry.revTime);
+        out.writeLong(entry.invalidityTime);
+        out.writeLong(entry.notBefore);
+        out.writeLong(entry.notAfter);
+        out.write(certHash == null ? zeroHash : certHash);
+      }
+    }
+
+    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Returns the entry of the serial number.
+   *
+   * @param serialNumber
+   *          Serial number. Must be positive.
+   * @return the entry, or {@code null} if the serial number is not contained in the index.
+   */
+  Entry get(BigInteger serialNumber) {
+    if (magnitudeLength(serialNumber) > keyLen) {
+      return null;
+    }
+
+    byte[] key = toUnsigned(serialNumber, keyLen);
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compareKey(entriesOffset + mid * entryLen, key);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return readEntry(entriesOffset + mid * entryLen);
+      }
+    }
+
+    return null;
+  }
+
+  private int compareKey(int offset, byte[] key) {
+    for (int i = 0; i < keyLen; i++) {
+      int cmp = (0xFF & buffer.get(offset + i)) - (0xFF & key[i]);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return 0;
+  }
+
+  private Entry readEntry(int offset) {
+    // use the absolute get methods only, so that the buffer can be read concurrently.
+    int off = offset + keyLen;
+    int flags = buffer.get(off++);
+    int reason = buffer.get(off++);
+
+    Entry entry = new Entry();
+    if ((flags & FLAG_REVOKED) != 0) {
+      entry.setRevoked(reason, buffer.getLong(off), buffer.getLong(off + 8));
+    }
+    off += 16;
+
+    if ((flags & FLAG_CERTINFO) != 0) {
+      long notBefore = buffer.getLong(off);
+      long notAfter = buffer.getLong(off + 8);
+      byte[] certHash = null;
+      if (hashLen > 0) {
+        certHash = new byte[hashLen];
+        boolean allZero = true;
+        for (int i = 0; i < hashLen; i++) {
+          certHash[i] = buffer.get(off + 16 + i);
+          allZero &= (certHash[i] == 0);
+        }
+
+        if (allZero) {
+          certHash = null;
+        }
+      }
+      entry.setCertInfo(notBefore, notAfter, certHash);
+    }
+
+    return entry;
+  }
+
+  private static int magnitudeLength(BigInteger value) {
+    return Math.max(1, (value.bitLength() + 7) / 8);
+  }
+
+  private static byte[] toUnsigned(BigInteger value, int len) {
+    byte[] bytes = value.toByteArray();
+    byte[] ret = new byte[len];
+    int copyLen = Math.min(bytes.length, len);
+    System.arraycopy(bytes, bytes.length - copyLen, ret, len - copyLen, copyLen);
+    return ret;
+  }
+
+  long getCrlFileSize() {
+    return crlFileSize;
+  }
+
+  long getCrlFileLastModified() {
+    return crlFileLastModified;
+  }
+
+  long getThisUpdate() {
+    return thisUpdate;
+  }
+
+  long getNextUpdate() {
+    return nextUpdate;
+  }
+
+  long getCaRevTime() {
+    return caRevTime;
+  }
+
+  long getCaInvalidityTime() {
+    return caInvalidityTime;
+  }
+
+  BigInteger getCrlNumber() {
+    return crlNumber;
+  }
+
+  int size() {
+    return count;
+  }
+
+}
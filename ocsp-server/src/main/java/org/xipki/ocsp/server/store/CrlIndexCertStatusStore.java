@@ -0,0 +1,606 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1Set;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DERGeneralizedTime;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.ocsp.CrlID;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Certificate;
+import org.bouncycastle.asn1.x509.Extension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.CertStatusInfo;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.OcspStoreException;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.OcspServerConf;
+import org.xipki.security.CertRevocationInfo;
+import org.xipki.security.CrlReason;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.ObjectIdentifiers;
+import org.xipki.security.util.X509Util;
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+import org.xipki.util.LogUtil;
+import org.xipki.util.StringUtil;
+
+/**
+ * OCSP store answering from a CRL without any database. The CRL, together with the
+ * certificates in the optional certsDir, is compiled into a sorted index file which is
+ * memory-mapped and searched with a binary search, see {@link CrlIndex}.
+ *
+ * <p>After a restart, the index file is mapped directly if the CRL file has not been changed
+ * since. The index is recompiled if the CRL file is changed or the file ${crlFile}.UPDATEME
+ * exists, and then replaced atomically, the requests being processed continue to use the
+ * previous index.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class CrlIndexCertStatusStore extends OcspStore {
+
+  private static class IndexState {
+
+    private final CrlIndex index;
+
+    private final IssuerEntry issuer;
+
+    private final CrlInfo crlInfo;
+
+    IndexState(CrlIndex index, IssuerEntry issuer, CrlInfo crlInfo) {
+      this.index = index;
+      this.issuer = issuer;
+      this.crlInfo = crlInfo;
+    }
+
+  }
+
+  private class CrlUpdateService implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        updateIndex(false);
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "error while calling updateIndex() for store " + name);
+      }
+    }
+
+  } // class CrlUpdateService
+
+  private static final Logger LOG = LoggerFactory.getLogger(CrlIndexCertStatusStore.class);
+
+  private static final HashAlgo CERT_HASH_ALGO = HashAlgo.SHA256;
+
+  private final AtomicBoolean updateInProcess = new AtomicBoolean(false);
+
+  private volatile IndexState state;
+
+  private volatile boolean updateFailed;
+
+  private X509Certificate caCert;
+
+  private X509Certificate issuerCert;
+
+  private String crlFilename;
+
+  private String crlUrl;
+
+  private String certsDirName;
+
+  private File indexFile;
+
+  private boolean useUpdateDatesFromCrl;
+
+  private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+
+  @Override
+  public void init(SourceConf conf, DataSourceWrapper datasource) throws OcspStoreException {
+    Args.notNull(conf, "conf");
+    if (!(conf instanceof OcspServerConf.SourceConfImpl)) {
+      throw new OcspStoreException("unknown conf " + conf.getClass().getName());
+    }
+
+    OcspServerConf.CrlSourceConf conf0 = ((OcspServerConf.SourceConfImpl) conf).getCrlSource();
+    if (conf0 == null) {
+      throw new OcspStoreException("conf.getCrlSource() may not be null");
+    }
+
+    this.crlFilename = IoUtil.expandFilepath(conf0.getCrlFile());
+    this.crlUrl = conf0.getCrlUrl();
+    this.certsDirName = (conf0.getCertsDir() == null) ? null
+        : IoUtil.expandFilepath(conf0.getCertsDir());
+    this.caCert = parseCert(conf0.getCaCertFile());
+    this.issuerCert = (conf0.getIssuerCertFile() == null) ? null
+        : parseCert(conf0.getIssuerCertFile());
+    this.useUpdateDatesFromCrl = conf0.isUseUpdateDatesFromCrl();
+    this.indexFile = new File(conf0.getIndexFile() == null ? crlFilename + ".idx"
+        : IoUtil.expandFilepath(conf0.getIndexFile()));
+
+    File updateMeFile = new File(crlFilename + ".UPDATEME");
+    if (indexFile.exists() && !updateMeFile.exists()) {
+      try {
+        CrlIndex index = CrlIndex.open(indexFile);
+        if (isUpToDate(index)) {
+          setIndex(index);
+          LOG.info("store {}: loaded {} entries from the index file {}", name, index.size(),
+              indexFile.getPath());
+        } else {
+          LOG.info("store {}: the index file {} is outdated", name, indexFile.getPath());
+        }
+      } catch (IOException | CertificateEncodingException ex) {
+        LogUtil.warn(LOG, ex, "could not load the index file " + indexFile.getPath());
+      }
+    }
+
+    if (state == null) {
+      updateIndex(true);
+      if (state == null) {
+        throw new OcspStoreException("could not compile the CRL " + crlFilename);
+      }
+    }
+
+    this.scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1);
+    this.scheduledThreadPoolExecutor.scheduleAtFixedRate(new CrlUpdateService(),
+        60 + new Random().nextInt(60), 60, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void close() {
+    if (scheduledThreadPoolExecutor != null) {
+      scheduledThreadPoolExecutor.shutdown();
+      scheduledThreadPoolExecutor = null;
+    }
+  }
+
+  @Override
+  public boolean knowsIssuer(RequestIssuer reqIssuer) {
+    IndexState st = state;
+    return st != null && st.issuer.matchHash(reqIssuer);
+  }
+
+  @Override
+  public X509Certificate getIssuerCert(RequestIssuer reqIssuer) {
+    return knowsIssuer(reqIssuer) ? caCert : null;
+  }
+
+  @Override
+  public boolean isHealthy() {
+    return state != null && !updateFailed;
+  }
+
+  @Override
+  public CertStatusInfo getCertStatus(Date time, RequestIssuer reqIssuer, BigInteger serialNumber,
+      boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
+      throws OcspStoreException {
+    if (serialNumber.signum() != 1) { // non-positive serial number
+      return CertStatusInfo.getUnknownCertStatusInfo(new Date(), null);
+    }
+
+    // read the state once, so that the whole request is answered from the same index.
+    IndexState st = state;
+    if (st == null) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
+
+    IssuerEntry issuer = st.issuer;
+    if (!issuer.matchHash(reqIssuer)) {
+      return null;
+    }
+
+    CrlInfo crlInfo = st.crlInfo;
+    Date thisUpdate;
+    Date nextUpdate = null;
+
+    if (crlInfo.isUseCrlUpdates()) {
+      thisUpdate = crlInfo.getThisUpdate();
+
+      // this.nextUpdate is still in the future (10 seconds buffer)
+      if (crlInfo.getNextUpdate() != null
+          && crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
+        nextUpdate = crlInfo.getNextUpdate();
+      }
+    } else {
+      thisUpdate = new Date();
+    }
+
+    CrlIndex.Entry entry = st.index.get(serialNumber);
+
+    CertStatusInfo certStatusInfo;
+    if (entry == null) {
+      if (unknownSerialAsGood) {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(CERT_HASH_ALGO, null,
+            thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+      }
+    } else {
+      long timeInSec = time.getTime() / 1000;
+      boolean ignore = false;
+      if (ignoreNotYetValidCert) {
+        long notBeforeInSec = entry.getNotBefore();
+        if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
+          ignore = true;
+        }
+      }
+
+      if (!ignore && ignoreExpiredCert) {
+        long notAfterInSec = entry.getNotAfter();
+        if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
+          ignore = true;
+        }
+      }
+
+      if (ignore) {
+        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+      } else {
+        byte[] certHash = includeCertHash ? entry.getCertHash() : null;
+        if (entry.isRevoked()) {
+          long revTime = entry.getRevTime();
+          long invalTime = includeRit ? entry.getInvalidityTime() : 0;
+          Date invTime = (invalTime == 0 || invalTime == revTime)
+              ? null : new Date(invalTime * 1000);
+          CertRevocationInfo revInfo = new CertRevocationInfo(entry.getReason(),
+              new Date(revTime * 1000), invTime);
+          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+              CERT_HASH_ALGO, certHash, thisUpdate, nextUpdate, null);
+        } else {
+          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(CERT_HASH_ALGO,
+              certHash, thisUpdate, nextUpdate, null);
+        }
+      }
+    }
+
+    if (includeCrlId) {
+      certStatusInfo.setCrlId(crlInfo.getCrlId());
+    }
+
+    setArchiveCutoff(certStatusInfo, issuer.getNotBefore());
+    return inheritCaRevocation ? inheritCaRevocation(certStatusInfo, issuer.getRevocationInfo())
+        : certStatusInfo;
+  } // method getCertStatus
+
+  private boolean isUpToDate(CrlIndex index) {
+    File crlFile = new File(crlFilename);
+    if (!crlFile.exists()) {
+      // keep using the index
+      return true;
+    }
+
+    if (index.getCrlFileSize() != crlFile.length()
+        || index.getCrlFileLastModified() != crlFile.lastModified()) {
+      return false;
+    }
+
+    // the revocation of the CA is configured in a separate file
+    long[] caRevTimes;
+    try {
+      caRevTimes = readCaRevocationTimes();
+    } catch (Exception ex) {
+      LogUtil.warn(LOG, ex, "store " + name + ": could not read the revocation of the CA");
+      return true;
+    }
+
+    return index.getCaRevTime() == caRevTimes[0]
+        && index.getCaInvalidityTime() == caRevTimes[1];
+  }
+
+  /**
+   * Returns the revocation time and the invalidity time of the CA in seconds, 0 if absent.
+   */
+  private long[] readCaRevocationTimes() throws IOException {
+    CertRevocationInfo caRevInfo = CrlDbCertStatusStore.readCaRevocationInfo(crlFilename);
+    long[] times = new long[2];
+    if (caRevInfo != null) {
+      times[0] = caRevInfo.getRevocationTime().getTime() / 1000;
+      if (caRevInfo.getInvalidityTime() != null) {
+        times[1] = caRevInfo.getInvalidityTime().getTime() / 1000;
+      }
+    }
+    return times;
+  }
+
+  private void updateIndex(boolean force) {
+    if (!updateInProcess.compareAndSet(false, true)) {
+      return;
+    }
+
+    File updateMeFile = new File(crlFilename + ".UPDATEME");
+    try {
+      File crlFile = new File(crlFilename);
+      if (!crlFile.exists()) {
+        LOG.warn("CRL File {} does not exist", crlFilename);
+        return;
+      }
+
+      IndexState st = state;
+      if (!force && !updateMeFile.exists() && st != null && isUpToDate(st.index)) {
+        return;
+      }
+
+      LOG.info("UPDATE_CERTSTORE: a newer CRL is available");
+      long start = System.currentTimeMillis();
+      CrlIndex index = compileCrl(crlFile);
+      setIndex(index);
+      updateFailed = false;
+      LOG.info("UPDATE_CRL: successful, compiled {} entries of store {} in {} ms",
+          index.size(), name, System.currentTimeMillis() - start);
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not compile the CRL " + crlFilename);
+      updateFailed = true;
+      LOG.warn("UPDATE_CRL: failed");
+    } finally {
+      updateMeFile.delete();
+      updateInProcess.set(false);
+    }
+  } // method updateIndex
+
+  private void setIndex(CrlIndex index) throws CertificateEncodingException {
+    IssuerEntry issuer = new IssuerEntry(1, caCert);
+    if (index.getCaRevTime() != 0) {
+      issuer.setRevocationInfo(new Date(index.getCaRevTime() * 1000));
+    }
+
+    Date thisUpdate = new Date(index.getThisUpdate());
+    Date nextUpdate = (index.getNextUpdate() == 0) ? null : new Date(index.getNextUpdate());
+
+    // Construct CrlID
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    if (StringUtil.isNotBlank(crlUrl)) {
+      vec.add(new DERTaggedObject(true, 0, new DERIA5String(crlUrl, true)));
+    }
+
+    vec.add(new DERTaggedObject(true, 1, new ASN1Integer(index.getCrlNumber())));
+    vec.add(new DERTaggedObject(true, 2, new DERGeneralizedTime(thisUpdate)));
+    CrlID crlId = CrlID.getInstance(new DERSequence(vec));
+
+    CrlInfo crlInfo = new CrlInfo(index.getCrlNumber(), null, useUpdateDatesFromCrl,
+        thisUpdate, nextUpdate, crlId);
+
+    boolean replaced = (state != null);
+    this.state = new IndexState(index, issuer, crlInfo);
+
+    CertStatusListener listener = certStatusListener;
+    if (replaced && listener != null) {
+      listener.certStatusChanged(caCert, null, System.currentTimeMillis() / 1000);
+    }
+  }
+
+  private CrlIndex compileCrl(File crlFile)
+      throws IOException, GeneralSecurityException, ParseException {
+    // read the file attributes before the content, so that a later change is detected.
+    long crlFileSize = crlFile.length();
+    long crlFileLastModified = crlFile.lastModified();
+
+    X509CRL crl = X509Util.parseCrl(crlFile);
+
+    X500Principal caPrincipal = caCert.getSubjectX500Principal();
+    X500Principal crlIssuer = crl.getIssuerX500Principal();
+    X509Certificate crlSignerCert;
+    if (caPrincipal.equals(crlIssuer)) {
+      crlSignerCert = caCert;
+    } else {
+      if (issuerCert == null) {
+        throw new IllegalArgumentException("issuerCert may not be null");
+      }
+
+      if (!issuerCert.getSubjectX500Principal().equals(crlIssuer)) {
+        throw new IllegalArgumentException("issuerCert and CRL do not match");
+      }
+      crlSignerCert = issuerCert;
+    }
+
+    // Verify the signature
+    crl.verify(crlSignerCert.getPublicKey());
+
+    if (crl.getExtensionValue(Extension.deltaCRLIndicator.getId()) != null) {
+      throw new IllegalArgumentException("DeltaCRL is not supported");
+    }
+
+    byte[] octetString = crl.getExtensionValue(Extension.cRLNumber.getId());
+    if (octetString == null) {
+      throw new IllegalArgumentException("CRL without CRLNumber is not supported");
+    }
+    BigInteger crlNumber = ASN1Integer.getInstance(extractCoreValue(octetString))
+        .getPositiveValue();
+
+    TreeMap<BigInteger, CrlIndex.Entry> entries = new TreeMap<>();
+
+    // the revoked certificates
+    Set<? extends X509CRLEntry> revokedCertList = crl.getRevokedCertificates();
+    if (revokedCertList != null) {
+      for (X509CRLEntry c : revokedCertList) {
+        BigInteger serial = c.getSerialNumber();
+        X500Principal issuer = c.getCertificateIssuer();
+        if (issuer != null && !caPrincipal.equals(issuer)) {
+          throw new IllegalArgumentException(
+              "invalid CRLEntry for certificate number " + serial);
+        }
+
+        CrlReason reason = CrlReason.fromReason(c.getRevocationReason());
+        if (reason == CrlReason.REMOVE_FROM_CRL) {
+          LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
+          continue;
+        }
+
+        long rt = c.getRevocationDate().getTime() / 1000;
+        long rit = 0;
+        byte[] extnValue = c.getExtensionValue(Extension.invalidityDate.getId());
+        if (extnValue != null) {
+          rit = DERGeneralizedTime.getInstance(extractCoreValue(extnValue)).getDate().getTime()
+              / 1000;
+        }
+
+        CrlIndex.Entry entry = new CrlIndex.Entry();
+        entry.setRevoked(reason.getCode(), rt, rit);
+        entries.put(serial, entry);
+      }
+    }
+
+    // the certificates
+    X500Name caSubject = X500Name.getInstance(caPrincipal.getEncoded());
+    byte[] caSki = X509Util.extractSki(caCert);
+
+    byte[] extnValue = crl.getExtensionValue(ObjectIdentifiers.id_xipki_ext_crlCertset.getId());
+    if (extnValue != null) {
+      ASN1Set asn1Set = ASN1Set.getInstance(extractCoreValue(extnValue));
+      final int n = asn1Set.size();
+      for (int i = 0; i < n; i++) {
+        ASN1Sequence seq = ASN1Sequence.getInstance(asn1Set.getObjectAt(i));
+        BigInteger serialNumber = ASN1Integer.getInstance(seq.getObjectAt(0)).getValue();
+
+        Certificate cert = null;
+        final int size = seq.size();
+        for (int j = 1; j < size; j++) {
+          ASN1TaggedObject taggedObj = DERTaggedObject.getInstance(seq.getObjectAt(j));
+          if (taggedObj.getTagNo() == 0) {
+            cert = Certificate.getInstance(taggedObj.getObject());
+          }
+        }
+
+        if (cert == null) {
+          continue;
+        }
+
+        if (!serialNumber.equals(cert.getSerialNumber().getValue())) {
+          LOG.warn("serialNumber not match (serial={}) in CRL Extension Xipki-CertSet, ignore it",
+              LogUtil.formatCsn(serialNumber));
+          continue;
+        }
+
+        addCertificate(entries, caSubject, caSki, cert,
+            "(serialNumber=" + LogUtil.formatCsn(serialNumber) + ")");
+      }
+    } else if (certsDirName != null) {
+      File certsDir = new File(certsDirName);
+      File[] certFiles = certsDir.isDirectory() ? certsDir.listFiles(new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+          return name.endsWith(".der") || name.endsWith(".crt");
+        }
+      }) : null;
+
+      if (certFiles == null) {
+        LOG.warn("could not read the folder {}, ignore it", certsDirName);
+      } else {
+        for (File certFile : certFiles) {
+          Certificate cert;
+          try {
+            cert = Certificate.getInstance(IoUtil.read(certFile));
+          } catch (IllegalArgumentException | IOException ex) {
+            LOG.warn("could not parse certificate {}, ignore it", certFile.getPath());
+            continue;
+          }
+
+          addCertificate(entries, caSubject, caSki, cert, "(file " + certFile.getName() + ")");
+        }
+      }
+    }
+
+    long[] caRevTimes = readCaRevocationTimes();
+    long nextUpdate = (crl.getNextUpdate() == null) ? 0 : crl.getNextUpdate().getTime();
+    CrlIndex.write(indexFile, crlFileSize, crlFileLastModified, crl.getThisUpdate().getTime(),
+        nextUpdate, crlNumber, caRevTimes[0], caRevTimes[1], CERT_HASH_ALGO.getLength(),
+        entries);
+    return CrlIndex.open(indexFile);
+  } // method compileCrl
+
+  private static void addCertificate(TreeMap<BigInteger, CrlIndex.Entry> entries,
+      X500Name caSubject, byte[] caSki, Certificate cert, String certLogId) throws IOException {
+    // not issued by the given issuer
+    if (!caSubject.equals(cert.getIssuer())) {
+      LOG.warn("certificate {} is not issued by the given CA, ignore it", certLogId);
+      return;
+    }
+
+    if (caSki != null) {
+      byte[] aki;
+      try {
+        aki = X509Util.extractAki(cert);
+      } catch (CertificateEncodingException ex) {
+        LogUtil.error(LOG, ex,
+            "invalid AuthorityKeyIdentifier of certificate " + certLogId + ", ignore it");
+        return;
+      }
+
+      if (aki == null || !Arrays.equals(caSki, aki)) {
+        LOG.warn("certificate {} is not issued by the given CA, ignore it", certLogId);
+        return;
+      }
+    }
+
+    BigInteger serial = cert.getSerialNumber().getPositiveValue();
+    CrlIndex.Entry entry = entries.get(serial);
+    if (entry == null) {
+      entry = new CrlIndex.Entry();
+      entries.put(serial, entry);
+    }
+
+    // we don't use the binary read from file, since it may contains redundant ending bytes.
+    entry.setCertInfo(cert.getStartDate().getDate().getTime() / 1000,
+        cert.getEndDate().getDate().getTime() / 1000,
+        CERT_HASH_ALGO.hash(cert.getEncoded()));
+  }
+
+  private static byte[] extractCoreValue(byte[] encodedExtensionValue) {
+    return ASN1OctetString.getInstance(encodedExtensionValue).getOctets();
+  }
+
+  private static X509Certificate parseCert(String certFile) throws OcspStoreException {
+    try {
+      return X509Util.parseCert(new File(certFile));
+    } catch (CertificateException | IOException ex) {
+      throw new OcspStoreException("could not parse X.509 certificate from file "
+          + certFile + ": " + ex.getMessage(), ex);
+    }
+  }
+
+}
@@ -36,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -44,20 +45,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
-import org.xipki.ocsp.api.CertStatus;
 import org.xipki.ocsp.api.CertStatusInfo;
 import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.server.OcspServerConf;
 import org.xipki.security.CertRevocationInfo;
-import org.xipki.security.CrlReason;
 import org.xipki.security.HashAlgo;
 import org.xipki.security.util.X509Util;
 import org.xipki.util.Args;
 import org.xipki.util.Base64;
 import org.xipki.util.CollectionUtil;
 import org.xipki.util.LogUtil;
+import org.xipki.util.LongBloomFilter;
 import org.xipki.util.StringUtil;
 
 /**
@@ -94,15 +94,228 @@ public class DbCertStatusStore extends OcspStore {
 
   } // class SimpleIssuerEntry
 
+  /**
+   * Filter of the serial numbers of the certificates issued by one issuer.
+   */
+  static class SerialFilter {
+
+    private final LongBloomFilter serials;
+
+    private final long loadTime = System.currentTimeMillis();
+
+    SerialFilter(long expectedEntries) {
+      this.serials = new LongBloomFilter(expectedEntries);
+    }
+
+    void add(long serial) {
+      serials.add(serial);
+    }
+
+    boolean mightContain(long serial) {
+      return serials.mightContain(serial);
+    }
+
+  } // class SerialFilter
+
+  /**
+   * Filters of the serial numbers of all issuers, including the filters being loaded.
+   */
+  static class SerialFilters {
+
+    // filters being loaded, also updated with the added certificates.
+    private final ConcurrentHashMap<Integer, SerialFilter> loadingFilters;
+
+    private final ConcurrentHashMap<Integer, SerialFilter> filters;
+
+    SerialFilters() {
+      this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+    }
+
+    // for the tests, to interleave the operations.
+    SerialFilters(ConcurrentHashMap<Integer, SerialFilter> loadingFilters,
+        ConcurrentHashMap<Integer, SerialFilter> filters) {
+      this.loadingFilters = loadingFilters;
+      this.filters = filters;
+    }
+
+    /**
+     * Registers a new filter before its serial numbers are loaded, so that the certificates
+     * added meanwhile are not missed. The current filter, if present, is used until the new
+     * one is loaded.
+     */
+    SerialFilter startLoading(int issuerId, long expectedEntries) {
+      SerialFilter filter = new SerialFilter(expectedEntries);
+      loadingFilters.put(issuerId, filter);
+      return filter;
+    }
+
+    void finishLoading(int issuerId, SerialFilter filter, boolean successful) {
+      // the filter must be active before it is removed from the loading ones, otherwise the
+      // certificates added in between are missing in both.
+      if (successful) {
+        filters.put(issuerId, filter);
+      }
+      loadingFilters.remove(issuerId, filter);
+    }
+
+    void add(int issuerId, long serial) {
+      // read the loading filter first, see finishLoading().
+      SerialFilter filter = loadingFilters.get(issuerId);
+      if (filter != null) {
+        filter.add(serial);
+      }
+
+      filter = filters.get(issuerId);
+      if (filter != null) {
+        filter.add(serial);
+      }
+    }
+
+    /**
+     * Returns whether the serial number might be known.
+     * @return {@code false} if the serial number is definitely not known, {@code true}
+     *         otherwise.
+     */
+    boolean mightContain(int issuerId, long serial) {
+      SerialFilter filter = filters.get(issuerId);
+      return filter == null || filter.mightContain(serial);
+    }
+
+    Long getLoadTime(int issuerId) {
+      SerialFilter filter = filters.get(issuerId);
+      return (filter == null) ? null : filter.loadTime;
+    }
+
+    void retainAll(Set<Integer> issuerIds) {
+      filters.keySet().retainAll(issuerIds);
+    }
+
+  } // class SerialFilters
+
   private class StoreUpdateService implements Runnable {
 
     @Override
     public void run() {
       initIssuerStore();
+      updateSerialFilters();
     }
 
   } // class StoreUpdateService
 
+  private class ChangeLogPoller implements Runnable {
+
+    // IDs are assigned by the database when the change is inserted, and a change with lower ID
+    // may be committed later. The missing IDs are read again in the next 60 seconds.
+    private static final long GAP_TIMEOUT = 60L * 1000;
+
+    private static final int MAX_GAP = 1000;
+
+    private static final int MAX_GAPS = 10000;
+
+    private long maxId;
+
+    // missing IDs below maxId, with the time in milliseconds when they were noticed.
+    private final Map<Long, Long> gaps = new HashMap<>();
+
+    private boolean inProcess;
+
+    @Override
+    public void run() {
+      if (inProcess || !initialized || initializationFailed) {
+        return;
+      }
+
+      inProcess = true;
+      try {
+        pollChangeLog();
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not poll the table CHANGELOG");
+      } finally {
+        inProcess = false;
+      }
+    }
+
+    private void pollChangeLog() throws DataAccessException {
+      long now = System.currentTimeMillis();
+      // the time of the changes is set by the CAs, whose clocks may differ from ours. Since
+      // the changes happened before they are read, the current time is used instead.
+      long changeTime = now / 1000;
+      long minId = gaps.isEmpty() ? maxId : Collections.min(gaps.keySet()) - 1;
+
+      final String sql = sqlSelectChangeLog;
+      while (true) {
+        PreparedStatement ps = datasource.prepareReadOnlyStatement(sql);
+        ResultSet rs = null;
+        int num = 0;
+        try {
+          ps.setLong(1, minId);
+          rs = ps.executeQuery();
+          while (rs.next()) {
+            num++;
+            long id = rs.getLong("ID");
+            minId = id;
+            if (id <= maxId) {
+              if (gaps.remove(id) == null) {
+                // already processed
+                continue;
+              }
+            } else {
+              // the responses cached before the start may be affected by the changes of the
+              // last day, all of them are read in the first poll.
+              if (maxId != 0 && id - maxId <= MAX_GAP) {
+                for (long i = maxId + 1; i < id && gaps.size() < MAX_GAPS; i++) {
+                  gaps.put(i, now);
+                }
+              }
+              maxId = id;
+            }
+
+            processChange(rs.getInt("IID"), rs.getString("SN"),
+                rs.getInt("OP") == CHANGELOG_OP_ADDED, changeTime);
+          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(ps, rs);
+        }
+
+        if (num < CHANGELOG_BATCH_SIZE) {
+          break;
+        }
+      }
+
+      // the changes rolled back, or never committed.
+      gaps.values().removeIf(noticeTime -> noticeTime < now - GAP_TIMEOUT);
+    } // method pollChangeLog
+
+    private void processChange(int iid, String snStr, boolean added, long changeTime) {
+      IssuerEntry issuer = issuerStore.getIssuerForId(iid);
+      if (issuer == null) {
+        return;
+      }
+
+      BigInteger serialNumber = (snStr == null) ? null : new BigInteger(snStr, 16);
+      if (added && serialNumber != null) {
+        serialFilters.add(issuer.getId(), serialNumber.longValue());
+      }
+
+      // the responses for unknown certificates are only cached if they are answered
+      // as good.
+      CertStatusListener listener = certStatusListener;
+      if (listener != null && (!added || unknownSerialAsGood)) {
+        LOG.debug("store {}: status of certificate (iid={}, sn={}) changed", name,
+            issuer.getId(), snStr);
+        listener.certStatusChanged(issuer.getCert(), serialNumber, changeTime);
+      }
+    } // method processChange
+
+  } // class ChangeLogPoller
+
+  private static final int CHANGELOG_BATCH_SIZE = 1000;
+
+  // value of the column CHANGELOG.OP for added certificates
+  private static final int CHANGELOG_OP_ADDED = 1;
+
   protected DataSourceWrapper datasource;
 
   private static final Logger LOG = LoggerFactory.getLogger(DbCertStatusStore.class);
@@ -117,9 +330,11 @@ public class DbCertStatusStore extends OcspStore {
 
   private String sqlCsWithCertHash;
 
+  private String sqlSelectChangeLog;
+
   private IssuerFilter issuerFilter;
 
-  private IssuerStore issuerStore;
+  private volatile IssuerStore issuerStore;
 
   private HashAlgo certHashAlgo;
 
@@ -129,6 +344,13 @@ public class DbCertStatusStore extends OcspStore {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  private boolean serialFilterEnabled;
+
+  // maximal age of the serial filters in milliseconds, the filters are reloaded afterwards.
+  private long serialFilterMaxAge;
+
+  private final SerialFilters serialFilters = new SerialFilters();
+
   protected List<Runnable> getScheduledServices() {
     return Collections.emptyList();
   }
@@ -205,7 +427,7 @@ public class DbCertStatusStore extends OcspStore {
             continue;
           }
 
-          X509Certificate cert = X509Util.parseCert(rs.getString("CERT").getBytes());
+          X509Certificate cert = X509Util.parseCertCached(rs.getString("CERT").getBytes());
 
           IssuerEntry caInfoEntry = new IssuerEntry(rs.getInt("ID"), cert);
           String crlInfoStr = rs.getString("CRL_INFO");
@@ -247,6 +469,100 @@ public class DbCertStatusStore extends OcspStore {
     }
   } // method initIssuerStore
 
+  private synchronized void updateSerialFilters() {
+    if (!serialFilterEnabled || !initialized || initializationFailed) {
+      return;
+    }
+
+    Set<Integer> ids = issuerStore.getIds();
+    serialFilters.retainAll(ids);
+    long minLoadTime = System.currentTimeMillis() - serialFilterMaxAge;
+    for (Integer id : ids) {
+      Long loadTime = serialFilters.getLoadTime(id);
+      // the certificates written without logging to CHANGELOG are only known after a reload.
+      if (loadTime == null || loadTime < minLoadTime) {
+        try {
+          loadSerialFilter(id);
+        } catch (Throwable th) {
+          // the database will be queried for all serial numbers of this issuer
+          LogUtil.error(LOG, th, "could not load serial numbers of issuer " + id);
+        }
+      }
+    }
+  }
+
+  private void loadSerialFilter(int issuerId) throws DataAccessException {
+    long count = 0;
+    String sql = "SELECT COUNT(*) FROM CERT WHERE IID=?";
+    PreparedStatement ps = preparedStatement(sql);
+    ResultSet rs = null;
+    try {
+      ps.setInt(1, issuerId);
+      rs = ps.executeQuery();
+      if (rs.next()) {
+        count = rs.getLong(1);
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+
+    // reserve space for the certificates published later
+    SerialFilter filter = serialFilters.startLoading(issuerId, Math.max(2 * count, 100000));
+
+    LOG.info("store {}: loading serial numbers of {} certificates of issuer {}",
+        name, count, issuerId);
+    final int numEntries = 1000;
+    sql = datasource.buildSelectFirstSql(numEntries, "ID ASC",
+        "ID,SN FROM CERT WHERE ID>? AND IID=?");
+
+    long minId = 0;
+    boolean successful = false;
+    try {
+      while (true) {
+        ps = preparedStatement(sql);
+        int num = 0;
+        try {
+          ps.setLong(1, minId);
+          ps.setInt(2, issuerId);
+          rs = ps.executeQuery();
+          while (rs.next()) {
+            minId = rs.getLong("ID");
+            filter.add(new BigInteger(rs.getString("SN"), 16).longValue());
+            num++;
+          }
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(ps, rs);
+        }
+
+        if (num < numEntries) {
+          break;
+        }
+      }
+      successful = true;
+    } finally {
+      serialFilters.finishLoading(issuerId, filter, successful);
+    }
+
+    LOG.info("store {}: loaded serial numbers of the certificates of issuer {}", name, issuerId);
+  } // method loadSerialFilter
+
+  /**
+   * Returns whether the serial number might be known.
+   * @return {@code false} if the certificate with given serial number is definitely not
+   *         contained in the database, {@code true} otherwise.
+   */
+  private boolean mightBeKnown(int issuerId, BigInteger serialNumber) {
+    if (!serialFilterEnabled) {
+      return true;
+    }
+
+    return serialFilters.mightContain(issuerId, serialNumber.longValue());
+  }
+
   @Override
   public CertStatusInfo getCertStatus(Date time, RequestIssuer reqIssuer, BigInteger serialNumber,
       boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
@@ -305,50 +621,53 @@ public class DbCertStatusStore extends OcspStore {
       long revTime = 0;
       long invalTime = 0;
 
-      PreparedStatement ps = datasource.prepareStatement(sql);
+      // skip the database query if the serial number is definitely unknown
+      if (mightBeKnown(issuer.getId(), serialNumber)) {
+        PreparedStatement ps = datasource.prepareReadOnlyStatement(sql);
 
-      try {
-        ps.setInt(1, issuer.getId());
-        ps.setString(2, serialNumber.toString(16));
-        rs = ps.executeQuery();
+        try {
+          ps.setInt(1, issuer.getId());
+          ps.setString(2, serialNumber.toString(16));
+          rs = ps.executeQuery();
 
-        if (rs.next()) {
-          unknown = false;
+          if (rs.next()) {
+            unknown = false;
 
-          long timeInSec = time.getTime() / 1000;
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
+            long timeInSec = time.getTime() / 1000;
+            if (!ignore && ignoreNotYetValidCert) {
+              long notBeforeInSec = rs.getLong("NBEFORE");
+              if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
+                ignore = true;
+              }
             }
-          }
 
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
+            if (!ignore && ignoreExpiredCert) {
+              long notAfterInSec = rs.getLong("NAFTER");
+              if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
+                ignore = true;
+              }
             }
-          }
 
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("HASH");
-            }
+            if (!ignore) {
+              if (includeCertHash) {
+                b64CertHash = rs.getString("HASH");
+              }
 
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
+              revoked = rs.getBoolean("REV");
+              if (revoked) {
+                reason = rs.getInt("RR");
+                revTime = rs.getLong("RT");
+                if (includeRit) {
+                  invalTime = rs.getLong("RIT");
+                }
               }
             }
-          }
-        } // end if (rs.next())
-      } catch (SQLException ex) {
-        throw datasource.translate(sql, ex);
-      } finally {
-        releaseDbResources(ps, rs);
+          } // end if (rs.next())
+        } catch (SQLException ex) {
+          throw datasource.translate(sql, ex);
+        } finally {
+          releaseDbResources(ps, rs);
+        }
       }
 
       if (unknown) {
@@ -381,53 +700,9 @@ public class DbCertStatusStore extends OcspStore {
         certStatusInfo.setCrlId(crlInfo.getCrlId());
       }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
-
-          certStatusInfo.setArchiveCutOff(date);
-        }
-      }
-
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
-      }
-
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD || certStatus == CertStatus.UNKNOWN) {
-        replaced = true;
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
-        }
-      }
-
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
-        } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
-        }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
-      }
-      return certStatusInfo;
+      setArchiveCutoff(certStatusInfo, issuer.getNotBefore());
+      return inheritCaRevocation ? inheritCaRevocation(certStatusInfo, issuer.getRevocationInfo())
+          : certStatusInfo;
     } catch (DataAccessException ex) {
       throw new OcspStoreException(ex.getMessage(), ex);
     }
@@ -482,10 +757,16 @@ public class DbCertStatusStore extends OcspStore {
     }
 
     OcspServerConf.CaCerts caCerts = null;
+    int changeLogInterval = new OcspServerConf.DbSourceConf().getChangeLogInterval();
+    boolean serialFilter = false;
+    int serialFilterMaxAge = new OcspServerConf.DbSourceConf().getSerialFilterMaxAge();
     if (conf != null) {
       OcspServerConf.DbSourceConf conf0 = ((OcspServerConf.SourceConfImpl) conf).getDbSource();
       if (conf0 != null) {
         caCerts = conf0.getCaCerts();
+        changeLogInterval = conf0.getChangeLogInterval();
+        serialFilter = conf0.isSerialFilter();
+        serialFilterMaxAge = conf0.getSerialFilterMaxAge();
       }
     }
 
@@ -501,6 +782,9 @@ public class DbCertStatusStore extends OcspStore {
     sqlCsNoRitWithCertHash = datasource.buildSelectFirstSql(1,
         "NBEFORE,NAFTER,REV,RR,RT,HASH FROM CERT WHERE IID=? AND SN=?");
 
+    sqlSelectChangeLog = datasource.buildSelectFirstSql(CHANGELOG_BATCH_SIZE, "ID ASC",
+        "ID,IID,SN,OP FROM CHANGELOG WHERE ID>?");
+
     try {
       this.certHashAlgo = getCertHashAlgo(datasource);
     } catch (DataAccessException ex) {
@@ -527,7 +811,25 @@ public class DbCertStatusStore extends OcspStore {
       throw new OcspStoreException(ex.getMessage(), ex);
     } // end try
 
+    // table CHANGELOG is not available in the databases created by older versions.
+    boolean pollChangeLog = false;
+    if (changeLogInterval > 0) {
+      try {
+        pollChangeLog = datasource.tableExists(null, "CHANGELOG");
+      } catch (DataAccessException ex) {
+        throw new OcspStoreException(ex.getMessage(), ex);
+      }
+    }
+
+    // the newly published certificates are added to the filter by the change log poller.
+    this.serialFilterEnabled = serialFilter && pollChangeLog;
+    this.serialFilterMaxAge = serialFilterMaxAge * 60L * 1000;
+    if (serialFilter && !pollChangeLog) {
+      LOG.warn("store {}: serialFilter is ignored, since the table CHANGELOG is not polled", name);
+    }
+
     initIssuerStore();
+    updateSerialFilters();
 
     if (this.scheduledThreadPoolExecutor != null) {
       this.scheduledThreadPoolExecutor.shutdownNow();
@@ -538,6 +840,10 @@ public class DbCertStatusStore extends OcspStore {
     if (scheduledServices != null) {
       size += scheduledServices.size();
     }
+
+    if (pollChangeLog) {
+      size++;
+    }
     this.scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(size);
 
     Random random = new Random();
@@ -549,6 +855,12 @@ public class DbCertStatusStore extends OcspStore {
             60 + random.nextInt(60), 60, TimeUnit.SECONDS);
       }
     }
+
+    if (pollChangeLog) {
+      LOG.info("store {}: poll the table CHANGELOG every {} seconds", name, changeLogInterval);
+      this.scheduledThreadPoolExecutor.scheduleWithFixedDelay(new ChangeLogPoller(),
+          changeLogInterval, changeLogInterval, TimeUnit.SECONDS);
+    }
   }
 
   @Override
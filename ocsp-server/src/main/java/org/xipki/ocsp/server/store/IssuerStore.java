@@ -17,13 +17,19 @@
 
 package org.xipki.ocsp.server.store;
 
+import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+import org.xipki.util.CompareUtil;
 
 /**
  * TODO.
@@ -33,34 +39,114 @@ import org.xipki.ocsp.api.RequestIssuer;
 
 public class IssuerStore {
 
-  private final List<IssuerEntry> entries;
+  /**
+   * Key of the issuer index, the encoded issuerNameHash and issuerKeyHash. The lookup key
+   * refers to the request's data directly, so that nothing needs to be copied per request.
+   */
+  private static class HashKey {
 
-  private Set<Integer> ids;
+    private final byte[] data;
+
+    private final int from;
+
+    private final int length;
+
+    private final int hashCode;
+
+    HashKey(byte[] data, int from, int length) {
+      this.data = data;
+      this.from = from;
+      this.length = length;
+
+      int hash = 1;
+      for (int i = from; i < from + length; i++) {
+        hash = 31 * hash + data[i];
+      }
+      this.hashCode = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof HashKey)) {
+        return false;
+      }
+
+      HashKey other = (HashKey) obj;
+      return length == other.length
+          && CompareUtil.areEqual(data, from, other.data, other.from, length);
+    }
+
+  }
+
+  /**
+   * Immutable view of the issuers, replaced as a whole if an issuer is added.
+   */
+  private static class Index {
+
+    private final List<IssuerEntry> entries;
+
+    private final Set<Integer> ids;
+
+    private final Map<Integer, IssuerEntry> idMap;
+
+    private final Map<X509Certificate, IssuerEntry> certMap;
+
+    private final Map<HashAlgo, Map<HashKey, IssuerEntry>> hashMap;
+
+    Index(List<IssuerEntry> entries) {
+      this.entries = Collections.unmodifiableList(entries);
+      Set<Integer> idSet = new HashSet<>(entries.size());
+      this.idMap = new HashMap<>(entries.size() * 2);
+      this.certMap = new HashMap<>(entries.size() * 2);
+      this.hashMap = new EnumMap<>(HashAlgo.class);
+      for (HashAlgo ha : HashAlgo.values()) {
+        hashMap.put(ha, new HashMap<>(entries.size() * 2));
+      }
+
+      for (IssuerEntry entry : entries) {
+        idSet.add(entry.getId());
+        idMap.put(entry.getId(), entry);
+        certMap.put(entry.getCert(), entry);
+        for (HashAlgo ha : HashAlgo.values()) {
+          byte[] hash = entry.getEncodedHash(ha);
+          hashMap.get(ha).put(new HashKey(hash, 0, hash.length), entry);
+        }
+      }
+      this.ids = Collections.unmodifiableSet(idSet);
+    }
+
+  }
+
+  private volatile Index index;
 
   public IssuerStore(List<IssuerEntry> entries) {
-    this.entries = new ArrayList<>(entries.size());
+    List<IssuerEntry> list = new ArrayList<>(entries.size());
     Set<Integer> idSet = new HashSet<>(entries.size());
 
     for (IssuerEntry entry : entries) {
-      for (IssuerEntry existingEntry : this.entries) {
-        if (existingEntry.getId() == entry.getId()) {
-          throw new IllegalArgumentException(
-              "issuer with the same id " + entry.getId() + " already available");
-        }
+      if (!idSet.add(entry.getId())) {
+        throw new IllegalArgumentException(
+            "issuer with the same id " + entry.getId() + " already available");
       }
-      this.entries.add(entry);
-      idSet.add(entry.getId());
+      list.add(entry);
     }
 
-    this.ids = Collections.unmodifiableSet(idSet);
+    this.index = new Index(list);
   }
 
   public int size() {
-    return ids.size();
+    return index.ids.size();
   }
 
   public Set<Integer> getIds() {
-    return ids;
+    return index.ids;
   }
 
   public Integer getIssuerIdForFp(RequestIssuer reqIssuer) {
@@ -69,30 +155,29 @@ public class IssuerStore {
   }
 
   public IssuerEntry getIssuerForId(int id) {
-    for (IssuerEntry entry : entries) {
-      if (entry.getId() == id) {
-        return entry;
-      }
-    }
+    return index.idMap.get(id);
+  }
 
-    return null;
+  public IssuerEntry getIssuerForCert(X509Certificate cert) {
+    return index.certMap.get(cert);
   }
 
   public IssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (IssuerEntry entry : entries) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
+    HashAlgo hashAlgo = reqIssuer.hashAlgorithm();
+    if (hashAlgo == null) {
+      return null;
     }
 
-    return null;
+    int from = reqIssuer.getNameHashFrom();
+    int length = reqIssuer.getFrom() + reqIssuer.getLength() - from;
+    return index.hashMap.get(hashAlgo).get(new HashKey(reqIssuer.getData(), from, length));
   }
 
-  public void addIssuer(IssuerEntry issuer) {
-    this.entries.add(issuer);
-    Set<Integer> newIds = new HashSet<>(this.ids);
-    newIds.add(issuer.getId());
-    this.ids = Collections.unmodifiableSet(newIds);
+  public synchronized void addIssuer(IssuerEntry issuer) {
+    List<IssuerEntry> list = new ArrayList<>(index.entries);
+    list.add(issuer);
+    // build the new index completely before replacing the current one.
+    this.index = new Index(list);
   }
 
 }
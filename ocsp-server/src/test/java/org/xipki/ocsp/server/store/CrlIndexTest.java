@@ -0,0 +1,154 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class CrlIndexTest {
+
+  private static final int HASH_LEN = 20;
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("crlindex", ".idx");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+    new File(file.getPath() + ".tmp").delete();
+  }
+
+  @Test
+  public void testHeader() throws IOException {
+    BigInteger crlNumber = new BigInteger("123456789012345678901234567890");
+    CrlIndex.write(file, 1000, 2000, 3000, 0, crlNumber, 4000, 5000, HASH_LEN,
+        new TreeMap<BigInteger, CrlIndex.Entry>());
+
+    CrlIndex index = CrlIndex.open(file);
+    Assert.assertEquals("crlFileSize", 1000, index.getCrlFileSize());
+    Assert.assertEquals("crlFileLastModified", 2000, index.getCrlFileLastModified());
+    Assert.assertEquals("thisUpdate", 3000, index.getThisUpdate());
+    Assert.assertEquals("nextUpdate", 0, index.getNextUpdate());
+    Assert.assertEquals("crlNumber", crlNumber, index.getCrlNumber());
+    Assert.assertEquals("caRevTime", 4000, index.getCaRevTime());
+    Assert.assertEquals("caInvalidityTime", 5000, index.getCaInvalidityTime());
+    Assert.assertEquals("size", 0, index.size());
+    Assert.assertNull("entry in empty index", index.get(BigInteger.ONE));
+  }
+
+  @Test
+  public void testRevokedEntries() throws IOException {
+    SortedMap<BigInteger, CrlIndex.Entry> entries = new TreeMap<>();
+    // serial numbers of different lengths are left padded to the same length
+    BigInteger[] serials = {BigInteger.ONE, BigInteger.valueOf(0x7F), BigInteger.valueOf(0x80),
+      BigInteger.valueOf(0xFF), BigInteger.valueOf(0x100), new BigInteger("FFFFFFFFFFFFFFFF", 16)};
+    for (int i = 0; i < serials.length; i++) {
+      CrlIndex.Entry entry = new CrlIndex.Entry();
+      entry.setRevoked(i, 1000 + i, (i % 2 == 0) ? 0 : 2000 + i);
+      entries.put(serials[i], entry);
+    }
+
+    CrlIndex.write(file, 0, 0, 0, 0, BigInteger.ONE, 0, 0, HASH_LEN, entries);
+    CrlIndex index = CrlIndex.open(file);
+    Assert.assertEquals("size", serials.length, index.size());
+
+    for (int i = 0; i < serials.length; i++) {
+      CrlIndex.Entry entry = index.get(serials[i]);
+      Assert.assertNotNull("entry " + serials[i], entry);
+      Assert.assertTrue("revoked", entry.isRevoked());
+      Assert.assertEquals("reason", i, entry.getReason());
+      Assert.assertEquals("revTime", 1000 + i, entry.getRevTime());
+      Assert.assertEquals("invalidityTime", (i % 2 == 0) ? 0 : 2000 + i,
+          entry.getInvalidityTime());
+      Assert.assertNull("certHash", entry.getCertHash());
+    }
+
+    // missing serial numbers between, before and after the entries
+    Assert.assertNull("missing 2", index.get(BigInteger.valueOf(2)));
+    Assert.assertNull("missing 0x81", index.get(BigInteger.valueOf(0x81)));
+    Assert.assertNull("missing 0x101", index.get(BigInteger.valueOf(0x101)));
+    Assert.assertNull("missing 0xFF..FE", index.get(new BigInteger("FFFFFFFFFFFFFFFE", 16)));
+
+    // longer than the serial numbers in the index
+    Assert.assertNull("longer than keyLen", index.get(new BigInteger("1FFFFFFFFFFFFFFFF", 16)));
+    // equals an entry if truncated to keyLen
+    Assert.assertNull("truncated to keyLen", index.get(new BigInteger("10000000000000001", 16)));
+  }
+
+  @Test
+  public void testCertInfo() throws IOException {
+    byte[] certHash = new byte[HASH_LEN];
+    Arrays.fill(certHash, (byte) 0xAB);
+
+    SortedMap<BigInteger, CrlIndex.Entry> entries = new TreeMap<>();
+    CrlIndex.Entry good = new CrlIndex.Entry();
+    good.setCertInfo(100, 200, certHash);
+    entries.put(BigInteger.valueOf(10), good);
+
+    CrlIndex.Entry revoked = new CrlIndex.Entry();
+    revoked.setRevoked(1, 300, 0);
+    revoked.setCertInfo(100, 200, null);
+    entries.put(BigInteger.valueOf(20), revoked);
+
+    CrlIndex.write(file, 0, 0, 0, 0, BigInteger.ONE, 0, 0, HASH_LEN, entries);
+    CrlIndex index = CrlIndex.open(file);
+
+    CrlIndex.Entry entry = index.get(BigInteger.valueOf(10));
+    Assert.assertFalse("revoked", entry.isRevoked());
+    Assert.assertEquals("notBefore", 100, entry.getNotBefore());
+    Assert.assertEquals("notAfter", 200, entry.getNotAfter());
+    Assert.assertTrue("certHash", Arrays.equals(certHash, entry.getCertHash()));
+
+    entry = index.get(BigInteger.valueOf(20));
+    Assert.assertTrue("revoked", entry.isRevoked());
+    Assert.assertEquals("revTime", 300, entry.getRevTime());
+    Assert.assertEquals("notBefore", 100, entry.getNotBefore());
+    Assert.assertEquals("notAfter", 200, entry.getNotAfter());
+    Assert.assertNull("certHash", entry.getCertHash());
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidHashLength() throws IOException {
+    SortedMap<BigInteger, CrlIndex.Entry> entries = new TreeMap<>();
+    CrlIndex.Entry entry = new CrlIndex.Entry();
+    entry.setCertInfo(100, 200, new byte[HASH_LEN - 1]);
+    entries.put(BigInteger.ONE, entry);
+    CrlIndex.write(file, 0, 0, 0, 0, BigInteger.ONE, 0, 0, HASH_LEN, entries);
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.store;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.security.HashAlgo;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class IssuerStoreTest {
+
+  private static IssuerEntry issuer1;
+
+  private static IssuerEntry issuer2;
+
+  private static IssuerEntry issuer3;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    issuer1 = new IssuerEntry(1, generateCert("CN=issuer1"));
+    issuer2 = new IssuerEntry(2, generateCert("CN=issuer2"));
+    issuer3 = new IssuerEntry(3, generateCert("CN=issuer3"));
+  }
+
+  @Test
+  public void testGetIssuerForFp() {
+    IssuerStore store = new IssuerStore(Arrays.asList(issuer1, issuer2));
+    Assert.assertEquals("size", 2, store.size());
+
+    for (HashAlgo ha : HashAlgo.values()) {
+      Assert.assertSame("issuer1 with " + ha, issuer1,
+          store.getIssuerForFp(requestIssuer(issuer1, ha)));
+      Assert.assertSame("issuer2 with " + ha, issuer2,
+          store.getIssuerForFp(requestIssuer(issuer2, ha)));
+      Assert.assertEquals("id of issuer2 with " + ha, Integer.valueOf(2),
+          store.getIssuerIdForFp(requestIssuer(issuer2, ha)));
+      Assert.assertNull("unknown issuer with " + ha,
+          store.getIssuerForFp(requestIssuer(issuer3, ha)));
+    }
+  }
+
+  @Test
+  public void testKeyHashMismatch() {
+    IssuerStore store = new IssuerStore(Arrays.asList(issuer1));
+    byte[] hash = issuer1.getEncodedHash(HashAlgo.SHA1);
+    // modify the last byte of the issuerKeyHash
+    hash[hash.length - 1] ^= 0x01;
+    Assert.assertNull("modified issuerKeyHash",
+        store.getIssuerForFp(new RequestIssuer(HashAlgo.SHA1, hash)));
+  }
+
+  @Test
+  public void testAddIssuer() {
+    IssuerStore store = new IssuerStore(Arrays.asList(issuer1));
+    RequestIssuer reqIssuer = requestIssuer(issuer3, HashAlgo.SHA256);
+    Assert.assertNull("before adding", store.getIssuerForFp(reqIssuer));
+
+    store.addIssuer(issuer3);
+    Assert.assertEquals("size", 2, store.size());
+    Assert.assertTrue("ids", store.getIds().contains(3));
+    Assert.assertSame("issuer for id", issuer3, store.getIssuerForId(3));
+    Assert.assertSame("after adding", issuer3, store.getIssuerForFp(reqIssuer));
+    Assert.assertSame("existing issuer", issuer1,
+        store.getIssuerForFp(requestIssuer(issuer1, HashAlgo.SHA256)));
+  }
+
+  @Test
+  public void testGetIssuerForCert() throws Exception {
+    IssuerStore store = new IssuerStore(Arrays.asList(issuer1, issuer2));
+    // an equal certificate, but not the same instance
+    X509Certificate cert2 = (X509Certificate) CertificateFactory.getInstance("X.509")
+        .generateCertificate(new ByteArrayInputStream(issuer2.getCert().getEncoded()));
+    Assert.assertSame("issuer2", issuer2, store.getIssuerForCert(cert2));
+    Assert.assertNull("unknown issuer", store.getIssuerForCert(issuer3.getCert()));
+
+    store.addIssuer(issuer3);
+    Assert.assertSame("after adding", issuer3, store.getIssuerForCert(issuer3.getCert()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateId() throws Exception {
+    new IssuerStore(Arrays.asList(issuer1, new IssuerEntry(1, issuer2.getCert())));
+  }
+
+  /**
+   * Returns the issuer of a request, embedded in a larger buffer like in the encoded OCSP
+   * request, so that the index has to honour the offsets.
+   */
+  private static RequestIssuer requestIssuer(IssuerEntry issuer, HashAlgo ha) {
+    RequestIssuer plain = new RequestIssuer(ha, issuer.getEncodedHash(ha));
+    byte[] data = new byte[7 + plain.getLength() + 5];
+    Arrays.fill(data, (byte) 0x5A);
+    plain.write(data, 7);
+    return new RequestIssuer(data, 7, plain.getLength());
+  }
+
+  private static X509Certificate generateCert(String subject) throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    KeyPair keypair = kpGen.generateKeyPair();
+
+    X500Name name = new X500Name(subject);
+    Date notBefore = new Date();
+    Date notAfter = new Date(notBefore.getTime() + 86400000L);
+    X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.ONE,
+        notBefore, notAfter, name, keypair.getPublic());
+    return new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keypair.getPrivate())));
+  }
+
+}
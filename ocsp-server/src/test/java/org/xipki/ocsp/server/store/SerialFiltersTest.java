@@ -0,0 +1,140 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.xipki.ocsp.server.store;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.xipki.ocsp.server.store.DbCertStatusStore.SerialFilter;
+import org.xipki.ocsp.server.store.DbCertStatusStore.SerialFilters;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class SerialFiltersTest {
+
+  private static final int IID = 1;
+
+  @Test
+  public void testAddWhileLoading() {
+    SerialFilters filters = new SerialFilters();
+    Assert.assertTrue("no filter", filters.mightContain(IID, 1));
+
+    SerialFilter filter = filters.startLoading(IID, 1000);
+    filter.add(1);
+    // added by the change log poller while loading
+    filters.add(IID, 2);
+    filters.finishLoading(IID, filter, true);
+
+    Assert.assertTrue("loaded serial", filters.mightContain(IID, 1));
+    Assert.assertTrue("serial added while loading", filters.mightContain(IID, 2));
+    Assert.assertFalse("unknown serial", filters.mightContain(IID, 3));
+  }
+
+  @Test
+  public void testFailedLoading() {
+    SerialFilters filters = new SerialFilters();
+    SerialFilter filter = filters.startLoading(IID, 1000);
+    filter.add(1);
+    filters.finishLoading(IID, filter, true);
+    Long loadTime = filters.getLoadTime(IID);
+
+    filter = filters.startLoading(IID, 1000);
+    filters.add(IID, 2);
+    filters.finishLoading(IID, filter, false);
+
+    Assert.assertEquals("load time of the previous filter", loadTime, filters.getLoadTime(IID));
+    Assert.assertTrue("serial of the previous filter", filters.mightContain(IID, 1));
+    Assert.assertTrue("serial added while loading", filters.mightContain(IID, 2));
+
+    // the failed filter is not updated any more
+    filters.add(IID, 3);
+    Assert.assertFalse("serial added after the failure", filter.mightContain(3));
+  }
+
+  /**
+   * The change log poller adds a serial number while the loaded filter replaces the current
+   * one, after the loaded filter has been removed from the loading filters.
+   */
+  @Test
+  public void testAddWhileFinishLoading() {
+    final AtomicReference<SerialFilters> ref = new AtomicReference<>();
+    ConcurrentHashMap<Integer, SerialFilter> loadingFilters =
+        new ConcurrentHashMap<Integer, SerialFilter>() {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          public boolean remove(Object key, Object value) {
+            boolean removed = super.remove(key, value);
+            ref.get().add(IID, 2);
+            return removed;
+          }
+        };
+
+    SerialFilters filters = new SerialFilters(loadingFilters, new ConcurrentHashMap<>());
+    ref.set(filters);
+    finishLoading(filters, 1);
+
+    Assert.assertTrue("serial added while finishing", filters.mightContain(IID, 2));
+  }
+
+  /**
+   * The loaded filter replaces the current one while the change log poller adds a serial
+   * number, after the poller has read the current filter.
+   */
+  @Test
+  public void testFinishLoadingWhileAdd() {
+    final AtomicReference<Runnable> onGet = new AtomicReference<>();
+    ConcurrentHashMap<Integer, SerialFilter> activeFilters =
+        new ConcurrentHashMap<Integer, SerialFilter>() {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          public SerialFilter get(Object key) {
+            SerialFilter filter = super.get(key);
+            Runnable task = onGet.getAndSet(null);
+            if (task != null) {
+              task.run();
+            }
+            return filter;
+          }
+        };
+
+    SerialFilters filters = new SerialFilters(new ConcurrentHashMap<>(), activeFilters);
+    finishLoading(filters, 1);
+
+    SerialFilter filter = filters.startLoading(IID, 1000);
+    filter.add(1);
+    onGet.set(() -> filters.finishLoading(IID, filter, true));
+    filters.add(IID, 2);
+
+    Assert.assertTrue("serial added while finishing", filters.mightContain(IID, 2));
+  }
+
+  private static void finishLoading(SerialFilters filters, long serial) {
+    SerialFilter filter = filters.startLoading(IID, 1000);
+    filter.add(serial);
+    filters.finishLoading(IID, filter, true);
+  }
+
+}
@@ -0,0 +1,338 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspServer;
+import org.xipki.ocsp.api.Responder;
+import org.xipki.util.Args;
+import org.xipki.util.LogUtil;
+
+/**
+ * Processes the OCSP requests asynchronously with the Servlet 3.1 non-blocking I/O. The
+ * request body is read and the response is written by the container's I/O threads, only the
+ * answering of the request, which may wait for the database and the signers, is executed by a
+ * bounded pool of worker threads. If the pool is exhausted, the request is rejected with the
+ * HTTP status 503 instead of occupying further container threads.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class AsyncOcspProcessor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncOcspProcessor.class);
+
+  private final OcspServer server;
+
+  private final ThreadPoolExecutor executor;
+
+  private final long timeoutMs;
+
+  /**
+   * Constructor.
+   *
+   * @param server
+   *          OCSP server. Must not be {@code null}.
+   * @param threads
+   *          Number of worker threads.
+   * @param queueSize
+   *          Maximal number of requests waiting for a worker thread.
+   * @param timeoutMs
+   *          Timeout of the asynchronous processing in milliseconds, 0 to use the container's
+   *          default.
+   */
+  public AsyncOcspProcessor(OcspServer server, int threads, int queueSize, long timeoutMs) {
+    this.server = Args.notNull(server, "server");
+    Args.positive(threads, "threads");
+    Args.positive(queueSize, "queueSize");
+    this.timeoutMs = Args.notNegative(timeoutMs, "timeoutMs");
+
+    final AtomicInteger threadIndex = new AtomicInteger(0);
+    this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(queueSize), r -> {
+          Thread thread = new Thread(r, "ocsp-worker-" + threadIndex.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  public void close() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException ex) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Reads the body of the POST request asynchronously and then processes it.
+   */
+  void processPost(HttpServletRequest req, HttpServletResponse resp, Responder responder)
+      throws IOException {
+    AsyncRequest asyncReq = new AsyncRequest(req, resp, responder, false);
+    ServletInputStream in = req.getInputStream();
+    in.setReadListener(new RequestReader(asyncReq, in));
+  }
+
+  /**
+   * Processes the already read request asynchronously.
+   */
+  void process(HttpServletRequest req, HttpServletResponse resp, Responder responder,
+      byte[] request, boolean viaGet) {
+    new AsyncRequest(req, resp, responder, viaGet).submit(request);
+  }
+
+  private class AsyncRequest implements AsyncListener {
+
+    private final AsyncContext asyncContext;
+
+    private final HttpServletResponse resp;
+
+    private final Responder responder;
+
+    private final boolean viaGet;
+
+    // set by the first party which writes the response, the others leave it untouched.
+    private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+    private final AtomicBoolean done = new AtomicBoolean(false);
+
+    AsyncRequest(HttpServletRequest req, HttpServletResponse resp, Responder responder,
+        boolean viaGet) {
+      this.asyncContext = req.startAsync(req, resp);
+      if (timeoutMs > 0) {
+        asyncContext.setTimeout(timeoutMs);
+      }
+      asyncContext.addListener(this);
+      this.resp = resp;
+      this.responder = responder;
+      this.viaGet = viaGet;
+    }
+
+    void submit(byte[] request) {
+      try {
+        executor.execute(() -> answer(request));
+      } catch (RejectedExecutionException ex) {
+        LOG.warn("too many pending OCSP requests, reject the request");
+        fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      }
+    }
+
+    private void answer(byte[] request) {
+      if (claimed.get()) {
+        // timed out while waiting for the worker
+        return;
+      }
+
+      OcspRespWithCacheInfo ocspRespWithCacheInfo;
+      try {
+        ocspRespWithCacheInfo = server.answer(responder, request, viaGet);
+      } catch (Throwable th) {
+        LOG.error("Throwable thrown, this should not happen!", th);
+        fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        return;
+      }
+
+      if (!claimed.compareAndSet(false, true)) {
+        // timed out or failed while answering
+        return;
+      }
+
+      byte[] encodedOcspResp;
+      try {
+        encodedOcspResp = OcspServlet.prepareResponse(resp, responder, ocspRespWithCacheInfo,
+            viaGet);
+      } catch (Throwable th) {
+        LOG.error("Throwable thrown, this should not happen!", th);
+        // the response has been claimed by this thread
+        OcspServlet.sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        complete();
+        return;
+      }
+
+      if (encodedOcspResp == null) {
+        complete();
+        return;
+      }
+
+      try {
+        ServletOutputStream out = resp.getOutputStream();
+        out.setWriteListener(new ResponseWriter(this, out, encodedOcspResp));
+      } catch (Throwable th) {
+        onThrowable(th);
+      }
+    }
+
+    void fail(int status) {
+      if (claimed.compareAndSet(false, true)) {
+        OcspServlet.sendError(resp, status);
+      }
+      complete();
+    }
+
+    void complete() {
+      if (done.compareAndSet(false, true)) {
+        asyncContext.complete();
+      }
+    }
+
+    void onThrowable(Throwable th) {
+      if (th instanceof EOFException) {
+        LogUtil.warn(LOG, th, "Connection reset by peer");
+      } else {
+        LogUtil.error(LOG, th, "error while processing the OCSP request asynchronously");
+      }
+      claimed.set(true);
+      complete();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+      LOG.warn("timeout while processing the OCSP request asynchronously");
+      fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+      onThrowable(event.getThrowable());
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+      claimed.set(true);
+      done.set(true);
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+    }
+
+  } // class AsyncRequest
+
+  private static class RequestReader implements ReadListener {
+
+    private final AsyncRequest asyncReq;
+
+    private final ServletInputStream in;
+
+    private final ByteArrayOutputStream bout = new ByteArrayOutputStream(512);
+
+    private final byte[] buffer = new byte[4096];
+
+    RequestReader(AsyncRequest asyncReq, ServletInputStream in) {
+      this.asyncReq = asyncReq;
+      this.in = in;
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+      int maxSize = asyncReq.responder.getMaxRequestSize();
+      while (in.isReady() && !in.isFinished()) {
+        int read = in.read(buffer);
+        if (read == -1) {
+          break;
+        }
+
+        bout.write(buffer, 0, read);
+        // request too long
+        if (bout.size() > maxSize) {
+          asyncReq.fail(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+          return;
+        }
+      }
+    }
+
+    @Override
+    public void onAllDataRead() throws IOException {
+      if (!asyncReq.claimed.get()) {
+        asyncReq.submit(bout.toByteArray());
+      }
+    }
+
+    @Override
+    public void onError(Throwable th) {
+      asyncReq.onThrowable(th);
+    }
+
+  } // class RequestReader
+
+  private static class ResponseWriter implements WriteListener {
+
+    private final AsyncRequest asyncReq;
+
+    private final ServletOutputStream out;
+
+    private final byte[] content;
+
+    private boolean written;
+
+    ResponseWriter(AsyncRequest asyncReq, ServletOutputStream out, byte[] content) {
+      this.asyncReq = asyncReq;
+      this.out = out;
+      this.content = content;
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+      if (!written) {
+        written = true;
+        out.write(content);
+      }
+
+      // the content has been completely flushed if the stream is ready again.
+      if (out.isReady()) {
+        asyncReq.complete();
+      }
+    }
+
+    @Override
+    public void onError(Throwable th) {
+      asyncReq.onThrowable(th);
+    }
+
+  } // class ResponseWriter
+
+}
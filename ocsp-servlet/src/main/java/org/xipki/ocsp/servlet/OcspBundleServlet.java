@@ -0,0 +1,220 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.servlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspServer;
+import org.xipki.ocsp.api.Responder;
+import org.xipki.ocsp.api.ResponderAndPath;
+import org.xipki.util.Args;
+import org.xipki.util.HttpConstants;
+import org.xipki.util.LogUtil;
+
+/**
+ * Servlet answering a bundle of OCSP requests in one HTTP exchange, e.g. for the TLS servers
+ * which staple the OCSP responses of many certificates.
+ *
+ * <p>The request body is the concatenation of DER encoded OCSP requests, each identifying the
+ * certificates by issuer and serial number. The response body is the concatenation of the DER
+ * encoded OCSP responses in the same order. Each response is individually signed and can be
+ * cached and stapled on its own. The requests are answered by the same responder as the
+ * single requests, so the cached responses are reused. The responses are streamed as soon as
+ * they are available. If an error occurs after the first response has been sent, the
+ * response body ends early, so the client must check that it has received a response for
+ * each request.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class OcspBundleServlet extends HttpServlet {
+
+  private static class BadRequestException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    BadRequestException(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+
+  }
+
+  private static final Logger LOG = LoggerFactory.getLogger(OcspBundleServlet.class);
+
+  private static final long serialVersionUID = 1L;
+
+  private static final String CT_REQUEST = "application/ocsp-requests";
+
+  private static final String CT_RESPONSE = "application/ocsp-responses";
+
+  private OcspServer server;
+
+  private int maxRequests = 10000;
+
+  public void setServer(OcspServer server) {
+    this.server = Args.notNull(server, "server");
+  }
+
+  public void setMaxRequests(int maxRequests) {
+    this.maxRequests = Args.positive(maxRequests, "maxRequests");
+  }
+
+  @Override
+  protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+      throws ServletException, IOException {
+    String path = (String) req.getAttribute(HttpConstants.ATTR_XIPKI_PATH);
+    ResponderAndPath responderAndPath = server.getResponderForPath(path);
+    if (responderAndPath == null) {
+      OcspServlet.sendError(resp, HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    String reqContentType = req.getHeader("Content-Type");
+    if (!CT_REQUEST.equalsIgnoreCase(reqContentType)) {
+      OcspServlet.sendError(resp, HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+      return;
+    }
+
+    Responder responder = responderAndPath.getResponder();
+    DataInputStream in = new DataInputStream(new BufferedInputStream(req.getInputStream()));
+
+    ServletOutputStream out = null;
+    int count = 0;
+    try {
+      byte[] request;
+      while ((request = readRequest(in, responder.getMaxRequestSize())) != null) {
+        if (++count > maxRequests) {
+          throw new BadRequestException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+              "too many requests in the bundle, maximal " + maxRequests);
+        }
+
+        OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, request, false);
+        if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
+          throw new IllegalStateException("processRequest returned null");
+        }
+
+        if (out == null) {
+          // the length is not known in advance, the response is sent chunked.
+          resp.setStatus(HttpServletResponse.SC_OK);
+          resp.setContentType(CT_RESPONSE);
+          out = resp.getOutputStream();
+        }
+        out.write(ocspRespWithCacheInfo.getResponse());
+      }
+
+      if (out == null) {
+        OcspServlet.sendError(resp, HttpServletResponse.SC_BAD_REQUEST);
+      }
+    } catch (BadRequestException ex) {
+      LOG.warn("invalid OCSP request bundle: {}", ex.getMessage());
+      abort(resp, out, ex.status);
+    } catch (EOFException ex) {
+      LogUtil.warn(LOG, ex, "Connection reset by peer");
+      abort(resp, out, HttpServletResponse.SC_BAD_REQUEST);
+    } catch (Throwable th) {
+      LOG.error("Throwable thrown, this should not happen!", th);
+      abort(resp, out, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    } finally {
+      LOG.debug("answered {} OCSP requests in the bundle", count);
+      resp.flushBuffer();
+    }
+  } // method doPost
+
+  private static void abort(HttpServletResponse resp, ServletOutputStream out, int status) {
+    // if the status has already been sent, the response just ends early.
+    if (out == null) {
+      OcspServlet.sendError(resp, status);
+    }
+  }
+
+  /**
+   * Reads the next DER encoded OCSP request.
+   *
+   * @return the encoded request, or {@code null} if the end of the stream is reached.
+   */
+  private static byte[] readRequest(DataInputStream in, int maxSize)
+      throws IOException, BadRequestException {
+    int tag = in.read();
+    if (tag == -1) {
+      return null;
+    } else if (tag != 0x30) {
+      throw new BadRequestException(HttpServletResponse.SC_BAD_REQUEST,
+          "OCSP request is not a SEQUENCE");
+    }
+
+    int lenOctet = readOctet(in);
+    int headerLen = 2;
+    int len;
+    if (lenOctet < 0x80) {
+      len = lenOctet;
+    } else {
+      int numLenOctets = lenOctet & 0x7F;
+      // requests longer than 16 MB are not accepted anyway
+      if (numLenOctets == 0 || numLenOctets > 3) {
+        throw new BadRequestException(HttpServletResponse.SC_BAD_REQUEST,
+            "invalid length of the OCSP request");
+      }
+
+      len = 0;
+      for (int i = 0; i < numLenOctets; i++) {
+        len = (len << 8) | readOctet(in);
+      }
+      headerLen += numLenOctets;
+    }
+
+    if (headerLen + len > maxSize) {
+      throw new BadRequestException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+          "OCSP request too large");
+    }
+
+    byte[] request = new byte[headerLen + len];
+    request[0] = (byte) tag;
+    request[1] = (byte) lenOctet;
+    for (int i = headerLen - 1, v = len; i > 1; i--, v >>>= 8) {
+      request[i] = (byte) v;
+    }
+    in.readFully(request, headerLen, len);
+    return request;
+  } // method readRequest
+
+  private static int readOctet(InputStream in) throws IOException {
+    int octet = in.read();
+    if (octet == -1) {
+      throw new EOFException("unexpected end of the OCSP request bundle");
+    }
+    return octet;
+  }
+
+}
@@ -60,13 +60,26 @@ public class OcspServlet extends HttpServlet {
 
   private OcspServer server;
 
+  private AsyncOcspProcessor asyncProcessor;
+
   public void setServer(OcspServer server) {
     this.server = Args.notNull(server, "server");
   }
 
+  /**
+   * Sets the processor of the requests in asynchronous mode.
+   *
+   * @param asyncProcessor
+   *          Processor of the requests. {@code null} to process the requests synchronously.
+   */
+  public void setAsyncProcessor(AsyncOcspProcessor asyncProcessor) {
+    this.asyncProcessor = asyncProcessor;
+  }
+
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
+    boolean async = false;
     try {
       String path = (String) req.getAttribute(HttpConstants.ATTR_XIPKI_PATH);
       ResponderAndPath responderAndPath = server.getResponderForPath(path);
@@ -83,6 +96,12 @@ public class OcspServlet extends HttpServlet {
       }
 
       Responder responder = responderAndPath.getResponder();
+      if (asyncProcessor != null && req.isAsyncSupported()) {
+        asyncProcessor.processPost(req, resp, responder);
+        async = true;
+        return;
+      }
+
       byte[] reqContent = IoUtil.read(req.getInputStream());
       // request too long
       if (reqContent.length > responder.getMaxRequestSize()) {
@@ -92,16 +111,10 @@ public class OcspServlet extends HttpServlet {
 
       OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, reqContent,
           false);
-      if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
-        LOG.error("processRequest returned null, this should not happen");
-        sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      byte[] encodedOcspResp = prepareResponse(resp, responder, ocspRespWithCacheInfo, false);
+      if (encodedOcspResp != null) {
+        resp.getOutputStream().write(encodedOcspResp);
       }
-
-      byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-      resp.setStatus(HttpServletResponse.SC_OK);
-      resp.setContentType(CT_RESPONSE);
-      resp.setContentLength(encodedOcspResp.length);
-      resp.getOutputStream().write(encodedOcspResp);
     } catch (Throwable th) {
       if (th instanceof EOFException) {
         LogUtil.warn(LOG, th, "Connection reset by peer");
@@ -111,7 +124,9 @@ public class OcspServlet extends HttpServlet {
 
       sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
     } finally {
-      resp.flushBuffer();
+      if (!async) {
+        resp.flushBuffer();
+      }
     }
   } // method servicePost
 
@@ -147,6 +162,7 @@ public class OcspServlet extends HttpServlet {
       return;
     }
 
+    boolean async = false;
     try {
       // RFC2560 A.1.1 specifies that request longer than 255 bytes SHOULD be sent by
       // POST, we support GET for longer requests anyway.
@@ -163,58 +179,17 @@ public class OcspServlet extends HttpServlet {
         return;
       }
 
-      OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, ocspReq, true);
-      if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
-        sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      if (asyncProcessor != null && req.isAsyncSupported()) {
+        asyncProcessor.process(req, resp, responder, ocspReq, true);
+        async = true;
         return;
       }
 
-      byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-
-      OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo = ocspRespWithCacheInfo.getCacheInfo();
-      if (cacheInfo != null) {
-        encodedOcspResp = ocspRespWithCacheInfo.getResponse();
-        long now = System.currentTimeMillis();
-
-        // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
-        // the HTTP response.
-        resp.addDateHeader("Date", now);
-        // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
-        // last modified the response.
-        resp.addDateHeader("Last-Modified", cacheInfo.getThisUpdate());
-        // RFC 5019 6.2: Expires: This date and time will be the same as the
-        // nextUpdate time-stamp in the OCSP
-        // response itself.
-        // This is overridden by max-age on HTTP/1.1 compatible components
-        if (cacheInfo.getNextUpdate() != null) {
-          resp.addDateHeader("Expires", cacheInfo.getNextUpdate());
-        }
-        // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
-        // HEX representation of the SHA1 hash of the OCSPResponse structure.
-        resp.addHeader("ETag",
-            StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encodedOcspResp), "\""));
-
-        // Max age must be in seconds in the cache-control header
-        long maxAge;
-        if (responder.getCacheMaxAge() != null) {
-          maxAge = responder.getCacheMaxAge().longValue();
-        } else {
-          maxAge = DFLT_CACHE_MAX_AGE;
-        }
-
-        if (cacheInfo.getNextUpdate() != null) {
-          maxAge = Math.min(maxAge,
-              (cacheInfo.getNextUpdate() - cacheInfo.getThisUpdate()) / 1000);
-        }
-
-        resp.addHeader("Cache-Control",
-            StringUtil.concat("max-age=", Long.toString(maxAge),
-              ",public,no-transform,must-revalidate"));
-      } // end if (ocspRespWithCacheInfo)
-
-      resp.setContentLength(encodedOcspResp.length);
-      resp.setContentType(CT_RESPONSE);
-      resp.getOutputStream().write(encodedOcspResp);
+      OcspRespWithCacheInfo ocspRespWithCacheInfo = server.answer(responder, ocspReq, true);
+      byte[] encodedOcspResp = prepareResponse(resp, responder, ocspRespWithCacheInfo, true);
+      if (encodedOcspResp != null) {
+        resp.getOutputStream().write(encodedOcspResp);
+      }
     } catch (Throwable th) {
       if (th instanceof EOFException) {
         LogUtil.warn(LOG, th, "Connection reset by peer");
@@ -224,11 +199,83 @@ public class OcspServlet extends HttpServlet {
 
       sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
     } finally {
-      resp.flushBuffer();
+      if (!async) {
+        resp.flushBuffer();
+      }
     }
   } // method serviceGet
 
-  private static void sendError(HttpServletResponse resp, int status) {
+  /**
+   * Sets the status and headers of the HTTP response.
+   *
+   * @param resp
+   *          HTTP response.
+   * @param responder
+   *          Responder which answered the request.
+   * @param ocspRespWithCacheInfo
+   *          Answer of the OCSP server, may be {@code null}.
+   * @param viaGet
+   *          Whether the request was sent via HTTP GET.
+   * @return the encoded OCSP response to be written, or {@code null} if an error status has
+   *         been set.
+   */
+  static byte[] prepareResponse(HttpServletResponse resp, Responder responder,
+      OcspRespWithCacheInfo ocspRespWithCacheInfo, boolean viaGet) {
+    if (ocspRespWithCacheInfo == null || ocspRespWithCacheInfo.getResponse() == null) {
+      LOG.error("processRequest returned null, this should not happen");
+      sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      return null;
+    }
+
+    byte[] encodedOcspResp = ocspRespWithCacheInfo.getResponse();
+
+    OcspRespWithCacheInfo.ResponseCacheInfo cacheInfo = ocspRespWithCacheInfo.getCacheInfo();
+    if (viaGet && cacheInfo != null) {
+      long now = System.currentTimeMillis();
+
+      // RFC 5019 6.2: Date: The date and time at which the OCSP server generated
+      // the HTTP response.
+      resp.addDateHeader("Date", now);
+      // RFC 5019 6.2: Last-Modified: date and time at which the OCSP responder
+      // last modified the response.
+      resp.addDateHeader("Last-Modified", cacheInfo.getThisUpdate());
+      // RFC 5019 6.2: Expires: This date and time will be the same as the
+      // nextUpdate time-stamp in the OCSP
+      // response itself.
+      // This is overridden by max-age on HTTP/1.1 compatible components
+      if (cacheInfo.getNextUpdate() != null) {
+        resp.addDateHeader("Expires", cacheInfo.getNextUpdate());
+      }
+      // RFC 5019 6.2: This profile RECOMMENDS that the ETag value be the ASCII
+      // HEX representation of the SHA1 hash of the OCSPResponse structure.
+      resp.addHeader("ETag",
+          StringUtil.concat("\"", HashAlgo.SHA1.hexHash(encodedOcspResp), "\""));
+
+      // Max age must be in seconds in the cache-control header
+      long maxAge;
+      if (responder.getCacheMaxAge() != null) {
+        maxAge = responder.getCacheMaxAge().longValue();
+      } else {
+        maxAge = DFLT_CACHE_MAX_AGE;
+      }
+
+      if (cacheInfo.getNextUpdate() != null) {
+        maxAge = Math.min(maxAge,
+            (cacheInfo.getNextUpdate() - cacheInfo.getThisUpdate()) / 1000);
+      }
+
+      resp.addHeader("Cache-Control",
+          StringUtil.concat("max-age=", Long.toString(maxAge),
+            ",public,no-transform,must-revalidate"));
+    } // end if (cacheInfo)
+
+    resp.setStatus(HttpServletResponse.SC_OK);
+    resp.setContentType(CT_RESPONSE);
+    resp.setContentLength(encodedOcspResp.length);
+    return encodedOcspResp;
+  } // method prepareResponse
+
+  static void sendError(HttpServletResponse resp, int status) {
     resp.setStatus(status);
     resp.setContentLength(0);
   }
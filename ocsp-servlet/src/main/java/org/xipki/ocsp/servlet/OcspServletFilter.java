@@ -72,6 +72,10 @@ public class OcspServletFilter implements Filter {
 
   private OcspServlet ocspServlet;
 
+  private AsyncOcspProcessor asyncProcessor;
+
+  private OcspBundleServlet bundleServlet;
+
   private boolean remoteMgmtEnabled;
 
   private HttpMgmtServlet mgmtServlet;
@@ -122,6 +126,37 @@ public class OcspServletFilter implements Filter {
     this.ocspServlet = new OcspServlet();
     this.ocspServlet.setServer(this.server);
 
+    boolean asyncEnabled = Boolean.parseBoolean(props.getProperty("async.enabled", "false"));
+    if (asyncEnabled) {
+      try {
+        int threads = Integer.parseInt(props.getProperty("async.threads",
+            Integer.toString(Runtime.getRuntime().availableProcessors() * 8)).trim());
+        int queueSize = Integer.parseInt(props.getProperty("async.queueSize", "1000").trim());
+        long timeout = Long.parseLong(props.getProperty("async.timeout", "0").trim());
+        this.asyncProcessor = new AsyncOcspProcessor(this.server, threads, queueSize, timeout);
+        this.ocspServlet.setAsyncProcessor(asyncProcessor);
+        LOG.info("asynchronous processing is enabled with {} worker threads", threads);
+      } catch (IllegalArgumentException ex) {
+        LogUtil.error(LOG, ex, "invalid configuration of the asynchronous processing, "
+            + "process the requests synchronously");
+      }
+    }
+
+    boolean bundleEnabled = Boolean.parseBoolean(props.getProperty("bundle.enabled", "false"));
+    LOG.info("OCSP request bundle is {}", bundleEnabled ? "enabled" : "disabled");
+    if (bundleEnabled) {
+      this.bundleServlet = new OcspBundleServlet();
+      this.bundleServlet.setServer(this.server);
+      String str = props.getProperty("bundle.maxRequests");
+      if (str != null) {
+        try {
+          this.bundleServlet.setMaxRequests(Integer.parseInt(str.trim()));
+        } catch (IllegalArgumentException ex) {
+          LogUtil.error(LOG, ex, "invalid bundle.maxRequests " + str + ", use the default");
+        }
+      }
+    }
+
     this.remoteMgmtEnabled =
         Boolean.parseBoolean(props.getProperty("remote.mgmt.enabled", "false"));
     LOG.info("remote management is {}", remoteMgmtEnabled ? "enabled" : "disabled");
@@ -157,6 +192,10 @@ public class OcspServletFilter implements Filter {
 
   @Override
   public void destroy() {
+    if (asyncProcessor != null) {
+      asyncProcessor.close();
+    }
+
     if (securities != null) {
       securities.close();
     }
@@ -202,6 +241,9 @@ public class OcspServletFilter implements Filter {
       } else {
         resp.sendError(HttpServletResponse.SC_FORBIDDEN);
       }
+    } else if (bundleServlet != null && path.startsWith("/bundle/")) {
+      req.setAttribute(HttpConstants.ATTR_XIPKI_PATH, path.substring(7)); // 7 = "/bundle".length()
+      bundleServlet.service(req, resp);
     } else {
       req.setAttribute(HttpConstants.ATTR_XIPKI_PATH, path);
       ocspServlet.service(req, resp);
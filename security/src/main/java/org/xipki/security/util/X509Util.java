@@ -79,6 +79,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.security.BadInputException;
 import org.xipki.security.FpIdCalculator;
+import org.xipki.security.HashAlgo;
 import org.xipki.security.KeyUsage;
 import org.xipki.security.ObjectIdentifiers;
 import org.xipki.util.Args;
@@ -88,6 +89,7 @@ import org.xipki.util.CompareUtil;
 import org.xipki.util.ConfPairs;
 import org.xipki.util.Hex;
 import org.xipki.util.IoUtil;
+import org.xipki.util.LruCache;
 import org.xipki.util.StringUtil;
 
 /**
@@ -105,9 +107,10 @@ public class X509Util {
 
   private static final byte[] PEM_SEP = "-----".getBytes();
 
-  private static CertificateFactory certFact;
+  // CertificateFactory is not thread-safe, each thread has its own one.
+  private static final ThreadLocal<CertificateFactory> CERT_FACTORY = new ThreadLocal<>();
 
-  private static Object certFactLock = new Object();
+  private static final LruCache<String, X509Certificate> CERT_CACHE = new LruCache<>(1000);
 
   private X509Util() {
   }
@@ -166,8 +169,35 @@ public class X509Util {
 
   public static X509Certificate parseCert(byte[] certBytes) throws CertificateException {
     Args.notNull(certBytes, "certBytes");
+    return parseDerCert(toDerEncoded(certBytes));
+  }
+
+  /**
+   * Parses the certificate like {@link #parseCert(byte[])}, but the parsed certificates are
+   * cached with the SHA-256 fingerprint as key. Use this method only for the certificates which
+   * are parsed repeatedly, e.g. the certificates of issuers, requestors and TLS clients.
+   *
+   * @param certBytes
+   *          Encoded certificate. Must not be {@code null}.
+   * @return the certificate.
+   * @throws CertificateException
+   *           if the certificate is invalid.
+   */
+  public static X509Certificate parseCertCached(byte[] certBytes) throws CertificateException {
+    Args.notNull(certBytes, "certBytes");
+    byte[] derBytes = toDerEncoded(certBytes);
+    String key = HashAlgo.SHA256.base64Hash(derBytes);
+    X509Certificate cert = CERT_CACHE.get(key);
+    if (cert == null) {
+      cert = parseDerCert(derBytes);
+      CERT_CACHE.put(key, cert);
+    }
+    return cert;
+  }
+
+  private static X509Certificate parseDerCert(byte[] derBytes) throws CertificateException {
     X509Certificate cert = (X509Certificate) getCertFactory().generateCertificate(
-        new ByteArrayInputStream(toDerEncoded(certBytes)));
+        new ByteArrayInputStream(derBytes));
     if (cert == null) {
       throw new CertificateEncodingException("the given one is not a valid X.509 certificate");
     }
@@ -268,16 +298,16 @@ public class X509Util {
   }
 
   private static CertificateFactory getCertFactory() throws CertificateException {
-    synchronized (certFactLock) {
-      if (certFact == null) {
-        try {
-          certFact = CertificateFactory.getInstance("X.509", "BC");
-        } catch (NoSuchProviderException ex) {
-          throw new CertificateException("NoSuchProviderException: " + ex.getMessage());
-        }
+    CertificateFactory certFact = CERT_FACTORY.get();
+    if (certFact == null) {
+      try {
+        certFact = CertificateFactory.getInstance("X.509", "BC");
+      } catch (NoSuchProviderException ex) {
+        throw new CertificateException("NoSuchProviderException: " + ex.getMessage());
       }
-      return certFact;
+      CERT_FACTORY.set(certFact);
     }
+    return certFact;
   }
 
   public static String toPemCert(X509Certificate cert) throws CertificateException {
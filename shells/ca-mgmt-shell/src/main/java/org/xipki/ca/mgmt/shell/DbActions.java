@@ -125,6 +125,11 @@ public class DbActions {
     @Completion(FileCompleter.class)
     private List<String> caCertFiles;
 
+    @Option(name = "--range",
+        description = "compare checksums of serial number ranges and only the certificates in"
+            + " the differing ranges, -k specifies the maximal size of such range")
+    private Boolean rangeMode = Boolean.FALSE;
+
     protected DbPortWorker getDbPortWorker() throws Exception {
       Set<byte[]> caCerts = null;
       if (caCertFiles != null && !caCertFiles.isEmpty()) {
@@ -136,7 +141,8 @@ public class DbActions {
       }
 
       return new DigestDiffWorker(datasourceFactory, passwordResolver, revokedOnly,
-          refDbConf, dbconfFile, reportDir, numCertsPerSelect, numTargetThreads, caCerts);
+          refDbConf, dbconfFile, reportDir, numCertsPerSelect, numTargetThreads, caCerts,
+          rangeMode);
     }
 
   }
@@ -162,10 +168,20 @@ public class DbActions {
     @Option(name = "--resume", description = "resume from the last successful point")
     private Boolean resume = Boolean.FALSE;
 
+    @Option(name = "--threads",
+        description = "number of threads (and database connections) to export the certificates")
+    private Integer numThreads = 1;
+
+    @Option(name = "--checkpoint",
+        description = "checkpoint file of the previous export, only the changes since then"
+            + " will be exported")
+    @Completion(FileCompleter.class)
+    private String checkpointFile;
+
     @Override
     protected DbPortWorker getDbPortWorker() throws Exception {
       return new DbPortWorker.ExportCaDb(datasourceFactory, passwordResolver, dbconfFile, outdir,
-          resume, numCertsInBundle, numCertsPerCommit);
+          resume, numCertsInBundle, numCertsPerCommit, numThreads, checkpointFile);
     }
 
   }
@@ -217,10 +233,14 @@ public class DbActions {
     @Option(name = "--resume", description = "resume from the last successful point")
     private Boolean resume = Boolean.FALSE;
 
+    @Option(name = "--threads",
+        description = "number of threads (and database connections) to import the certificates")
+    private Integer numThreads = 1;
+
     @Override
     protected DbPortWorker getDbPortWorker() throws Exception {
       return new DbPortWorker.ImportCaDb(datasourceFactory, passwordResolver, dbconfFile, resume,
-          indir, numCertsPerCommit.intValue());
+          indir, numCertsPerCommit.intValue(), numThreads);
     }
 
   }
@@ -0,0 +1,109 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe bloom filter of {@code long} values. The filter answers whether a value
+ * is definitely not contained, or whether it might be contained. Values cannot be removed.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class LongBloomFilter {
+
+  private static final int NUM_HASHES = 7;
+
+  // 10 bits per expected entry, results in less than 1% false positive rate with 7 hashes.
+  private static final int BITS_PER_ENTRY = 10;
+
+  private final AtomicLongArray bits;
+
+  private final long numBits;
+
+  /**
+   * Constructor.
+   *
+   * @param expectedEntries
+   *          Number of expected entries. The false positive rate increases if more entries
+   *          are added.
+   */
+  public LongBloomFilter(long expectedEntries) {
+    Args.positive(expectedEntries, "expectedEntries");
+    long numWords = (expectedEntries * BITS_PER_ENTRY + 63) / 64;
+    if (numWords > Integer.MAX_VALUE) {
+      numWords = Integer.MAX_VALUE;
+    }
+    this.bits = new AtomicLongArray((int) numWords);
+    this.numBits = numWords * 64;
+  }
+
+  public void add(long value) {
+    long h1 = mix(value);
+    long h2 = Long.rotateLeft(h1, 32) | 1;
+    for (int i = 1; i <= NUM_HASHES; i++) {
+      long bitIndex = index(h1 + i * h2);
+      int wordIndex = (int) (bitIndex >>> 6);
+      long mask = 1L << bitIndex;
+
+      while (true) {
+        long word = bits.get(wordIndex);
+        if ((word & mask) != 0 || bits.compareAndSet(wordIndex, word, word | mask)) {
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns whether the value might be contained.
+   *
+   * @param value
+   *          the value to be checked.
+   * @return {@code false} if the value is definitely not contained, {@code true} otherwise.
+   */
+  public boolean mightContain(long value) {
+    long h1 = mix(value);
+    long h2 = Long.rotateLeft(h1, 32) | 1;
+    for (int i = 1; i <= NUM_HASHES; i++) {
+      long bitIndex = index(h1 + i * h2);
+      if ((bits.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long index(long combinedHash) {
+    return (combinedHash & Long.MAX_VALUE) % numBits;
+  }
+
+  // finalizer of MurmurHash3, spreads the bits of values which are not already hashes.
+  private static long mix(long value) {
+    long hash = value;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+}
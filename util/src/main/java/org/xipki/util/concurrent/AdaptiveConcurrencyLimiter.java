@@ -0,0 +1,150 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xipki.util.Args;
+
+/**
+ * Limiter of the number of concurrent operations. The limit is adapted with the AIMD
+ * (additive increase, multiplicative decrease) algorithm: it is decreased by 10% if an
+ * operation takes longer than the latency threshold or is reported as overloaded, and
+ * increased by about 1 per {@code limit} fast operations. The limit is decreased at most once
+ * per window: the operations which were already in flight at the last decrease, and thus
+ * suffered from the same overload, do not decrease it again. Operations beyond the limit are
+ * rejected immediately instead of waiting.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class AdaptiveConcurrencyLimiter {
+
+  private static final double DECREASE_FACTOR = 0.9;
+
+  private final int minLimit;
+
+  private final int maxLimit;
+
+  private final long latencyThresholdNanos;
+
+  private final AtomicInteger inFlight = new AtomicInteger(0);
+
+  private final AtomicLong accepted = new AtomicLong(0);
+
+  private final AtomicLong rejected = new AtomicLong(0);
+
+  private double limit;
+
+  // number of completed operations
+  private long completed;
+
+  // the limit is not decreased until this number of operations has been completed.
+  private long nextDecrease;
+
+  /**
+   * Constructor.
+   *
+   * @param minLimit
+   *          Minimal limit, at least 1.
+   * @param maxLimit
+   *          Maximal limit, also the initial limit. Must not be less than minLimit.
+   * @param latencyThresholdMs
+   *          Operations longer than this latency in milliseconds decrease the limit.
+   */
+  public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, long latencyThresholdMs) {
+    this.minLimit = Args.positive(minLimit, "minLimit");
+    this.maxLimit = Args.min(maxLimit, "maxLimit", minLimit);
+    this.latencyThresholdNanos = Args.positive(latencyThresholdMs, "latencyThresholdMs")
+        * 1000000L;
+    this.limit = maxLimit;
+  }
+
+  /**
+   * Tries to start an operation.
+   *
+   * @return {@code true} if the operation can be started, in this case {@link #release(long,
+   *         boolean)} must be called after the operation, {@code false} if the limit is
+   *         reached.
+   */
+  public boolean tryAcquire() {
+    int currentLimit = getLimit();
+    while (true) {
+      int current = inFlight.get();
+      if (current >= currentLimit) {
+        rejected.incrementAndGet();
+        return false;
+      }
+
+      if (inFlight.compareAndSet(current, current + 1)) {
+        accepted.incrementAndGet();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Finishes an operation started by {@link #tryAcquire()}.
+   *
+   * @param latencyNanos
+   *          Duration of the operation in nanoseconds.
+   * @param overloaded
+   *          Whether the operation failed due to overload, e.g. no resource was available.
+   */
+  public void release(long latencyNanos, boolean overloaded) {
+    int remaining = inFlight.decrementAndGet();
+    synchronized (this) {
+      completed++;
+      if (overloaded || latencyNanos > latencyThresholdNanos) {
+        if (completed > nextDecrease) {
+          limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+          nextDecrease = completed + remaining;
+        }
+      } else if (limit < maxLimit) {
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+      }
+    }
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public long getAccepted() {
+    return accepted.get();
+  }
+
+  public long getRejected() {
+    return rejected.get();
+  }
+
+}
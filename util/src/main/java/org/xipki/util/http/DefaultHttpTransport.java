@@ -0,0 +1,205 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Semaphore;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import org.xipki.util.Args;
+import org.xipki.util.IoUtil;
+
+/**
+ * {@link HttpTransport} based on {@link HttpURLConnection}.
+ *
+ * <p>The connections are kept alive and reused via the connection cache of the JDK, whose
+ * number of idle connections per server is configured by the system property
+ * {@code http.maxConnections}. For this, the responses are always read completely.
+ * The number of concurrent requests is not limited, unless configured in the constructor,
+ * then further requests wait for a free slot.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class DefaultHttpTransport implements HttpTransport {
+
+  private static DefaultHttpTransport instance;
+
+  private final int maxConcurrentRequests;
+
+  // null if the number of concurrent requests is not limited
+  private final Semaphore permits;
+
+  private int connectTimeout;
+
+  private int readTimeout;
+
+  /**
+   * Creates a transport without limit of the concurrent requests.
+   */
+  public DefaultHttpTransport() {
+    this.maxConcurrentRequests = 0;
+    this.permits = null;
+  }
+
+  /**
+   * Creates a transport which sends at most {@code maxConcurrentRequests} requests
+   * concurrently.
+   */
+  public DefaultHttpTransport(int maxConcurrentRequests) {
+    this.maxConcurrentRequests = Args.positive(maxConcurrentRequests, "maxConcurrentRequests");
+    this.permits = new Semaphore(maxConcurrentRequests);
+  }
+
+  /**
+   * Returns the instance shared by the clients without own transport, the number of its
+   * concurrent requests is not limited.
+   */
+  public static synchronized DefaultHttpTransport getInstance() {
+    if (instance == null) {
+      instance = new DefaultHttpTransport();
+    }
+    return instance;
+  }
+
+  /**
+   * Returns the maximal number of concurrent requests, 0 if not limited.
+   */
+  public int getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * Sets the connect timeout in milliseconds, 0 for the default of the JDK.
+   */
+  public void setConnectTimeout(int connectTimeout) {
+    this.connectTimeout = Args.notNegative(connectTimeout, "connectTimeout");
+  }
+
+  public int getReadTimeout() {
+    return readTimeout;
+  }
+
+  /**
+   * Sets the read timeout in milliseconds, 0 for the default of the JDK.
+   */
+  public void setReadTimeout(int readTimeout) {
+    this.readTimeout = Args.notNegative(readTimeout, "readTimeout");
+  }
+
+  @Override
+  public byte[] send(Request request) throws IOException {
+    Args.notNull(request, "request");
+    if (permits == null) {
+      return send0(request);
+    }
+
+    try {
+      permits.acquire();
+    } catch (InterruptedException ex) {
+      throw new InterruptedIOException("interrupted while waiting for a free connection");
+    }
+
+    try {
+      return send0(request);
+    } finally {
+      permits.release();
+    }
+  }
+
+  private byte[] send0(Request request) throws IOException {
+    HttpURLConnection conn = IoUtil.openHttpConn(request.getUrl());
+    if (conn instanceof HttpsURLConnection) {
+      if (request.getSslSocketFactory() != null) {
+        ((HttpsURLConnection) conn).setSSLSocketFactory(request.getSslSocketFactory());
+      }
+
+      if (request.getHostnameVerifier() != null) {
+        ((HttpsURLConnection) conn).setHostnameVerifier(request.getHostnameVerifier());
+      }
+    }
+
+    if (connectTimeout > 0) {
+      conn.setConnectTimeout(connectTimeout);
+    }
+
+    if (readTimeout > 0) {
+      conn.setReadTimeout(readTimeout);
+    }
+
+    conn.setUseCaches(false);
+
+    byte[] body = request.getBody();
+    if (body == null) {
+      conn.setRequestMethod("GET");
+    } else {
+      conn.setDoOutput(true);
+      conn.setRequestMethod("POST");
+      conn.setRequestProperty("Content-Type", request.getContentType());
+      conn.setFixedLengthStreamingMode(body.length);
+      try (OutputStream os = conn.getOutputStream()) {
+        os.write(body);
+      }
+    }
+
+    int responseCode = conn.getResponseCode();
+    if (responseCode != HttpURLConnection.HTTP_OK) {
+      // consume the error stream, so that the connection can be reused
+      InputStream errorStream = conn.getErrorStream();
+      if (errorStream != null) {
+        try {
+          IoUtil.read(errorStream);
+        } catch (IOException ex) {
+          // ignore it
+        }
+      }
+      throw new IOException("bad response: " + responseCode + "    "
+          + conn.getResponseMessage());
+    }
+
+    // IoUtil.read() reads the stream completely and closes it
+    byte[] response = IoUtil.read(conn.getInputStream());
+
+    String expectedContentType = request.getExpectedResponseContentType();
+    if (expectedContentType != null) {
+      String responseContentType = conn.getContentType();
+      if (!expectedContentType.equalsIgnoreCase(responseContentType)) {
+        throw new IOException("bad response: mime type " + responseContentType
+            + " not supported!");
+      }
+    }
+
+    return response;
+  } // method send0
+
+  @Override
+  public void close() {
+    // the connections are managed by the JDK
+  }
+
+}
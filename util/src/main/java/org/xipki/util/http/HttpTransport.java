@@ -0,0 +1,112 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.util.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.xipki.util.Args;
+
+/**
+ * Transport of the HTTP based protocols like CMP and OCSP.
+ *
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public interface HttpTransport extends Closeable {
+
+  class Request {
+
+    private final URL url;
+
+    private final byte[] body;
+
+    private final String contentType;
+
+    private final String expectedResponseContentType;
+
+    private SSLSocketFactory sslSocketFactory;
+
+    private HostnameVerifier hostnameVerifier;
+
+    /**
+     * Constructor.
+     *
+     * @param url URL of the server.
+     * @param body body of the POST request, {@code null} for the GET request.
+     * @param contentType content type of the body, may be {@code null} for the GET request.
+     * @param expectedResponseContentType expected content type of the response, {@code null}
+     *        if not to be checked.
+     */
+    public Request(URL url, byte[] body, String contentType, String expectedResponseContentType) {
+      this.url = Args.notNull(url, "url");
+      this.body = body;
+      this.contentType = (body == null) ? contentType : Args.notBlank(contentType, "contentType");
+      this.expectedResponseContentType = expectedResponseContentType;
+    }
+
+    public URL getUrl() {
+      return url;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getExpectedResponseContentType() {
+      return expectedResponseContentType;
+    }
+
+    public SSLSocketFactory getSslSocketFactory() {
+      return sslSocketFactory;
+    }
+
+    public void setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
+      this.sslSocketFactory = sslSocketFactory;
+    }
+
+    public HostnameVerifier getHostnameVerifier() {
+      return hostnameVerifier;
+    }
+
+    public void setHostnameVerifier(HostnameVerifier hostnameVerifier) {
+      this.hostnameVerifier = hostnameVerifier;
+    }
+
+  }
+
+  /**
+   * Sends the request and waits for the response.
+   *
+   * @param request the request.
+   * @return body of the response.
+   * @throws IOException if the request could not be sent, or the response is not successful
+   *         or not of the expected content type.
+   */
+  byte[] send(Request request) throws IOException;
+
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import org.junit.Test;
+import org.xipki.util.concurrent.AdaptiveConcurrencyLimiter;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class AdaptiveConcurrencyLimiterTest {
+
+  private static final long FAST = 1000000L; // 1 ms
+
+  private static final long SLOW = 200000000L; // 200 ms
+
+  @Test
+  public void testRejectBeyondLimit() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 3, 100);
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue("acquire " + i, limiter.tryAcquire());
+    }
+    Assert.assertFalse("acquire beyond limit", limiter.tryAcquire());
+    Assert.assertEquals("rejected", 1, limiter.getRejected());
+
+    limiter.release(FAST, false);
+    Assert.assertTrue("acquire after release", limiter.tryAcquire());
+    Assert.assertEquals("in flight", 3, limiter.getInFlight());
+  }
+
+  @Test
+  public void testDecreaseAndIncrease() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 10, 100);
+    for (int i = 0; i < 50; i++) {
+      Assert.assertTrue(limiter.tryAcquire());
+      limiter.release(SLOW, false);
+    }
+    Assert.assertEquals("limit after slow operations", 2, limiter.getLimit());
+
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertTrue(limiter.tryAcquire());
+      limiter.release(FAST, false);
+    }
+    Assert.assertEquals("limit after fast operations", 10, limiter.getLimit());
+
+    Assert.assertTrue(limiter.tryAcquire());
+    limiter.release(FAST, true);
+    Assert.assertEquals("limit after overload", 9, limiter.getLimit());
+  }
+
+  @Test
+  public void testBurstDecreasesOnce() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 10, 100);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertTrue("acquire " + i, limiter.tryAcquire());
+    }
+
+    // all operations of the burst are slow, only the first one decreases the limit.
+    for (int i = 0; i < 10; i++) {
+      limiter.release(SLOW, false);
+    }
+    Assert.assertEquals("limit after slow burst", 9, limiter.getLimit());
+
+    // the operations started after the decrease may decrease the limit again.
+    for (int i = 0; i < 9; i++) {
+      Assert.assertTrue("acquire " + i, limiter.tryAcquire());
+    }
+    for (int i = 0; i < 9; i++) {
+      limiter.release(SLOW, true);
+    }
+    Assert.assertEquals("limit after second slow burst", 8, limiter.getLimit());
+  }
+
+}
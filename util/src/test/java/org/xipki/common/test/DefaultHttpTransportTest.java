@@ -0,0 +1,167 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xipki.util.IoUtil;
+import org.xipki.util.http.DefaultHttpTransport;
+import org.xipki.util.http.HttpTransport;
+
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class DefaultHttpTransportTest {
+
+  private static final String CT_REQUEST = "application/test-request";
+
+  private static final String CT_RESPONSE = "application/test-response";
+
+  private final AtomicInteger activeRequests = new AtomicInteger();
+
+  private final AtomicInteger maxActiveRequests = new AtomicInteger();
+
+  private HttpServer server;
+
+  private ExecutorService serverExecutor;
+
+  private URL url;
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    // echoes the request body, and the path for GET requests
+    server.createContext("/", exchange -> {
+      int active = activeRequests.incrementAndGet();
+      maxActiveRequests.accumulateAndGet(active, Math::max);
+      try {
+        byte[] response = "GET".equals(exchange.getRequestMethod())
+            ? exchange.getRequestURI().getPath().getBytes()
+            : IoUtil.read(exchange.getRequestBody());
+        Thread.sleep(5);
+        exchange.getResponseHeaders().set("Content-Type", CT_RESPONSE);
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+          os.write(response);
+        }
+      } catch (InterruptedException ex) {
+        exchange.sendResponseHeaders(500, -1);
+      } finally {
+        activeRequests.decrementAndGet();
+        exchange.close();
+      }
+    });
+    serverExecutor = Executors.newFixedThreadPool(20);
+    server.setExecutor(serverExecutor);
+    server.start();
+    url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Test
+  public void testGetAndPost() throws IOException {
+    try (DefaultHttpTransport transport = new DefaultHttpTransport(2)) {
+      byte[] body = "hello".getBytes();
+      byte[] response = transport.send(new HttpTransport.Request(url, body, CT_REQUEST,
+          CT_RESPONSE));
+      Assert.assertTrue("POST response", Arrays.equals(body, response));
+
+      response = transport.send(new HttpTransport.Request(new URL(url, "/abc"), null, null,
+          CT_RESPONSE));
+      Assert.assertEquals("GET response", "/abc", new String(response));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnexpectedContentType() throws IOException {
+    try (DefaultHttpTransport transport = new DefaultHttpTransport(2)) {
+      transport.send(new HttpTransport.Request(url, new byte[1], CT_REQUEST, CT_REQUEST));
+    }
+  }
+
+  @Test
+  public void testConcurrencyLimit() throws Exception {
+    final int maxConcurrentRequests = 4;
+    try (DefaultHttpTransport transport = new DefaultHttpTransport(maxConcurrentRequests)) {
+      sendConcurrently(transport);
+    }
+
+    Assert.assertTrue("concurrent requests " + maxActiveRequests.get() + " > "
+        + maxConcurrentRequests, maxActiveRequests.get() <= maxConcurrentRequests);
+  }
+
+  @Test
+  public void testNoConcurrencyLimit() throws Exception {
+    DefaultHttpTransport transport = DefaultHttpTransport.getInstance();
+    Assert.assertEquals("maxConcurrentRequests", 0, transport.getMaxConcurrentRequests());
+    sendConcurrently(transport);
+  }
+
+  private void sendConcurrently(final DefaultHttpTransport transport) throws Exception {
+    ExecutorService clientExecutor = Executors.newFixedThreadPool(20);
+    try {
+      List<byte[]> bodies = new ArrayList<>(100);
+      List<Future<byte[]>> futures = new ArrayList<>(100);
+      for (int i = 0; i < 100; i++) {
+        byte[] body = ("request-" + i).getBytes();
+        bodies.add(body);
+        futures.add(clientExecutor.submit(() -> transport.send(
+            new HttpTransport.Request(url, body, CT_REQUEST, CT_RESPONSE))));
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+        byte[] response;
+        try {
+          response = futures.get(i).get();
+        } catch (ExecutionException ex) {
+          throw new AssertionError("request " + i + " failed", ex.getCause());
+        }
+        Assert.assertTrue("response " + i, Arrays.equals(bodies.get(i), response));
+      }
+    } finally {
+      clientExecutor.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.common.test;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.xipki.util.LongBloomFilter;
+
+import junit.framework.Assert;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 5.0.2
+ */
+
+public class LongBloomFilterTest {
+
+  @Test
+  public void testNoFalseNegative() {
+    LongBloomFilter filter = new LongBloomFilter(10000);
+    Random random = new Random(1);
+    long[] values = new long[10000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextLong();
+      filter.add(values[i]);
+    }
+
+    for (long value : values) {
+      Assert.assertTrue("added value must be contained", filter.mightContain(value));
+    }
+  }
+
+  @Test
+  public void testFalsePositiveRate() {
+    LongBloomFilter filter = new LongBloomFilter(10000);
+    for (long i = 0; i < 10000; i++) {
+      filter.add(i);
+    }
+
+    int falsePositives = 0;
+    for (long i = 10000; i < 110000; i++) {
+      if (filter.mightContain(i)) {
+        falsePositives++;
+      }
+    }
+
+    Assert.assertTrue("false positive rate too high: " + falsePositives, falsePositives < 2000);
+  }
+
+}